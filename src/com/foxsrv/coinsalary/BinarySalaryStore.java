@@ -0,0 +1,195 @@
+package com.foxsrv.coinsalary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * last_salary.bin: log binario so de acrescimo. Cada gravacao acrescenta apenas as
+ * linhas alteradas (24 bytes cada: msb, lsb, timestamp); o ultimo registro de um
+ * UUID vale. O lastTaskRun usa o UUID nulo (0, 0), que nunca e de um jogador.
+ *
+ * Quando o log passa de COMPACT_RATIO vezes o numero de jogadores, e reescrito
+ * com uma linha por jogador (arquivo temporario + rename atomico). Um final de
+ * arquivo cortado por crash e descartado no load.
+ */
+final class BinarySalaryStore implements SalaryStore {
+
+    private static final int MAGIC = 0x43534C53; // "CSLS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 24;
+    private static final int COMPACT_RATIO = 4;
+    private static final long COMPACT_MIN_RECORDS = 4096;
+
+    private final File file;
+
+    // Estado do log (so a thread de persistencia mexe)
+    private FileChannel channel;
+    private long records;
+    private long writtenTaskRun = Long.MIN_VALUE;
+
+    BinarySalaryStore(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public String describe() {
+        return "binary (" + file.getName() + ")";
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !file.exists() || file.length() <= HEADER_BYTES;
+    }
+
+    @Override
+    public Snapshot load() throws IOException {
+        Map<UUID, Long> payments = new HashMap<>();
+        long lastTaskRun = 0L;
+        records = 0L;
+        if (!file.exists()) {
+            return new Snapshot(payments, lastTaskRun, 0);
+        }
+
+        long length = file.length();
+        long complete = HEADER_BYTES + (Math.max(0L, length - HEADER_BYTES) / RECORD_BYTES) * RECORD_BYTES;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (length < HEADER_BYTES || in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a CoinSalary binary store");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " has unsupported version " + version);
+            }
+
+            for (long offset = HEADER_BYTES; offset < complete; offset += RECORD_BYTES) {
+                long msb = in.readLong();
+                long lsb = in.readLong();
+                long timestamp = in.readLong();
+                if (msb == 0L && lsb == 0L) {
+                    lastTaskRun = timestamp;
+                } else {
+                    payments.put(new UUID(msb, lsb), timestamp);
+                }
+                records++;
+            }
+        }
+
+        if (complete < length) {
+            // Registro pela metade (crash durante a gravacao): cortar para o proximo append ficar alinhado
+            try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncate.truncate(complete);
+            }
+        }
+        writtenTaskRun = lastTaskRun;
+        return new Snapshot(payments, lastTaskRun, complete < length ? 1 : 0);
+    }
+
+    @Override
+    public void save(Map<UUID, Long> all, Map<UUID, Long> changed, long lastTaskRun) throws IOException {
+        boolean taskRunChanged = lastTaskRun != writtenTaskRun;
+        if (changed.isEmpty() && !taskRunChanged && file.exists()) {
+            return;
+        }
+
+        long appended = changed.size() + (taskRunChanged ? 1 : 0);
+        if (!file.exists() || records + appended > Math.max(COMPACT_MIN_RECORDS, (long) all.size() * COMPACT_RATIO)) {
+            rewrite(all, lastTaskRun);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) appended * RECORD_BYTES);
+        for (Map.Entry<UUID, Long> entry : changed.entrySet()) {
+            putRecord(buffer, entry.getKey().getMostSignificantBits(), entry.getKey().getLeastSignificantBits(), entry.getValue());
+        }
+        if (taskRunChanged) {
+            putRecord(buffer, 0L, 0L, lastTaskRun);
+        }
+        buffer.flip();
+
+        FileChannel log = channel();
+        long position = log.size();
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+        log.force(false);
+        records += appended;
+        writtenTaskRun = lastTaskRun;
+    }
+
+    /**
+     * Compacta: uma linha por jogador, trocada de forma atomica
+     */
+    private void rewrite(Map<UUID, Long> all, long lastTaskRun) throws IOException {
+        closeChannel();
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        long written = 0L;
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            for (Map.Entry<UUID, Long> entry : all.entrySet()) {
+                data.writeLong(entry.getKey().getMostSignificantBits());
+                data.writeLong(entry.getKey().getLeastSignificantBits());
+                data.writeLong(entry.getValue());
+                written++;
+            }
+            data.writeLong(0L);
+            data.writeLong(0L);
+            data.writeLong(lastTaskRun);
+            written++;
+            data.flush();
+            out.getChannel().force(true);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        records = written;
+        writtenTaskRun = lastTaskRun;
+    }
+
+    private static void putRecord(ByteBuffer buffer, long msb, long lsb, long timestamp) {
+        buffer.putLong(msb);
+        buffer.putLong(lsb);
+        buffer.putLong(timestamp);
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeChannel();
+    }
+}
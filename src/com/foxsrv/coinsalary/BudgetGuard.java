@@ -0,0 +1,223 @@
+package com.foxsrv.coinsalary;
+
+import com.foxsrv.coincard.CoinCardPlugin.BalanceListener;
+import com.foxsrv.coincard.CoinCardPlugin.CoinCardAPI;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controle de saldo de um card pagador.
+ *
+ * O saldo real vem do CoinCard (getBalance uma vez por ciclo e o BalanceListener);
+ * entre uma leitura e outra o guard acompanha localmente o que ja saiu: valores na
+ * fila, transferencias em andamento e debitos confirmados desde a ultima leitura.
+ * Assim a fila para (ou o ciclo e reduzido) antes de mandar transferencias que
+ * certamente falhariam por falta de saldo.
+ *
+ * Cada debito guarda quando a transferencia saiu (nanoTime) e cada saldo, quando foi
+ * lido. Um saldo lido depois do envio ja contem o debito, ou o BalanceListener avisa
+ * quando o CoinCard aplicar: o debito deixa de ser descontado. So o que saiu depois da
+ * leitura continua descontado, para nao descontar duas vezes o que ficou em andamento
+ * durante a leitura.
+ *
+ * Todos os valores em unidades de CoinAmount. Estado protegido pelo monitor do objeto.
+ */
+final class BudgetGuard {
+
+    enum Mode {
+        OFF, PAUSE, PRORATE;
+
+        static Mode parse(String text) {
+            try {
+                return valueOf(text.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return PAUSE;
+            }
+        }
+    }
+
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    final String cardId;
+    final Mode mode;
+    private final long reserveUnits;
+
+    private long balanceUnits = UNKNOWN;
+    private long balanceAt;
+    private long balanceReadNanos;
+    private long queuedUnits;
+    private long inFlightUnits;
+    private long debitedUnits;
+    // {envio em nanoTime, units} dos debitos que o saldo atual ainda nao contem
+    private final ArrayDeque<long[]> debits = new ArrayDeque<>();
+
+    private final BalanceListener listener = (card, oldBalance, newBalance) -> onBalance(newBalance, System.nanoTime());
+
+    BudgetGuard(String cardId, Mode mode, CoinAmount reserve) {
+        this.cardId = cardId;
+        this.mode = mode;
+        this.reserveUnits = Math.max(0L, reserve.units());
+    }
+
+    boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    // ====================================================
+    // BALANCE SOURCES
+    // ====================================================
+
+    void subscribe(CoinCardAPI api) {
+        api.addBalanceListener(cardId, listener);
+    }
+
+    void unsubscribe(CoinCardAPI api) {
+        api.removeBalanceListener(cardId, listener);
+    }
+
+    /**
+     * Busca o saldo no CoinCard (assincrono). Completa com false se a consulta falhar.
+     */
+    CompletableFuture<Boolean> refresh(CoinCardAPI api) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        long readNanos = System.nanoTime();
+        api.getBalance(cardId, (balance, error) -> {
+            if (error != null) {
+                result.complete(false);
+                return;
+            }
+            onBalance(balance, readNanos);
+            result.complete(true);
+        });
+        return result.orTimeout(10, TimeUnit.SECONDS).exceptionally(e -> false);
+    }
+
+    /**
+     * Saldo novo (leitura ou listener): contem os debitos de transferencias enviadas antes
+     * de readNanos. Uma leitura mais antiga que a atual (refresh que voltou depois de um
+     * aviso do listener) e ignorada.
+     */
+    private synchronized void onBalance(double balance, long readNanos) {
+        if (balanceUnits != UNKNOWN && readNanos - balanceReadNanos < 0) return;
+        balanceUnits = CoinAmount.ofDouble(balance).units();
+        balanceAt = System.currentTimeMillis();
+        balanceReadNanos = readNanos;
+        for (Iterator<long[]> it = debits.iterator(); it.hasNext(); ) {
+            long[] debit = it.next();
+            if (debit[0] - readNanos < 0) {
+                it.remove();
+                debitedUnits -= debit[1];
+            }
+        }
+        notifyAll();
+    }
+
+    // ====================================================
+    // ACCOUNTING
+    // ====================================================
+
+    synchronized void onQueued(long units) {
+        queuedUnits += units;
+    }
+
+    /**
+     * Pagamento removido da fila sem ser enviado
+     */
+    synchronized void onDropped(long units) {
+        queuedUnits -= units;
+    }
+
+    /**
+     * Reserva o valor antes da transferencia. false = saldo insuficiente (nao enviar).
+     * Com saldo desconhecido (consulta falhou) a transferencia segue.
+     */
+    synchronized boolean tryDispatch(long units) {
+        if (mode != Mode.OFF && balanceUnits != UNKNOWN && units > available()) {
+            return false;
+        }
+        queuedUnits -= units;
+        inFlightUnits += units;
+        return true;
+    }
+
+    /**
+     * Resultado da transferencia. Timeout conta como debitado ate a proxima leitura de saldo.
+     * @param sentNanos nanoTime de quando a transferencia foi enviada
+     */
+    synchronized void settle(long units, boolean debited, long sentNanos) {
+        inFlightUnits -= units;
+        if (debited) {
+            // Saldo lido depois do envio: o debito ja esta nele (ou o listener vai trazer)
+            if (balanceUnits != UNKNOWN && sentNanos - balanceReadNanos < 0) return;
+            debits.add(new long[]{sentNanos, units});
+            debitedUnits += units;
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Saldo que ainda pode ser enviado agora (desconta reserva, em andamento e ja debitado)
+     */
+    synchronized long available() {
+        if (balanceUnits == UNKNOWN) return Long.MAX_VALUE;
+        return balanceUnits - reserveUnits - inFlightUnits - debitedUnits;
+    }
+
+    /**
+     * Quanto um ciclo novo pode colocar na fila (available menos o que ja esta na fila)
+     */
+    synchronized long headroom() {
+        if (balanceUnits == UNKNOWN) return Long.MAX_VALUE;
+        return available() - queuedUnits;
+    }
+
+    /**
+     * Espera o saldo mudar (listener / refresh) ou o tempo acabar. true se ja cabe o valor.
+     */
+    synchronized boolean awaitFunds(long units, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long remaining = timeoutMs;
+        while (units > available() && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return units <= available();
+    }
+
+    // ====================================================
+    // STATUS
+    // ====================================================
+
+    synchronized boolean isBalanceKnown() {
+        return balanceUnits != UNKNOWN;
+    }
+
+    synchronized CoinAmount balance() {
+        return balanceUnits == UNKNOWN ? null : CoinAmount.ofUnits(balanceUnits);
+    }
+
+    synchronized long balanceAt() {
+        return balanceAt;
+    }
+
+    synchronized CoinAmount queued() {
+        return CoinAmount.ofUnits(queuedUnits);
+    }
+
+    synchronized CoinAmount inFlight() {
+        return CoinAmount.ofUnits(inFlightUnits);
+    }
+
+    synchronized CoinAmount debited() {
+        return CoinAmount.ofUnits(debitedUnits);
+    }
+
+    CoinAmount reserve() {
+        return CoinAmount.ofUnits(reserveUnits);
+    }
+}
@@ -0,0 +1,382 @@
+package com.foxsrv.coinsalary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * cache_snapshot.bin: copia dos caches de card e de grupos para o proximo enable nao
+ * comecar frio. Cada entrada guarda o horario da busca original, entao o TTL continua
+ * contando de onde parou (entrada vencida no disco e so um miss).
+ *
+ * Layout (big-endian):
+ *   cabecalho  magic, versao, savedAt, cards, grupos, nomes de grupo
+ *   nomes      tabela de nomes de grupo (u16 + UTF-8), lida inteira no open
+ *   cards      registros fixos ordenados por UUID: msb, lsb, fetchedAt, offset
+ *   grupos     registros fixos ordenados por UUID: msb, lsb, fetchedAt, offset
+ *   dados      card = u16 + UTF-8; grupos = u8 quantidade + u16 indice do nome cada
+ *
+ * O arquivo e mapeado em memoria e nada e carregado no enable: cada consulta faz busca
+ * binaria nos registros e so as paginas tocadas sao lidas do disco. Uma entrada sai da
+ * snapshot uma unica vez (take), depois quem vale e o cache em memoria; invalidacoes
+ * (forget) impedem que um valor velho volte.
+ */
+final class CacheSnapshot {
+
+    /**
+     * Valor lido da snapshot com o horario em que foi buscado
+     */
+    static final class Hit<T> {
+        final T value;
+        final long fetchedAt;
+
+        Hit(T value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    interface Visitor<T> {
+        void accept(UUID uuid, T value, long fetchedAt);
+    }
+
+    private static final int MAGIC = 0x43535743; // "CSWC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+    private static final int RECORD_BYTES = 28;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final int MAX_GROUPS_PER_PLAYER = 0xFF;
+
+    private final ByteBuffer buffer; // somente leituras absolutas: seguro entre threads
+    private final long savedAt;
+    private final int cardCount;
+    private final int groupCount;
+    private final String[] groupNames;
+    private final int cardsAt;
+    private final int groupsAt;
+    private final int dataAt;
+    private final Set<UUID> takenCards = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> takenGroups = ConcurrentHashMap.newKeySet();
+
+    private CacheSnapshot(ByteBuffer buffer, long savedAt, int cardCount, int groupCount, String[] groupNames,
+                          int cardsAt) {
+        this.buffer = buffer;
+        this.savedAt = savedAt;
+        this.cardCount = cardCount;
+        this.groupCount = groupCount;
+        this.groupNames = groupNames;
+        this.cardsAt = cardsAt;
+        this.groupsAt = cardsAt + cardCount * RECORD_BYTES;
+        this.dataAt = groupsAt + groupCount * RECORD_BYTES;
+    }
+
+    // ====================================================
+    // LEITURA
+    // ====================================================
+
+    /**
+     * Mapeia o arquivo (sem ler os registros). null se nao existe.
+     */
+    static CacheSnapshot open(File file) throws IOException {
+        if (!file.exists()) return null;
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException(file.getName() + " has invalid size " + size);
+            }
+            // O mapeamento continua valido depois de fechar o canal
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        try {
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException(file.getName() + " is not a CoinSalary cache snapshot");
+            }
+            int version = mapped.getInt(4);
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " has unsupported version " + version);
+            }
+            long savedAt = mapped.getLong(8);
+            int cards = mapped.getInt(16);
+            int groups = mapped.getInt(20);
+            int names = mapped.getInt(24);
+            if (cards < 0 || groups < 0 || names < 0) {
+                throw new IOException(file.getName() + " has a corrupt header");
+            }
+
+            String[] groupNames = new String[names];
+            int position = HEADER_BYTES;
+            for (int i = 0; i < names; i++) {
+                int length = Short.toUnsignedInt(mapped.getShort(position));
+                groupNames[i] = readUtf8(mapped, position + 2, length);
+                position += 2 + length;
+            }
+            if ((long) position + (long) (cards + groups) * RECORD_BYTES > mapped.capacity()) {
+                throw new IOException(file.getName() + " is truncated");
+            }
+            return new CacheSnapshot(mapped, savedAt, cards, groups, groupNames, position);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(file.getName() + " is truncated", e);
+        }
+    }
+
+    long savedAt() {
+        return savedAt;
+    }
+
+    int cards() {
+        return cardCount;
+    }
+
+    int groups() {
+        return groupCount;
+    }
+
+    /**
+     * Tudo aqui foi buscado ate savedAt: depois do maior TTL nada mais serve
+     */
+    boolean isExpired(long now, long ttl) {
+        return now - savedAt >= ttl;
+    }
+
+    /**
+     * Card do jogador, ainda dentro do TTL. Cada UUID sai uma vez so.
+     */
+    Hit<String> takeCard(UUID uuid, long now, long ttl) {
+        if (!takenCards.add(uuid)) return null;
+        int record = find(cardsAt, cardCount, uuid);
+        if (record < 0) return null;
+        long fetchedAt = buffer.getLong(record + 16);
+        if (now - fetchedAt >= ttl) return null;
+        try {
+            return new Hit<>(readCard(record), fetchedAt);
+        } catch (IndexOutOfBoundsException e) {
+            return null; // dado corrompido: so um miss
+        }
+    }
+
+    /**
+     * Grupos do jogador (lista nova), ainda dentro do TTL. Cada UUID sai uma vez so.
+     */
+    Hit<List<String>> takeGroups(UUID uuid, long now, long ttl) {
+        if (!takenGroups.add(uuid)) return null;
+        int record = find(groupsAt, groupCount, uuid);
+        if (record < 0) return null;
+        long fetchedAt = buffer.getLong(record + 16);
+        if (now - fetchedAt >= ttl) return null;
+        try {
+            return new Hit<>(readGroups(record), fetchedAt);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * O valor mudou depois da snapshot (card trocado, grupo recalculado): nunca devolver
+     */
+    void forgetCard(UUID uuid) {
+        takenCards.add(uuid);
+    }
+
+    void forgetGroups(UUID uuid) {
+        takenGroups.add(uuid);
+    }
+
+    /**
+     * Entradas ainda nao retiradas e dentro do TTL (para juntar ao cache antes de regravar)
+     */
+    void drainCards(long now, long ttl, Visitor<String> visitor) {
+        for (int i = 0; i < cardCount; i++) {
+            int record = cardsAt + i * RECORD_BYTES;
+            UUID uuid = new UUID(buffer.getLong(record), buffer.getLong(record + 8));
+            long fetchedAt = buffer.getLong(record + 16);
+            if (now - fetchedAt >= ttl || !takenCards.add(uuid)) continue;
+            try {
+                visitor.accept(uuid, readCard(record), fetchedAt);
+            } catch (IndexOutOfBoundsException ignored) {
+            }
+        }
+    }
+
+    void drainGroups(long now, long ttl, Visitor<List<String>> visitor) {
+        for (int i = 0; i < groupCount; i++) {
+            int record = groupsAt + i * RECORD_BYTES;
+            UUID uuid = new UUID(buffer.getLong(record), buffer.getLong(record + 8));
+            long fetchedAt = buffer.getLong(record + 16);
+            if (now - fetchedAt >= ttl || !takenGroups.add(uuid)) continue;
+            try {
+                visitor.accept(uuid, readGroups(record), fetchedAt);
+            } catch (IndexOutOfBoundsException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Busca binaria pelo UUID (mesma ordem do write); posicao do registro ou -1
+     */
+    private int find(int start, int count, UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = start + mid * RECORD_BYTES;
+            int cmp = Long.compare(buffer.getLong(record), msb);
+            if (cmp == 0) cmp = Long.compare(buffer.getLong(record + 8), lsb);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private String readCard(int record) {
+        int position = dataAt + buffer.getInt(record + 24);
+        return readUtf8(buffer, position + 2, Short.toUnsignedInt(buffer.getShort(position)));
+    }
+
+    private List<String> readGroups(int record) {
+        int position = dataAt + buffer.getInt(record + 24);
+        int count = Byte.toUnsignedInt(buffer.get(position));
+        List<String> groups = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            groups.add(groupNames[Short.toUnsignedInt(buffer.getShort(position + 1 + i * 2))]);
+        }
+        return groups;
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ====================================================
+    // GRAVACAO
+    // ====================================================
+
+    /**
+     * Grava so as entradas dentro do TTL, ordenadas por UUID, em temporario com fsync e
+     * rename atomico (como o last_salary.bin). Retorna quantas entradas foram gravadas.
+     */
+    static int write(File file, Map<UUID, String> cards, Map<UUID, Long> cardTimes, long cardTtl,
+                     Map<UUID, List<String>> groups, Map<UUID, Long> groupTimes, long groupTtl,
+                     long now) throws IOException {
+        // Copias estaveis dos mapas concorrentes: valor e horario precisam estar juntos
+        TreeMap<UUID, String> liveCards = new TreeMap<>(CacheSnapshot::compare);
+        Map<UUID, Long> liveCardTimes = new HashMap<>();
+        for (Map.Entry<UUID, Long> entry : cardTimes.entrySet()) {
+            String card = cards.get(entry.getKey());
+            byte[] bytes = card != null ? card.getBytes(StandardCharsets.UTF_8) : null;
+            if (bytes == null || bytes.length > MAX_STRING_BYTES || now - entry.getValue() >= cardTtl) continue;
+            liveCards.put(entry.getKey(), card);
+            liveCardTimes.put(entry.getKey(), entry.getValue());
+        }
+
+        TreeMap<UUID, List<String>> liveGroups = new TreeMap<>(CacheSnapshot::compare);
+        Map<UUID, Long> liveGroupTimes = new HashMap<>();
+        Map<String, Integer> nameIndex = new LinkedHashMap<>();
+        for (Map.Entry<UUID, Long> entry : groupTimes.entrySet()) {
+            List<String> list = groups.get(entry.getKey());
+            if (list == null || list.size() > MAX_GROUPS_PER_PLAYER || now - entry.getValue() >= groupTtl) continue;
+            boolean fits = true;
+            for (String group : list) {
+                if (group.getBytes(StandardCharsets.UTF_8).length > MAX_STRING_BYTES) fits = false;
+            }
+            if (!fits) continue;
+            liveGroups.put(entry.getKey(), new ArrayList<>(list));
+            liveGroupTimes.put(entry.getKey(), entry.getValue());
+            for (String group : list) {
+                nameIndex.putIfAbsent(group, nameIndex.size());
+            }
+        }
+        if (nameIndex.size() > 0xFFFF) {
+            throw new IOException("Too many distinct group names for " + file.getName());
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(now);
+            data.writeInt(liveCards.size());
+            data.writeInt(liveGroups.size());
+            data.writeInt(nameIndex.size());
+            for (String name : nameIndex.keySet()) {
+                writeUtf8(data, name.getBytes(StandardCharsets.UTF_8));
+            }
+
+            // Registros: offset no bloco de dados, calculado na mesma ordem em que os dados sao gravados
+            int offset = 0;
+            for (Map.Entry<UUID, String> entry : liveCards.entrySet()) {
+                writeRecord(data, entry.getKey(), liveCardTimes.get(entry.getKey()), offset);
+                offset += 2 + entry.getValue().getBytes(StandardCharsets.UTF_8).length;
+            }
+            for (Map.Entry<UUID, List<String>> entry : liveGroups.entrySet()) {
+                writeRecord(data, entry.getKey(), liveGroupTimes.get(entry.getKey()), offset);
+                offset += 1 + entry.getValue().size() * 2;
+            }
+
+            for (String card : liveCards.values()) {
+                writeUtf8(data, card.getBytes(StandardCharsets.UTF_8));
+            }
+            for (List<String> list : liveGroups.values()) {
+                data.writeByte(list.size());
+                for (String group : list) {
+                    data.writeShort(nameIndex.get(group));
+                }
+            }
+            data.flush();
+            out.getChannel().force(true);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return liveCards.size() + liveGroups.size();
+    }
+
+    private static void writeRecord(DataOutputStream data, UUID uuid, long fetchedAt, int offset) throws IOException {
+        data.writeLong(uuid.getMostSignificantBits());
+        data.writeLong(uuid.getLeastSignificantBits());
+        data.writeLong(fetchedAt);
+        data.writeInt(offset);
+    }
+
+    private static void writeUtf8(DataOutputStream data, byte[] bytes) throws IOException {
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * Ordem com sinal por msb e depois lsb (a mesma da busca binaria)
+     */
+    private static int compare(UUID a, UUID b) {
+        int cmp = Long.compare(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return cmp != 0 ? cmp : Long.compare(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
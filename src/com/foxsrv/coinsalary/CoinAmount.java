@@ -0,0 +1,188 @@
+package com.foxsrv.coinsalary;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Valor em coins com ponto fixo: um long em unidades de 1e-8 coin.
+ *
+ * Substitui o caminho double -> BigDecimal -> double do pagamento. O valor so vira
+ * double na fronteira com a API do CoinCard (toDouble / ofDouble); todo o resto
+ * (soma, comparacao, formatacao via CoinFormat) e feito em long, sem perda de precisao.
+ */
+final class CoinAmount implements Comparable<CoinAmount> {
+
+    /** Casas decimais (1 unit = 0.00000001 coin) */
+    static final int SCALE = 8;
+    static final long UNITS_PER_COIN = 100_000_000L;
+
+    static final CoinAmount ZERO = new CoinAmount(0L);
+
+    private final long units;
+
+    private CoinAmount(long units) {
+        this.units = units;
+    }
+
+    static CoinAmount ofUnits(long units) {
+        return units == 0L ? ZERO : new CoinAmount(units);
+    }
+
+    /**
+     * Le um valor exato de config ou comando ("0.00000055", "5.5E-7", "1,5").
+     * Rejeita mais de 8 casas decimais em vez de arredondar silenciosamente.
+     */
+    static CoinAmount parse(String text) {
+        if (text == null) throw new NumberFormatException("null amount");
+        String s = text.trim().replace(',', '.');
+        if (s.isEmpty()) throw new NumberFormatException("empty amount");
+
+        // Caminho rapido: [-+]digitos[.digitos] sem BigDecimal
+        int i = 0;
+        boolean negative = false;
+        char first = s.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long whole = 0L;
+        long frac = 0L;
+        int fracDigits = 0;
+        boolean digits = false;
+        boolean dot = false;
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '.' && !dot) {
+                dot = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (!dot) {
+                    whole = Math.addExact(Math.multiplyExact(whole, 10L), c - '0');
+                } else if (fracDigits < SCALE) {
+                    frac = frac * 10L + (c - '0');
+                    fracDigits++;
+                } else if (c != '0') {
+                    throw new NumberFormatException("More than " + SCALE + " decimal places: " + text);
+                }
+            } else {
+                // Notacao cientifica (ex: valores double lidos do YAML)
+                return parseDecimal(s, text);
+            }
+        }
+        if (!digits) throw new NumberFormatException("Invalid amount: " + text);
+
+        for (int d = fracDigits; d < SCALE; d++) {
+            frac *= 10L;
+        }
+        long value = Math.addExact(Math.multiplyExact(whole, UNITS_PER_COIN), frac);
+        return ofUnits(negative ? -value : value);
+    }
+
+    /**
+     * Como parse, mas corta (RoundingMode.DOWN, como o DecimalFormat antigo exibia) o que
+     * passar de 8 casas em vez de rejeitar. So para valores de config ja existentes.
+     */
+    static CoinAmount parseRoundingDown(String text) {
+        try {
+            return parse(text);
+        } catch (NumberFormatException e) {
+            BigDecimal decimal;
+            try {
+                decimal = new BigDecimal(text.trim().replace(',', '.'));
+            } catch (NumberFormatException invalid) {
+                throw e;
+            }
+            return ofUnits(decimal.setScale(SCALE, RoundingMode.DOWN).movePointRight(SCALE).longValueExact());
+        }
+    }
+
+    private static CoinAmount parseDecimal(String s, String original) {
+        BigDecimal decimal = new BigDecimal(s).stripTrailingZeros();
+        if (decimal.scale() > SCALE) {
+            throw new NumberFormatException("More than " + SCALE + " decimal places: " + original);
+        }
+        return ofUnits(decimal.movePointRight(SCALE).longValueExact());
+    }
+
+    // ====================================================
+    // COINCARD BOUNDARY
+    // ====================================================
+
+    /**
+     * Valor em double para a API do CoinCard. units e 1e8 sao exatos em double,
+     * entao a divisao devolve o double mais proximo do valor decimal.
+     */
+    double toDouble() {
+        return units / (double) UNITS_PER_COIN;
+    }
+
+    /**
+     * Converte um double vindo do CoinCard (saldo, callbacks) para a unidade mais proxima
+     */
+    static CoinAmount ofDouble(double coins) {
+        return ofUnits(Math.round(coins * UNITS_PER_COIN));
+    }
+
+    /**
+     * Valor exato para a API publica (SalaryService / eventos)
+     */
+    BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(units, SCALE);
+    }
+
+    // ====================================================
+    // ARITHMETIC
+    // ====================================================
+
+    long units() {
+        return units;
+    }
+
+    CoinAmount plus(CoinAmount other) {
+        return ofUnits(Math.addExact(units, other.units));
+    }
+
+    CoinAmount minus(CoinAmount other) {
+        return ofUnits(Math.subtractExact(units, other.units));
+    }
+
+    boolean isPositive() {
+        return units > 0L;
+    }
+
+    boolean isZero() {
+        return units == 0L;
+    }
+
+    @Override
+    public int compareTo(CoinAmount other) {
+        return Long.compare(units, other.units);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CoinAmount && ((CoinAmount) o).units == units;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(units);
+    }
+
+    // ====================================================
+    // FORMAT
+    // ====================================================
+
+    /**
+     * Escreve o valor (ver CoinFormat) sem alocar
+     */
+    StringBuilder appendTo(StringBuilder sb) {
+        return CoinFormat.appendTo(sb, units);
+    }
+
+    @Override
+    public String toString() {
+        return CoinFormat.format(units);
+    }
+}
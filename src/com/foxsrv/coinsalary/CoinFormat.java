@@ -0,0 +1,80 @@
+package com.foxsrv.coinsalary;
+
+/**
+ * Formatador de coins seguro para varias threads.
+ *
+ * Gera exatamente o mesmo texto do antigo DecimalFormat("0.########") com
+ * RoundingMode.DOWN e ".0" quando nao ha casas decimais, mas sem estado
+ * compartilhado: cada thread escreve num char[] proprio, reaproveitado entre chamadas.
+ * A equivalencia e conferida por CoinFormatPropertyTest (o formato antigo esta em
+ * LegacyCoinFormat); o ganho, por CoinFormatBenchmark.
+ */
+final class CoinFormat {
+
+    // sinal + 19 digitos + ponto + 8 casas
+    private static final int MAX_CHARS = 1 + 19 + 1 + CoinAmount.SCALE;
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAX_CHARS]);
+
+    private CoinFormat() {
+    }
+
+    /**
+     * Formata um valor em unidades de 1e-8 coin
+     */
+    static String format(long units) {
+        char[] buf = BUFFER.get();
+        int start = write(units, buf);
+        return new String(buf, start, MAX_CHARS - start);
+    }
+
+    /**
+     * Escreve o valor direto no StringBuilder, sem alocar
+     */
+    static StringBuilder appendTo(StringBuilder sb, long units) {
+        char[] buf = BUFFER.get();
+        int start = write(units, buf);
+        return sb.append(buf, start, MAX_CHARS - start);
+    }
+
+    /**
+     * Escreve da direita para a esquerda no buffer e devolve a posicao inicial
+     */
+    private static int write(long units, char[] buf) {
+        long whole = units / CoinAmount.UNITS_PER_COIN;
+        long frac = units % CoinAmount.UNITS_PER_COIN;
+        boolean negative = units < 0;
+        if (negative) {
+            whole = -whole;
+            frac = -frac;
+        }
+
+        int pos = MAX_CHARS;
+
+        if (frac == 0L) {
+            buf[--pos] = '0';
+        } else {
+            // Casas decimais sem zeros a direita (o DOWN ja esta implicito: nao ha mais de 8 casas)
+            int digits = CoinAmount.SCALE;
+            while (frac % 10L == 0L) {
+                frac /= 10L;
+                digits--;
+            }
+            for (int i = 0; i < digits; i++) {
+                buf[--pos] = (char) ('0' + frac % 10L);
+                frac /= 10L;
+            }
+        }
+        buf[--pos] = '.';
+
+        do {
+            buf[--pos] = (char) ('0' + whole % 10L);
+            whole /= 10L;
+        } while (whole > 0L);
+
+        if (negative) {
+            buf[--pos] = '-';
+        }
+        return pos;
+    }
+}
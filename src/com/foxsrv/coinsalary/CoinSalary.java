@@ -2,29 +2,46 @@ package com.foxsrv.coinsalary;
 
 import com.foxsrv.coincard.CoinCardPlugin.CoinCardAPI;
 import com.foxsrv.coincard.CoinCardPlugin.TransferCallback;
-import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import net.milkbowl.vault.permission.Permission;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.*;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.RegisteredServiceProvider;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.io.*;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 public class CoinSalary extends JavaPlugin implements Listener {
@@ -32,28 +49,42 @@ public class CoinSalary extends JavaPlugin implements Listener {
     // ====================================================
     // CONSTANTS & CONFIG
     // ====================================================
-    private static final DecimalFormat COIN_FORMAT;
-    private static final Gson GSON = new GsonBuilder()
-            .setPrettyPrinting()
-            .disableHtmlEscaping()
-            .create();
-    
-    static {
-        DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);
-        symbols.setDecimalSeparator('.');
-        COIN_FORMAT = new DecimalFormat("0.########", symbols);
-    }
 
     private FileConfiguration config;
     private File lastSalaryFile;
+    
+    // Reload incremental: YAML lido fora da main thread, diff aplicado na main thread.
+    // O digest do texto aplicado evita recarregar a propria gravacao (/salary group) pelo watcher.
+    private volatile int appliedConfigDigest;
+    private boolean watchConfig;
+    private ConfigWatcher configWatcher;
     private LastSalaryData lastSalaryData;
     
+    // Persistencia: uma unica thread grava, com debounce
+    private static final long SAVE_DEBOUNCE_MS = 5000;
+    private static final long SAVE_SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private ScheduledExecutorService persistenceExecutor;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+    
+    // Backend dos ultimos pagamentos (json, binary, sql) e linhas alteradas desde a ultima gravacao
+    private SalaryStore salaryStore;
+    private final Set<UUID> dirtySalaryRows = ConcurrentHashMap.newKeySet();
+    private String storageBackend;
+    private String storageUrl;
+    private String storageUser;
+    private String storagePassword;
+    
+    // Completa quando o last_salary.dat termina de carregar
+    private static final long SALARY_DATA_WAIT_SECONDS = 30;
+    private volatile CompletableFuture<Void> salaryDataReady;
+    
     // Config values
     private String serverCardId;
     private long cooldownMs;
     private long salaryIntervalSeconds;
     private boolean payOffline;
-    private Map<String, BigDecimal> groupSalaries = new HashMap<>();
+    // Tabela compilada e imutavel - trocada inteira no reload / comando group
+    private volatile SalaryTable salaryTable = SalaryTable.EMPTY;
     
     // CoinCard API
     private CoinCardAPI coinCardAPI;
@@ -62,47 +93,150 @@ public class CoinSalary extends JavaPlugin implements Listener {
     private Permission permission;
     
     // Salary tracking
-    private final Map<UUID, Long> lastSalaryTime = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Long> lastSalaryTime = new ConcurrentHashMap<>();
     private BukkitTask salaryTask;
     
     // Cache para evitar chamadas repetidas a API
     private final Map<UUID, String> cardCache = new ConcurrentHashMap<>();
     private final Map<UUID, Long> cardCacheTimestamp = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> cardCacheLastRead = new ConcurrentHashMap<>();
     private static final long CACHE_DURATION = 5 * 60 * 1000; // 5 minutos
     
+    // Busca de cards em lote (prefetch do ciclo e refresh) - concorrencia limitada. Os
+    // comandos usam outro executor: um ciclo grande nao deixa /salary esperando na fila
+    private static final int CARD_PREFETCH_THREADS = 4;
+    private static final int CARD_PREFETCH_CHUNK = 64;
+    private static final int CARD_LOOKUP_THREADS = 2;
+    private ExecutorService cardPrefetchExecutor;
+    private ExecutorService cardLookupExecutor;
+    
+    // Refresh antecipado: entradas lidas dentro do TTL sao atualizadas em segundo plano com 80%
+    // do TTL; as que ninguem leu nesse tempo expiram e saem do cache
+    private static final double REFRESH_AHEAD_RATIO = 0.8;
+    private static final long CACHE_REFRESH_INTERVAL_TICKS = 30 * 20; // 30 segundos
+    private static final int CACHE_REFRESH_MAX_PER_RUN = 500;
+    private static final int GROUP_LOOKUPS_PER_TICK = 25;
+    private BukkitTask cacheRefreshTask;
+    
+    // Verificacao de salario ao entrar: agrupada a cada 5 segundos
+    private static final long JOIN_BATCH_INTERVAL_TICKS = 5 * 20;
+    private final Set<UUID> pendingJoinChecks = ConcurrentHashMap.newKeySet();
+    private BukkitTask joinBatchTask;
+    private volatile long nextSalaryRunAt;
+    
     // Cache para grupos de jogadores offline
     private final Map<UUID, List<String>> playerGroupsCache = new ConcurrentHashMap<>();
     private final Map<UUID, Long> playerGroupsCacheTimestamp = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> playerGroupsCacheLastRead = new ConcurrentHashMap<>();
     private static final long GROUPS_CACHE_DURATION = 10 * 60 * 1000; // 10 minutos
     
+    // Snapshot dos caches (cache_snapshot.bin): gravada no desligamento e periodicamente,
+    // mapeada no enable e lida sob demanda - o primeiro ciclo depois do restart ja sai quente
+    private File cacheSnapshotFile;
+    private volatile CacheSnapshot warmCache;
+    private boolean warmCacheEnabled;
+    private long warmCacheSaveMinutes;
+    
     // ====================================================
     // PAYMENT QUEUE SYSTEM
     // ====================================================
-    private final BlockingQueue<PaymentTask> paymentQueue = new LinkedBlockingQueue<>();
-    private boolean isProcessingQueue = false;
-    private final Object queueLock = new Object();
-    private ScheduledExecutorService queueExecutor;
-    private CompletableFuture<Void> queueProcessingFuture;
+    // Cards pagadores: cada um com fila, cooldown e orcamento proprios, processados em paralelo.
+    // O pool e imutavel e trocado inteiro no reload (como a SalaryTable).
+    private volatile FundingPool fundingPool = FundingPool.EMPTY;
+    private List<FundingCard.Spec> fundingSpecs = new ArrayList<>();
+    private FundingPool.Strategy fundingStrategy = FundingPool.Strategy.HASH;
+    private ExecutorService queueExecutor;
+    
+    // Desligamento: para de tirar pagamentos da fila, espera os que estao no CoinCard ate o
+    // prazo e grava o resto (fila + resultado desconhecido) em pending_payments.json
+    private static final long DRAIN_POLL_MS = 50;
+    private volatile boolean draining;
+    private final AtomicInteger transfersInFlight = new AtomicInteger();
+    // Enviados sem callback ainda: em voo ou com timeout sem resposta tardia
+    private final Set<PaymentTask> unsettled = ConcurrentHashMap.newKeySet();
+    private PaymentCheckpoint checkpoint;
+    private volatile boolean checkpointResumed;
+    // Filas dos cards: ate Queue.memory-entries em memoria por card, o resto em queue/ no disco
+    private PaymentQueue.Settings queueSettings;
+    private long drainTimeoutMs;
+    private boolean retryUnknown;
+    
+    // Livro-razao de pagamentos (ledger/ segmentado, aberto na thread de persistencia)
+    private static final long MANUAL_CYCLE_ID = PaymentTask.MANUAL_CYCLE_ID;
+    private static final long LEDGER_COMPACT_INTERVAL_HOURS = 6;
+    private static final int HISTORY_DEFAULT_LIMIT = 10;
+    private static final int HISTORY_MAX_LIMIT = 100;
+    private volatile PaymentLedger ledger;
+    private boolean ledgerEnabled;
+    private long ledgerSegmentBytes;
+    private long ledgerRetentionDays;
+    
+    // Relatorios por ciclo: montados durante o ciclo, uma linha JSON por ciclo no arquivo
+    private static final int RECENT_REPORTS = 20;
+    private static final long REPORTS_FILE_MAX_BYTES = 5 * 1024 * 1024;
+    private final Deque<CycleReport> recentReports = new ArrayDeque<>();
+    private File reportsFile;
+    
+    // Orcamento de cada card pagador: saldo lido uma vez por ciclo + listener + debito local
+    private static final long BUDGET_RECHECK_MS = 60_000;
+    private BudgetGuard.Mode budgetMode;
+    private CoinAmount budgetReserve = CoinAmount.ZERO;
+    
+    // Log do caminho de pagamento: ring buffer drenado por thread propria, com resumo e amostragem
+    private static final int PAYROLL_LOG_BUFFER = 16384;
+    private final PayrollLog payLog = new PayrollLog(getLogger(), PAYROLL_LOG_BUFFER);
+    
+    // Avisos aos jogadores: fila sem lock drenada por uma task por tick
+    private final NotificationOutbox outbox = new NotificationOutbox(getLogger());
+    private BukkitTask outboxTask;
+    
+    // Tempo de main thread de cada task sincrona do plugin, MSPT do servidor e throttle
+    private final TickBudget tickBudget = new TickBudget();
+    private BukkitTask tickBudgetTask;
+    
+    // PlaceholderAPI: snapshot por jogador montado em segundo plano, requests so leem
+    private static final long PLACEHOLDER_TICK_TICKS = 20;
+    private PlaceholderSnapshots placeholderSnapshots;
+    private SalaryPlaceholderExpansion placeholderExpansion;
+    private final Set<UUID> placeholderPending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean placeholderRefreshing = new AtomicBoolean(false);
+    private BukkitTask placeholderTask;
+    private BukkitTask placeholderQueueTask;
+    private volatile SalaryTable placeholderTable;
+    private long placeholderFullRefreshAt;
+    private long placeholderRefreshMs;
+    
+    // API para outros plugins (SalaryService no ServicesManager) e eventos de pagamento em lote
+    private static final long SERVICE_TICK_TICKS = 20;
+    private SalaryServiceProvider salaryService;
+    private final PaymentEvents paymentEvents = new PaymentEvents();
+    private BukkitTask serviceTask;
+    
+    // Coordenacao entre servidores (BungeeCord): ultimo pagamento compartilhado e lider do ciclo offline.
+    // Backend escolhido no enable; "none" mantem tudo local como antes.
+    private static final long COORDINATION_WAIT_SECONDS = 30;
+    private volatile Coordinator coordinator;
+    private volatile CompletableFuture<Coordinator> coordinatorReady;
+    private ScheduledExecutorService coordinationExecutor;
+    private volatile String coordinationError;
+    private String coordinationBackend;
+    private String coordinationNodeId;
+    private long coordinationLeaseMs;
+    private String coordinationDirectory;
+    private String coordinationUrl;
+    private String coordinationUser;
+    private String coordinationPassword;
+    private volatile boolean partitionOffline;
 
+    public CoinSalary() {
+        super();
+    }
+    
     /**
-     * Classe interna para representar uma tarefa de pagamento
+     * Testes fora do servidor (test/): carregado sem PluginClassLoader
      */
-    private static class PaymentTask {
-        final OfflinePlayer player;
-        final BigDecimal amount;
-        final String playerCardId;
-        final String playerName;
-        final boolean isOnline;
-        final UUID uuid;
-        
-        PaymentTask(OfflinePlayer player, BigDecimal amount, String playerCardId) {
-            this.player = player;
-            this.amount = amount;
-            this.playerCardId = playerCardId;
-            this.playerName = player.getName() != null ? player.getName() : "Unknown";
-            this.isOnline = player.isOnline();
-            this.uuid = player.getUniqueId();
-        }
+    CoinSalary(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
     }
 
     // ====================================================
@@ -110,6 +244,8 @@ public class CoinSalary extends JavaPlugin implements Listener {
     // ====================================================
     @Override
     public void onEnable() {
+        long enableStart = System.nanoTime();
+        
         // Check if CoinCard is installed
         if (!setupCoinCardAPI()) {
             getLogger().severe("CoinCard plugin not found! Disabling CoinSalary...");
@@ -132,56 +268,168 @@ public class CoinSalary extends JavaPlugin implements Listener {
         
         setupFolders();
         loadConfig();
-        loadLastSalaryData();
+        salaryStore = createSalaryStore();
+        payLog.start();
+        setupFundingPool();
+        
+        // Thread unica de persistencia (carregamento + gravacoes agrupadas)
+        ScheduledThreadPoolExecutor persistence = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "CoinSalary-Persistence");
+            t.setDaemon(true);
+            return t;
+        });
+        persistence.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        persistenceExecutor = persistence;
+        
+        // Ledger antes dos dados: pagamentos so comecam depois que salaryDataReady completar
+        if (ledgerEnabled) {
+            persistenceExecutor.execute(this::openLedger);
+            persistence.scheduleWithFixedDelay(this::compactLedger, 
+                    LEDGER_COMPACT_INTERVAL_HOURS, LEDGER_COMPACT_INTERVAL_HOURS, TimeUnit.HOURS);
+        }
+        
+        // Mapear a snapshot dos caches antes dos dados: o primeiro ciclo espera o carregamento
+        if (warmCacheEnabled) {
+            persistenceExecutor.execute(this::openWarmCache);
+            if (warmCacheSaveMinutes > 0) {
+                persistence.scheduleWithFixedDelay(() -> saveWarmCache(false), 
+                        warmCacheSaveMinutes, warmCacheSaveMinutes, TimeUnit.MINUTES);
+            }
+        }
+        
+        // Carregar dados em segundo plano - nao travar o boot do servidor
+        lastSalaryData = new LastSalaryData();
+        loadLastSalaryDataAsync().thenRunAsync(this::resumeCheckpoint, persistenceExecutor);
+        startCoordination();
         
         getServer().getPluginManager().registerEvents(this, this);
 
         Objects.requireNonNull(getCommand("salary")).setExecutor(new SalaryCommand());
         Objects.requireNonNull(getCommand("salaries")).setExecutor(new SalariesCommand());
 
-        COIN_FORMAT.setRoundingMode(RoundingMode.DOWN);
-        COIN_FORMAT.setMinimumFractionDigits(0);
-        COIN_FORMAT.setMaximumFractionDigits(8);
-
-        // Initialize queue executor
-        queueExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "CoinSalary-Queue-Processor");
+        
+        // Executores para consultas ao CoinCard: prefetch/refresh de cards e comandos
+        cardPrefetchExecutor = Executors.newFixedThreadPool(CARD_PREFETCH_THREADS, r -> {
+            Thread t = new Thread(r, "CoinSalary-Card-Prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+        cardLookupExecutor = Executors.newFixedThreadPool(CARD_LOOKUP_THREADS, r -> {
+            Thread t = new Thread(r, "CoinSalary-Card-Lookup");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        // Um processador de fila por card pagador (threads criadas sob demanda)
+        queueExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "CoinSalary-Payout");
             t.setDaemon(true);
             return t;
         });
 
+        setupService();
         startSalaryTask();
+        updateConfigWatcher();
+        startCacheRefreshTask();
+        startJoinBatchTask();
+        tickBudgetTask = Bukkit.getScheduler().runTaskTimer(this, tickBudget::tick, 1L, 1L);
+        outboxTask = Bukkit.getScheduler().runTaskTimer(this, tickBudget.timed(TickBudget.Source.NOTIFICATIONS, 
+                () -> outbox.flush(tickBudget.scaled(outbox.perTick))), 1L, 1L);
+        hookPermissionEvents();
+        if (getServer().getPluginManager().getPlugin("PlaceholderAPI") != null) {
+            setupPlaceholders();
+        }
 
         getLogger().info("CoinSalary v" + getDescription().getVersion() + " enabled successfully with CoinCard integration!");
         getLogger().info("Salary interval: " + salaryIntervalSeconds + " seconds");
         getLogger().info("Pay offline players: " + payOffline);
-        getLogger().info("Transaction cooldown: " + cooldownMs + "ms");
-        getLogger().info("Loaded " + groupSalaries.size() + " salary groups");
+        getLogger().info("Funding cards: " + fundingPool.cards().size() + " (" + 
+                fundingStrategy.name().toLowerCase(Locale.ROOT) + "), default cooldown " + cooldownMs + "ms");
+        getLogger().info("Loaded " + salaryTable.size() + " salary groups");
+        getLogger().info("Enabled in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enableStart) + 
+                "ms (last salary data " + (isSalaryDataReady() ? "loaded" : "loading in background") + ")");
     }
 
     @Override
     public void onDisable() {
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
         if (salaryTask != null) {
             salaryTask.cancel();
         }
+        if (cacheRefreshTask != null) {
+            cacheRefreshTask.cancel();
+        }
+        if (joinBatchTask != null) {
+            joinBatchTask.cancel();
+        }
+        if (outboxTask != null) {
+            outboxTask.cancel();
+        }
+        if (tickBudgetTask != null) {
+            tickBudgetTask.cancel();
+        }
+        if (placeholderTask != null) {
+            placeholderTask.cancel();
+            placeholderQueueTask.cancel();
+        }
+        if (placeholderExpansion != null) {
+            placeholderExpansion.unregister();
+            placeholderExpansion = null;
+        }
+        if (serviceTask != null) {
+            serviceTask.cancel();
+        }
+        if (salaryService != null) {
+            getServer().getServicesManager().unregister(SalaryService.class, salaryService);
+            salaryService.close();
+        }
         
-        // Shutdown queue executor gracefully
-        if (queueExecutor != null) {
-            queueExecutor.shutdown();
-            try {
-                if (!queueExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    queueExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                queueExecutor.shutdownNow();
+        if (cardPrefetchExecutor != null) {
+            cardPrefetchExecutor.shutdownNow();
+        }
+        if (cardLookupExecutor != null) {
+            cardLookupExecutor.shutdownNow();
+        }
+        
+        int saved = drainPayments();
+        
+        // O serviceTask ja foi cancelado: ultimo lote do evento (assincrono, fora da main thread)
+        if (persistenceExecutor != null) {
+            persistenceExecutor.execute(paymentEvents::flush);
+        }
+        
+        // Ciclos ainda abertos entram no arquivo como incompletos
+        for (CycleReport report : recentReportsSnapshot()) {
+            report.abort("Plugin disabled, " + saved + " payment(s) saved to " + checkpoint.file().getName());
+        }
+        
+        if (coinCardAPI != null) {
+            for (FundingCard card : fundingPool.cards()) {
+                card.guard.unsubscribe(coinCardAPI);
             }
         }
         
-        saveLastSalaryData();
+        PaymentLedger openLedger = ledger;
+        if (openLedger != null) {
+            ledger = null;
+            openLedger.close();
+        }
+        payLog.stop();
+        
+        stopCoordination();
+        if (warmCacheEnabled && persistenceExecutor != null) {
+            persistenceExecutor.execute(() -> saveWarmCache(true));
+        }
+        shutdownPersistence();
+        warmCache = null;
         cardCache.clear();
         cardCacheTimestamp.clear();
+        cardCacheLastRead.clear();
         playerGroupsCache.clear();
         playerGroupsCacheTimestamp.clear();
+        playerGroupsCacheLastRead.clear();
         getLogger().info("CoinSalary disabled.");
     }
 
@@ -190,192 +438,1484 @@ public class CoinSalary extends JavaPlugin implements Listener {
             getDataFolder().mkdirs();
         }
         lastSalaryFile = new File(getDataFolder(), "last_salary.dat");
+        reportsFile = new File(getDataFolder(), "payroll_reports.jsonl");
+        checkpoint = new PaymentCheckpoint(new File(getDataFolder(), "pending_payments.json"));
+        cacheSnapshotFile = new File(getDataFolder(), "cache_snapshot.bin");
+        queueSettings = new PaymentQueue.Settings(new File(getDataFolder(), "queue"), 10_000);
+        warnLeftoverSpill(queueSettings.directory);
+    }
+    
+    /**
+     * Segmentos de fila de um desligamento sem drain (crash): a posicao de leitura nao
+     * foi gravada, entao reenfileirar poderia pagar duas vezes - ficam para o admin conferir
+     */
+    private void warnLeftoverSpill(File directory) {
+        File[] leftover = directory.listFiles(File::isDirectory);
+        if (leftover == null || leftover.length == 0) return;
+        getLogger().warning("Found " + leftover.length + " payment queue spill folder(s) in " + directory.getName() + 
+                "/ from an unclean shutdown; they are not resumed automatically, check them against the ledger " + 
+                "(/salary history) and delete them");
     }
 
     // ====================================================
     // LAST SALARY DATA STORAGE
     // ====================================================
-    private void loadLastSalaryData() {
-        if (lastSalaryFile.exists()) {
-            try (Reader reader = new FileReader(lastSalaryFile)) {
-                JsonObject jsonObject = JsonParser.parseReader(reader).getAsJsonObject();
-                lastSalaryData = new LastSalaryData();
-                
-                if (jsonObject.has("lastPayments")) {
-                    JsonObject paymentsObject = jsonObject.getAsJsonObject("lastPayments");
-                    for (Map.Entry<String, JsonElement> entry : paymentsObject.entrySet()) {
-                        try {
-                            UUID uuid = UUID.fromString(entry.getKey());
-                            long timestamp = entry.getValue().getAsLong();
-                            lastSalaryData.lastPayments.put(uuid, timestamp);
-                            lastSalaryTime.put(uuid, timestamp);
-                        } catch (Exception e) {
-                            getLogger().warning("Failed to load last payment for " + entry.getKey() + ": " + e.getMessage());
-                        }
-                    }
-                }
-                
-                if (jsonObject.has("lastTaskRun")) {
-                    lastSalaryData.lastTaskRun = jsonObject.get("lastTaskRun").getAsLong();
+    /**
+     * Carrega o last_salary.dat na thread de persistencia (fora da main thread).
+     * Ciclos e comandos esperam / recusam trabalho ate salaryDataReady completar.
+     */
+    private CompletableFuture<Void> loadLastSalaryDataAsync() {
+        CompletableFuture<Void> ready = CompletableFuture.runAsync(this::loadLastSalaryData, persistenceExecutor);
+        salaryDataReady = ready;
+        return ready;
+    }
+    
+    private boolean isSalaryDataReady() {
+        CompletableFuture<Void> ready = salaryDataReady;
+        return ready != null && ready.isDone();
+    }
+    
+    /**
+     * Espera o carregamento terminar - SOMENTE fora da main thread
+     */
+    private boolean awaitSalaryData() {
+        ensureNotPrimaryThread("awaitSalaryData");
+        try {
+            salaryDataReady.get(SALARY_DATA_WAIT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (Exception e) {
+            getLogger().warning("Salary data is not loaded yet, skipping: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private SalaryStore createSalaryStore() {
+        switch (storageBackend) {
+            case "binary":
+                return new BinarySalaryStore(new File(getDataFolder(), "last_salary.bin"));
+            case "sql":
+            case "sqlite":
+            case "h2":
+                String url = storageUrl.isEmpty() 
+                        ? "jdbc:sqlite:" + new File(getDataFolder(), "salary.db").getAbsolutePath() 
+                        : storageUrl;
+                return new SqlSalaryStore(url, storageUser, storagePassword);
+            default:
+                if (!storageBackend.equals("json")) {
+                    getLogger().warning("Unknown Storage.backend '" + storageBackend + "', using json");
                 }
-                
-                getLogger().info("Loaded " + lastSalaryData.lastPayments.size() + " last payment records.");
-            } catch (Exception e) {
-                getLogger().log(java.util.logging.Level.WARNING, "Failed to load last salary data, creating new", e);
-                lastSalaryData = new LastSalaryData();
-            }
-        } else {
-            lastSalaryData = new LastSalaryData();
-            getLogger().info("Created new last salary data file.");
+                return new JsonSalaryStore(lastSalaryFile);
         }
     }
-
-    private void saveLastSalaryData() {
+    
+    /**
+     * Carrega os ultimos pagamentos do backend configurado.
+     * Timestamps carregados nunca sobrescrevem um pagamento mais recente ja em memoria.
+     * Backend novo e vazio importa o last_salary.dat (JSON) uma vez.
+     */
+    private void loadLastSalaryData() {
+        boolean importJson = !(salaryStore instanceof JsonSalaryStore) && lastSalaryFile.exists();
+        if (salaryStore.isEmpty() && !importJson) {
+            getLogger().info("Created new last salary data file.");
+            return;
+        }
+        
+        long start = System.nanoTime();
         try {
-            if (!getDataFolder().exists()) {
-                getDataFolder().mkdirs();
+            SalaryStore source = salaryStore;
+            if (importJson && salaryStore.isEmpty()) {
+                source = new JsonSalaryStore(lastSalaryFile);
+            } else {
+                importJson = false;
             }
             
-            JsonObject jsonObject = new JsonObject();
-            JsonObject paymentsObject = new JsonObject();
-            
-            for (Map.Entry<UUID, Long> entry : lastSalaryTime.entrySet()) {
-                paymentsObject.addProperty(entry.getKey().toString(), entry.getValue());
+            SalaryStore.Snapshot snapshot = source.load();
+            for (Map.Entry<UUID, Long> entry : snapshot.payments.entrySet()) {
+                lastSalaryTime.merge(entry.getKey(), entry.getValue(), Math::max);
             }
+            lastSalaryData.lastTaskRun = Math.max(lastSalaryData.lastTaskRun, snapshot.lastTaskRun);
             
-            jsonObject.add("lastPayments", paymentsObject);
-            jsonObject.addProperty("lastTaskRun", lastSalaryData.lastTaskRun);
+            if (snapshot.invalid > 0) {
+                getLogger().warning("Skipped " + snapshot.invalid + " invalid last payment records.");
+            }
+            getLogger().info("Loaded " + snapshot.payments.size() + " last payment records from " + 
+                    source.describe() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
             
-            try (Writer writer = new FileWriter(lastSalaryFile)) {
-                GSON.toJson(jsonObject, writer);
-                writer.flush();
+            if (importJson) {
+                dirtySalaryRows.addAll(snapshot.payments.keySet());
+                markSalaryDataDirty();
+                getLogger().info("Importing " + lastSalaryFile.getName() + " into " + salaryStore.describe() + 
+                        " (the JSON file is kept as a backup)");
             }
         } catch (IOException e) {
-            getLogger().log(java.util.logging.Level.SEVERE, "Failed to save last salary data", e);
+            getLogger().log(java.util.logging.Level.WARNING, "Failed to load last salary data, creating new", e);
         }
     }
+    
+    /**
+     * Unico caminho para alterar um ultimo pagamento: marca a linha para o proximo save
+     */
+    private void setLastPayment(UUID uuid, long timestamp) {
+        lastSalaryTime.put(uuid, timestamp);
+        dirtySalaryRows.add(uuid);
+    }
 
-    // ====================================================
-    // COINCARD API SETUP
-    // ====================================================
-    private boolean setupCoinCardAPI() {
+    /**
+     * Marca os dados como alterados. A gravacao acontece na thread de persistencia,
+     * agrupando todas as alteracoes dentro da janela de SAVE_DEBOUNCE_MS.
+     */
+    private void markSalaryDataDirty() {
+        if (persistenceExecutor == null || persistenceExecutor.isShutdown()) return;
+        
+        if (saveScheduled.compareAndSet(false, true)) {
+            try {
+                persistenceExecutor.schedule(this::flushSalaryData, SAVE_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                saveScheduled.set(false);
+            }
+        }
+    }
+    
+    private void flushSalaryData() {
+        // Alteracoes feitas a partir daqui agendam uma nova gravacao
+        saveScheduled.set(false);
+        saveLastSalaryData();
+    }
+    
+    /**
+     * Grava pendencias e encerra a thread de persistencia (com tempo limite)
+     */
+    private void shutdownPersistence() {
+        if (persistenceExecutor == null) return;
+        
+        persistenceExecutor.submit(this::flushSalaryData);
+        if (salaryStore != null) {
+            persistenceExecutor.submit(salaryStore::close);
+        }
+        persistenceExecutor.shutdown();
         try {
-            RegisteredServiceProvider<CoinCardAPI> provider = 
-                getServer().getServicesManager().getRegistration(CoinCardAPI.class);
-
-            if (provider == null) {
-                return false;
+            if (!persistenceExecutor.awaitTermination(SAVE_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                getLogger().warning("Timed out saving last salary data on shutdown");
+                persistenceExecutor.shutdownNow();
             }
-
-            coinCardAPI = provider.getProvider();
-            return coinCardAPI != null;
-        } catch (Exception e) {
-            getLogger().severe("Failed to setup CoinCard API: " + e.getMessage());
-            return false;
+        } catch (InterruptedException e) {
+            persistenceExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Entrega ao backend as linhas alteradas desde a ultima gravacao (e o mapa inteiro,
+     * para quem reescreve tudo). Se falhar, as linhas voltam para a proxima tentativa.
+     * SOMENTE na thread de persistencia.
+     */
+    private void saveLastSalaryData() {
+        Map<UUID, Long> changed = new HashMap<>();
+        for (Iterator<UUID> it = dirtySalaryRows.iterator(); it.hasNext(); ) {
+            UUID uuid = it.next();
+            // Remover antes de ler: um put concorrente marca a linha de novo
+            it.remove();
+            Long timestamp = lastSalaryTime.get(uuid);
+            if (timestamp != null) {
+                changed.put(uuid, timestamp);
+            }
+        }
+        
+        try {
+            salaryStore.save(lastSalaryTime, changed, lastSalaryData.lastTaskRun);
+        } catch (IOException e) {
+            dirtySalaryRows.addAll(changed.keySet());
+            getLogger().log(java.util.logging.Level.SEVERE, "Failed to save last salary data", e);
         }
     }
 
     // ====================================================
-    // VAULT PERMISSION SETUP
+    // PAYMENT LEDGER
     // ====================================================
-    private boolean setupVaultPermission() {
-        if (getServer().getPluginManager().getPlugin("Vault") == null) {
-            return false;
+    /**
+     * Abre (e recupera, se preciso) o ledger - SOMENTE na thread de persistencia
+     */
+    private void openLedger() {
+        long start = System.nanoTime();
+        PaymentLedger opened = new PaymentLedger(new File(getDataFolder(), "ledger"), getLogger(), 
+                ledgerSegmentBytes, TimeUnit.DAYS.toMillis(ledgerRetentionDays));
+        try {
+            opened.open();
+            ledger = opened;
+            getLogger().info("Payment ledger opened: " + opened.totalRecords() + " records in " + 
+                    opened.segmentCount() + " segment(s) (" + 
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
+        } catch (IOException e) {
+            getLogger().log(java.util.logging.Level.SEVERE, "Failed to open payment ledger, payments will not be recorded", e);
         }
-        RegisteredServiceProvider<Permission> rsp = 
-            getServer().getServicesManager().getRegistration(Permission.class);
-        if (rsp == null) {
-            return false;
+    }
+    
+    private void compactLedger() {
+        PaymentLedger current = ledger;
+        if (current == null) return;
+        try {
+            current.compact();
+        } catch (IOException e) {
+            getLogger().log(java.util.logging.Level.WARNING, "Payment ledger compaction failed", e);
         }
-        permission = rsp.getProvider();
-        return permission != null;
+    }
+    
+    /**
+     * Registra o resultado de uma transferencia (chamado nos callbacks do CoinCard).
+     * Retorna a latencia medida, usada tambem no relatorio do ciclo.
+     * @param afterTimeout Callback que chegou depois do TIMEOUT ja gravado: o registro o substitui
+     */
+    private int recordPayment(PaymentTask task, PaymentLedger.Status status, String reference, long transferStartNanos, 
+                              boolean afterTimeout) {
+        int latencyMs = (int) Math.min(Integer.MAX_VALUE, 
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - transferStartNanos));
+        PaymentLedger current = ledger;
+        if (current == null) return latencyMs;
+        
+        try {
+            current.append(new PaymentLedger.Entry(System.currentTimeMillis(), task.uuid, task.cycleId, 
+                    task.amount.units(), latencyMs, status, reference, afterTimeout));
+        } catch (IOException e) {
+            getLogger().warning("Failed to record payment for " + task.playerName + " in ledger: " + e.getMessage());
+        }
+        return latencyMs;
     }
 
     // ====================================================
-    // CONFIGURATION
+    // FUNDING CARDS / BUDGET
     // ====================================================
-    private void loadConfig() {
-        reloadConfig();
-        config = getConfig();
-
-        config.addDefault("Server", "e1301fadfc35");
-        config.addDefault("Cooldown", 1100);
-        config.addDefault("Interval", 3600);
-        config.addDefault("offline", false);
+    /**
+     * Monta o pool de cards pagadores (enable / reload). Cards que nao mudaram sao
+     * reaproveitados com fila, metricas e contabilidade; cards removidos ou com
+     * orcamento diferente saem do pool e os pagamentos na fila deles sao redistribuidos.
+     */
+    private void setupFundingPool() {
+        FundingPool previous = fundingPool;
+        List<FundingCard> cards = new ArrayList<>();
+        List<FundingCard> added = new ArrayList<>();
         
-        // Default salary groups
-        config.addDefault("Groups.default", 0.00000000);
-        config.addDefault("Groups.vip", 0.00000055);
-        config.addDefault("Groups.admin", 0.00100000);
-        config.addDefault("Groups.builder", 0.00050000);
+        for (FundingCard.Spec spec : fundingSpecs) {
+            FundingCard existing = previous.byId(spec.cardId);
+            if (existing != null && existing.matches(spec, budgetMode)) {
+                existing.cooldownMs = spec.cooldownMs;
+                cards.add(existing);
+            } else {
+                FundingCard card = new FundingCard(spec, budgetMode, queueSettings);
+                cards.add(card);
+                added.add(card);
+            }
+        }
         
-        config.options().copyDefaults(true);
-        saveConfig();
-
-        serverCardId = config.getString("Server", "e1301fadfc35");
-        cooldownMs = config.getLong("Cooldown", 1100);
-        salaryIntervalSeconds = config.getLong("Interval", 3600);
-        payOffline = config.getBoolean("offline", false);
+        FundingPool pool = new FundingPool(cards, fundingStrategy);
+        fundingPool = pool;
         
-        // Load salary groups
-        groupSalaries.clear();
-        if (config.isConfigurationSection("Groups")) {
-            for (String group : config.getConfigurationSection("Groups").getKeys(false)) {
-                double salary = config.getDouble("Groups." + group, 0.0);
-                groupSalaries.put(group.toLowerCase(), BigDecimal.valueOf(salary));
-                getLogger().info("Loaded salary group: " + group + " = " + formatCoin(BigDecimal.valueOf(salary)));
-            }
+        for (FundingCard old : previous.cards()) {
+            if (cards.contains(old)) continue;
+            old.retired = true;
+            old.guard.unsubscribe(coinCardAPI);
+            rerouteQueued(old);
+        }
+        
+        for (FundingCard card : added) {
+            if (!card.guard.isEnabled()) continue;
+            card.guard.subscribe(coinCardAPI);
+            card.guard.refresh(coinCardAPI).thenAccept(ok -> {
+                if (ok) {
+                    getLogger().info("Budget guard (" + card.guard.mode.name().toLowerCase(Locale.ROOT) + "): card " + 
+                            card.cardId + " balance " + formatCoin(card.guard.balance()) + ", reserve " + formatCoin(card.guard.reserve()));
+                } else {
+                    getLogger().warning("Budget guard could not read the balance of card " + card.cardId + 
+                            " yet, its payments are not capped until it does");
+                }
+            });
         }
     }
-
+    
     /**
-     * Salva configuracao manualmente (para comando /salary group)
+     * Move a fila de um card que saiu do pool para os cards atuais
      */
-    private void saveGroupConfig(String group, BigDecimal amount) {
-        groupSalaries.put(group.toLowerCase(), amount);
-        config.set("Groups." + group, amount.doubleValue());
-        saveConfig();
+    private void rerouteQueued(FundingCard from) {
+        int moved = 0;
+        PaymentTask task;
+        while ((task = from.queue.poll()) != null) {
+            from.guard.onDropped(task.amount.units());
+            enqueue(task, null);
+            moved++;
+        }
+        reportSpillError(from);
+        from.queue.close();
+        if (moved > 0) {
+            getLogger().info("Moved " + moved + " queued payment(s) from removed funding card " + from.cardId);
+        }
     }
-
+    
     /**
-     * Remove grupo da configuracao
+     * Le o saldo de todos os cards uma vez no inicio do ciclo (em paralelo) - SOMENTE fora da main thread
      */
-    private void removeGroupConfig(String group) {
-        groupSalaries.remove(group.toLowerCase());
-        config.set("Groups." + group, null);
-        saveConfig();
+    private void refreshBudgetsForCycle(FundingPool pool, String label) {
+        ensureNotPrimaryThread("refreshBudgetsForCycle");
+        List<CompletableFuture<Boolean>> reads = new ArrayList<>();
+        for (FundingCard card : pool.cards()) {
+            if (card.guard.isEnabled()) {
+                reads.add(card.guard.refresh(coinCardAPI));
+            }
+        }
+        int failedReads = 0;
+        for (CompletableFuture<Boolean> read : reads) {
+            if (!read.join()) failedReads++;
+        }
+        if (failedReads > 0) {
+            getLogger().warning(label + ": could not read the balance of " + failedReads + " funding card(s), using last known values");
+        }
     }
-
-    // ====================================================
-    // COINCARD API HELPERS (ASSINCRONOS)
-    // ====================================================
     
     /**
-     * Obtem o card ID de um jogador usando a API do CoinCard (assincrono)
+     * Modo prorate: reduz os valores do ciclo para caber no saldo livre somado dos cards.
+     * Retorna os valores finais (0 = sem orcamento para o pagamento).
      */
-    private CompletableFuture<String> getPlayerCardIdAsync(UUID uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (uuid == null) return null;
-            
-            // Verificar cache primeiro
-            Long cachedTime = cardCacheTimestamp.get(uuid);
-            if (cachedTime != null && (System.currentTimeMillis() - cachedTime) < CACHE_DURATION) {
-                String cached = cardCache.get(uuid);
-                if (cached != null) return cached;
+    private long[] applyBudget(CycleReport report, long[] salaries, long total) {
+        if (budgetMode != BudgetGuard.Mode.PRORATE || total <= 0) return salaries;
+        
+        long headroom = fundingPool.headroom(System.currentTimeMillis());
+        if (total <= headroom) return salaries;
+        
+        long[] prorated = new long[salaries.length];
+        int skipped = 0;
+        if (headroom > 0) {
+            BigInteger budget = BigInteger.valueOf(headroom);
+            BigInteger requested = BigInteger.valueOf(total);
+            for (int i = 0; i < salaries.length; i++) {
+                prorated[i] = BigInteger.valueOf(salaries[i]).multiply(budget).divide(requested).longValue();
+                if (prorated[i] <= 0) skipped++;
             }
-            
-            // Chamar a API para obter o card
-            String cardId = coinCardAPI.getPlayerCard(uuid);
-            
-            // Atualizar cache
-            if (cardId != null && !cardId.isEmpty()) {
-                cardCache.put(uuid, cardId);
-                cardCacheTimestamp.put(uuid, System.currentTimeMillis());
+        } else {
+            skipped = salaries.length;
+        }
+        
+        String remark = "prorated to " + formatCoin(CoinAmount.ofUnits(Math.max(0, headroom))) + " of " + 
+                formatCoin(CoinAmount.ofUnits(total)) + String.format(Locale.ROOT, " (%.2f%%)", 
+                Math.max(0, headroom) * 100.0 / total);
+        report.recordBudget(skipped, remark);
+        getLogger().warning(report.label + " " + report.cycleId + ": funding cards short on funds, " + remark + 
+                (skipped > 0 ? ", " + skipped + " payment(s) skipped" : ""));
+        return prorated;
+    }
+    
+    /**
+     * Pausa a fila do card ate o saldo cobrir o proximo pagamento (listener ou nova leitura)
+     */
+    private void waitForBudget(FundingCard card, PaymentTask task) throws InterruptedException {
+        long units = task.amount.units();
+        if (!card.paused) {
+            card.paused = true;
+            getLogger().warning("Funding card " + card.cardId + " paused: " + 
+                    formatCoin(CoinAmount.ofUnits(Math.max(0, card.guard.available()))) + " available, next payment needs " + 
+                    formatCoin(task.amount) + " (" + card.queue.size() + " queued)");
+        }
+        if (!card.guard.awaitFunds(units, BUDGET_RECHECK_MS)) {
+            card.guard.refresh(coinCardAPI).join();
+        }
+    }
+    
+    private int queuedPayments() {
+        int total = 0;
+        for (FundingCard card : fundingPool.cards()) {
+            total += card.queue.size();
+        }
+        return total;
+    }
+    
+    private boolean isAnyCardProcessing() {
+        for (FundingCard card : fundingPool.cards()) {
+            synchronized (card) {
+                if (card.processing) return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isAnyCardPaused() {
+        for (FundingCard card : fundingPool.cards()) {
+            if (card.paused) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Agenda na main thread contando o tempo no orcamento do tick
+     */
+    private void runSync(TickBudget.Source source, Runnable task) {
+        Bukkit.getScheduler().runTask(this, tickBudget.timed(source, task));
+    }
+    
+    // ====================================================
+    // SHUTDOWN DRAIN / CHECKPOINT
+    // ====================================================
+    
+    /**
+     * Para a entrada, espera as transferencias em andamento ate Shutdown.drain-seconds e
+     * grava o que sobrou no checkpoint. Fila parada e cooldown nao seguram o desligamento:
+     * so quem esta esperando o CoinCard. Retorna quantos pagamentos foram gravados.
+     */
+    private int drainPayments() {
+        draining = true;
+        if (queueExecutor == null || checkpoint == null) return 0;
+        
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+        int inFlightAtStart = transfersInFlight.get();
+        queueExecutor.shutdown();
+        try {
+            while (transfersInFlight.get() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(DRAIN_POLL_MS);
+            }
+            // Quem sobrou esta em cooldown, esperando saldo ou preso no CoinCard (vira UNKNOWN)
+            queueExecutor.shutdownNow();
+            queueExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            queueExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        
+        List<PaymentTask> unknownTasks = new ArrayList<>(unsettled);
+        int unknown = unknownTasks.size();
+        int saved = unknown;
+        for (FundingCard card : fundingPool.cards()) {
+            saved += card.queue.size();
+        }
+        
+        try {
+            // Desligado antes de retomar o checkpoint anterior: ele continua valendo
+            List<PaymentCheckpoint.Entry> previous = Collections.emptyList();
+            if (!checkpointResumed && checkpoint.exists()) {
+                if (saved == 0) return 0;
+                previous = checkpoint.read();
+            }
+            if (saved == 0) {
+                checkpoint.delete();
+            } else {
+                List<PaymentCheckpoint.Entry> earlier = previous;
+                saved = checkpoint.write(sink -> {
+                    for (PaymentCheckpoint.Entry entry : earlier) {
+                        sink.accept(entry);
+                    }
+                    for (PaymentTask task : unknownTasks) {
+                        sink.accept(PaymentCheckpoint.Entry.of(task, PaymentCheckpoint.State.UNKNOWN));
+                    }
+                    // Fila em ordem, inclusive a parte no disco, sem montar lista em memoria e
+                    // sem consumir: se a gravacao falhar, os segmentos continuam la
+                    for (FundingCard card : fundingPool.cards()) {
+                        card.queue.forEach(task -> 
+                                sink.accept(PaymentCheckpoint.Entry.of(task, PaymentCheckpoint.State.QUEUED)));
+                    }
+                }, System.currentTimeMillis()) - earlier.size();
+            }
+            // Checkpoint gravado e renomeado: so agora os segmentos da fila podem sair. Numa
+            // falha ficam no disco e o proximo enable avisa (warnLeftoverSpill)
+            for (FundingCard card : fundingPool.cards()) {
+                card.queue.close();
+            }
+        } catch (IOException e) {
+            getLogger().log(java.util.logging.Level.SEVERE, "Failed to save " + saved + 
+                    " pending payment(s) to " + checkpoint.file().getName(), e);
+        }
+        
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (inFlightAtStart > 0 || saved > 0) {
+            getLogger().info("Shutdown drain: " + (inFlightAtStart - Math.min(inFlightAtStart, transfersInFlight.get())) + 
+                    "/" + inFlightAtStart + " in-flight transfer(s) finished in " + elapsedMs + "ms; " + 
+                    (saved - unknown) + " queued and " + unknown + " unknown-outcome payment(s) saved to " + 
+                    checkpoint.file().getName());
+        }
+        return saved;
+    }
+    
+    /**
+     * Retoma o checkpoint do ultimo desligamento - na thread de persistencia, depois dos
+     * ultimos pagamentos e do ledger. UNKNOWN e conferido no ledger (um callback tardio
+     * pode ter gravado o resultado antes do ledger fechar); sem resultado, so volta para
+     * a fila com Shutdown.retry-unknown, senao fica registrado como TIMEOUT para o admin.
+     */
+    private void resumeCheckpoint() {
+        if (!checkpoint.exists()) {
+            checkpointResumed = true;
+            return;
+        }
+        
+        List<PaymentCheckpoint.Entry> entries;
+        try {
+            entries = checkpoint.read();
+        } catch (IOException e) {
+            getLogger().log(java.util.logging.Level.SEVERE, "Failed to read " + checkpoint.file().getName() + 
+                    ", pending payments were not resumed (file kept)", e);
+            return;
+        }
+        
+        PaymentLedger current = ledger;
+        List<PaymentCheckpoint.Entry> resume = new ArrayList<>();
+        int settled = 0;
+        int held = 0;
+        for (PaymentCheckpoint.Entry entry : entries) {
+            if (entry.state == PaymentCheckpoint.State.UNKNOWN) {
+                PaymentLedger.Status outcome = ledgerOutcome(current, entry);
+                if (outcome == PaymentLedger.Status.SUCCESS || outcome == PaymentLedger.Status.FAILED) {
+                    settled++;
+                    continue;
+                }
+                if (!retryUnknown) {
+                    held++;
+                    holdUnknown(current, entry, outcome == null);
+                    continue;
+                }
+            }
+            resume.add(entry);
+        }
+        
+        getLogger().info("Resuming " + checkpoint.file().getName() + ": " + resume.size() + " payment(s) back in the queue, " + 
+                settled + " already settled in the ledger, " + held + " with unknown outcome left for review");
+        runSync(TickBudget.Source.TIMER, () -> requeueCheckpoint(resume));
+    }
+    
+    /**
+     * Resultado mais recente no ledger para o pagamento do checkpoint (mesmo ciclo, depois
+     * do envio). TIMEOUT so se nao houver resultado real; null se nada foi gravado.
+     */
+    private PaymentLedger.Status ledgerOutcome(PaymentLedger current, PaymentCheckpoint.Entry entry) {
+        if (current == null) return null;
+        try {
+            boolean timedOut = false;
+            for (PaymentLedger.Entry record : current.history(entry.uuid, HISTORY_MAX_LIMIT)) {
+                if (record.cycleId != entry.cycleId || record.timestamp < entry.sentAt) continue;
+                if (record.status != PaymentLedger.Status.TIMEOUT) return record.status;
+                timedOut = true;
+            }
+            return timedOut ? PaymentLedger.Status.TIMEOUT : null;
+        } catch (IOException e) {
+            getLogger().warning("Failed to check ledger for " + entry.playerName + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void holdUnknown(PaymentLedger current, PaymentCheckpoint.Entry entry, boolean record) {
+        getLogger().warning("Payment of " + CoinAmount.ofUnits(entry.amountUnits) + " to " + entry.playerName + 
+                " (cycle " + entry.cycleId + ", card " + entry.sourceCard + ") has an unknown outcome after shutdown; " + 
+                "check the card history before paying manually");
+        if (!record || current == null) return;
+        try {
+            current.append(new PaymentLedger.Entry(System.currentTimeMillis(), entry.uuid, entry.cycleId, 
+                    entry.amountUnits, 0, PaymentLedger.Status.TIMEOUT, "outcome unknown after shutdown"));
+        } catch (IOException e) {
+            getLogger().warning("Failed to record unknown payment for " + entry.playerName + " in ledger: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Main thread: recoloca os pagamentos na fila (ciclo original, sem relatorio) e so
+     * entao apaga o checkpoint
+     */
+    private void requeueCheckpoint(List<PaymentCheckpoint.Entry> entries) {
+        if (draining) return;
+        if (!entries.isEmpty() && fundingPool.isEmpty()) {
+            getLogger().warning("No funding card configured, " + entries.size() + " pending payment(s) stay in " + 
+                    checkpoint.file().getName());
+            return;
+        }
+        
+        for (PaymentCheckpoint.Entry entry : entries) {
+            PaymentTask task = new PaymentTask(entry.uuid, entry.playerName, Bukkit.getPlayer(entry.uuid) != null, 
+                    CoinAmount.ofUnits(entry.amountUnits), entry.playerCardId, entry.cycleId, entry.groups);
+            FundingCard card = enqueue(task, null);
+            payLog.log(PayrollLog.Event.QUEUED, task.playerName, entry.amountUnits, 
+                    card != null ? card.cardId : null, entry.cycleId, "resumed");
+            paymentEvents.record(SalaryPaymentBatchEvent.Status.QUEUED, task, card != null ? card.cardId : null, "resumed");
+        }
+        checkpoint.delete();
+        checkpointResumed = true;
+    }
+
+    // ====================================================
+    // PLACEHOLDERS
+    // ====================================================
+    
+    private void setupPlaceholders() {
+        placeholderSnapshots = new PlaceholderSnapshots(lastSalaryTime);
+        placeholderExpansion = new SalaryPlaceholderExpansion(this, placeholderSnapshots);
+        if (!placeholderExpansion.register()) {
+            getLogger().warning("Failed to register PlaceholderAPI expansion");
+            placeholderExpansion = null;
+            placeholderSnapshots = null;
+            return;
+        }
+        
+        placeholderSnapshots.publishTiming(nextSalaryRunAt, salaryIntervalSeconds * 1000);
+        
+        // Grupos/valores: main thread so junta os jogadores, a consulta usa o lookup em lote
+        placeholderTask = Bukkit.getScheduler().runTaskTimer(this, 
+                tickBudget.timed(TickBudget.Source.PLACEHOLDERS, this::refreshPlaceholderEntries), 
+                0L, PLACEHOLDER_TICK_TICKS);
+        // Posicao na fila e horario do proximo ciclo: so leitura das filas, fora da main thread
+        placeholderQueueTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this, this::refreshPlaceholderQueue, 
+                PLACEHOLDER_TICK_TICKS, PLACEHOLDER_TICK_TICKS);
+        getLogger().info("Registered PlaceholderAPI expansion (%coinsalary_amount/next/groups/queue_position%)");
+    }
+    
+    /**
+     * Main thread, a cada segundo: refresh completo a cada refresh-seconds ou quando a tabela
+     * de salarios mudou; senao so quem entrou / trocou de grupo desde o ultimo tick.
+     */
+    private void refreshPlaceholderEntries() {
+        if (placeholderRefreshing.get()) return;
+        
+        long now = System.currentTimeMillis();
+        SalaryTable table = salaryTable;
+        boolean full = table != placeholderTable || now >= placeholderFullRefreshAt;
+        
+        List<OfflinePlayer> players = new ArrayList<>();
+        if (full) {
+            players.addAll(Bukkit.getOnlinePlayers());
+            placeholderPending.clear();
+            placeholderFullRefreshAt = now + placeholderRefreshMs;
+        } else {
+            if (placeholderPending.isEmpty()) return;
+            for (Iterator<UUID> it = placeholderPending.iterator(); it.hasNext(); ) {
+                Player player = Bukkit.getPlayer(it.next());
+                it.remove();
+                if (player != null) {
+                    players.add(player);
+                }
+            }
+            if (players.isEmpty()) return;
+        }
+        
+        placeholderRefreshing.set(true);
+        PlaceholderSnapshots snapshots = placeholderSnapshots;
+        getPlayerGroupsBulkAsync(PlayerSnapshot.of(players), false, null).whenComplete((groupsByPlayer, error) -> {
+            if (error != null) {
+                placeholderRefreshing.set(false);
+                getLogger().warning("Placeholder refresh failed: " + error.getMessage());
+                return;
+            }
+            // Montar as strings fora da main thread
+            Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+                try {
+                    Map<UUID, PlaceholderSnapshots.Entry> fresh = new HashMap<>(groupsByPlayer.size() * 2);
+                    for (Map.Entry<UUID, List<String>> entry : groupsByPlayer.entrySet()) {
+                        List<String> groups = entry.getValue();
+                        fresh.put(entry.getKey(), new PlaceholderSnapshots.Entry(
+                                formatCoin(CoinAmount.ofUnits(table.salaryUnits(groups))), 
+                                groups.isEmpty() ? "none" : String.join(", ", groups)));
+                    }
+                    if (full) {
+                        snapshots.publishAll(fresh);
+                        placeholderTable = table;
+                    } else {
+                        snapshots.publish(fresh);
+                    }
+                    salaryService.remember(groupsByPlayer, table);
+                } finally {
+                    placeholderRefreshing.set(false);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Posicao de cada jogador na fila do seu card (1 = proximo) e horario do proximo ciclo
+     */
+    private void refreshPlaceholderQueue() {
+        PlaceholderSnapshots snapshots = placeholderSnapshots;
+        if (snapshots == null) return;
+        
+        snapshots.publishTiming(nextSalaryRunAt, salaryIntervalSeconds * 1000);
+        // Mesma leitura das filas que o SalaryService usa (no maximo uma por segundo)
+        Map<UUID, Integer> queued = salaryService.queueView().positions;
+        Map<UUID, String> positions = new HashMap<>(queued.size() * 2);
+        queued.forEach((uuid, position) -> positions.put(uuid, Integer.toString(position)));
+        snapshots.publishQueue(positions);
+    }
+    
+    // ====================================================
+    // SALARY SERVICE (API PARA OUTROS PLUGINS)
+    // ====================================================
+    
+    /**
+     * Registra o SalaryService e a task assincrona que entrega os eventos de pagamento
+     * e limpa o cache da API
+     */
+    private void setupService() {
+        salaryService = new SalaryServiceProvider(this);
+        getServer().getServicesManager().register(SalaryService.class, salaryService, this, ServicePriority.Normal);
+        serviceTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
+            paymentEvents.flush();
+            salaryService.prune(System.currentTimeMillis());
+        }, SERVICE_TICK_TICKS, SERVICE_TICK_TICKS);
+    }
+    
+    // Leitura do estado para o SalaryServiceProvider (qualquer thread)
+    
+    SalaryTable currentSalaryTable() {
+        return salaryTable;
+    }
+    
+    FundingPool currentFundingPool() {
+        return fundingPool;
+    }
+    
+    long nextSalaryRunAt() {
+        return nextSalaryRunAt;
+    }
+    
+    long salaryIntervalMs() {
+        return salaryIntervalSeconds * 1000;
+    }
+    
+    Long lastPaidAt(UUID uuid) {
+        return lastSalaryTime.get(uuid);
+    }
+    
+    /**
+     * Enviados ao CoinCard sem callback ainda (so leitura)
+     */
+    Set<PaymentTask> unsettledPayments() {
+        return Collections.unmodifiableSet(unsettled);
+    }
+    
+    /**
+     * Grupos de varios jogadores pelo lookup em lote (cache de offline, main thread por tick)
+     */
+    CompletableFuture<Map<UUID, List<String>>> lookupGroupsAsync(Collection<UUID> players) {
+        return getPlayerGroupsBulkAsync(PlayerSnapshot.ofOffline(players), false, null);
+    }
+    
+    // ====================================================
+    // CROSS-SERVER COORDINATION
+    // ====================================================
+    
+    /**
+     * Abre o backend de coordenacao numa thread propria e mantem heartbeat/lease.
+     * Ciclos esperam coordinatorReady; se o backend nao abrir, nenhum servidor paga em dobro -
+     * o ciclo e abortado e tentado de novo no proximo intervalo.
+     */
+    private void startCoordination() {
+        String nodeId = coordinationNodeId.isEmpty() ? defaultNodeId() : coordinationNodeId;
+        nodeId = nodeId.replaceAll("[^A-Za-z0-9._-]", "_");
+        
+        Coordinator created;
+        switch (coordinationBackend) {
+            case "file":
+                // Relativo a pasta do servidor, como o caminho do SQLite
+                created = new FileCoordinator(Paths.get(coordinationDirectory).toAbsolutePath().normalize(), 
+                        nodeId, coordinationLeaseMs);
+                break;
+            case "sql":
+            case "sqlite":
+            case "h2":
+                created = new JdbcCoordinator(coordinationUrl, coordinationUser, coordinationPassword, 
+                        nodeId, coordinationLeaseMs);
+                break;
+            default:
+                if (!coordinationBackend.equals("none")) {
+                    getLogger().warning("Unknown Coordination.backend '" + coordinationBackend + "', using none");
+                }
+                created = new LocalCoordinator(nodeId, lastSalaryTime);
+                break;
+        }
+        
+        CompletableFuture<Coordinator> ready = new CompletableFuture<>();
+        coordinatorReady = ready;
+        if (created instanceof LocalCoordinator) {
+            coordinator = created;
+            ready.complete(created);
+            return;
+        }
+        
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "CoinSalary-Coordination");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        coordinationExecutor = executor;
+        executor.scheduleWithFixedDelay(() -> coordinationTick(created, ready), 
+                0, coordinationLeaseMs / 3, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Heartbeat + lease (thread de coordenacao). Abre o backend na primeira vez que der certo.
+     */
+    private void coordinationTick(Coordinator target, CompletableFuture<Coordinator> ready) {
+        try {
+            if (!ready.isDone()) {
+                target.open();
+            }
+            boolean wasLeader = target.isLeader();
+            target.heartbeat(System.currentTimeMillis());
+            
+            if (!ready.isDone()) {
+                coordinator = target;
+                ready.complete(target);
+                getLogger().info("Coordination: " + target.describe() + " as node " + target.nodeId() + 
+                        ", " + target.liveNodes().size() + " node(s) online");
+            }
+            if (coordinationError != null) {
+                getLogger().info("Coordination backend recovered");
+                coordinationError = null;
+            }
+            if (target.isLeader() != wasLeader) {
+                getLogger().info(target.isLeader() 
+                        ? "Coordination: this node is now the salary cycle leader" 
+                        : "Coordination: salary cycle leadership lost");
+            }
+        } catch (IOException | RuntimeException e) {
+            // Mesmo erro a cada tick so aparece uma vez no log
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (!message.equals(coordinationError)) {
+                getLogger().warning("Coordination backend error: " + message);
+                coordinationError = message;
+            }
+        }
+    }
+    
+    private void stopCoordination() {
+        ScheduledExecutorService executor = coordinationExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            coordinationExecutor = null;
+        }
+        Coordinator current = coordinator;
+        if (current != null) {
+            coordinator = null;
+            current.close();
+        }
+    }
+    
+    private String defaultNodeId() {
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isEmpty()) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                host = "server";
+            }
+        }
+        return host + "-" + getServer().getPort();
+    }
+    
+    /**
+     * Backend pronto ou null se nao abriu a tempo. Bloqueia - nunca chamar na main thread.
+     */
+    private Coordinator awaitCoordinator() {
+        CompletableFuture<Coordinator> ready = coordinatorReady;
+        if (ready == null) return null;
+        try {
+            return ready.get(COORDINATION_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            getLogger().warning("Coordination backend not ready after " + COORDINATION_WAIT_SECONDS + 
+                    "s" + (coordinationError != null ? ": " + coordinationError : ""));
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Marca quem esta devido no armazenamento compartilhado e espelha em lastSalaryTime
+     * (usado por /salary check e salvo no last_salary.dat). null se o backend falhou.
+     */
+    private Set<UUID> claimDue(Coordinator current, PlayerSnapshot players, long now) {
+        try {
+            Set<UUID> claimed = current.claimDue(players.uuids(), now, salaryIntervalSeconds * 1000);
+            if (!claimed.isEmpty()) {
+                for (UUID uuid : claimed) {
+                    setLastPayment(uuid, now);
+                }
+                markSalaryDataDirty();
+            }
+            return claimed;
+        } catch (IOException e) {
+            getLogger().warning("Failed to claim salary payments: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Pagamento fora do intervalo (/salary next, /salary pay): local na hora,
+     * compartilhado na thread de coordenacao.
+     */
+    private void recordPayments(List<UUID> uuids, long now) {
+        for (UUID uuid : uuids) {
+            setLastPayment(uuid, now);
+        }
+        markSalaryDataDirty();
+        
+        Coordinator current = coordinator;
+        ScheduledExecutorService executor = coordinationExecutor;
+        if (current == null || executor == null || current instanceof LocalCoordinator) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    current.recordPayments(uuids, now);
+                } catch (IOException e) {
+                    getLogger().warning("Failed to share " + uuids.size() + " payment(s): " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // Desligando
+        }
+    }
+    
+    // ====================================================
+    // CYCLE REPORTS
+    // ====================================================
+    /**
+     * Abre o relatorio do ciclo (aparece em /salary report enquanto roda)
+     */
+    private CycleReport startCycleReport(long cycleId, String label) {
+        CycleReport report = new CycleReport(cycleId, label, salaryTable, this::onCycleReportFinished);
+        synchronized (recentReports) {
+            recentReports.addFirst(report);
+            while (recentReports.size() > RECENT_REPORTS) {
+                recentReports.removeLast();
+            }
+        }
+        return report;
+    }
+    
+    private List<CycleReport> recentReportsSnapshot() {
+        synchronized (recentReports) {
+            return new ArrayList<>(recentReports);
+        }
+    }
+    
+    /**
+     * Chamado uma unica vez, na thread que entregou o ultimo resultado do ciclo
+     */
+    private void onCycleReportFinished(CycleReport report) {
+        getLogger().info(report.label + " " + report.cycleId + " finished in " + report.wallMs() + "ms: " + 
+                report.paid() + " paid (" + formatCoin(report.paidTotal()) + "), " + 
+                (report.failed() + report.timedOut()) + " failed, " + report.queued() + " queued of " + 
+                report.considered() + " considered" + (report.note() != null ? " - " + report.note() : ""));
+        
+        try {
+            persistenceExecutor.execute(() -> appendCycleReport(report));
+        } catch (RejectedExecutionException e) {
+            appendCycleReport(report);
+        }
+    }
+    
+    /**
+     * Acrescenta uma linha ao arquivo de relatorios (rotaciona para .1 ao passar do limite)
+     */
+    private void appendCycleReport(CycleReport report) {
+        try {
+            if (reportsFile.length() > REPORTS_FILE_MAX_BYTES) {
+                File previous = new File(getDataFolder(), reportsFile.getName() + ".1");
+                Files.move(reportsFile.toPath(), previous.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(reportsFile, true), StandardCharsets.UTF_8))) {
+                JsonWriter writer = new JsonWriter(out);
+                report.writeJson(writer);
+                writer.flush();
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            getLogger().warning("Failed to write payroll report " + report.cycleId + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Procura um relatorio na memoria e depois no arquivo - SOMENTE fora da main thread
+     */
+    private CycleReport findCycleReport(long cycleId) throws IOException {
+        for (CycleReport report : recentReportsSnapshot()) {
+            if (report.cycleId == cycleId) return report;
+        }
+        
+        for (File file : new File[] { reportsFile, new File(getDataFolder(), reportsFile.getName() + ".1") }) {
+            if (!file.exists()) continue;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String idField = "{\"id\":" + cycleId + ",";
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(idField)) {
+                        return CycleReport.readJson(new JsonReader(new StringReader(line)));
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // ====================================================
+    // COINCARD API SETUP
+    // ====================================================
+    private boolean setupCoinCardAPI() {
+        try {
+            RegisteredServiceProvider<CoinCardAPI> provider = 
+                getServer().getServicesManager().getRegistration(CoinCardAPI.class);
+
+            if (provider == null) {
+                return false;
+            }
+
+            coinCardAPI = provider.getProvider();
+            return coinCardAPI != null;
+        } catch (Exception e) {
+            getLogger().severe("Failed to setup CoinCard API: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // ====================================================
+    // VAULT PERMISSION SETUP
+    // ====================================================
+    private boolean setupVaultPermission() {
+        if (getServer().getPluginManager().getPlugin("Vault") == null) {
+            return false;
+        }
+        RegisteredServiceProvider<Permission> rsp = 
+            getServer().getServicesManager().getRegistration(Permission.class);
+        if (rsp == null) {
+            return false;
+        }
+        permission = rsp.getProvider();
+        return permission != null;
+    }
+
+    // ====================================================
+    // CONFIGURATION
+    // ====================================================
+    /**
+     * Carga do enable. Os padroes ficam so em memoria: o config.yml do admin nunca e
+     * reescrito aqui (o saveDefaultConfig ja cria o arquivo quando falta).
+     */
+    private void loadConfig() {
+        reloadConfig();
+        config = getConfig();
+        appliedConfigDigest = configDigest(readConfigText());
+        addConfigDefaults(config);
+        applyConfig(config, true);
+    }
+    
+    private void addConfigDefaults(FileConfiguration config) {
+        config.addDefault("Server", "e1301fadfc35");
+        config.addDefault("Cooldown", 1100);
+        config.addDefault("Interval", 3600);
+        config.addDefault("offline", false);
+        config.addDefault("Funding.strategy", "hash");
+        config.addDefault("Funding.cards", new ArrayList<>());
+        config.addDefault("Budget.mode", "pause");
+        config.addDefault("Budget.reserve", 0);
+        config.addDefault("Ledger.enabled", true);
+        config.addDefault("Ledger.segment-size-mb", 8);
+        config.addDefault("Ledger.retention-days", 90);
+        config.addDefault("Shutdown.drain-seconds", 5);
+        config.addDefault("Shutdown.retry-unknown", false);
+        config.addDefault("Reload.watch-config", false);
+        config.addDefault("TickBudget.mspt-threshold", 45.0);
+        config.addDefault("TickBudget.max-ms-per-tick", 2.0);
+        config.addDefault("Queue.memory-entries", 10000);
+        config.addDefault("Cache.snapshot", true);
+        config.addDefault("Cache.snapshot-save-minutes", 5);
+        config.addDefault("Logging.events.queued", "summary");
+        config.addDefault("Logging.events.sent", "off");
+        config.addDefault("Logging.events.paid", "summary");
+        config.addDefault("Logging.events.failed", "all");
+        config.addDefault("Logging.events.timeout", "all");
+        config.addDefault("Logging.events.no-card", "summary");
+        config.addDefault("Logging.sample-rate", 0.01);
+        config.addDefault("Logging.summary-seconds", 60);
+        config.addDefault("Logging.json-file", false);
+        config.addDefault("Notifications.mode", "chat");
+        config.addDefault("Notifications.per-tick", 50);
+        config.addDefault("Placeholders.refresh-seconds", 30);
+        config.addDefault("Storage.backend", "json");
+        config.addDefault("Storage.sql.url", "");
+        config.addDefault("Storage.sql.user", "");
+        config.addDefault("Storage.sql.password", "");
+        config.addDefault("Coordination.backend", "none");
+        config.addDefault("Coordination.node-id", "");
+        config.addDefault("Coordination.lease-seconds", 30);
+        config.addDefault("Coordination.partition-offline", false);
+        config.addDefault("Coordination.file.directory", "../shared/coinsalary");
+        config.addDefault("Coordination.sql.url", "jdbc:sqlite:../shared/coinsalary/coordination.db");
+        config.addDefault("Coordination.sql.user", "");
+        config.addDefault("Coordination.sql.password", "");
+        
+        // Default salary groups
+        config.addDefault("Groups.default", 0.00000000);
+        config.addDefault("Groups.vip", 0.00000055);
+        config.addDefault("Groups.admin", 0.00100000);
+        config.addDefault("Groups.builder", 0.00050000);
+        
+        config.options().copyDefaults(true);
+    }
+    
+    /**
+     * Le os valores para os campos. Tabela de salarios so e trocada se mudou de fato
+     * (a referencia nova faz as placeholders recalcularem tudo).
+     */
+    private void applyConfig(FileConfiguration config, boolean initial) {
+        serverCardId = config.getString("Server", "e1301fadfc35");
+        cooldownMs = config.getLong("Cooldown", 1100);
+        salaryIntervalSeconds = config.getLong("Interval", 3600);
+        payOffline = config.getBoolean("offline", false);
+        budgetMode = BudgetGuard.Mode.parse(config.getString("Budget.mode", "pause"));
+        try {
+            budgetReserve = CoinAmount.parse(String.valueOf(config.get("Budget.reserve", 0)));
+        } catch (NumberFormatException | ArithmeticException e) {
+            getLogger().warning("Invalid Budget.reserve: " + e.getMessage());
+            budgetReserve = CoinAmount.ZERO;
+        }
+        // Cards pagadores: lista Funding.cards ou, sem ela, o card Server com o Cooldown global
+        fundingStrategy = FundingPool.Strategy.parse(config.getString("Funding.strategy", "hash"));
+        List<FundingCard.Spec> specs = new ArrayList<>();
+        Set<String> seenCards = new HashSet<>();
+        for (Map<?, ?> entry : config.getMapList("Funding.cards")) {
+            Object id = entry.get("id");
+            if (id == null || String.valueOf(id).trim().isEmpty()) {
+                getLogger().warning("Ignoring funding card without id: " + entry);
+                continue;
+            }
+            String cardId = String.valueOf(id).trim();
+            if (!seenCards.add(cardId)) {
+                getLogger().warning("Ignoring duplicate funding card: " + cardId);
+                continue;
+            }
+            try {
+                Object cooldown = entry.get("cooldown");
+                Object reserve = entry.get("reserve");
+                specs.add(new FundingCard.Spec(cardId, 
+                        cooldown != null ? Long.parseLong(String.valueOf(cooldown)) : cooldownMs, 
+                        reserve != null ? CoinAmount.parse(String.valueOf(reserve)) : budgetReserve));
+            } catch (NumberFormatException | ArithmeticException e) {
+                getLogger().warning("Invalid funding card " + cardId + ": " + e.getMessage());
+            }
+        }
+        if (specs.isEmpty() && serverCardId != null && !serverCardId.isEmpty()) {
+            specs.add(new FundingCard.Spec(serverCardId, cooldownMs, budgetReserve));
+        }
+        fundingSpecs = specs;
+        
+        // Ledger e aberto uma vez no enable; mudancas aqui valem no proximo restart
+        ledgerEnabled = config.getBoolean("Ledger.enabled", true);
+        ledgerSegmentBytes = Math.max(1, config.getLong("Ledger.segment-size-mb", 8)) * 1024 * 1024;
+        ledgerRetentionDays = Math.max(0, config.getLong("Ledger.retention-days", 90));
+        
+        drainTimeoutMs = Math.max(0, config.getLong("Shutdown.drain-seconds", 5)) * 1000;
+        retryUnknown = config.getBoolean("Shutdown.retry-unknown", false);
+        watchConfig = config.getBoolean("Reload.watch-config", false);
+        tickBudget.msptThreshold = config.getDouble("TickBudget.mspt-threshold", 45.0);
+        tickBudget.maxNanosPerTick = (long) (Math.max(0.1, config.getDouble("TickBudget.max-ms-per-tick", 2.0)) * 1_000_000L);
+        queueSettings.memoryEntries = Math.max(100, config.getInt("Queue.memory-entries", 10000));
+        // Snapshot dos caches: aberta e agendada no enable, mudancas valem no proximo restart
+        warmCacheEnabled = config.getBoolean("Cache.snapshot", true);
+        warmCacheSaveMinutes = Math.max(0, config.getLong("Cache.snapshot-save-minutes", 5));
+        
+        Map<String, String> logLevels = new HashMap<>();
+        if (config.isConfigurationSection("Logging.events")) {
+            for (String event : config.getConfigurationSection("Logging.events").getKeys(false)) {
+                logLevels.put(event.toLowerCase(Locale.ROOT), config.getString("Logging.events." + event));
+            }
+        }
+        payLog.configure(logLevels, config.getDouble("Logging.sample-rate", 0.01), 
+                config.getLong("Logging.summary-seconds", 60) * 1000, 
+                config.getBoolean("Logging.json-file", false) ? new File(getDataFolder(), "logs/payments.jsonl") : null);
+        outbox.mode = NotificationOutbox.Mode.parse(config.getString("Notifications.mode", "chat"));
+        outbox.perTick = Math.max(1, config.getInt("Notifications.per-tick", 50));
+        placeholderRefreshMs = Math.max(5, config.getLong("Placeholders.refresh-seconds", 30)) * 1000;
+        
+        // Backend de armazenamento: so muda no restart
+        storageBackend = config.getString("Storage.backend", "json").trim().toLowerCase(Locale.ROOT);
+        storageUrl = config.getString("Storage.sql.url", "").trim();
+        storageUser = config.getString("Storage.sql.user", "");
+        storagePassword = config.getString("Storage.sql.password", "");
+        
+        // Backend de coordenacao tambem so muda no restart; partition-offline vale no proximo ciclo
+        coordinationBackend = config.getString("Coordination.backend", "none").trim().toLowerCase(Locale.ROOT);
+        coordinationNodeId = config.getString("Coordination.node-id", "").trim();
+        coordinationLeaseMs = Math.max(5, config.getLong("Coordination.lease-seconds", 30)) * 1000;
+        partitionOffline = config.getBoolean("Coordination.partition-offline", false);
+        coordinationDirectory = config.getString("Coordination.file.directory", "../shared/coinsalary");
+        coordinationUrl = config.getString("Coordination.sql.url", "");
+        coordinationUser = config.getString("Coordination.sql.user", "");
+        coordinationPassword = config.getString("Coordination.sql.password", "");
+        
+        // Load salary groups (compilar nova tabela e trocar de uma vez)
+        Map<String, CoinAmount> salaries = new LinkedHashMap<>();
+        if (config.isConfigurationSection("Groups")) {
+            for (String group : config.getConfigurationSection("Groups").getKeys(false)) {
+                try {
+                    // Ler o valor exato (sem passar por getDouble)
+                    String text = String.valueOf(config.get("Groups." + group, 0));
+                    CoinAmount salary;
+                    try {
+                        salary = CoinAmount.parse(text);
+                    } catch (NumberFormatException e) {
+                        // Mais de 8 casas (aceito antes, como double): cortar como o formato sempre exibiu
+                        salary = CoinAmount.parseRoundingDown(text);
+                        getLogger().warning("Salary for group " + group + " (" + text + ") has more than " + 
+                                CoinAmount.SCALE + " decimal places, rounded down to " + formatCoin(salary));
+                    }
+                    salaries.put(group.toLowerCase(), salary);
+                    if (initial) {
+                        getLogger().info("Loaded salary group: " + group + " = " + formatCoin(salary));
+                    }
+                } catch (NumberFormatException | ArithmeticException e) {
+                    getLogger().warning("Invalid salary for group " + group + ": " + e.getMessage());
+                }
+            }
+        }
+        SalaryTable compiled = SalaryTable.compile(salaries);
+        if (!compiled.asMap().equals(salaryTable.asMap())) {
+            salaryTable = compiled;
+        }
+    }
+    
+    // ====================================================
+    // HOT RELOAD
+    // ====================================================
+    
+    private File configFile() {
+        return new File(getDataFolder(), "config.yml");
+    }
+    
+    private String readConfigText() {
+        try {
+            return new String(Files.readAllBytes(configFile().toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private static int configDigest(String text) {
+        return text != null ? text.hashCode() : 0;
+    }
+    
+    /**
+     * Le e valida o config.yml fora da main thread e aplica o diff na main thread.
+     * Sem sender (watcher): arquivo igual ao ultimo aplicado/gravado e ignorado.
+     * YAML invalido mantem tudo como esta.
+     */
+    private void reloadConfigAsync(CommandSender sender) {
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            String text = readConfigText();
+            if (text == null) {
+                replyLater(sender, ChatColor.RED + "Could not read config.yml, keeping the current settings");
+                return;
             }
+            int digest = configDigest(text);
+            if (sender == null && digest == appliedConfigDigest) return;
             
-            return cardId;
+            YamlConfiguration fresh = new YamlConfiguration();
+            try {
+                fresh.loadFromString(text);
+            } catch (InvalidConfigurationException e) {
+                replyLater(sender, ChatColor.RED + "config.yml has errors, keeping the current settings: " + 
+                        e.getMessage().split("\n", 2)[0]);
+                return;
+            }
+            addConfigDefaults(fresh);
+            runSync(TickBudget.Source.COMMANDS, () -> applyReload(fresh, digest, sender));
+        });
+    }
+    
+    /**
+     * Main thread: aplica a config nova e so mexe no que mudou. Ultimos pagamentos ficam
+     * em memoria (nao sao relidos do disco) e o timer so e refeito se o Interval mudou.
+     */
+    private void applyReload(FileConfiguration fresh, int digest, CommandSender sender) {
+        long oldInterval = salaryIntervalSeconds;
+        SalaryTable oldTable = salaryTable;
+        String oldFunding = fundingKey();
+        String oldRestartOnly = restartOnlyKey();
+        
+        config = fresh;
+        applyConfig(fresh, false);
+        appliedConfigDigest = digest;
+        
+        List<String> changes = new ArrayList<>();
+        if (salaryTable != oldTable) {
+            changes.add(describeGroupChanges(oldTable.asMap(), salaryTable.asMap()));
+        }
+        if (!oldFunding.equals(fundingKey())) {
+            setupFundingPool();
+            changes.add("Funding cards: " + fundingPool.cards().size() + " (" + 
+                    fundingStrategy.name().toLowerCase(Locale.ROOT) + "), cooldowns applied to the running queues");
+        }
+        if (oldInterval != salaryIntervalSeconds) {
+            rescheduleSalaryTask(oldInterval);
+            changes.add("Interval: " + oldInterval + "s -> " + salaryIntervalSeconds + "s, next cycle in " + 
+                    formatTime(Math.max(0, (nextSalaryRunAt - System.currentTimeMillis()) / 1000)));
+        }
+        updateConfigWatcher();
+        
+        CommandSender target = sender != null ? sender : Bukkit.getConsoleSender();
+        target.sendMessage(ChatColor.GREEN + "CoinSalary configuration reloaded" + 
+                (sender == null ? " (config.yml changed)" : "") + "!");
+        for (String change : changes) {
+            target.sendMessage(ChatColor.GRAY + "  " + change);
+        }
+        if (changes.isEmpty()) {
+            target.sendMessage(ChatColor.GRAY + "  No changes to groups, funding cards or interval");
+        }
+        if (!oldRestartOnly.equals(restartOnlyKey())) {
+            target.sendMessage(ChatColor.YELLOW + "  Storage, Coordination and Ledger changes apply after a restart");
+        }
+    }
+    
+    private void replyLater(CommandSender sender, String message) {
+        runSync(TickBudget.Source.COMMANDS, () -> 
+                (sender != null ? sender : Bukkit.getConsoleSender()).sendMessage(message));
+    }
+    
+    private static String describeGroupChanges(Map<String, CoinAmount> before, Map<String, CoinAmount> after) {
+        int added = 0;
+        int changed = 0;
+        for (Map.Entry<String, CoinAmount> entry : after.entrySet()) {
+            CoinAmount previous = before.get(entry.getKey());
+            if (previous == null) {
+                added++;
+            } else if (!previous.equals(entry.getValue())) {
+                changed++;
+            }
+        }
+        int removed = 0;
+        for (String group : before.keySet()) {
+            if (!after.containsKey(group)) removed++;
+        }
+        return "Groups: " + after.size() + " (" + added + " added, " + changed + " changed, " + removed + " removed)";
+    }
+    
+    /**
+     * O que exige refazer o pool de cards (cooldown muda no card existente, sem recriar)
+     */
+    private String fundingKey() {
+        StringBuilder key = new StringBuilder().append(fundingStrategy).append('|').append(budgetMode);
+        for (FundingCard.Spec spec : fundingSpecs) {
+            key.append('|').append(spec.cardId).append(':').append(spec.cooldownMs).append(':').append(spec.reserve.units());
+        }
+        return key.toString();
+    }
+    
+    private String restartOnlyKey() {
+        return String.join("|", storageBackend, storageUrl, coordinationBackend, coordinationNodeId, 
+                coordinationDirectory, coordinationUrl, String.valueOf(ledgerEnabled), 
+                String.valueOf(ledgerSegmentBytes), String.valueOf(ledgerRetentionDays), 
+                String.valueOf(warmCacheEnabled), String.valueOf(warmCacheSaveMinutes));
+    }
+    
+    /**
+     * Liga/desliga o watcher do config.yml conforme Reload.watch-config
+     */
+    private void updateConfigWatcher() {
+        if (configWatcher == null) {
+            configWatcher = new ConfigWatcher(configFile().toPath(), () -> reloadConfigAsync(null), getLogger());
+        }
+        if (watchConfig && !configWatcher.isRunning()) {
+            try {
+                configWatcher.start();
+                getLogger().info("Watching config.yml for changes");
+            } catch (IOException e) {
+                getLogger().warning("Could not watch config.yml: " + e.getMessage());
+            }
+        } else if (!watchConfig && configWatcher.isRunning()) {
+            configWatcher.stop();
+        }
+    }
+    
+    /**
+     * Grava o config.yml alterado por comando (/salary group) na thread de persistencia.
+     * O digest e registrado antes, entao o watcher nao recarrega a propria gravacao.
+     */
+    private void saveConfigAsync() {
+        String text = config.saveToString();
+        appliedConfigDigest = configDigest(text);
+        File file = configFile();
+        persistenceExecutor.execute(() -> {
+            try {
+                Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                getLogger().warning("Failed to save config.yml: " + e.getMessage());
+            }
         });
     }
+
+    /**
+     * Salva configuracao manualmente (para comando /salary group)
+     */
+    private void saveGroupConfig(String group, CoinAmount amount) {
+        salaryTable = salaryTable.with(group, amount);
+        // Texto exato (ex: '0.00000055'): um double perderia casas; o loadConfig le os dois
+        config.set("Groups." + group, amount.toString());
+        saveConfigAsync();
+    }
+
+    /**
+     * Remove grupo da configuracao
+     */
+    private void removeGroupConfig(String group) {
+        salaryTable = salaryTable.without(group);
+        config.set("Groups." + group, null);
+        saveConfigAsync();
+    }
+
+    // ====================================================
+    // COINCARD API HELPERS (ASSINCRONOS)
+    // ====================================================
+    
+    /**
+     * Obtem o card ID de um jogador usando a API do CoinCard (assincrono)
+     */
+    private CompletableFuture<String> getPlayerCardIdAsync(UUID uuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (uuid == null) return null;
+            
+            // Verificar cache primeiro
+            String cached = getCachedCard(uuid, System.currentTimeMillis());
+            if (cached != null) return cached;
+            
+            // Chamar a API para obter o card
+            String cardId = coinCardAPI.getPlayerCard(uuid);
+            
+            // Atualizar cache
+            if (cardId != null && !cardId.isEmpty()) {
+                cacheCard(uuid, cardId);
+            }
+            
+            return cardId;
+        }, cardLookupExecutor);
+    }
+    
+    /**
+     * Card em cache ainda valido, ou null. Conta como leitura para o refresh antecipado.
+     */
+    private String getCachedCard(UUID uuid, long now) {
+        cardCacheLastRead.put(uuid, now);
+        Long cachedTime = cardCacheTimestamp.get(uuid);
+        if (cachedTime == null) {
+            return takeWarmCard(uuid, now);
+        }
+        if ((now - cachedTime) < CACHE_DURATION) {
+            return cardCache.get(uuid);
+        }
+        return null;
+    }
+    
+    private void cacheCard(UUID uuid, String cardId) {
+        cardCache.put(uuid, cardId);
+        cardCacheTimestamp.put(uuid, System.currentTimeMillis());
+    }
     
     /**
      * Verifica se um jogador tem card configurado (assincrono)
@@ -384,8 +1924,10 @@ public class CoinSalary extends JavaPlugin implements Listener {
         return CompletableFuture.supplyAsync(() -> {
             if (uuid == null) return false;
             
-            // Verificar cache primeiro
-            if (cardCache.containsKey(uuid)) {
+            // Verificar cache primeiro (inclusive a snapshot do ultimo desligamento)
+            long now = System.currentTimeMillis();
+            cardCacheLastRead.put(uuid, now);
+            if (cardCache.containsKey(uuid) || takeWarmCard(uuid, now) != null) {
                 String cached = cardCache.get(uuid);
                 return cached != null && !cached.isEmpty();
             }
@@ -397,13 +1939,12 @@ public class CoinSalary extends JavaPlugin implements Listener {
             if (hasCard) {
                 String cardId = coinCardAPI.getPlayerCard(uuid);
                 if (cardId != null && !cardId.isEmpty()) {
-                    cardCache.put(uuid, cardId);
-                    cardCacheTimestamp.put(uuid, System.currentTimeMillis());
+                    cacheCard(uuid, cardId);
                 }
             }
             
             return hasCard;
-        });
+        }, cardLookupExecutor);
     }
     
     // ====================================================
@@ -411,261 +1952,498 @@ public class CoinSalary extends JavaPlugin implements Listener {
     // ====================================================
     
     /**
-     * Obtem os grupos de um jogador usando Vault de forma assincrona
+     * Obtem os grupos de um jogador usando Vault de forma assincrona.
+     * A consulta ao Vault roda na main thread, mas nenhuma thread fica bloqueada esperando por ela.
      */
     private CompletableFuture<List<String>> getPlayerGroupsAsync(OfflinePlayer player) {
-        return CompletableFuture.supplyAsync(() -> {
-            List<String> groups = new ArrayList<>();
-            
-            if (player == null) return groups;
-            
-            UUID uuid = player.getUniqueId();
-            
-            // Verificar cache para jogadores offline
-            if (!player.isOnline()) {
-                Long cachedTime = playerGroupsCacheTimestamp.get(uuid);
-                if (cachedTime != null && (System.currentTimeMillis() - cachedTime) < GROUPS_CACHE_DURATION) {
-                    List<String> cached = playerGroupsCache.get(uuid);
-                    if (cached != null) return cached;
-                }
+        if (player == null) return CompletableFuture.completedFuture(new ArrayList<>());
+        
+        UUID uuid = player.getUniqueId();
+        boolean online = player.isOnline();
+        
+        // Verificar cache para jogadores offline
+        if (!online) {
+            List<String> cached = getCachedGroups(uuid, System.currentTimeMillis());
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+        }
+        
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        Runnable lookup = () -> {
+            try {
+                future.complete(lookupGroups(player, online));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
             }
-            
+        };
+        
+        // Ja estamos na main thread (ex: comando) - consultar direto, sem agendar e esperar
+        if (Bukkit.isPrimaryThread()) {
+            lookup.run();
+        } else {
             try {
-                if (player.isOnline()) {
-                    // Jogador online - pegar grupos diretamente
-                    Player onlinePlayer = player.getPlayer();
-                    if (onlinePlayer != null) {
-                        CompletableFuture<List<String>> future = new CompletableFuture<>();
-                        Bukkit.getScheduler().runTask(this, () -> {
-                            try {
-                                String[] playerGroups = permission.getPlayerGroups(onlinePlayer);
-                                List<String> result = new ArrayList<>();
-                                if (playerGroups != null) {
-                                    result.addAll(Arrays.asList(playerGroups));
-                                }
-                                future.complete(result);
-                            } catch (Exception e) {
-                                future.completeExceptionally(e);
-                            }
-                        });
-                        
+                runSync(TickBudget.Source.GROUPS, lookup);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+        
+        return future.orTimeout(5, TimeUnit.SECONDS).handle((groups, error) -> {
+            if (error != null) {
+                getLogger().warning("Failed to get groups for " + (online ? "online" : "offline") + " player " + 
+                        player.getName() + ": " + error.getMessage());
+            }
+            return finishGroups(uuid, online, groups != null ? groups : new ArrayList<>());
+        });
+    }
+    
+    /**
+     * Resolve os grupos de varios jogadores em lotes na main thread (no maximo
+     * GROUP_LOOKUPS_PER_TICK por tick, menos com o servidor pesado ou o orcamento do
+     * tick gasto), em vez de agendar uma task por jogador
+     * @param bypassCache Ignorar o cache de offline (usado pelo refresh antecipado)
+     * @param mainThreadNanos Acumula o tempo gasto na main thread (opcional)
+     */
+    private CompletableFuture<Map<UUID, List<String>>> getPlayerGroupsBulkAsync(PlayerSnapshot players, boolean bypassCache,
+                                                                             LongAdder mainThreadNanos) {
+        Map<UUID, List<String>> result = new ConcurrentHashMap<>();
+        List<UUID> pending = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        
+        // Online pela captura; o lookup confere de novo na main thread
+        for (int i = 0; i < players.size(); i++) {
+            UUID uuid = players.uuid(i);
+            if (!bypassCache && !players.isOnline(i)) {
+                List<String> cached = getCachedGroups(uuid, now);
+                if (cached != null) {
+                    result.put(uuid, cached);
+                    continue;
+                }
+            }
+            pending.add(uuid);
+        }
+        
+        if (pending.isEmpty()) return CompletableFuture.completedFuture(result);
+        
+        CompletableFuture<Map<UUID, List<String>>> future = new CompletableFuture<>();
+        try {
+            new BukkitRunnable() {
+                private int index = 0;
+                
+                @Override
+                public void run() {
+                    long tickStart = System.nanoTime();
+                    long allowance = tickBudget.remainingNanos();
+                    int first = index;
+                    int end = Math.min(pending.size(), index + tickBudget.scaled(GROUP_LOOKUPS_PER_TICK));
+                    for (; index < end; index++) {
+                        // Pelo menos um por tick; depois so enquanto couber no orcamento do tick
+                        if (index > first && System.nanoTime() - tickStart >= allowance) break;
+                        UUID uuid = pending.get(index);
+                        Player onlinePlayer = Bukkit.getPlayer(uuid);
+                        boolean online = onlinePlayer != null;
+                        OfflinePlayer player = online ? onlinePlayer : Bukkit.getOfflinePlayer(uuid);
+                        List<String> groups;
                         try {
-                            groups = future.get(5, TimeUnit.SECONDS);
+                            groups = lookupGroups(player, online);
                         } catch (Exception e) {
-                            getLogger().warning("Failed to get groups for online player " + player.getName() + ": " + e.getMessage());
+                            getLogger().warning("Failed to get groups for " + player.getName() + ": " + e.getMessage());
+                            groups = new ArrayList<>();
                         }
+                        result.put(uuid, finishGroups(uuid, online, groups));
                     }
-                } else {
-                    // Jogador offline
-                    CompletableFuture<List<String>> future = new CompletableFuture<>();
-                    Bukkit.getScheduler().runTask(this, () -> {
-                        try {
-                            String[] playerGroups = permission.getPlayerGroups(null, player);
-                            List<String> result = new ArrayList<>();
-                            if (playerGroups != null) {
-                                result.addAll(Arrays.asList(playerGroups));
-                            }
-                            future.complete(result);
-                        } catch (Exception e) {
-                            future.completeExceptionally(e);
-                        }
-                    });
                     
-                    try {
-                        groups = future.get(5, TimeUnit.SECONDS);
-                    } catch (Exception e) {
-                        getLogger().warning("Failed to get groups for offline player " + player.getName() + ": " + e.getMessage());
+                    long spent = System.nanoTime() - tickStart;
+                    tickBudget.add(TickBudget.Source.GROUPS, spent);
+                    if (mainThreadNanos != null) {
+                        mainThreadNanos.add(spent);
+                    }
+                    
+                    if (index >= pending.size()) {
+                        cancel();
+                        future.complete(result);
                     }
                 }
-                
-                // Sempre adicionar grupo default se existir e o jogador nao tiver grupos
-                if (groups.isEmpty() && groupSalaries.containsKey("default")) {
-                    groups.add("default");
-                }
-                
-                // Atualizar cache para jogadores offline
-                if (!player.isOnline()) {
-                    playerGroupsCache.put(uuid, new ArrayList<>(groups));
-                    playerGroupsCacheTimestamp.put(uuid, System.currentTimeMillis());
-                }
-                
-            } catch (Exception e) {
-                getLogger().warning("Failed to get groups for " + player.getName() + ": " + e.getMessage());
-            }
-            
-            return groups;
-        });
+            }.runTaskTimer(this, 0L, 1L);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Consulta o Vault - SOMENTE na main thread
+     */
+    private List<String> lookupGroups(OfflinePlayer player, boolean online) {
+        Player onlinePlayer = online ? player.getPlayer() : null;
+        String[] playerGroups = onlinePlayer != null
+                ? permission.getPlayerGroups(onlinePlayer)
+                : permission.getPlayerGroups(null, player);
+        List<String> result = new ArrayList<>();
+        if (playerGroups != null) {
+            result.addAll(Arrays.asList(playerGroups));
+        }
+        return result;
+    }
+    
+    /**
+     * Aplica o grupo default e atualiza o cache de offline
+     */
+    private List<String> finishGroups(UUID uuid, boolean online, List<String> groups) {
+        // Sempre adicionar grupo default se existir e o jogador nao tiver grupos
+        if (groups.isEmpty() && salaryTable.contains("default")) {
+            groups.add("default");
+        }
+        
+        // Atualizar cache para jogadores offline
+        if (!online) {
+            playerGroupsCache.put(uuid, new ArrayList<>(groups));
+            playerGroupsCacheTimestamp.put(uuid, System.currentTimeMillis());
+        }
+        
+        return groups;
+    }
+    
+    /**
+     * Grupos em cache ainda validos (copia), ou null. Conta como leitura para o refresh antecipado.
+     */
+    private List<String> getCachedGroups(UUID uuid, long now) {
+        playerGroupsCacheLastRead.put(uuid, now);
+        Long cachedTime = playerGroupsCacheTimestamp.get(uuid);
+        if (cachedTime == null) {
+            return takeWarmGroups(uuid, now);
+        }
+        if ((now - cachedTime) < GROUPS_CACHE_DURATION) {
+            List<String> cached = playerGroupsCache.get(uuid);
+            if (cached != null) return new ArrayList<>(cached);
+        }
+        return null;
+    }
+    
+    /**
+     * Soma os salarios de todos os grupos configurados que o jogador participa (em unidades de 1e-8)
+     */
+    private long calculateSalaryUnits(List<String> groups) {
+        return salaryTable.salaryUnits(groups);
+    }
+    
+    private CoinAmount calculateSalary(List<String> groups) {
+        return CoinAmount.ofUnits(calculateSalaryUnits(groups));
     }
     
     /**
      * Calcula o salario total baseado nos grupos do jogador (VIA VAULT) - ASSINCRONO
      */
-    private CompletableFuture<BigDecimal> calculateSalaryAsync(OfflinePlayer player) {
-        if (player == null) return CompletableFuture.completedFuture(BigDecimal.ZERO);
+    private CompletableFuture<CoinAmount> calculateSalaryAsync(OfflinePlayer player) {
+        if (player == null) return CompletableFuture.completedFuture(CoinAmount.ZERO);
         
-        return getPlayerGroupsAsync(player).thenApply(groups -> {
-            BigDecimal total = BigDecimal.ZERO;
-            
-            // Somar salarios de todos os grupos que o jogador participa
-            for (String group : groups) {
-                BigDecimal salary = groupSalaries.get(group.toLowerCase());
-                if (salary != null) {
-                    total = total.add(salary);
-                }
-            }
-            
-            return total;
-        });
+        return getPlayerGroupsAsync(player).thenApply(this::calculateSalary);
+    }
+    
+    /**
+     * Resolve grupos, salario e card de um jogador de uma vez (para comandos)
+     */
+    private CompletableFuture<SalaryInfo> resolveSalaryInfoAsync(OfflinePlayer player) {
+        CompletableFuture<Boolean> cardFuture = hasPlayerCardAsync(player.getUniqueId())
+                .exceptionally(e -> false);
+        
+        return getPlayerGroupsAsync(player).thenCombine(cardFuture, 
+                (groups, hasCard) -> new SalaryInfo(groups, calculateSalary(groups), hasCard));
     }
     
     /**
-     * Versao sincrona para comandos (usa cache)
+     * Versao sincrona (bloqueante) - NUNCA usar na main thread
      */
-    private BigDecimal calculateSalarySync(OfflinePlayer player) {
-        if (player == null) return BigDecimal.ZERO;
+    private CoinAmount calculateSalarySync(OfflinePlayer player) {
+        ensureNotPrimaryThread("calculateSalarySync");
+        if (player == null) return CoinAmount.ZERO;
         
         try {
             return calculateSalaryAsync(player).get(3, TimeUnit.SECONDS);
         } catch (Exception e) {
             getLogger().warning("Failed to calculate salary for " + player.getName() + " synchronously: " + e.getMessage());
-            return BigDecimal.ZERO;
+            return CoinAmount.ZERO;
+        }
+    }
+    
+    /**
+     * Versao sincrona (bloqueante) para grupos - NUNCA usar na main thread
+     */
+    private List<String> getPlayerGroupsSync(OfflinePlayer player) {
+        ensureNotPrimaryThread("getPlayerGroupsSync");
+        if (player == null) return new ArrayList<>();
+        
+        try {
+            return getPlayerGroupsAsync(player).get(3, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            getLogger().warning("Failed to get groups for " + player.getName() + " synchronously: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Impede que helpers bloqueantes travem o servidor quando chamados da main thread
+     */
+    private void ensureNotPrimaryThread(String operation) {
+        if (Bukkit.isPrimaryThread()) {
+            throw new IllegalStateException(operation + " is blocking and must not be called from the server main thread");
         }
     }
     
+    // ====================================================
+    // PAYMENT QUEUE PROCESSING
+    // ====================================================
+    
+    /**
+     * Adiciona um pagamento a fila para processamento assincrono
+     */
+    private void queuePayment(UUID uuid, String playerName, boolean online, CoinAmount amount, String playerCardId, 
+                              CycleReport report, List<String> groups) {
+        PaymentTask task = new PaymentTask(uuid, playerName, online, amount, playerCardId, report, groups);
+        if (report != null) {
+            report.recordQueued();
+        }
+        FundingCard card = enqueue(task, null);
+        if (card == null) {
+            getLogger().warning("No funding card configured, cannot pay " + task.playerName);
+            if (report != null) {
+                report.recordFailed(0, false);
+            }
+            return;
+        }
+        payLog.log(PayrollLog.Event.QUEUED, task.playerName, task.amount.units(), card.cardId, task.cycleId, null);
+        paymentEvents.record(SalaryPaymentBatchEvent.Status.QUEUED, task, card.cardId, null);
+    }
+    
+    /**
+     * Coloca o pagamento na fila de um card (escolhido pelo pool, ou o informado) e
+     * garante que o processador daquele card esteja rodando
+     */
+    private FundingCard enqueue(PaymentTask task, FundingCard target) {
+        FundingCard card = target != null ? target : 
+                fundingPool.route(task.uuid, task.amount.units(), System.currentTimeMillis());
+        if (card == null) return null;
+        
+        task.source = card;
+        card.guard.onQueued(task.amount.units());
+        card.queue.offer(task);
+        reportSpillError(card);
+        startCardProcessor(card);
+        return card;
+    }
+    
     /**
-     * Versao sincrona para grupos (usa cache)
+     * Erro de disco da fila (pagamento ficou em memoria, ou segmento ilegivel)
      */
-    private List<String> getPlayerGroupsSync(OfflinePlayer player) {
-        if (player == null) return new ArrayList<>();
-        
-        try {
-            return getPlayerGroupsAsync(player).get(3, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            getLogger().warning("Failed to get groups for " + player.getName() + " synchronously: " + e.getMessage());
-            return new ArrayList<>();
+    private void reportSpillError(FundingCard card) {
+        String error = card.queue.takeSpillError();
+        if (error != null) {
+            getLogger().warning("Payment queue spill for card " + card.cardId + ": " + error);
         }
     }
     
-    // ====================================================
-    // PAYMENT QUEUE PROCESSING
-    // ====================================================
-    
     /**
-     * Adiciona um pagamento a fila para processamento assincrono
+     * Passa um pagamento ja retirado da fila para outro card
      */
-    private void queuePayment(OfflinePlayer player, BigDecimal amount, String playerCardId) {
-        PaymentTask task = new PaymentTask(player, amount, playerCardId);
-        paymentQueue.offer(task);
-        getLogger().info("Added " + task.playerName + " to payment queue. Queue size: " + paymentQueue.size());
-        
-        // Iniciar processamento da fila se nao estiver rodando
-        startQueueProcessing();
+    private void moveTask(PaymentTask task, FundingCard from, FundingCard to) {
+        from.guard.onDropped(task.amount.units());
+        enqueue(task, to);
     }
     
     /**
-     * Inicia o processamento da fila de pagamentos (se ja nao estiver rodando)
+     * Inicia o processador de fila do card (se ja nao estiver rodando)
      */
-    private synchronized void startQueueProcessing() {
-        if (isProcessingQueue) {
-            return;
+    private void startCardProcessor(FundingCard card) {
+        synchronized (card) {
+            if (card.processing) {
+                return;
+            }
+            card.processing = true;
         }
         
-        isProcessingQueue = true;
-        getLogger().info("Starting payment queue processor...");
-        
-        queueProcessingFuture = CompletableFuture.runAsync(() -> {
-            while (isProcessingQueue) {
-                try {
-                    // Pegar proximo item da fila (bloqueante)
-                    PaymentTask task = paymentQueue.poll(1, TimeUnit.SECONDS);
-                    
-                    if (task == null) {
-                        // Fila vazia, verificar se devemos parar
-                        synchronized (queueLock) {
-                            if (paymentQueue.isEmpty()) {
-                                isProcessingQueue = false;
-                                getLogger().info("Payment queue processor stopped (queue empty)");
-                                break;
-                            }
+        try {
+            queueExecutor.execute(() -> processCardQueue(card));
+        } catch (RejectedExecutionException | NullPointerException e) {
+            synchronized (card) {
+                card.processing = false;
+            }
+        }
+    }
+    
+    /**
+     * Loop de um card: um pagamento por vez, respeitando o cooldown do proprio card.
+     * Card fora do ar ou sem saldo passa o pagamento para outro card quando possivel.
+     */
+    private void processCardQueue(FundingCard card) {
+        while (true) {
+            try {
+                // Pegar proximo item da fila (bloqueante)
+                PaymentTask task = card.queue.poll(1, TimeUnit.SECONDS);
+                reportSpillError(card);
+                
+                if (task == null) {
+                    // Fila vazia, verificar se devemos parar
+                    synchronized (card) {
+                        if (card.queue.isEmpty()) {
+                            card.processing = false;
+                            card.paused = false;
+                            break;
                         }
-                        continue;
                     }
-                    
-                    // Processar o pagamento
-                    processSinglePayment(task);
-                    
-                    // Aguardar o cooldown configurado antes do proximo pagamento
-                    Thread.sleep(cooldownMs);
-                    
-                } catch (InterruptedException e) {
-                    getLogger().warning("Payment queue processor interrupted");
-                    Thread.currentThread().interrupt();
+                    continue;
+                }
+                
+                // Desligando: o pagamento volta para a fila e vai para o checkpoint
+                if (draining) {
+                    card.queue.offerFirst(task);
+                    synchronized (card) {
+                        card.processing = false;
+                    }
                     break;
-                } catch (Exception e) {
-                    getLogger().severe("Error in payment queue processor: " + e.getMessage());
                 }
+                
+                long units = task.amount.units();
+                long now = System.currentTimeMillis();
+                
+                // Card saiu do pool no reload: redistribuir
+                if (card.retired) {
+                    card.guard.onDropped(units);
+                    enqueue(task, null);
+                    continue;
+                }
+                
+                // Card em backoff depois de falhas seguidas: outro card paga, ou esperar
+                long backoff = card.backoffRemainingMs(now);
+                if (backoff > 0) {
+                    FundingCard alternative = fundingPool.alternativeFor(card, units, now);
+                    if (alternative != null) {
+                        moveTask(task, card, alternative);
+                    } else {
+                        card.queue.offerFirst(task);
+                        Thread.sleep(Math.min(backoff, 1000));
+                    }
+                    continue;
+                }
+                
+                // Sem saldo: outro card com saldo, ou devolver para a frente da fila e esperar
+                if (!card.guard.tryDispatch(units)) {
+                    FundingCard alternative = fundingPool.alternativeFor(card, units, now);
+                    if (alternative != null) {
+                        moveTask(task, card, alternative);
+                    } else {
+                        card.queue.offerFirst(task);
+                        waitForBudget(card, task);
+                    }
+                    continue;
+                }
+                if (card.paused) {
+                    card.paused = false;
+                    getLogger().info("Funding card " + card.cardId + " resumed: balance covers the next payment");
+                }
+                
+                // Processar o pagamento
+                processSinglePayment(task);
+                
+                // Aguardar o cooldown do card antes do proximo pagamento
+                // Servidor acima do MSPT limite: cooldown esticado pelo throttle
+                Thread.sleep(tickBudget.dispatchDelayMs(card.cooldownMs));
+                
+            } catch (InterruptedException e) {
+                if (!draining) {
+                    getLogger().warning("Payment queue processor for card " + card.cardId + " interrupted");
+                }
+                Thread.currentThread().interrupt();
+                synchronized (card) {
+                    card.processing = false;
+                }
+                break;
+            } catch (Exception e) {
+                getLogger().severe("Error in payment queue processor for card " + card.cardId + ": " + e.getMessage());
             }
-        }, queueExecutor);
+        }
     }
     
     /**
      * Processa um unico pagamento da fila
      */
     private void processSinglePayment(PaymentTask task) {
-        final double fAmount = task.amount.doubleValue();
+        // Fronteira com o CoinCard: unico ponto onde o valor vira double
+        final double fAmount = task.amount.toDouble();
+        final CoinAmount paid = task.amount;
         final String fPlayerCard = task.playerCardId;
-        final String fServerCard = serverCardId;
+        final FundingCard card = task.source;
+        final String fServerCard = card.cardId;
         final String playerName = task.playerName;
-        final OfflinePlayer player = task.player;
         
-        getLogger().info("Processing queue payment: " + formatCoin(task.amount) + " to " + playerName);
+        payLog.log(PayrollLog.Event.SENT, playerName, task.amount.units(), card.cardId, task.cycleId, null);
+        card.recordSent();
         
         // Usar CountDownLatch para aguardar o callback
         CountDownLatch latch = new CountDownLatch(1);
         final boolean[] success = {false};
         final String[] errorMsg = {null};
+        final long transferStart = System.nanoTime();
+        // Primeiro resultado (callback ou timeout) conta no relatorio do ciclo
+        final AtomicBoolean settled = new AtomicBoolean(false);
+        task.sentAt = System.currentTimeMillis();
+        unsettled.add(task);
+        transfersInFlight.incrementAndGet();
         
         // Executar transferencia na thread do CoinCard (ja estamos em thread separada)
         coinCardAPI.transfer(fServerCard, fPlayerCard, fAmount, new TransferCallback() {
             @Override
             public void onSuccess(String txId, double amount) {
+                unsettled.remove(task);
                 success[0] = true;
+                int latencyMs;
+                boolean first;
+                synchronized (settled) {
+                    first = settled.compareAndSet(false, true);
+                    latencyMs = recordPayment(task, PaymentLedger.Status.SUCCESS, txId, transferStart, !first);
+                }
+                if (first) {
+                    settleBudget(task, true, transferStart);
+                    card.recordSuccess(task.amount.units(), latencyMs);
+                    if (task.report != null) {
+                        task.report.recordPaid(task.groups, task.amount.units(), latencyMs);
+                    }
+                }
                 
-                // Notificar jogador se estiver online (voltar para main thread)
-                if (player.isOnline()) {
-                    Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
-                        Player onlinePlayer = player.getPlayer();
-                        if (onlinePlayer != null) {
-                            onlinePlayer.sendMessage(ChatColor.GREEN + "You received salary: " + 
-                                    ChatColor.YELLOW + formatCoin(BigDecimal.valueOf(amount)) + 
-                                    ChatColor.GREEN + " coins! Transaction: " + 
-                                    ChatColor.AQUA + (txId != null ? txId : "-"));
-                        }
-                    });
+                // Aviso vai para a fila; a task do outbox envia (e junta varios pagamentos) na main thread
+                if (task.isOnline) {
+                    outbox.paid(task.uuid, paid.units(), txId);
                 }
                 
-                getLogger().info("Queue payment successful: " + formatCoin(BigDecimal.valueOf(amount)) + 
-                        " to " + playerName + " tx=" + txId);
+                payLog.log(PayrollLog.Event.PAID, playerName, paid.units(), fServerCard, task.cycleId, txId);
+                paymentEvents.record(SalaryPaymentBatchEvent.Status.PAID, task, fServerCard, txId);
                 
                 latch.countDown();
             }
 
             @Override
             public void onFailure(String error) {
+                unsettled.remove(task);
                 success[0] = false;
                 errorMsg[0] = error;
+                int latencyMs;
+                boolean first;
+                synchronized (settled) {
+                    first = settled.compareAndSet(false, true);
+                    latencyMs = recordPayment(task, PaymentLedger.Status.FAILED, error, transferStart, !first);
+                }
+                if (first) {
+                    settleBudget(task, false, transferStart);
+                    card.recordFailure(error, false, latencyMs);
+                    if (task.report != null) {
+                        task.report.recordFailed(latencyMs, false);
+                    }
+                }
                 
-                // Notificar jogador se estiver online (voltar para main thread)
-                if (player.isOnline()) {
-                    Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
-                        Player onlinePlayer = player.getPlayer();
-                        if (onlinePlayer != null) {
-                            onlinePlayer.sendMessage(ChatColor.RED + "Failed to receive salary: " + error);
-                        }
-                    });
+                if (task.isOnline) {
+                    outbox.failed(task.uuid, error);
                 }
                 
-                getLogger().warning("Queue payment failed for " + playerName + ": " + error);
+                payLog.log(PayrollLog.Event.FAILED, playerName, paid.units(), fServerCard, task.cycleId, error);
+                paymentEvents.record(SalaryPaymentBatchEvent.Status.FAILED, task, fServerCard, error);
                 
                 latch.countDown();
             }
@@ -674,11 +2452,46 @@ public class CoinSalary extends JavaPlugin implements Listener {
         // Aguardar callback (com timeout)
         try {
             if (!latch.await(10, TimeUnit.SECONDS)) {
-                getLogger().warning("Payment timeout for " + playerName);
+                payLog.log(PayrollLog.Event.TIMEOUT, playerName, paid.units(), fServerCard, task.cycleId, "no callback after 10s");
+                paymentEvents.record(SalaryPaymentBatchEvent.Status.TIMEOUT, task, fServerCard, "no callback after 10s");
+                // Resultado desconhecido; um callback tardio grava o status real, que substitui este
+                // TIMEOUT no ledger. O lock em settled garante que o TIMEOUT seja gravado antes dele.
+                int latencyMs = 0;
+                boolean first;
+                synchronized (settled) {
+                    first = settled.compareAndSet(false, true);
+                    if (first) {
+                        latencyMs = recordPayment(task, PaymentLedger.Status.TIMEOUT, "no callback after 10s", 
+                                transferStart, false);
+                    }
+                }
+                if (first) {
+                    // Resultado desconhecido: considerar debitado ate a proxima leitura de saldo
+                    settleBudget(task, true, transferStart);
+                    card.recordFailure("no callback after 10s", true, latencyMs);
+                    if (card.guard.isEnabled()) {
+                        card.guard.refresh(coinCardAPI);
+                    }
+                    if (task.report != null) {
+                        task.report.recordFailed(latencyMs, true);
+                    }
+                }
             }
         } catch (InterruptedException e) {
-            getLogger().warning("Payment interrupted for " + playerName);
+            // Continua em unsettled: sem callback ate o desligamento, vai para o checkpoint como UNKNOWN
+            getLogger().warning("Payment interrupted for " + playerName + ", outcome unknown");
             Thread.currentThread().interrupt();
+        } finally {
+            transfersInFlight.decrementAndGet();
+        }
+    }
+
+    private void settleBudget(PaymentTask task, boolean debited, long transferStart) {
+        BudgetGuard guard = task.source.guard;
+        guard.settle(task.amount.units(), debited, transferStart);
+        // Falha pode ser falta de saldo que o guard nao viu (gasto fora do plugin) - reler
+        if (!debited && guard.isEnabled()) {
+            guard.refresh(coinCardAPI);
         }
     }
 
@@ -686,23 +2499,44 @@ public class CoinSalary extends JavaPlugin implements Listener {
     // SALARY TASK
     // ====================================================
     private void startSalaryTask() {
+        startSalaryTask(salaryIntervalSeconds * 20);
+    }
+    
+    /**
+     * Intervalo novo sem perder a fase: o proximo ciclo fica a um intervalo novo do ultimo
+     * disparo (ou do inicio do timer). Se esse momento ja passou, roda no proximo tick.
+     */
+    private void rescheduleSalaryTask(long oldIntervalSeconds) {
+        long lastFire = nextSalaryRunAt - oldIntervalSeconds * 1000;
+        long delayMs = lastFire + salaryIntervalSeconds * 1000 - System.currentTimeMillis();
+        startSalaryTask(Math.max(1L, delayMs / 50));
+    }
+    
+    private void startSalaryTask(long delayTicks) {
         long intervalTicks = salaryIntervalSeconds * 20; // Converter segundos para ticks
         
         if (salaryTask != null) {
             salaryTask.cancel();
         }
         
+        nextSalaryRunAt = System.currentTimeMillis() + delayTicks * 50;
         salaryTask = new BukkitRunnable() {
             @Override
             public void run() {
-                // Executar processamento de forma assincrona
+                long start = System.nanoTime();
+                nextSalaryRunAt = System.currentTimeMillis() + intervalTicks * 50;
+                
+                // Unico acesso aos online do ciclo: captura aqui, o resto (inclusive os offline) roda fora da main thread
+                PlayerSnapshot players = captureCyclePlayers();
                 Bukkit.getScheduler().runTaskAsynchronously(CoinSalary.this, () -> {
-                    processSalariesAsync();
+                    if (!awaitSalaryData()) return;
+                    processSalariesAsync(players);
                     lastSalaryData.lastTaskRun = System.currentTimeMillis();
-                    saveLastSalaryData();
+                    markSalaryDataDirty();
                 });
+                tickBudget.add(TickBudget.Source.TIMER, System.nanoTime() - start);
             }
-        }.runTaskTimer(this, intervalTicks, intervalTicks);
+        }.runTaskTimer(this, delayTicks, intervalTicks);
         
         getLogger().info("Salary task started with interval " + salaryIntervalSeconds + " seconds (" + intervalTicks + " ticks)");
     }
@@ -714,10 +2548,12 @@ public class CoinSalary extends JavaPlugin implements Listener {
         getLogger().info("Forcing salary task execution (ignoring cooldowns)...");
         
         // Executar agora de forma assincrona, pagando todos sem verificar cooldown
+        PlayerSnapshot players = captureCyclePlayers();
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-            forceProcessAllSalariesAsync();
+            if (!awaitSalaryData()) return;
+            forceProcessAllSalariesAsync(players);
             lastSalaryData.lastTaskRun = System.currentTimeMillis();
-            saveLastSalaryData();
+            markSalaryDataDirty();
         });
         
         // Nao reiniciar a task, apenas manter a atual
@@ -726,137 +2562,546 @@ public class CoinSalary extends JavaPlugin implements Listener {
     /**
      * Processa salarios respeitando cooldown (task normal)
      */
-    private void processSalariesAsync() {
+    private void processSalariesAsync(PlayerSnapshot captured) {
         getLogger().info("Processing salaries...");
         
-        if (payOffline) {
-            // Pagar todos os jogadores que ja jogaram no servidor
-            for (OfflinePlayer offlinePlayer : Bukkit.getOfflinePlayers()) {
-                if (offlinePlayer.hasPlayedBefore()) {
-                    processPlayerSalaryAsync(offlinePlayer, true); // Verificar cooldown
+        long now = System.currentTimeMillis();
+        CycleReport report = startCycleReport(now, "Salary cycle");
+        Coordinator current = awaitCoordinator();
+        if (current == null) {
+            report.abort("Coordination backend unavailable");
+            return;
+        }
+        
+        PlayerSnapshot players = getCyclePlayers(current, captured);
+        Set<UUID> claimed = claimDue(current, players, now);
+        if (claimed == null) {
+            report.abort("Coordination backend unavailable");
+            return;
+        }
+        PlayerSnapshot candidates = players.filter(i -> claimed.contains(players.uuid(i)));
+        report.recordConsidered(players.size(), players.size() - candidates.size());
+        
+        paySalaries(report, candidates);
+    }
+    
+    /**
+     * Processa TODOS os salarios sem verificar cooldown (forcado)
+     */
+    private void forceProcessAllSalariesAsync(PlayerSnapshot captured) {
+        getLogger().info("Force processing ALL salaries (ignoring cooldowns)...");
+        
+        long now = System.currentTimeMillis();
+        CycleReport report = startCycleReport(now, "Forced salary cycle");
+        Coordinator current = awaitCoordinator();
+        if (current == null) {
+            report.abort("Coordination backend unavailable");
+            return;
+        }
+        PlayerSnapshot candidates = getCyclePlayers(current, captured);
+        report.recordConsidered(candidates.size(), 0);
+        
+        // Atualizar timestamp antes de pagar (forcado)
+        recordPayments(candidates.uuids(), now);
+        
+        paySalaries(report, candidates);
+        
+        getLogger().info("Forced salary cycle " + now + " started for " + candidates.size() + 
+                " player(s), progress: /salary report " + now);
+    }
+    
+    /**
+     * Captura da main thread no inicio do ciclo: so os online. Os offline (offline: true)
+     * entram em getCyclePlayers, ja na thread do ciclo.
+     */
+    private PlayerSnapshot captureCyclePlayers() {
+        return PlayerSnapshot.online();
+    }
+    
+    /**
+     * Jogadores considerados no ciclo, a partir da captura - fora da main thread. Em rede,
+     * cada servidor cuida dos seus online; os offline ficam com o lider ou, com
+     * partition-offline, cada servidor vivo pega a sua fatia por hash do UUID.
+     */
+    private PlayerSnapshot getCyclePlayers(Coordinator current, PlayerSnapshot online) {
+        if (!payOffline) {
+            return online.filter(online::isOnline);
+        }
+        PlayerSnapshot captured = PlayerSnapshot.withOffline(online);
+        boolean partition = partitionOffline;
+        boolean leader = current.isLeader();
+        List<String> nodes = current.liveNodes();
+        String nodeId = current.nodeId();
+        return captured.filter(i -> captured.isOnline(i) || (partition
+                ? Coordinator.owns(nodes, nodeId, captured.uuid(i))
+                : leader));
+    }
+    
+    /**
+     * Pipeline de pagamento: busca os cards de todos em lote, descarta quem nao tem card
+     * e so entao resolve os grupos (em lote na main thread) e coloca na fila.
+     * Bloqueia enquanto busca os cards - chamar apenas fora da main thread.
+     * Cada etapa alimenta o relatorio do ciclo (o id do relatorio tambem e o ciclo no ledger).
+     */
+    private void paySalaries(CycleReport report, PlayerSnapshot candidates) {
+        String label = report.label;
+        if (candidates.isEmpty()) {
+            report.queueingDone();
+            return;
+        }
+        
+        // Verificar se o servidor tem card configurado
+        FundingPool pool = fundingPool;
+        if (pool.isEmpty()) {
+            getLogger().warning("Server card not configured! Cannot pay salary to " + candidates.size() + " player(s)");
+            report.abort("Server card not configured");
+            return;
+        }
+        
+        refreshBudgetsForCycle(pool, label);
+        Map<UUID, String> cards = prefetchCards(candidates);
+        
+        // Sem card = fora do ciclo. Online ainda passa para receber o aviso se teria salario.
+        PlayerSnapshot resolve = candidates.filter(i -> 
+                cards.containsKey(candidates.uuid(i)) || candidates.isOnline(i));
+        report.recordNoCard(candidates.size() - resolve.size());
+        
+        LongAdder mainThreadNanos = new LongAdder();
+        // O lote termina numa task da main thread: enfileirar em outra thread, porque uma fila
+        // cheia grava segmentos no disco (PaymentQueue.spill)
+        getPlayerGroupsBulkAsync(resolve, false, mainThreadNanos).thenAcceptAsync(groupsByPlayer -> {
+            salaryService.remember(groupsByPlayer, report.table());
+            // Indices em resolve de quem recebe
+            int[] payees = new int[resolve.size()];
+            long[] salaries = new long[resolve.size()];
+            int payeeCount = 0;
+            long total = 0L;
+            for (int i = 0; i < resolve.size(); i++) {
+                UUID uuid = resolve.uuid(i);
+                List<String> groups = groupsByPlayer.get(uuid);
+                long salaryUnits = groups != null ? report.table().salaryUnits(groups) : 0L;
+                if (salaryUnits <= 0) {
+                    report.recordZeroSalary();
+                    continue;
                 }
+                
+                if (!cards.containsKey(uuid)) {
+                    report.recordNoCard(1);
+                    notifyNoCard(resolve, i, report.cycleId);
+                    continue;
+                }
+                
+                salaries[payeeCount] = salaryUnits;
+                payees[payeeCount++] = i;
+                total += salaryUnits;
             }
-        } else {
-            // Pagar apenas jogadores online
-            for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-                processPlayerSalaryAsync(onlinePlayer, true); // Verificar cooldown
+            
+            long[] amounts = applyBudget(report, Arrays.copyOf(salaries, payeeCount), total);
+            for (int p = 0; p < payeeCount; p++) {
+                if (amounts[p] <= 0) continue;
+                int i = payees[p];
+                UUID uuid = resolve.uuid(i);
+                // Adicionar a fila de pagamentos
+                queuePayment(uuid, resolve.name(i), resolve.isOnline(i), CoinAmount.ofUnits(amounts[p]), 
+                        cards.get(uuid), report, groupsByPlayer.get(uuid));
             }
+            report.queueingDone();
+            
+            getLogger().info(label + ": resolved groups for " + resolve.size() + " player(s) using " + 
+                    String.format(Locale.ROOT, "%.2f", mainThreadNanos.sum() / 1_000_000.0) + "ms of main thread");
+        }, queueExecutor).exceptionally(e -> {
+            getLogger().warning(label + ": failed to resolve groups: " + e.getMessage());
+            report.abort("Group lookup failed: " + e.getMessage());
+            return null;
+        });
+    }
+    
+    /**
+     * Avisa jogador online sem card que ele teria salario a receber
+     */
+    private void notifyNoCard(PlayerSnapshot players, int index, long cycleId) {
+        if (players.isOnline(index)) {
+            outbox.noCard(players.uuid(index));
+        }
+        payLog.log(PayrollLog.Event.NO_CARD, players.name(index), 0L, null, cycleId, null);
+    }
+    
+    // ====================================================
+    // JOIN BATCH
+    // ====================================================
+    
+    private void startJoinBatchTask() {
+        if (joinBatchTask != null) {
+            joinBatchTask.cancel();
         }
+        joinBatchTask = Bukkit.getScheduler().runTaskTimer(this, 
+                tickBudget.timed(TickBudget.Source.JOIN_BATCH, this::processJoinBatch), 
+                JOIN_BATCH_INTERVAL_TICKS, JOIN_BATCH_INTERVAL_TICKS);
     }
     
     /**
-     * Processa TODOS os salarios sem verificar cooldown (forcado)
+     * Junta as entradas dos ultimos segundos num unico lote (main thread, barato):
+     * cooldown em massa e depois um unico pipeline assincrono para todos.
      */
-    private void forceProcessAllSalariesAsync() {
-        getLogger().info("Force processing ALL salaries (ignoring cooldowns)...");
+    private void processJoinBatch() {
+        // Sem os ultimos pagamentos carregados o cooldown seria avaliado errado - manter pendentes
+        if (pendingJoinChecks.isEmpty() || !isSalaryDataReady()) return;
         
+        long start = System.nanoTime();
         long now = System.currentTimeMillis();
+        List<UUID> joined = new ArrayList<>(pendingJoinChecks);
+        pendingJoinChecks.removeAll(joined);
         
-        if (payOffline) {
-            // Pagar todos os jogadores que ja jogaram no servidor
-            for (OfflinePlayer offlinePlayer : Bukkit.getOfflinePlayers()) {
-                if (offlinePlayer.hasPlayedBefore()) {
-                    // Atualizar timestamp antes de pagar (forcado)
-                    lastSalaryTime.put(offlinePlayer.getUniqueId(), now);
-                    
-                    // Processar pagamento
-                    processPlayerSalaryAsync(offlinePlayer, false); // Nao verificar cooldown
+        // O ciclo do timer roda antes do proximo lote - ele ja vai cobrir esses jogadores
+        long untilNextCycle = nextSalaryRunAt - now;
+        if (untilNextCycle <= JOIN_BATCH_INTERVAL_TICKS * 50) {
+            getLogger().info("Join batch: " + joined.size() + " join(s) left to the salary cycle in " + 
+                    formatTime(Math.max(0, untilNextCycle / 1000)));
+            return;
+        }
+        
+        List<Player> joinedOnline = new ArrayList<>();
+        for (UUID uuid : joined) {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null) {
+                joinedOnline.add(player);
+            }
+        }
+        PlayerSnapshot online = PlayerSnapshot.of(joinedOnline);
+        long syncMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        if (online.isEmpty()) return;
+        
+        // Cooldown pode estar no armazenamento compartilhado (I/O) - marcar fora da main thread
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            Coordinator current = awaitCoordinator();
+            Set<UUID> claimed = current != null ? claimDue(current, online, now) : null;
+            if (claimed == null) {
+                getLogger().warning("Join batch: coordination unavailable, " + online.size() + 
+                        " join(s) left to the next salary cycle");
+                return;
+            }
+            
+            PlayerSnapshot due = online.filter(i -> claimed.contains(online.uuid(i)));
+            getLogger().info("Join batch: " + joined.size() + " join(s), " + due.size() + " due for salary (" + 
+                    syncMicros + "us on main thread)");
+            
+            // Lote sem ninguem devido nao gera relatorio
+            if (!due.isEmpty()) {
+                CycleReport report = startCycleReport(now, "Join batch");
+                report.recordConsidered(online.size(), online.size() - due.size());
+                paySalaries(report, due);
+            }
+        });
+    }
+    
+    // ====================================================
+    // CARD PREFETCH
+    // ====================================================
+    
+    /**
+     * Resolve os cards de todos os candidatos de uma vez, em blocos paralelos com
+     * concorrencia limitada, aquecendo o cache. Retorna apenas quem tem card.
+     */
+    private Map<UUID, String> prefetchCards(PlayerSnapshot players) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Map<UUID, String> cards = new ConcurrentHashMap<>();
+        List<UUID> misses = new ArrayList<>();
+        
+        for (int i = 0; i < players.size(); i++) {
+            UUID uuid = players.uuid(i);
+            String cached = getCachedCard(uuid, now);
+            if (cached != null) {
+                cards.put(uuid, cached);
+            } else {
+                misses.add(uuid);
+            }
+        }
+        int cached = cards.size();
+        
+        // Buscar o restante em blocos no executor dedicado
+        AtomicLong lookupNanos = new AtomicLong();
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int i = 0; i < misses.size(); i += CARD_PREFETCH_CHUNK) {
+            List<UUID> chunk = misses.subList(i, Math.min(misses.size(), i + CARD_PREFETCH_CHUNK));
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (UUID uuid : chunk) {
+                    long lookupStart = System.nanoTime();
+                    String cardId = fetchCard(uuid);
+                    if (cardId != null) {
+                        cards.put(uuid, cardId);
+                    }
+                    lookupNanos.addAndGet(System.nanoTime() - lookupStart);
                 }
+            }, cardPrefetchExecutor));
+        }
+        
+        try {
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            getLogger().warning("Card prefetch did not finish: " + e.getMessage());
+        }
+        
+        long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long sequentialMs = TimeUnit.NANOSECONDS.toMillis(lookupNanos.get());
+        getLogger().info("Card prefetch: " + cards.size() + "/" + players.size() + " players have a card (" + 
+                cached + " cached, " + misses.size() + " fetched in " + chunks.size() + " chunks) in " + wallMs + 
+                "ms, ~" + Math.max(0, sequentialMs - wallMs) + "ms saved vs sequential lookups");
+        
+        return cards;
+    }
+    
+    /**
+     * Busca o card no CoinCard e atualiza o cache (remove a entrada se o jogador nao tem mais card)
+     */
+    private String fetchCard(UUID uuid) {
+        try {
+            String cardId = coinCardAPI.getPlayerCard(uuid);
+            if (cardId != null && !cardId.isEmpty()) {
+                cacheCard(uuid, cardId);
+                return cardId;
             }
-        } else {
-            // Pagar apenas jogadores online
-            for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-                // Atualizar timestamp antes de pagar (forcado)
-                lastSalaryTime.put(onlinePlayer.getUniqueId(), now);
-                
-                // Processar pagamento
-                processPlayerSalaryAsync(onlinePlayer, false); // Nao verificar cooldown
+            invalidateCard(uuid);
+        } catch (Exception e) {
+            getLogger().warning("Failed to get card for " + uuid + ": " + e.getMessage());
+        }
+        return null;
+    }
+    
+    // ====================================================
+    // CACHE REFRESH / INVALIDATION
+    // ====================================================
+    
+    private void startCacheRefreshTask() {
+        if (cacheRefreshTask != null) {
+            cacheRefreshTask.cancel();
+        }
+        cacheRefreshTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this, this::refreshAheadCaches, 
+                CACHE_REFRESH_INTERVAL_TICKS, CACHE_REFRESH_INTERVAL_TICKS);
+    }
+    
+    /**
+     * Atualiza em segundo plano as entradas lidas perto de expirar, antes que virem cache miss
+     * no ciclo, e remove as que expiraram sem leitura
+     */
+    private void refreshAheadCaches() {
+        long now = System.currentTimeMillis();
+        
+        // Snapshot do restart toda vencida: soltar o mapeamento
+        CacheSnapshot snapshot = warmCache;
+        if (snapshot != null && snapshot.isExpired(now, Math.max(CACHE_DURATION, GROUPS_CACHE_DURATION))) {
+            warmCache = null;
+        }
+        
+        List<UUID> cards = collectRefreshDue(cardCache, cardCacheTimestamp, cardCacheLastRead, CACHE_DURATION, now);
+        if (!cards.isEmpty()) {
+            refreshCards(cards);
+        }
+        
+        // Cache de grupos so e usado para offline - so vale a pena manter quente se pagamos offline
+        List<UUID> groups = collectRefreshDue(playerGroupsCache, playerGroupsCacheTimestamp, playerGroupsCacheLastRead, 
+                GROUPS_CACHE_DURATION, now);
+        if (payOffline && !groups.isEmpty()) {
+            getPlayerGroupsBulkAsync(PlayerSnapshot.ofOffline(groups), true, null);
+        }
+    }
+    
+    /**
+     * Entradas perto de expirar que foram lidas no ultimo TTL. As que ninguem leu nesse tempo
+     * (inclusive as promovidas da snapshot) nao sao buscadas de novo: ao vencer saem do cache.
+     */
+    private List<UUID> collectRefreshDue(Map<UUID, ?> cache, Map<UUID, Long> timestamps, Map<UUID, Long> lastRead, 
+                                         long ttl, long now) {
+        long refreshAfter = (long) (ttl * REFRESH_AHEAD_RATIO);
+        List<UUID> due = new ArrayList<>();
+        for (Map.Entry<UUID, Long> entry : timestamps.entrySet()) {
+            long fetchedAt = entry.getValue();
+            if (now - fetchedAt < refreshAfter) continue;
+            
+            UUID uuid = entry.getKey();
+            Long readAt = lastRead.get(uuid);
+            if (readAt != null && now - readAt < ttl) {
+                if (due.size() < CACHE_REFRESH_MAX_PER_RUN) due.add(uuid);
+            } else if (now - fetchedAt >= ttl && timestamps.remove(uuid, fetchedAt)) {
+                cache.remove(uuid);
+            }
+        }
+        
+        // Leituras antigas sem entrada no cache (expiradas acima, ou busca que falhou)
+        lastRead.entrySet().removeIf(read -> now - read.getValue() >= ttl && !timestamps.containsKey(read.getKey()));
+        return due;
+    }
+    
+    /**
+     * Busca os cards de novo em blocos no executor de prefetch (nao bloqueia quem chama)
+     */
+    private void refreshCards(List<UUID> uuids) {
+        for (int i = 0; i < uuids.size(); i += CARD_PREFETCH_CHUNK) {
+            List<UUID> chunk = uuids.subList(i, Math.min(uuids.size(), i + CARD_PREFETCH_CHUNK));
+            try {
+                cardPrefetchExecutor.execute(() -> chunk.forEach(this::fetchCard));
+            } catch (RejectedExecutionException e) {
+                return; // Plugin desligando
+            }
+        }
+    }
+    
+    private void invalidateCard(UUID uuid) {
+        CacheSnapshot snapshot = warmCache;
+        if (snapshot != null) {
+            snapshot.forgetCard(uuid);
+        }
+        cardCache.remove(uuid);
+        cardCacheTimestamp.remove(uuid);
+    }
+    
+    private void invalidateGroups(UUID uuid) {
+        CacheSnapshot snapshot = warmCache;
+        if (snapshot != null) {
+            snapshot.forgetGroups(uuid);
+        }
+        playerGroupsCache.remove(uuid);
+        playerGroupsCacheTimestamp.remove(uuid);
+        if (salaryService != null) {
+            salaryService.invalidate(uuid);
+        }
+        if (placeholderSnapshots != null) {
+            placeholderPending.add(uuid);
+        }
+    }
+    
+    // ====================================================
+    // CACHE SNAPSHOT (WARM START)
+    // ====================================================
+    
+    /**
+     * Thread de persistencia: mapeia o cache_snapshot.bin sem ler as entradas
+     */
+    private void openWarmCache() {
+        long start = System.nanoTime();
+        try {
+            CacheSnapshot snapshot = CacheSnapshot.open(cacheSnapshotFile);
+            if (snapshot == null) return;
+            
+            long age = System.currentTimeMillis() - snapshot.savedAt();
+            if (snapshot.isExpired(System.currentTimeMillis(), Math.max(CACHE_DURATION, GROUPS_CACHE_DURATION))) {
+                getLogger().info("Cache snapshot is " + formatTime(age / 1000) + " old, starting with cold caches");
+                return;
             }
+            warmCache = snapshot;
+            getLogger().info("Mapped cache snapshot: " + snapshot.cards() + " card(s), " + snapshot.groups() + 
+                    " group entr" + (snapshot.groups() == 1 ? "y" : "ies") + " saved " + formatTime(age / 1000) + 
+                    " ago (" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
+        } catch (IOException e) {
+            getLogger().warning("Could not read " + cacheSnapshotFile.getName() + ", starting with cold caches: " + 
+                    e.getMessage());
+        }
+    }
+    
+    /**
+     * Card da snapshot (uma vez por jogador), movido para o cache com o horario da busca original
+     */
+    private String takeWarmCard(UUID uuid, long now) {
+        CacheSnapshot snapshot = warmCache;
+        if (snapshot == null) return null;
+        CacheSnapshot.Hit<String> hit = snapshot.takeCard(uuid, now, CACHE_DURATION);
+        if (hit == null || !promoteCard(uuid, hit.value, hit.fetchedAt)) return null;
+        return hit.value;
+    }
+    
+    private List<String> takeWarmGroups(UUID uuid, long now) {
+        CacheSnapshot snapshot = warmCache;
+        if (snapshot == null) return null;
+        CacheSnapshot.Hit<List<String>> hit = snapshot.takeGroups(uuid, now, GROUPS_CACHE_DURATION);
+        if (hit == null || !promoteGroups(uuid, hit.value, hit.fetchedAt)) return null;
+        return new ArrayList<>(hit.value);
+    }
+    
+    /**
+     * So entra se o cache ainda nao tem o jogador - uma busca nova sempre vence a snapshot
+     */
+    private boolean promoteCard(UUID uuid, String cardId, long fetchedAt) {
+        if (cardCache.putIfAbsent(uuid, cardId) != null) return false;
+        cardCacheTimestamp.putIfAbsent(uuid, fetchedAt);
+        return true;
+    }
+    
+    private boolean promoteGroups(UUID uuid, List<String> groups, long fetchedAt) {
+        if (playerGroupsCache.putIfAbsent(uuid, groups) != null) return false;
+        playerGroupsCacheTimestamp.putIfAbsent(uuid, fetchedAt);
+        return true;
+    }
+    
+    /**
+     * Thread de persistencia: regrava a snapshot com o que esta nos caches. O que ainda nao
+     * saiu do arquivo mapeado vai antes para a memoria, entao o mapeamento pode ser solto.
+     */
+    private void saveWarmCache(boolean shutdown) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        CacheSnapshot snapshot = warmCache;
+        if (snapshot != null) {
+            snapshot.drainCards(now, CACHE_DURATION, this::promoteCard);
+            snapshot.drainGroups(now, GROUPS_CACHE_DURATION, this::promoteGroups);
+            warmCache = null;
         }
         
-        // Salvar dados apos forcar todos os pagamentos
-        saveLastSalaryData();
-        
-        getLogger().info("Force salary processing completed! Queue size: " + paymentQueue.size());
+        try {
+            int written = CacheSnapshot.write(cacheSnapshotFile, cardCache, cardCacheTimestamp, CACHE_DURATION, 
+                    playerGroupsCache, playerGroupsCacheTimestamp, GROUPS_CACHE_DURATION, now);
+            if (shutdown) {
+                getLogger().info("Saved " + written + " cache entr" + (written == 1 ? "y" : "ies") + " to " + 
+                        cacheSnapshotFile.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            }
+        } catch (IOException e) {
+            // No Windows o arquivo antigo pode seguir mapeado ate o GC soltar: tenta de novo na proxima
+            getLogger().warning("Failed to save " + cacheSnapshotFile.getName() + ": " + e.getMessage());
+        }
     }
     
     /**
-     * Processa salario de um jogador especifico
-     * @param player O jogador
-     * @param checkCooldown Se deve verificar cooldown ou nao
+     * Invalida o cache de grupos quando o LuckPerms recalcula os dados de um usuario.
+     * Vault nao tem eventos, entao o hook e feito por reflexao (LuckPerms e opcional).
      */
-    private void processPlayerSalaryAsync(OfflinePlayer player, boolean checkCooldown) {
-        if (player == null) return;
-        
-        UUID uuid = player.getUniqueId();
+    private void hookPermissionEvents() {
+        if (getServer().getPluginManager().getPlugin("LuckPerms") == null) {
+            return;
+        }
         
-        if (checkCooldown) {
-            // Verificar cooldown
-            Long lastPaid = lastSalaryTime.get(uuid);
-            long now = System.currentTimeMillis();
-            long intervalMs = salaryIntervalSeconds * 1000;
+        try {
+            Object luckPerms = Class.forName("net.luckperms.api.LuckPermsProvider").getMethod("get").invoke(null);
+            Object eventBus = Class.forName("net.luckperms.api.LuckPerms").getMethod("getEventBus").invoke(luckPerms);
+            Class<?> eventClass = Class.forName("net.luckperms.api.event.user.UserDataRecalculateEvent");
+            java.lang.reflect.Method getUser = eventClass.getMethod("getUser");
+            java.lang.reflect.Method getUniqueId = Class.forName("net.luckperms.api.model.user.User").getMethod("getUniqueId");
             
-            if (lastPaid != null && (now - lastPaid) < intervalMs) {
-                return; // Ja recebeu recentemente
-            }
+            java.util.function.Consumer<Object> handler = event -> {
+                try {
+                    invalidateGroups((UUID) getUniqueId.invoke(getUser.invoke(event)));
+                } catch (Exception ignored) {
+                }
+            };
             
-            // Atualizar timestamp
-            lastSalaryTime.put(uuid, now);
+            Class.forName("net.luckperms.api.event.EventBus")
+                    .getMethod("subscribe", Object.class, Class.class, java.util.function.Consumer.class)
+                    .invoke(eventBus, this, eventClass, handler);
+            getLogger().info("Hooked LuckPerms group changes for salary cache invalidation");
+        } catch (Throwable e) {
+            getLogger().info("LuckPerms event hook unavailable, group cache relies on refresh-ahead: " + e.getMessage());
         }
-        
-        // Calcular salario baseado nos grupos do Vault (assincrono)
-        calculateSalaryAsync(player).thenAccept(salary -> {
-            // Pagar se houver salario
-            if (salary.compareTo(BigDecimal.ZERO) > 0) {
-                // Verificar se o jogador tem card
-                hasPlayerCardAsync(uuid).thenAccept(hasCard -> {
-                    if (!hasCard) {
-                        if (player.isOnline()) {
-                            Player onlinePlayer = player.getPlayer();
-                            if (onlinePlayer != null) {
-                                onlinePlayer.sendMessage(ChatColor.RED + "You don't have a card set! Use /coin card <card> to receive salary.");
-                            }
-                        }
-                        getLogger().info("Player " + player.getName() + " has no card set, skipping salary");
-                        return;
-                    }
-                    
-                    // Verificar se o servidor tem card configurado
-                    if (serverCardId == null || serverCardId.isEmpty()) {
-                        getLogger().warning("Server card not configured! Cannot pay salary to " + player.getName());
-                        return;
-                    }
-                    
-                    // Obter card ID do jogador (assincrono)
-                    getPlayerCardIdAsync(uuid).thenAccept(playerCardId -> {
-                        if (playerCardId == null || playerCardId.isEmpty()) {
-                            getLogger().warning("Could not get card ID for " + player.getName());
-                            return;
-                        }
-                        
-                        // Adicionar a fila de pagamentos
-                        queuePayment(player, salary, playerCardId);
-                    });
-                });
-            }
-        });
     }
-
+    
     // ====================================================
     // UTILITY METHODS
     // ====================================================
-    private String formatCoin(BigDecimal amount) {
+    private String formatCoin(CoinAmount amount) {
         if (amount == null) {
             return "0";
         }
-        String formatted = COIN_FORMAT.format(amount);
-        if (!formatted.contains(".")) {
-            formatted += ".0";
-        }
-        return formatted;
+        return amount.toString();
     }
     
-    private String formatTime(long seconds) {
+    String formatTime(long seconds) {
         if (seconds < 60) return seconds + "s";
         if (seconds < 3600) {
             long minutes = seconds / 60;
@@ -873,6 +3118,13 @@ public class CoinSalary extends JavaPlugin implements Listener {
         return days + "d " + hours + "h";
     }
     
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = 
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    
+    private String formatTimestamp(long millis) {
+        return TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+    
     private OfflinePlayer findPlayer(String name) {
         // Primeiro tenta online
         Player onlinePlayer = Bukkit.getPlayerExact(name);
@@ -896,17 +3148,39 @@ public class CoinSalary extends JavaPlugin implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        UUID uuid = player.getUniqueId();
+        
+        // Nao limpar o cache ao entrar - so buscar o card de novo se estiver perto de expirar
+        long now = System.currentTimeMillis();
+        Long cardTime = cardCacheTimestamp.get(uuid);
+        if (cardTime == null && takeWarmCard(uuid, now) != null) {
+            cardTime = cardCacheTimestamp.get(uuid);
+        }
+        if (cardTime == null || now - cardTime >= CACHE_DURATION * REFRESH_AHEAD_RATIO) {
+            refreshCards(Collections.singletonList(uuid));
+        }
         
-        // Limpar cache do jogador ao entrar
-        cardCache.remove(player.getUniqueId());
-        cardCacheTimestamp.remove(player.getUniqueId());
-        playerGroupsCache.remove(player.getUniqueId());
-        playerGroupsCacheTimestamp.remove(player.getUniqueId());
+        // Pagar salario ao entrar se estiver na hora - agrupado no proximo lote de entradas
+        pendingJoinChecks.add(uuid);
+        if (placeholderSnapshots != null) {
+            placeholderPending.add(uuid);
+        }
+    }
+
+    /**
+     * /coin card <card> troca o card do jogador - invalidar e buscar de novo depois que o CoinCard gravar
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onCardCommand(PlayerCommandPreprocessEvent event) {
+        String message = event.getMessage().toLowerCase(Locale.ROOT);
+        if (!message.startsWith("/coin card") && !message.startsWith("/coincard:coin card")) {
+            return;
+        }
         
-        // Pagar salario ao entrar se estiver na hora (assincrono)
-        Bukkit.getScheduler().runTaskLaterAsynchronously(this, () -> {
-            processPlayerSalaryAsync(player, true); // Verificar cooldown
-        }, 100L); // 5 segundos apos entrar
+        UUID uuid = event.getPlayer().getUniqueId();
+        invalidateCard(uuid);
+        Bukkit.getScheduler().runTaskLaterAsynchronously(this, 
+                () -> refreshCards(Collections.singletonList(uuid)), 20L);
     }
 
     // ====================================================
@@ -921,21 +3195,22 @@ public class CoinSalary extends JavaPlugin implements Listener {
             sender.sendMessage(ChatColor.GRAY + "Pay offline: " + (payOffline ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
             sender.sendMessage("");
             
-            if (groupSalaries.isEmpty()) {
+            SalaryTable table = salaryTable;
+            if (table.isEmpty()) {
                 sender.sendMessage(ChatColor.RED + "No salary groups configured!");
                 return true;
             }
             
             sender.sendMessage(ChatColor.GRAY + "Configured groups:");
-            for (Map.Entry<String, BigDecimal> entry : groupSalaries.entrySet()) {
+            for (Map.Entry<String, CoinAmount> entry : table.asMap().entrySet()) {
                 sender.sendMessage(ChatColor.GRAY + "  * " + ChatColor.WHITE + entry.getKey() + 
                         ChatColor.GRAY + " -> " + ChatColor.GREEN + formatCoin(entry.getValue()));
             }
             
             // Mostrar fila de pagamentos
             sender.sendMessage("");
-            sender.sendMessage(ChatColor.GRAY + "Payment queue: " + ChatColor.YELLOW + paymentQueue.size() + 
-                    ChatColor.GRAY + " pending | " + (isProcessingQueue ? ChatColor.GREEN + "Processing" : ChatColor.RED + "Idle"));
+            sender.sendMessage(ChatColor.GRAY + "Payment queue: " + ChatColor.YELLOW + queuedPayments() + 
+                    ChatColor.GRAY + " pending | " + (isAnyCardProcessing() ? ChatColor.GREEN + "Processing" : ChatColor.RED + "Idle"));
             
             // Mostrar proxima execucao
             if (lastSalaryData.lastTaskRun > 0) {
@@ -968,12 +3243,29 @@ public class CoinSalary extends JavaPlugin implements Listener {
 
         @Override
         public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+            if (!Bukkit.isPrimaryThread()) return dispatch(sender, args);
+            long start = System.nanoTime();
+            try {
+                return dispatch(sender, args);
+            } finally {
+                tickBudget.add(TickBudget.Source.COMMANDS, System.nanoTime() - start);
+            }
+        }
+        
+        private boolean dispatch(CommandSender sender, String[] args) {
             if (args.length == 0) {
                 sendHelp(sender);
                 return true;
             }
 
-            switch (args[0].toLowerCase()) {
+            String sub = args[0].toLowerCase();
+            if (!isSalaryDataReady() && (sub.equals("reload") || sub.equals("next") || 
+                    sub.equals("check") || sub.equals("pay"))) {
+                sender.sendMessage(ChatColor.RED + "CoinSalary is still loading salary data, try again in a moment.");
+                return true;
+            }
+
+            switch (sub) {
                 case "reload":
                     if (!sender.hasPermission("coinsalary.admin")) {
                         sender.sendMessage(ChatColor.RED + "You don't have permission!");
@@ -1026,6 +3318,54 @@ public class CoinSalary extends JavaPlugin implements Listener {
                     handleQueueCommand(sender);
                     break;
                     
+                case "history":
+                    if (!sender.hasPermission("coinsalary.admin")) {
+                        sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                        return true;
+                    }
+                    handleHistoryCommand(sender, args);
+                    break;
+                    
+                case "cards":
+                    if (!sender.hasPermission("coinsalary.admin")) {
+                        sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                        return true;
+                    }
+                    handleCardsCommand(sender);
+                    break;
+                    
+                case "cluster":
+                    if (!sender.hasPermission("coinsalary.admin")) {
+                        sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                        return true;
+                    }
+                    handleClusterCommand(sender);
+                    break;
+                    
+                case "stats":
+                    if (!sender.hasPermission("coinsalary.admin")) {
+                        sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                        return true;
+                    }
+                    handleStatsCommand(sender);
+                    break;
+                    
+                case "budget":
+                    if (!sender.hasPermission("coinsalary.admin")) {
+                        sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                        return true;
+                    }
+                    handleBudgetCommand(sender, args);
+                    break;
+                    
+                case "report":
+                    if (!sender.hasPermission("coinsalary.admin")) {
+                        sender.sendMessage(ChatColor.RED + "You don't have permission!");
+                        return true;
+                    }
+                    handleReportCommand(sender, args);
+                    break;
+                    
                 default:
                     sender.sendMessage(ChatColor.RED + "Unknown command. Use /salary for help.");
                     break;
@@ -1049,38 +3389,62 @@ public class CoinSalary extends JavaPlugin implements Listener {
                 sender.sendMessage(ChatColor.GREEN + "/salary group list " + ChatColor.GRAY + "- List all groups");
                 sender.sendMessage(ChatColor.GREEN + "/salary group <group> [amount] " + ChatColor.GRAY + "- Set/remove group");
                 sender.sendMessage(ChatColor.GREEN + "/salary test <player> " + ChatColor.GRAY + "- Test show player groups");
+                sender.sendMessage(ChatColor.GREEN + "/salary history <player> [limit] " + ChatColor.GRAY + "- Show recorded payments");
+                sender.sendMessage(ChatColor.GREEN + "/salary history cycle <id> " + ChatColor.GRAY + "- Summarize a salary cycle");
+                sender.sendMessage(ChatColor.GREEN + "/salary report [id|list] " + ChatColor.GRAY + "- Show a payroll cycle report");
+                sender.sendMessage(ChatColor.GREEN + "/salary budget [refresh] " + ChatColor.GRAY + "- Show funding card budgets");
+                sender.sendMessage(ChatColor.GREEN + "/salary cards " + ChatColor.GRAY + "- Show funding card health and throughput");
+                sender.sendMessage(ChatColor.GREEN + "/salary cluster " + ChatColor.GRAY + "- Show cross-server coordination status");
+                sender.sendMessage(ChatColor.GREEN + "/salary stats " + ChatColor.GRAY + "- Show main thread usage and throttling");
             }
         }
         
         private void handleReload(CommandSender sender) {
-            loadConfig();
-            loadLastSalaryData();
-            
-            // Reiniciar task com novo intervalo
-            startSalaryTask();
-            
-            sender.sendMessage(ChatColor.GREEN + "CoinSalary configuration reloaded!");
-            sender.sendMessage(ChatColor.GRAY + "Interval: " + salaryIntervalSeconds + " seconds");
-            sender.sendMessage(ChatColor.GRAY + "Cooldown: " + cooldownMs + "ms");
-            sender.sendMessage(ChatColor.GRAY + "Pay offline: " + payOffline);
-            sender.sendMessage(ChatColor.GRAY + "Groups loaded: " + groupSalaries.size());
+            // Leitura do YAML fora da main thread; o resultado (so o que mudou) vem depois
+            sender.sendMessage(ChatColor.GRAY + "Reloading CoinSalary configuration...");
+            reloadConfigAsync(sender);
         }
         
         private void handleNext(CommandSender sender) {
             sender.sendMessage(ChatColor.YELLOW + "Forcing salary task to run now (pays everyone, ignores cooldown)...");
             forceRunSalaryTask();
-            sender.sendMessage(ChatColor.GREEN + "Salary task executed! Payments added to queue.");
+            sender.sendMessage(ChatColor.GREEN + "Salary task started! Follow it with /salary report");
         }
         
         private void handleQueueCommand(CommandSender sender) {
+            FundingPool pool = fundingPool;
+            int queued = queuedPayments();
             sender.sendMessage(ChatColor.YELLOW + "=== Payment Queue Status ===");
-            sender.sendMessage(ChatColor.GRAY + "Queue size: " + ChatColor.YELLOW + paymentQueue.size());
-            sender.sendMessage(ChatColor.GRAY + "Processing: " + (isProcessingQueue ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
-            sender.sendMessage(ChatColor.GRAY + "Cooldown: " + ChatColor.WHITE + cooldownMs + "ms between transactions");
+            sender.sendMessage(ChatColor.GRAY + "Queue size: " + ChatColor.YELLOW + queued);
+            sender.sendMessage(ChatColor.GRAY + "Processing: " + (isAnyCardPaused() ? ChatColor.RED + "Paused on some card (waiting for funds)" :
+                    isAnyCardProcessing() ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
+            sender.sendMessage(ChatColor.GRAY + "Funding cards: " + ChatColor.WHITE + pool.cards().size() + 
+                    ChatColor.GRAY + " paying in parallel");
+            
+            // Cards esvaziam em paralelo: o tempo total e o do card mais carregado
+            long estimateMs = 0L;
+            for (FundingCard card : pool.cards()) {
+                long onDisk = card.queue.spilled();
+                sender.sendMessage(ChatColor.GRAY + "  " + card.cardId + ": " + ChatColor.YELLOW + card.queue.size() + 
+                        ChatColor.GRAY + " queued" + (onDisk > 0 ? " (" + onDisk + " on disk)" : "") + ", " + 
+                        ChatColor.WHITE + card.cooldownMs + "ms" + ChatColor.GRAY + " between transactions");
+                estimateMs = Math.max(estimateMs, card.queue.size() * card.cooldownMs);
+            }
+            
+            if (queued > 0) {
+                sender.sendMessage(ChatColor.GRAY + "Estimated time: " + ChatColor.YELLOW + formatTime(estimateMs / 1000));
+            }
+            
+            int unknown = unsettled.size() - transfersInFlight.get();
+            if (unknown > 0) {
+                sender.sendMessage(ChatColor.GRAY + "Unknown outcome: " + ChatColor.RED + unknown + 
+                        ChatColor.GRAY + " (timed out, waiting for a late callback)");
+            }
             
-            if (!paymentQueue.isEmpty()) {
-                sender.sendMessage(ChatColor.GRAY + "Estimated time: " + ChatColor.YELLOW + 
-                        formatTime((paymentQueue.size() * cooldownMs) / 1000));
+            int notices = outbox.backlog();
+            if (notices > 0) {
+                sender.sendMessage(ChatColor.GRAY + "Notifications waiting: " + ChatColor.YELLOW + notices + 
+                        ChatColor.GRAY + " (" + outbox.perTick + " player(s) per tick)");
             }
         }
         
@@ -1094,12 +3458,13 @@ public class CoinSalary extends JavaPlugin implements Listener {
             if (args[1].equalsIgnoreCase("list")) {
                 // Listar todos os grupos
                 sender.sendMessage(ChatColor.YELLOW + "=== Salary Groups ===");
-                if (groupSalaries.isEmpty()) {
+                SalaryTable table = salaryTable;
+                if (table.isEmpty()) {
                     sender.sendMessage(ChatColor.RED + "No groups configured!");
                     return;
                 }
                 
-                for (Map.Entry<String, BigDecimal> entry : groupSalaries.entrySet()) {
+                for (Map.Entry<String, CoinAmount> entry : table.asMap().entrySet()) {
                     sender.sendMessage(ChatColor.GRAY + "  * " + ChatColor.WHITE + entry.getKey() + 
                             ChatColor.GRAY + " -> " + ChatColor.GREEN + formatCoin(entry.getValue()));
                 }
@@ -1111,7 +3476,7 @@ public class CoinSalary extends JavaPlugin implements Listener {
             
             if (args.length == 2) {
                 // Mostrar valor atual
-                BigDecimal current = groupSalaries.get(group);
+                CoinAmount current = salaryTable.salaryOf(group);
                 if (current == null) {
                     sender.sendMessage(ChatColor.RED + "Group '" + group + "' not configured!");
                     sender.sendMessage(ChatColor.YELLOW + "Use: /salary group " + group + " <amount> to set it");
@@ -1126,7 +3491,7 @@ public class CoinSalary extends JavaPlugin implements Listener {
                 
                 // Se for "0" ou "remove", remover grupo
                 if (amountStr.equalsIgnoreCase("0") || amountStr.equalsIgnoreCase("remove")) {
-                    if (groupSalaries.containsKey(group)) {
+                    if (salaryTable.contains(group)) {
                         removeGroupConfig(group);
                         sender.sendMessage(ChatColor.GREEN + "Removed group: " + group);
                     } else {
@@ -1137,8 +3502,8 @@ public class CoinSalary extends JavaPlugin implements Listener {
                 
                 // Configurar novo valor
                 try {
-                    BigDecimal amount = new BigDecimal(amountStr.replace(',', '.'));
-                    if (amount.compareTo(BigDecimal.ZERO) < 0) {
+                    CoinAmount amount = CoinAmount.parse(amountStr);
+                    if (amount.units() < 0) {
                         sender.sendMessage(ChatColor.RED + "Amount must be positive!");
                         return;
                     }
@@ -1146,8 +3511,8 @@ public class CoinSalary extends JavaPlugin implements Listener {
                     saveGroupConfig(group, amount);
                     sender.sendMessage(ChatColor.GREEN + "Set group " + group + " = " + formatCoin(amount));
                     
-                } catch (NumberFormatException e) {
-                    sender.sendMessage(ChatColor.RED + "Invalid amount format! Use numbers like 0.00000055");
+                } catch (NumberFormatException | ArithmeticException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid amount format! Use numbers like 0.00000055 (max 8 decimals)");
                 }
             }
         }
@@ -1179,13 +3544,26 @@ public class CoinSalary extends JavaPlugin implements Listener {
                 return;
             }
             
-            // Usar metodos sincronos com cache
-            BigDecimal salary = calculateSalarySync(target);
+            // Resolver tudo de forma assincrona e responder na main thread
+            final OfflinePlayer fTarget = target;
+            final String fTargetName = targetName;
+            resolveSalaryInfoAsync(target).whenComplete((info, error) -> {
+                runSync(TickBudget.Source.COMMANDS, () -> {
+                    if (error != null) {
+                        sender.sendMessage(ChatColor.RED + "Failed to check salary for " + fTargetName + ": " + error.getMessage());
+                        return;
+                    }
+                    sendSalaryInfo(sender, fTarget, fTargetName, info);
+                });
+            });
+        }
+        
+        private void sendSalaryInfo(CommandSender sender, OfflinePlayer target, String targetName, SalaryInfo info) {
             Long lastPaid = lastSalaryTime.get(target.getUniqueId());
             long now = System.currentTimeMillis();
             
             sender.sendMessage(ChatColor.YELLOW + "=== Salary Info for " + targetName + " ===");
-            sender.sendMessage(ChatColor.GRAY + "Salary amount: " + ChatColor.GREEN + formatCoin(salary));
+            sender.sendMessage(ChatColor.GRAY + "Salary amount: " + ChatColor.GREEN + formatCoin(info.salary));
             
             if (lastPaid != null) {
                 long secondsSince = (now - lastPaid) / 1000;
@@ -1205,17 +3583,9 @@ public class CoinSalary extends JavaPlugin implements Listener {
                 sender.sendMessage(ChatColor.GREEN + "Ready for payment!");
             }
             
-            // Mostrar grupos do jogador (usando cache)
-            List<String> groups = getPlayerGroupsSync(target);
             sender.sendMessage(ChatColor.GRAY + "Groups: " + ChatColor.WHITE + 
-                    (groups.isEmpty() ? "none" : String.join(", ", groups)));
-            
-            // Verificar se tem card (assincrono com callback)
-            hasPlayerCardAsync(target.getUniqueId()).thenAccept(hasCard -> {
-                Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
-                    sender.sendMessage(ChatColor.GRAY + "Has CoinCard: " + (hasCard ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
-                });
-            });
+                    (info.groups.isEmpty() ? "none" : String.join(", ", info.groups)));
+            sender.sendMessage(ChatColor.GRAY + "Has CoinCard: " + (info.hasCard ? ChatColor.GREEN + "Yes" : ChatColor.RED + "No"));
         }
         
         private void handleTestCommand(CommandSender sender, String[] args) {
@@ -1234,26 +3604,371 @@ public class CoinSalary extends JavaPlugin implements Listener {
             sender.sendMessage(ChatColor.YELLOW + "=== Test Groups for " + target.getName() + " ===");
             
             // Usar metodos assincronos com callback
-            getPlayerGroupsAsync(target).thenAccept(groups -> {
-                Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
+            getPlayerGroupsAsync(target).whenComplete((groups, error) -> {
+                runSync(TickBudget.Source.COMMANDS, () -> {
+                    if (error != null) {
+                        sender.sendMessage(ChatColor.RED + "Failed to get groups: " + error.getMessage());
+                        return;
+                    }
+                    
                     sender.sendMessage(ChatColor.GRAY + "Vault groups: " + ChatColor.WHITE + 
                             (groups.isEmpty() ? "none" : String.join(", ", groups)));
                     
                     // Mostrar grupos configurados que coincidem
                     sender.sendMessage(ChatColor.GRAY + "Matching salary groups:");
-                    BigDecimal total = BigDecimal.ZERO;
+                    SalaryTable table = salaryTable;
                     for (String group : groups) {
-                        BigDecimal salary = groupSalaries.get(group.toLowerCase());
+                        CoinAmount salary = table.salaryOf(group);
                         if (salary != null) {
                             sender.sendMessage(ChatColor.GREEN + "  + " + group + ": " + formatCoin(salary));
-                            total = total.add(salary);
                         } else {
                             sender.sendMessage(ChatColor.RED + "  - " + group + ": no salary configured");
                         }
                     }
                     
-                    sender.sendMessage(ChatColor.GRAY + "Total salary: " + ChatColor.GREEN + formatCoin(total));
+                    sender.sendMessage(ChatColor.GRAY + "Total salary: " + ChatColor.GREEN + formatCoin(calculateSalary(groups)));
+                });
+            });
+        }
+        
+        private void handleBudgetCommand(CommandSender sender, String[] args) {
+            FundingPool pool = fundingPool;
+            if (budgetMode == BudgetGuard.Mode.OFF) {
+                sender.sendMessage(ChatColor.RED + "Budget guard is disabled (Budget.mode: off)");
+                return;
+            }
+            if (pool.isEmpty()) {
+                sender.sendMessage(ChatColor.RED + "No funding card configured!");
+                return;
+            }
+            
+            if (args.length >= 2 && args[1].equalsIgnoreCase("refresh")) {
+                sender.sendMessage(ChatColor.YELLOW + "Reading funding card balances...");
+                List<CompletableFuture<Boolean>> reads = new ArrayList<>();
+                for (FundingCard card : pool.cards()) {
+                    reads.add(card.guard.refresh(coinCardAPI));
+                }
+                CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenRun(() -> 
+                        runSync(TickBudget.Source.COMMANDS, () -> sendBudgetStatus(sender, pool)));
+                return;
+            }
+            sendBudgetStatus(sender, pool);
+        }
+        
+        private void sendBudgetStatus(CommandSender sender, FundingPool pool) {
+            sender.sendMessage(ChatColor.YELLOW + "=== Salary Budget (" + budgetMode.name().toLowerCase(Locale.ROOT) + ") ===");
+            long now = System.currentTimeMillis();
+            for (FundingCard card : pool.cards()) {
+                BudgetGuard guard = card.guard;
+                sender.sendMessage(ChatColor.GRAY + "Card: " + ChatColor.WHITE + card.cardId + 
+                        (card.paused ? ChatColor.RED + " (paused, waiting for funds)" : ""));
+                if (!guard.isBalanceKnown()) {
+                    sender.sendMessage(ChatColor.RED + "  Balance unknown - payments are not capped until it is read");
+                } else {
+                    sender.sendMessage(ChatColor.GRAY + "  Balance: " + ChatColor.GREEN + formatCoin(guard.balance()) + 
+                            ChatColor.GRAY + " (read " + formatTime((now - guard.balanceAt()) / 1000) + " ago)");
+                }
+                sender.sendMessage(ChatColor.GRAY + "  Reserve: " + ChatColor.WHITE + formatCoin(guard.reserve()) + 
+                        ChatColor.GRAY + " | Debited since: " + ChatColor.WHITE + formatCoin(guard.debited()));
+                sender.sendMessage(ChatColor.GRAY + "  In flight: " + ChatColor.WHITE + formatCoin(guard.inFlight()) + 
+                        ChatColor.GRAY + " | Queued: " + ChatColor.WHITE + formatCoin(guard.queued()));
+                if (guard.isBalanceKnown()) {
+                    sender.sendMessage(ChatColor.GRAY + "  Available: " + ChatColor.GREEN + 
+                            formatCoin(CoinAmount.ofUnits(guard.available())) + ChatColor.GRAY + " | Headroom for new cycles: " + 
+                            ChatColor.WHITE + formatCoin(CoinAmount.ofUnits(guard.headroom())));
+                }
+            }
+        }
+        
+        private void handleCardsCommand(CommandSender sender) {
+            FundingPool pool = fundingPool;
+            if (pool.isEmpty()) {
+                sender.sendMessage(ChatColor.RED + "No funding card configured!");
+                return;
+            }
+            
+            long now = System.currentTimeMillis();
+            sender.sendMessage(ChatColor.YELLOW + "=== Funding Cards (" + pool.strategy.name().toLowerCase(Locale.ROOT) + ") ===");
+            for (FundingCard card : pool.cards()) {
+                FundingCard.Health health = card.health(now);
+                ChatColor color = health == FundingCard.Health.HEALTHY ? ChatColor.GREEN : 
+                        health == FundingCard.Health.DEGRADED ? ChatColor.GOLD : ChatColor.RED;
+                String state = health.name().toLowerCase(Locale.ROOT);
+                if (health == FundingCard.Health.DOWN) {
+                    state += ", retry in " + formatTime(card.backoffRemainingMs(now) / 1000);
+                }
+                if (card.paused) {
+                    state += ", paused for funds";
+                }
+                sender.sendMessage(ChatColor.WHITE + card.cardId + " " + color + "[" + state + "]" + 
+                        ChatColor.GRAY + " cooldown " + card.cooldownMs + "ms");
+                sender.sendMessage(ChatColor.GRAY + "  Queued: " + ChatColor.YELLOW + card.queue.size() + 
+                        ChatColor.GRAY + " | Sent: " + ChatColor.WHITE + card.sent() + 
+                        ChatColor.GRAY + " | Paid: " + ChatColor.GREEN + card.paid() + 
+                        ChatColor.GRAY + " | Failed: " + ChatColor.RED + card.failed() + 
+                        ChatColor.GRAY + " | Timed out: " + ChatColor.GOLD + card.timedOut());
+                sender.sendMessage(ChatColor.GRAY + "  Throughput: " + ChatColor.WHITE + card.throughputPerMinute(now) + "/min" + 
+                        ChatColor.GRAY + " | Avg latency: " + ChatColor.WHITE + card.averageLatencyMs() + "ms" + 
+                        ChatColor.GRAY + " | Total paid: " + ChatColor.GREEN + formatCoin(card.paidTotal()));
+                String lastError = card.lastError();
+                if (lastError != null && health != FundingCard.Health.HEALTHY) {
+                    sender.sendMessage(ChatColor.GRAY + "  Last error: " + ChatColor.RED + lastError);
+                }
+            }
+        }
+        
+        private void handleStatsCommand(CommandSender sender) {
+            TickBudget budget = tickBudget;
+            double average = budget.averageMs();
+            sender.sendMessage(ChatColor.YELLOW + "=== CoinSalary Main Thread Usage ===");
+            sender.sendMessage(ChatColor.GRAY + "Server MSPT: " + msptColor(budget.mspt()) + 
+                    String.format(Locale.ROOT, "%.1fms", budget.mspt()) + ChatColor.GRAY + 
+                    (budget.isPaperMspt() ? " (Paper average)" : " (measured tick interval)") + 
+                    ", threshold " + String.format(Locale.ROOT, "%.1fms", budget.msptThreshold));
+            sender.sendMessage(ChatColor.GRAY + "CoinSalary: " + ChatColor.WHITE + 
+                    String.format(Locale.ROOT, "%.3fms", average) + ChatColor.GRAY + " per tick, peak " + ChatColor.WHITE + 
+                    String.format(Locale.ROOT, "%.2fms", budget.peakMs()) + ChatColor.GRAY + " (last " + 
+                    TickBudget.WINDOW_TICKS + " ticks)");
+            sender.sendMessage(ChatColor.GRAY + "Share of tick: " + ChatColor.WHITE + 
+                    String.format(Locale.ROOT, "%.2f%%", average / 50.0 * 100) + ChatColor.GRAY + " of 50ms" + 
+                    (budget.isPaperMspt() ? ", " + ChatColor.WHITE + String.format(Locale.ROOT, "%.2f%%", budget.share() * 100) + 
+                            ChatColor.GRAY + " of MSPT" : ""));
+            for (TickBudget.Source source : TickBudget.Source.values()) {
+                double ms = budget.averageMs(source);
+                if (ms <= 0.0) continue;
+                sender.sendMessage(ChatColor.GRAY + "  " + source.label() + ": " + ChatColor.WHITE + 
+                        String.format(Locale.ROOT, "%.3fms", ms));
+            }
+            
+            if (budget.isThrottled()) {
+                sender.sendMessage(ChatColor.GRAY + "Throttle: " + ChatColor.RED + 
+                        String.format(Locale.ROOT, "x%.2f", budget.factor()) + ChatColor.GRAY + " (group lookups " + 
+                        budget.scaled(GROUP_LOOKUPS_PER_TICK) + "/tick, notifications " + budget.scaled(outbox.perTick) + 
+                        "/tick, payments slowed)");
+            } else {
+                sender.sendMessage(ChatColor.GRAY + "Throttle: " + ChatColor.GREEN + "off" + ChatColor.GRAY + 
+                        " (budget " + String.format(Locale.ROOT, "%.1fms", budget.maxNanosPerTick / 1_000_000.0) + " per tick)");
+            }
+        }
+        
+        private ChatColor msptColor(double mspt) {
+            return mspt < 40 ? ChatColor.GREEN : mspt < 50 ? ChatColor.YELLOW : ChatColor.RED;
+        }
+        
+        private void handleClusterCommand(CommandSender sender) {
+            Coordinator current = coordinator;
+            if (current == null) {
+                sender.sendMessage(ChatColor.RED + "Coordination backend (" + coordinationBackend + ") is not ready" + 
+                        (coordinationError != null ? ": " + coordinationError : "."));
+                return;
+            }
+            
+            List<String> nodes = current.liveNodes();
+            sender.sendMessage(ChatColor.YELLOW + "=== Salary Coordination ===");
+            sender.sendMessage(ChatColor.GRAY + "Backend: " + ChatColor.WHITE + current.describe());
+            sender.sendMessage(ChatColor.GRAY + "This node: " + ChatColor.WHITE + current.nodeId() + 
+                    (current.isLeader() ? ChatColor.GREEN + " [leader]" : ChatColor.GRAY + " [follower]"));
+            sender.sendMessage(ChatColor.GRAY + "Online nodes (" + nodes.size() + "): " + ChatColor.WHITE + 
+                    String.join(", ", nodes));
+            sender.sendMessage(ChatColor.GRAY + "Offline players: " + ChatColor.WHITE + 
+                    (!payOffline ? "not paid" : partitionOffline ? "split by UUID hash across nodes" : "paid by the leader"));
+            if (coordinationError != null) {
+                sender.sendMessage(ChatColor.GRAY + "Last error: " + ChatColor.RED + coordinationError);
+            }
+        }
+        
+        private void handleReportCommand(CommandSender sender, String[] args) {
+            List<CycleReport> recent = recentReportsSnapshot();
+            
+            if (args.length >= 2 && args[1].equalsIgnoreCase("list")) {
+                if (recent.isEmpty()) {
+                    sender.sendMessage(ChatColor.RED + "No salary cycles since the server started.");
+                    return;
+                }
+                sender.sendMessage(ChatColor.YELLOW + "=== Recent Payroll Cycles ===");
+                for (CycleReport report : recent) {
+                    sender.sendMessage(ChatColor.WHITE + String.valueOf(report.cycleId) + ChatColor.GRAY + " " + 
+                            formatTimestamp(report.cycleId) + " " + report.label + " - " + 
+                            (report.isFinished() ? ChatColor.GREEN + "done" : ChatColor.YELLOW + "running") + 
+                            ChatColor.GRAY + ", " + report.paid() + "/" + report.queued() + " paid");
+                }
+                return;
+            }
+            
+            if (args.length < 2) {
+                if (recent.isEmpty()) {
+                    sender.sendMessage(ChatColor.RED + "No salary cycles since the server started. Use /salary report <id>");
+                    return;
+                }
+                sendCycleReport(sender, recent.get(0));
+                return;
+            }
+            
+            long cycleId;
+            try {
+                cycleId = Long.parseLong(args[1]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Usage: /salary report [id|list]");
+                return;
+            }
+            
+            // Ciclos antigos vem do arquivo - ler fora da main thread
+            Bukkit.getScheduler().runTaskAsynchronously(CoinSalary.this, () -> {
+                CycleReport report;
+                String error = null;
+                try {
+                    report = findCycleReport(cycleId);
+                } catch (IOException | RuntimeException e) {
+                    report = null;
+                    error = e.getMessage();
+                }
+                final CycleReport found = report;
+                final String fError = error;
+                runSync(TickBudget.Source.COMMANDS, () -> {
+                    if (found != null) {
+                        sendCycleReport(sender, found);
+                    } else {
+                        sender.sendMessage(ChatColor.RED + (fError != null ? "Failed to read payroll reports: " + fError : 
+                                "No report for cycle " + cycleId));
+                    }
+                });
+            });
+        }
+        
+        private void sendCycleReport(CommandSender sender, CycleReport report) {
+            String state = !report.isFinished() ? ChatColor.YELLOW + "running" : 
+                    report.note() == null ? ChatColor.GREEN + "complete" : ChatColor.RED + "incomplete";
+            sender.sendMessage(ChatColor.YELLOW + "=== " + report.label + " " + report.cycleId + " (" + state + ChatColor.YELLOW + ") ===");
+            if (report.note() != null) {
+                sender.sendMessage(ChatColor.RED + report.note());
+            }
+            sender.sendMessage(ChatColor.GRAY + "Started: " + ChatColor.WHITE + formatTimestamp(report.cycleId) + 
+                    ChatColor.GRAY + " | Wall time: " + ChatColor.WHITE + formatTime(report.wallMs() / 1000));
+            sender.sendMessage(ChatColor.GRAY + "Considered: " + ChatColor.WHITE + report.considered() + 
+                    ChatColor.GRAY + " | Cooldown: " + ChatColor.WHITE + report.skippedCooldown() + 
+                    ChatColor.GRAY + " | No card: " + ChatColor.WHITE + report.skippedNoCard() + 
+                    ChatColor.GRAY + " | Zero salary: " + ChatColor.WHITE + report.zeroSalary() + 
+                    (report.skippedBudget() > 0 ? ChatColor.GRAY + " | No budget: " + ChatColor.RED + report.skippedBudget() : ""));
+            if (report.budgetNote() != null) {
+                sender.sendMessage(ChatColor.GOLD + "Budget: " + report.budgetNote());
+            }
+            sender.sendMessage(ChatColor.GRAY + "Queued: " + ChatColor.WHITE + report.queued() + 
+                    ChatColor.GRAY + " | Paid: " + ChatColor.GREEN + report.paid() + 
+                    ChatColor.GRAY + " | Failed: " + ChatColor.RED + report.failed() + 
+                    ChatColor.GRAY + " | Timed out: " + ChatColor.GOLD + report.timedOut());
+            long p99 = report.p99Ms();
+            sender.sendMessage(ChatColor.GRAY + "Total paid: " + ChatColor.GREEN + formatCoin(report.paidTotal()) + 
+                    ChatColor.GRAY + " | p99 latency: " + ChatColor.WHITE + (p99 < 0 ? "-" : p99 + "ms"));
+            
+            Map<String, CoinAmount> groups = report.groupTotals();
+            if (!groups.isEmpty()) {
+                sender.sendMessage(ChatColor.GRAY + "Paid per group:");
+                for (Map.Entry<String, CoinAmount> entry : groups.entrySet()) {
+                    sender.sendMessage(ChatColor.GRAY + "  * " + ChatColor.WHITE + entry.getKey() + 
+                            ChatColor.GRAY + " -> " + ChatColor.GREEN + formatCoin(entry.getValue()));
+                }
+            }
+        }
+        
+        private void handleHistoryCommand(CommandSender sender, String[] args) {
+            if (args.length < 2) {
+                sender.sendMessage(ChatColor.RED + "Usage: /salary history <player> [limit]");
+                sender.sendMessage(ChatColor.RED + "Usage: /salary history cycle <id>");
+                return;
+            }
+            
+            PaymentLedger current = ledger;
+            if (current == null) {
+                sender.sendMessage(ChatColor.RED + "Payment ledger is " + (ledgerEnabled ? "not available" : "disabled") + "!");
+                return;
+            }
+            
+            if (args[1].equalsIgnoreCase("cycle")) {
+                long cycleId;
+                try {
+                    cycleId = Long.parseLong(args.length >= 3 ? args[2] : "");
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /salary history cycle <id>");
+                    return;
+                }
+                
+                runLedgerQuery(sender, () -> current.summarize(cycleId), (summary, tookMs) -> {
+                    if (summary.records == 0) {
+                        sender.sendMessage(ChatColor.RED + "No payments recorded for cycle " + cycleId);
+                        return;
+                    }
+                    sender.sendMessage(ChatColor.YELLOW + "=== Salary Cycle " + cycleId + " ===");
+                    sender.sendMessage(ChatColor.GRAY + "Started: " + ChatColor.WHITE + 
+                            (cycleId == MANUAL_CYCLE_ID ? "manual payments" : formatTimestamp(cycleId)));
+                    sender.sendMessage(ChatColor.GRAY + "Paid: " + ChatColor.GREEN + summary.paid + 
+                            ChatColor.GRAY + " | Failed: " + ChatColor.RED + summary.failed + 
+                            ChatColor.GRAY + " | Timed out: " + ChatColor.GOLD + summary.timedOut);
+                    sender.sendMessage(ChatColor.GRAY + "Total paid: " + ChatColor.GREEN + 
+                            formatCoin(CoinAmount.ofUnits(summary.paidUnits)));
+                    sender.sendMessage(ChatColor.GRAY + "Latency: " + ChatColor.WHITE + 
+                            (summary.totalLatencyMs / summary.records) + "ms avg, " + summary.maxLatencyMs + "ms max");
+                    long startedAt = cycleId == MANUAL_CYCLE_ID ? summary.firstTimestamp : cycleId;
+                    sender.sendMessage(ChatColor.GRAY + "Duration: " + ChatColor.WHITE + 
+                            formatTime(Math.max(0, summary.lastTimestamp - startedAt) / 1000));
+                    sender.sendMessage(ChatColor.DARK_GRAY + "(query took " + tookMs + "ms)");
                 });
+                return;
+            }
+            
+            String targetName = args[1];
+            OfflinePlayer target = findPlayer(targetName);
+            if (target == null) {
+                sender.sendMessage(ChatColor.RED + "Player not found!");
+                return;
+            }
+            
+            int limit = HISTORY_DEFAULT_LIMIT;
+            if (args.length >= 3) {
+                try {
+                    limit = Math.max(1, Math.min(HISTORY_MAX_LIMIT, Integer.parseInt(args[2])));
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid limit!");
+                    return;
+                }
+            }
+            
+            final int fLimit = limit;
+            UUID uuid = target.getUniqueId();
+            runLedgerQuery(sender, () -> current.history(uuid, fLimit), (entries, tookMs) -> {
+                if (entries.isEmpty()) {
+                    sender.sendMessage(ChatColor.RED + "No payments recorded for " + targetName);
+                    return;
+                }
+                sender.sendMessage(ChatColor.YELLOW + "=== Salary History for " + targetName + 
+                        " (last " + entries.size() + ") ===");
+                for (PaymentLedger.Entry entry : entries) {
+                    ChatColor color = entry.status == PaymentLedger.Status.SUCCESS ? ChatColor.GREEN :
+                            entry.status == PaymentLedger.Status.FAILED ? ChatColor.RED : ChatColor.GOLD;
+                    sender.sendMessage(ChatColor.GRAY + formatTimestamp(entry.timestamp) + " " + 
+                            color + entry.status + (entry.supersedesTimeout ? " (after timeout)" : "") + " " + ChatColor.YELLOW + formatCoin(CoinAmount.ofUnits(entry.amountUnits)) + 
+                            ChatColor.GRAY + " cycle " + ChatColor.WHITE + 
+                            (entry.cycleId == MANUAL_CYCLE_ID ? "manual" : String.valueOf(entry.cycleId)) + 
+                            ChatColor.GRAY + " " + (entry.reference.isEmpty() ? "-" : entry.reference) + 
+                            ChatColor.DARK_GRAY + " (" + entry.latencyMs + "ms)");
+                }
+                sender.sendMessage(ChatColor.DARK_GRAY + "(query took " + tookMs + "ms)");
+            });
+        }
+        
+        /**
+         * Consulta o ledger fora da main thread e responde na main thread
+         */
+        private <T> void runLedgerQuery(CommandSender sender, LedgerQuery<T> query, java.util.function.BiConsumer<T, Long> reply) {
+            Bukkit.getScheduler().runTaskAsynchronously(CoinSalary.this, () -> {
+                long start = System.nanoTime();
+                try {
+                    T result = query.run();
+                    long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    runSync(TickBudget.Source.COMMANDS, () -> reply.accept(result, tookMs));
+                } catch (IOException e) {
+                    runSync(TickBudget.Source.COMMANDS, () -> 
+                            sender.sendMessage(ChatColor.RED + "Failed to read payment ledger: " + e.getMessage()));
+                }
             });
         }
         
@@ -1271,42 +3986,45 @@ public class CoinSalary extends JavaPlugin implements Listener {
             }
             
             sender.sendMessage(ChatColor.YELLOW + "Processing manual payment for " + targetName + "...");
+            // Copiados aqui (main thread); o resto roda nos callbacks assincronos
+            UUID targetId = target.getUniqueId();
+            String targetPlayerName = target.getName();
+            boolean targetOnline = target.isOnline();
             
             // Calcular salario assincrono
             calculateSalaryAsync(target).thenAccept(salary -> {
-                if (salary.compareTo(BigDecimal.ZERO) <= 0) {
-                    Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
+                if (!salary.isPositive()) {
+                    runSync(TickBudget.Source.COMMANDS, () -> {
                         sender.sendMessage(ChatColor.RED + targetName + " has no salary configured!");
                     });
                     return;
                 }
                 
                 // Verificar se o jogador tem card
-                hasPlayerCardAsync(target.getUniqueId()).thenAccept(hasCard -> {
+                hasPlayerCardAsync(targetId).thenAccept(hasCard -> {
                     if (!hasCard) {
-                        Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
+                        runSync(TickBudget.Source.COMMANDS, () -> {
                             sender.sendMessage(ChatColor.RED + targetName + " has no CoinCard configured!");
                         });
                         return;
                     }
                     
                     // Obter card ID
-                    getPlayerCardIdAsync(target.getUniqueId()).thenAccept(cardId -> {
+                    getPlayerCardIdAsync(targetId).thenAccept(cardId -> {
                         if (cardId == null || cardId.isEmpty()) {
-                            Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
+                            runSync(TickBudget.Source.COMMANDS, () -> {
                                 sender.sendMessage(ChatColor.RED + "Could not get card ID for " + targetName);
                             });
                             return;
                         }
                         
                         // Atualizar timestamp antes de pagar
-                        lastSalaryTime.put(target.getUniqueId(), System.currentTimeMillis());
-                        saveLastSalaryData();
+                        recordPayments(Collections.singletonList(targetId), System.currentTimeMillis());
                         
                         // Adicionar a fila
-                        queuePayment(target, salary, cardId);
+                        queuePayment(targetId, targetPlayerName, targetOnline, salary, cardId, null, null);
                         
-                        Bukkit.getScheduler().runTask(CoinSalary.this, () -> {
+                        runSync(TickBudget.Source.COMMANDS, () -> {
                             sender.sendMessage(ChatColor.GREEN + "Manual salary payment for " + targetName + 
                                     " added to queue. Amount: " + formatCoin(salary));
                         });
@@ -1328,6 +4046,12 @@ public class CoinSalary extends JavaPlugin implements Listener {
                     completions.add("pay");
                     completions.add("group");
                     completions.add("test");
+                    completions.add("history");
+                    completions.add("report");
+                    completions.add("budget");
+                    completions.add("cards");
+                    completions.add("cluster");
+                    completions.add("stats");
                 }
                 return filter(completions, args[0]);
             }
@@ -1343,9 +4067,27 @@ public class CoinSalary extends JavaPlugin implements Listener {
                         }
                         break;
                         
+                    case "budget":
+                        completions.add("refresh");
+                        break;
+                        
+                    case "report":
+                        completions.add("list");
+                        for (CycleReport report : recentReportsSnapshot()) {
+                            completions.add(String.valueOf(report.cycleId));
+                        }
+                        break;
+                        
+                    case "history":
+                        completions.add("cycle");
+                        for (Player player : Bukkit.getOnlinePlayers()) {
+                            completions.add(player.getName());
+                        }
+                        break;
+                        
                     case "group":
                         completions.add("list");
-                        completions.addAll(groupSalaries.keySet());
+                        completions.addAll(salaryTable.groupNames());
                         break;
                 }
                 return filter(completions, args[1]);
@@ -1376,7 +4118,28 @@ public class CoinSalary extends JavaPlugin implements Listener {
     // DATA CLASSES
     // ====================================================
     private static class LastSalaryData {
-        Map<UUID, Long> lastPayments = new HashMap<>();
-        long lastTaskRun = 0;
+        volatile long lastTaskRun = 0;
+    }
+    
+    /**
+     * Consulta ao ledger (pode lancar IOException)
+     */
+    private interface LedgerQuery<T> {
+        T run() throws IOException;
+    }
+    
+    /**
+     * Resultado da consulta de salario usado pelos comandos
+     */
+    private static class SalaryInfo {
+        final List<String> groups;
+        final CoinAmount salary;
+        final boolean hasCard;
+        
+        SalaryInfo(List<String> groups, CoinAmount salary, boolean hasCard) {
+            this.groups = groups;
+            this.salary = salary;
+            this.hasCard = hasCard;
+        }
     }
 }
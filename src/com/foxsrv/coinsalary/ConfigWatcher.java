@@ -0,0 +1,93 @@
+package com.foxsrv.coinsalary;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Observa o config.yml (WatchService na pasta do plugin) e chama onChange quando o
+ * arquivo para de mudar por DEBOUNCE_MS - editores gravam em varias etapas ou trocam
+ * o arquivo por rename. Thread propria bloqueada no take(), sem polling.
+ */
+final class ConfigWatcher {
+
+    private static final long DEBOUNCE_MS = 1_000;
+
+    private final Path file;
+    private final Runnable onChange;
+    private final Logger logger;
+
+    private WatchService service;
+    private Thread thread;
+
+    ConfigWatcher(Path file, Runnable onChange, Logger logger) {
+        this.file = file;
+        this.onChange = onChange;
+        this.logger = logger;
+    }
+
+    void start() throws IOException {
+        if (service != null) return;
+        WatchService watch = file.getFileSystem().newWatchService();
+        file.getParent().register(watch, ENTRY_CREATE, ENTRY_MODIFY);
+        service = watch;
+
+        Thread worker = new Thread(() -> run(watch), "CoinSalary-ConfigWatch");
+        worker.setDaemon(true);
+        thread = worker;
+        worker.start();
+    }
+
+    void stop() {
+        if (service == null) return;
+        try {
+            service.close(); // take()/poll() saem com ClosedWatchServiceException
+        } catch (IOException ignored) {
+        }
+        thread.interrupt();
+        service = null;
+        thread = null;
+    }
+
+    boolean isRunning() {
+        return service != null;
+    }
+
+    private void run(WatchService watch) {
+        Path name = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watch.take();
+                boolean touched = drain(key, name);
+                if (!touched) continue;
+
+                // Esperar o arquivo assentar antes de ler
+                while ((key = watch.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(key, name);
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    logger.warning("Config reload after file change failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stop()
+        }
+    }
+
+    private static boolean drain(WatchKey key, Path name) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (name.equals(event.context())) {
+                touched = true;
+            }
+        }
+        key.reset();
+        return touched;
+    }
+}
@@ -0,0 +1,90 @@
+package com.foxsrv.coinsalary;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Coordenacao entre varios servidores que pagam salario na mesma economia.
+ *
+ * O backend guarda o ultimo pagamento de cada jogador num lugar compartilhado
+ * (claimDue marca de forma atomica quem esta devido, entao dois servidores nunca
+ * pagam o mesmo jogador no mesmo intervalo), elege um lider para o ciclo dos
+ * jogadores offline e mantem a lista de servidores vivos para dividir o trabalho.
+ *
+ * Implementacoes: LocalCoordinator (um servidor so, o comportamento antigo),
+ * FileCoordinator (diretorio compartilhado) e JdbcCoordinator (SQLite/H2).
+ * Todos os metodos podem fazer I/O - nunca chamar na main thread.
+ */
+interface Coordinator {
+
+    String nodeId();
+
+    /**
+     * Nome do backend para logs e /salary cluster
+     */
+    String describe();
+
+    void open() throws IOException;
+
+    /**
+     * Solta a lideranca (se tiver) e fecha recursos
+     */
+    void close();
+
+    /**
+     * Renova o heartbeat deste servidor e tenta obter/renovar a lideranca.
+     * Chamado periodicamente pela thread de coordenacao.
+     */
+    void heartbeat(long now) throws IOException;
+
+    boolean isLeader();
+
+    /**
+     * Servidores com heartbeat recente, em ordem (inclui este)
+     */
+    List<String> liveNodes();
+
+    /**
+     * Marca como pagos agora os jogadores cujo ultimo pagamento tem pelo menos intervalMs
+     * e devolve exatamente esses. Atomico entre servidores.
+     */
+    Set<UUID> claimDue(Collection<UUID> players, long now, long intervalMs) throws IOException;
+
+    /**
+     * Registra pagamento sem verificar intervalo (/salary next, /salary pay)
+     */
+    void recordPayments(Collection<UUID> players, long now) throws IOException;
+
+    /**
+     * Dono de um jogador entre os servidores vivos (rendezvous hash): todos os
+     * servidores chegam ao mesmo dono sem conversar, e quando um servidor sai
+     * so os jogadores dele mudam de dono.
+     */
+    static boolean owns(List<String> nodes, String self, UUID uuid) {
+        if (nodes.size() <= 1) return true;
+
+        long player = uuid.getMostSignificantBits() ^ Long.rotateLeft(uuid.getLeastSignificantBits(), 32);
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String node : nodes) {
+            long score = mix(player ^ (node.hashCode() * 0x9E3779B97F4A7C15L));
+            if (owner == null || score > best) {
+                owner = node;
+                best = score;
+            }
+        }
+        return self.equals(owner);
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
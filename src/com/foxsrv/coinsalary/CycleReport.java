@@ -0,0 +1,358 @@
+package com.foxsrv.coinsalary;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Relatorio de um ciclo de pagamento montado enquanto o ciclo roda.
+ *
+ * Cada etapa (cooldown, busca de cards, calculo, fila, callback do CoinCard) so
+ * incrementa contadores atomicos - nada e recalculado no fim. O ciclo termina
+ * quando a fila ja recebeu todos os pagamentos e cada um teve resultado; nesse
+ * momento onFinish recebe o relatorio (gravacao em arquivo).
+ */
+final class CycleReport {
+
+    // Histograma de latencia: baldes de 5ms ate ~10s (timeout da transferencia)
+    private static final int LATENCY_BUCKET_MS = 5;
+    private static final int LATENCY_BUCKETS = 2048;
+
+    final long cycleId;
+    final String label;
+
+    private final SalaryTable table;
+    private final long startNanos;
+    private final Consumer<CycleReport> onFinish;
+
+    private final AtomicInteger considered = new AtomicInteger();
+    private final AtomicInteger skippedCooldown = new AtomicInteger();
+    private final AtomicInteger skippedNoCard = new AtomicInteger();
+    private final AtomicInteger zeroSalary = new AtomicInteger();
+    private final AtomicInteger skippedBudget = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger paid = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger timedOut = new AtomicInteger();
+    private final LongAdder paidUnits = new LongAdder();
+    private final AtomicLongArray groupUnits;
+    private final AtomicLongArray latency = new AtomicLongArray(LATENCY_BUCKETS);
+
+    private volatile boolean queueingDone;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile long wallMs = -1L;
+    private volatile long p99Ms = -1L;
+    private volatile String note;
+    private volatile String budgetNote;
+
+    // Relatorios lidos do arquivo: totais por grupo ja resolvidos
+    private Map<String, CoinAmount> loadedGroups;
+
+    /**
+     * A tabela do ciclo e fixada aqui: calculo e totais por grupo usam a mesma versao
+     */
+    CycleReport(long cycleId, String label, SalaryTable table, Consumer<CycleReport> onFinish) {
+        this.cycleId = cycleId;
+        this.label = label;
+        this.table = table;
+        this.startNanos = System.nanoTime();
+        this.onFinish = onFinish;
+        this.groupUnits = new AtomicLongArray(Math.max(1, table.size()));
+    }
+
+    SalaryTable table() {
+        return table;
+    }
+
+    // ====================================================
+    // INCREMENTAL UPDATES
+    // ====================================================
+
+    void recordConsidered(int players, int onCooldown) {
+        considered.addAndGet(players);
+        skippedCooldown.addAndGet(onCooldown);
+    }
+
+    void recordNoCard(int players) {
+        skippedNoCard.addAndGet(players);
+    }
+
+    void recordZeroSalary() {
+        zeroSalary.incrementAndGet();
+    }
+
+    /**
+     * Ciclo reduzido ou cortado pelo BudgetGuard
+     */
+    void recordBudget(int skipped, String remark) {
+        skippedBudget.addAndGet(skipped);
+        budgetNote = remark;
+    }
+
+    void recordQueued() {
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Pagamento confirmado: soma o total e a parte de cada grupo do jogador.
+     * Se o valor foi reduzido (rateio do orcamento), cada parte e reduzida na mesma proporcao.
+     */
+    void recordPaid(List<String> groups, long units, int latencyMs) {
+        paidUnits.add(units);
+        if (groups != null) {
+            int[] ids = new int[groups.size()];
+            int count = 0;
+            long full = 0L;
+            long seen = 0L;
+            for (int i = 0, n = groups.size(); i < n; i++) {
+                int id = table.idOf(groups.get(i));
+                if (id < 0) continue;
+                // Mesmo criterio de SalaryTable.salaryUnits: grupo repetido conta uma vez
+                if (id < Long.SIZE) {
+                    if ((seen & (1L << id)) != 0) continue;
+                    seen |= 1L << id;
+                }
+                ids[count++] = id;
+                full += table.unitsAt(id);
+            }
+            for (int i = 0; i < count; i++) {
+                long share = table.unitsAt(ids[i]);
+                if (full != units && full > 0L) {
+                    share = BigInteger.valueOf(share).multiply(BigInteger.valueOf(units))
+                            .divide(BigInteger.valueOf(full)).longValue();
+                }
+                groupUnits.addAndGet(ids[i], share);
+            }
+        }
+        recordLatency(latencyMs);
+        paid.incrementAndGet();
+        tryFinish();
+    }
+
+    void recordFailed(int latencyMs, boolean timeout) {
+        recordLatency(latencyMs);
+        (timeout ? timedOut : failed).incrementAndGet();
+        tryFinish();
+    }
+
+    private void recordLatency(int latencyMs) {
+        int bucket = Math.min(LATENCY_BUCKETS - 1, Math.max(0, latencyMs) / LATENCY_BUCKET_MS);
+        latency.incrementAndGet(bucket);
+    }
+
+    /**
+     * Todos os pagamentos do ciclo ja foram para a fila
+     */
+    void queueingDone() {
+        queueingDone = true;
+        tryFinish();
+    }
+
+    /**
+     * Ciclo interrompido antes de enfileirar tudo (sem card do servidor, erro nos grupos, shutdown).
+     * Ciclo que ja terminou normalmente fica como estava, sem a nota.
+     */
+    void abort(String reason) {
+        queueingDone = true;
+        finish(reason);
+    }
+
+    private void tryFinish() {
+        if (queueingDone && paid.get() + failed.get() + timedOut.get() >= queued.get()) {
+            finish(null);
+        }
+    }
+
+    /**
+     * @param reason Nota de interrupcao, gravada so por quem de fato encerra o ciclo
+     */
+    private void finish(String reason) {
+        if (!finished.compareAndSet(false, true)) return;
+        if (reason != null) note = reason;
+        wallMs = (System.nanoTime() - startNanos) / 1_000_000L;
+        p99Ms = computePercentile(0.99);
+        if (onFinish != null) onFinish.accept(this);
+    }
+
+    // ====================================================
+    // READ
+    // ====================================================
+
+    boolean isFinished() {
+        return finished.get();
+    }
+
+    int considered() { return considered.get(); }
+    int skippedCooldown() { return skippedCooldown.get(); }
+    int skippedNoCard() { return skippedNoCard.get(); }
+    int zeroSalary() { return zeroSalary.get(); }
+    int skippedBudget() { return skippedBudget.get(); }
+    String budgetNote() { return budgetNote; }
+    int queued() { return queued.get(); }
+    int paid() { return paid.get(); }
+    int failed() { return failed.get(); }
+    int timedOut() { return timedOut.get(); }
+    String note() { return note; }
+
+    CoinAmount paidTotal() {
+        return CoinAmount.ofUnits(paidUnits.sum());
+    }
+
+    /**
+     * Tempo total do ciclo; enquanto roda, o tempo decorrido ate agora
+     */
+    long wallMs() {
+        long finishedMs = wallMs;
+        return finishedMs >= 0 ? finishedMs : (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    /**
+     * p99 da latencia das transferencias (limite superior do balde), -1 sem dados
+     */
+    long p99Ms() {
+        long finishedP99 = p99Ms;
+        return finishedP99 >= 0 || finished.get() ? finishedP99 : computePercentile(0.99);
+    }
+
+    private long computePercentile(double percentile) {
+        long total = 0L;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) total += latency.get(i);
+        if (total == 0L) return -1L;
+
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0L;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += latency.get(i);
+            if (seen >= rank) return (long) (i + 1) * LATENCY_BUCKET_MS;
+        }
+        return (long) LATENCY_BUCKETS * LATENCY_BUCKET_MS;
+    }
+
+    /**
+     * Total pago por grupo (somente grupos com valor), na ordem da config
+     */
+    Map<String, CoinAmount> groupTotals() {
+        if (loadedGroups != null) return loadedGroups;
+
+        Map<String, CoinAmount> totals = new LinkedHashMap<>();
+        for (int id = 0; id < table.size(); id++) {
+            long units = groupUnits.get(id);
+            if (units != 0L) {
+                totals.put(table.nameAt(id), CoinAmount.ofUnits(units));
+            }
+        }
+        return totals;
+    }
+
+    // ====================================================
+    // JSON (uma linha por ciclo no arquivo de relatorios)
+    // ====================================================
+
+    void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(cycleId);
+        writer.name("label").value(label);
+        writer.name("complete").value(note == null);
+        if (note != null) writer.name("note").value(note);
+        writer.name("wallMs").value(wallMs());
+        writer.name("considered").value(considered.get());
+        writer.name("skippedCooldown").value(skippedCooldown.get());
+        writer.name("skippedNoCard").value(skippedNoCard.get());
+        writer.name("zeroSalary").value(zeroSalary.get());
+        writer.name("skippedBudget").value(skippedBudget.get());
+        if (budgetNote != null) writer.name("budget").value(budgetNote);
+        writer.name("queued").value(queued.get());
+        writer.name("paid").value(paid.get());
+        writer.name("failed").value(failed.get());
+        writer.name("timedOut").value(timedOut.get());
+        writer.name("p99Ms").value(p99Ms());
+        // Valores em texto exato (CoinAmount), nunca double
+        writer.name("paidTotal").value(paidTotal().toString());
+        writer.name("groups").beginObject();
+        for (Map.Entry<String, CoinAmount> entry : groupTotals().entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue().toString());
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    /**
+     * Le um relatorio gravado por writeJson (ja finalizado)
+     */
+    static CycleReport readJson(JsonReader reader) throws IOException {
+        long id = 0L;
+        String label = "";
+        Map<String, Long> numbers = new HashMap<>();
+        Map<String, CoinAmount> groups = new LinkedHashMap<>();
+        CoinAmount paidTotal = CoinAmount.ZERO;
+        String note = null;
+        String budgetNote = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "id":
+                    id = reader.nextLong();
+                    break;
+                case "label":
+                    label = reader.nextString();
+                    break;
+                case "note":
+                    note = reader.nextString();
+                    break;
+                case "budget":
+                    budgetNote = reader.nextString();
+                    break;
+                case "paidTotal":
+                    paidTotal = CoinAmount.parse(reader.nextString());
+                    break;
+                case "groups":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String group = reader.nextName();
+                        groups.put(group, CoinAmount.parse(reader.nextString()));
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        numbers.put(name, reader.nextLong());
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+            }
+        }
+        reader.endObject();
+
+        CycleReport report = new CycleReport(id, label, SalaryTable.EMPTY, null);
+        report.considered.set(numbers.getOrDefault("considered", 0L).intValue());
+        report.skippedCooldown.set(numbers.getOrDefault("skippedCooldown", 0L).intValue());
+        report.skippedNoCard.set(numbers.getOrDefault("skippedNoCard", 0L).intValue());
+        report.zeroSalary.set(numbers.getOrDefault("zeroSalary", 0L).intValue());
+        report.skippedBudget.set(numbers.getOrDefault("skippedBudget", 0L).intValue());
+        report.budgetNote = budgetNote;
+        report.queued.set(numbers.getOrDefault("queued", 0L).intValue());
+        report.paid.set(numbers.getOrDefault("paid", 0L).intValue());
+        report.failed.set(numbers.getOrDefault("failed", 0L).intValue());
+        report.timedOut.set(numbers.getOrDefault("timedOut", 0L).intValue());
+        report.paidUnits.add(paidTotal.units());
+        report.loadedGroups = groups;
+        report.note = note;
+        report.wallMs = numbers.getOrDefault("wallMs", 0L);
+        report.p99Ms = numbers.getOrDefault("p99Ms", -1L);
+        report.queueingDone = true;
+        report.finished.set(true);
+        return report;
+    }
+}
@@ -0,0 +1,280 @@
+package com.foxsrv.coinsalary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Coordenacao por um diretorio compartilhado entre os servidores (mesmo host ou
+ * NFS/SMB com lock de arquivo funcionando).
+ *
+ * leader.lock   - "dono\nexpiraEm", lido e reescrito com o arquivo travado (lease)
+ * payments.dat  - ultimo pagamento de cada jogador; alterado so com payments.lock
+ *                 travado e trocado de forma atomica (arquivo temporario + move)
+ * nodes/<id>    - heartbeat de cada servidor
+ */
+final class FileCoordinator implements Coordinator {
+
+    private static final int MAGIC = 0x43534350; // "CSCP"
+    private static final int RECORD_BYTES = 24;
+
+    private final Path directory;
+    private final Path nodesDirectory;
+    private final Path leaderFile;
+    private final Path paymentsFile;
+    private final Path paymentsLock;
+    private final String nodeId;
+    private final long leaseMs;
+
+    private volatile boolean leader;
+    private volatile List<String> liveNodes;
+
+    // Copia local de payments.dat, relida so quando a geracao do arquivo muda (monitor do objeto)
+    private final Map<UUID, Long> payments = new HashMap<>();
+    private long paymentsGeneration = -1L;
+
+    FileCoordinator(Path directory, String nodeId, long leaseMs) {
+        this.directory = directory;
+        this.nodesDirectory = directory.resolve("nodes");
+        this.leaderFile = directory.resolve("leader.lock");
+        this.paymentsFile = directory.resolve("payments.dat");
+        this.paymentsLock = directory.resolve("payments.lock");
+        this.nodeId = nodeId;
+        this.leaseMs = leaseMs;
+        this.liveNodes = Collections.singletonList(nodeId);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String describe() {
+        return "file (" + directory + ")";
+    }
+
+    @Override
+    public void open() throws IOException {
+        Files.createDirectories(nodesDirectory);
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(nodeFile());
+            if (leader) {
+                // Expira o lease agora para outro servidor assumir sem esperar
+                withLease(0L, true);
+            }
+        } catch (IOException ignored) {
+        }
+        leader = false;
+    }
+
+    // ====================================================
+    // LEASE / HEARTBEAT
+    // ====================================================
+
+    @Override
+    public void heartbeat(long now) throws IOException {
+        try {
+            writeAtomically(nodeFile(), Long.toString(now).getBytes(StandardCharsets.UTF_8));
+            liveNodes = readLiveNodes(now);
+            leader = withLease(now, false);
+        } catch (IOException e) {
+            // Sem conseguir renovar, outro servidor pode assumir quando o lease expirar
+            leader = false;
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isLeader() {
+        return leader;
+    }
+
+    @Override
+    public List<String> liveNodes() {
+        return liveNodes;
+    }
+
+    private boolean withLease(long now, boolean release) throws IOException {
+        try (FileChannel channel = FileChannel.open(leaderFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 1024));
+                channel.read(buffer, 0);
+                String[] lines = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).split("\n");
+
+                String owner = lines.length > 0 ? lines[0].trim() : "";
+                long expiresAt = 0L;
+                if (lines.length > 1) {
+                    try {
+                        expiresAt = Long.parseLong(lines[1].trim());
+                    } catch (NumberFormatException ignoredFormat) {
+                    }
+                }
+
+                boolean mine = owner.equals(nodeId);
+                if (release) {
+                    if (!mine) return false;
+                    writeLease(channel, nodeId, 0L);
+                    return false;
+                }
+                if (!mine && now < expiresAt) {
+                    return false;
+                }
+                writeLease(channel, nodeId, now + leaseMs);
+                return true;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static void writeLease(FileChannel channel, String owner, long expiresAt) throws IOException {
+        byte[] content = (owner + "\n" + expiresAt + "\n").getBytes(StandardCharsets.UTF_8);
+        channel.truncate(0L);
+        channel.write(ByteBuffer.wrap(content), 0L);
+        channel.force(false);
+    }
+
+    private List<String> readLiveNodes(long now) throws IOException {
+        List<String> nodes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(nodesDirectory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) continue;
+                try {
+                    long seen = Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+                    if (now - seen <= leaseMs) nodes.add(name);
+                } catch (IOException | NumberFormatException ignored) {
+                    // Heartbeat sendo trocado agora ou arquivo estranho
+                }
+            }
+        }
+        if (!nodes.contains(nodeId)) nodes.add(nodeId);
+        Collections.sort(nodes);
+        return Collections.unmodifiableList(nodes);
+    }
+
+    private Path nodeFile() {
+        return nodesDirectory.resolve(nodeId.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    // ====================================================
+    // SHARED LAST PAYMENTS
+    // ====================================================
+
+    @Override
+    public synchronized Set<UUID> claimDue(Collection<UUID> players, long now, long intervalMs) throws IOException {
+        Set<UUID> claimed = new HashSet<>();
+        if (players.isEmpty()) return claimed;
+
+        try (FileChannel channel = FileChannel.open(paymentsLock,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                refreshPayments();
+                for (UUID uuid : players) {
+                    Long lastPaid = payments.get(uuid);
+                    if (lastPaid != null && now - lastPaid < intervalMs) continue;
+                    payments.put(uuid, now);
+                    claimed.add(uuid);
+                }
+                if (!claimed.isEmpty()) {
+                    writePayments();
+                }
+            } finally {
+                lock.release();
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public synchronized void recordPayments(Collection<UUID> players, long now) throws IOException {
+        if (players.isEmpty()) return;
+
+        try (FileChannel channel = FileChannel.open(paymentsLock,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                refreshPayments();
+                for (UUID uuid : players) {
+                    payments.put(uuid, now);
+                }
+                writePayments();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // Layout: MAGIC, geracao (incrementa a cada escrita), quantidade, registros (msb, lsb, ultimoPagamento)
+    private void refreshPayments() throws IOException {
+        if (!Files.exists(paymentsFile)) {
+            payments.clear();
+            paymentsGeneration = -1L;
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(paymentsFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("payments.dat has an unknown format");
+            }
+            // mtime nao serve (granularidade de 1s em alguns sistemas de arquivos): so o cabecalho decide
+            long generation = in.readLong();
+            if (generation == paymentsGeneration) {
+                return;
+            }
+
+            payments.clear();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                payments.put(new UUID(in.readLong(), in.readLong()), in.readLong());
+            }
+            paymentsGeneration = generation;
+        }
+    }
+
+    private void writePayments() throws IOException {
+        long generation = paymentsGeneration + 1;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + payments.size() * RECORD_BYTES);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeLong(generation);
+            out.writeInt(payments.size());
+            for (Map.Entry<UUID, Long> entry : payments.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeLong(entry.getValue());
+            }
+        }
+        writeAtomically(paymentsFile, bytes.toByteArray());
+        paymentsGeneration = generation;
+    }
+
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
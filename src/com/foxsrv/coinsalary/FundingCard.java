@@ -0,0 +1,166 @@
+package com.foxsrv.coinsalary;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Um card pagador: fila propria, limite de taxa (cooldown) proprio, orcamento
+ * (BudgetGuard) e metricas de saude/vazao. Cada card tem um processador de fila
+ * proprio, entao N cards pagam em paralelo.
+ */
+final class FundingCard {
+
+    enum Health { HEALTHY, DEGRADED, DOWN }
+
+    /**
+     * Configuracao de um card (lista Funding.cards ou Server/Cooldown)
+     */
+    static final class Spec {
+        final String cardId;
+        final long cooldownMs;
+        final CoinAmount reserve;
+
+        Spec(String cardId, long cooldownMs, CoinAmount reserve) {
+            this.cardId = cardId;
+            this.cooldownMs = cooldownMs;
+            this.reserve = reserve;
+        }
+    }
+
+    // Falhas seguidas ate o card sair da rotacao; backoff dobra a cada nova falha
+    private static final int FAILURES_TO_DOWN = 3;
+    private static final long BACKOFF_BASE_MS = 30_000L;
+    private static final long BACKOFF_MAX_MS = 5 * 60_000L;
+
+    // Janela da vazao (pagamentos/min): ultimos resultados com sucesso
+    private static final int THROUGHPUT_WINDOW = 256;
+    private static final long THROUGHPUT_SPAN_MS = 60_000L;
+
+    final String cardId;
+    final BudgetGuard guard;
+    final PaymentQueue queue;
+
+    volatile long cooldownMs;
+    // Processador da fila ativo (guardado pelo monitor do card)
+    boolean processing;
+    volatile boolean paused;
+    volatile boolean retired;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder paid = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder paidUnits = new LongAdder();
+    private final LongAdder latencyTotalMs = new LongAdder();
+
+    // Saude e janela de vazao: monitor do card
+    private int consecutiveFailures;
+    private long downUntil;
+    private long backoffMs;
+    private String lastError;
+    private long lastSuccessAt;
+    private final long[] completions = new long[THROUGHPUT_WINDOW];
+    private int completionCount;
+
+    FundingCard(Spec spec, BudgetGuard.Mode budgetMode, PaymentQueue.Settings queueSettings) {
+        this.cardId = spec.cardId;
+        this.cooldownMs = spec.cooldownMs;
+        this.guard = new BudgetGuard(spec.cardId, budgetMode, spec.reserve);
+        this.queue = new PaymentQueue(this, queueSettings);
+    }
+
+    /**
+     * Mesmo card, mesmo orcamento: pode ser reaproveitado num reload (cooldown muda ao vivo)
+     */
+    boolean matches(Spec spec, BudgetGuard.Mode budgetMode) {
+        return cardId.equals(spec.cardId) && guard.mode == budgetMode && guard.reserve().equals(spec.reserve);
+    }
+
+    // ====================================================
+    // METRICS
+    // ====================================================
+
+    void recordSent() {
+        sent.increment();
+    }
+
+    synchronized void recordSuccess(long units, int latencyMs) {
+        paid.increment();
+        paidUnits.add(units);
+        latencyTotalMs.add(latencyMs);
+
+        long now = System.currentTimeMillis();
+        completions[completionCount++ % THROUGHPUT_WINDOW] = now;
+        lastSuccessAt = now;
+        consecutiveFailures = 0;
+        backoffMs = 0L;
+        downUntil = 0L;
+    }
+
+    synchronized void recordFailure(String error, boolean timeout, int latencyMs) {
+        (timeout ? timedOut : failed).increment();
+        latencyTotalMs.add(latencyMs);
+        lastError = error;
+
+        if (++consecutiveFailures >= FAILURES_TO_DOWN) {
+            backoffMs = backoffMs == 0L ? BACKOFF_BASE_MS : Math.min(BACKOFF_MAX_MS, backoffMs * 2);
+            downUntil = System.currentTimeMillis() + backoffMs;
+        }
+    }
+
+    synchronized Health health(long now) {
+        if (now < downUntil) return Health.DOWN;
+        return consecutiveFailures > 0 ? Health.DEGRADED : Health.HEALTHY;
+    }
+
+    /**
+     * Pode receber/enviar pagamentos agora (fora do backoff)
+     */
+    synchronized boolean isUp(long now) {
+        return now >= downUntil;
+    }
+
+    synchronized long backoffRemainingMs(long now) {
+        return Math.max(0L, downUntil - now);
+    }
+
+    synchronized String lastError() {
+        return lastError;
+    }
+
+    synchronized long lastSuccessAt() {
+        return lastSuccessAt;
+    }
+
+    /**
+     * Pagamentos com sucesso no ultimo minuto
+     */
+    synchronized int throughputPerMinute(long now) {
+        int count = 0;
+        int filled = Math.min(completionCount, THROUGHPUT_WINDOW);
+        for (int i = 0; i < filled; i++) {
+            if (now - completions[i] <= THROUGHPUT_SPAN_MS) count++;
+        }
+        return count;
+    }
+
+    long sent() { return sent.sum(); }
+    long paid() { return paid.sum(); }
+    long failed() { return failed.sum(); }
+    long timedOut() { return timedOut.sum(); }
+
+    CoinAmount paidTotal() {
+        return CoinAmount.ofUnits(paidUnits.sum());
+    }
+
+    long averageLatencyMs() {
+        long results = paid.sum() + failed.sum() + timedOut.sum();
+        return results == 0 ? 0L : latencyTotalMs.sum() / results;
+    }
+
+    /**
+     * Tempo estimado para esvaziar a fila deste card (usado pelo least-loaded)
+     */
+    long estimatedDrainMs() {
+        return (queue.size() + (guard.inFlight().isPositive() ? 1L : 0L)) * Math.max(cooldownMs, averageLatencyMs());
+    }
+}
@@ -0,0 +1,164 @@
+package com.foxsrv.coinsalary;
+
+import java.util.*;
+
+/**
+ * Conjunto imutavel de cards pagadores e a regra de distribuicao.
+ *
+ * HASH usa um anel de hash consistente (VIRTUAL_NODES pontos por card): cada
+ * jogador cai sempre no mesmo card, e adicionar/remover um card so move a parte
+ * dos jogadores daquele card. LEAST_LOADED escolhe o card com a fila que esvazia
+ * mais cedo. Nos dois casos cards fora do ar ou sem saldo sao pulados.
+ * Reload cria um pool novo e troca a referencia, como a SalaryTable.
+ */
+final class FundingPool {
+
+    enum Strategy {
+        HASH, LEAST_LOADED;
+
+        static Strategy parse(String text) {
+            if (text == null) return HASH;
+            String normalized = text.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+            return normalized.equals("LEAST_LOADED") ? LEAST_LOADED : HASH;
+        }
+    }
+
+    static final FundingPool EMPTY = new FundingPool(Collections.emptyList(), Strategy.HASH);
+
+    private static final int VIRTUAL_NODES = 64;
+
+    final Strategy strategy;
+    private final List<FundingCard> cards;
+    private final long[] ringHashes;
+    private final FundingCard[] ringCards;
+
+    FundingPool(List<FundingCard> cards, Strategy strategy) {
+        this.cards = Collections.unmodifiableList(new ArrayList<>(cards));
+        this.strategy = strategy;
+
+        int points = cards.size() * VIRTUAL_NODES;
+        long[] hashes = new long[points];
+        FundingCard[] owners = new FundingCard[points];
+        Map<Long, FundingCard> byHash = new TreeMap<>();
+        for (FundingCard card : cards) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                byHash.putIfAbsent(mix(card.cardId.hashCode() * 0x9E3779B97F4A7C15L + i), card);
+            }
+        }
+        int index = 0;
+        for (Map.Entry<Long, FundingCard> entry : byHash.entrySet()) {
+            hashes[index] = entry.getKey();
+            owners[index] = entry.getValue();
+            index++;
+        }
+        this.ringHashes = Arrays.copyOf(hashes, index);
+        this.ringCards = Arrays.copyOf(owners, index);
+    }
+
+    List<FundingCard> cards() {
+        return cards;
+    }
+
+    boolean isEmpty() {
+        return cards.isEmpty();
+    }
+
+    /**
+     * Primeiro card da config (o antigo "Server")
+     */
+    FundingCard primary() {
+        return cards.isEmpty() ? null : cards.get(0);
+    }
+
+    FundingCard byId(String cardId) {
+        for (FundingCard card : cards) {
+            if (card.cardId.equals(cardId)) return card;
+        }
+        return null;
+    }
+
+    // ====================================================
+    // ROUTING
+    // ====================================================
+
+    /**
+     * Escolhe o card para um pagamento novo
+     */
+    FundingCard route(UUID uuid, long units, long now) {
+        if (cards.isEmpty()) return null;
+        if (cards.size() == 1) return cards.get(0);
+
+        if (strategy == Strategy.LEAST_LOADED) {
+            FundingCard best = leastLoaded(null, units, now, true);
+            if (best == null) best = leastLoaded(null, units, now, false);
+            return best != null ? best : cards.get(0);
+        }
+
+        int start = ringIndex(mix(uuid.getMostSignificantBits() ^ Long.rotateLeft(uuid.getLeastSignificantBits(), 32)));
+        // Dono natural primeiro; se estiver fora do ar ou sem saldo, o proximo no anel
+        FundingCard fallback = null;
+        for (int step = 0; step < ringCards.length; step++) {
+            FundingCard card = ringCards[(start + step) % ringCards.length];
+            if (!card.isUp(now)) continue;
+            if (hasBudget(card, units)) return card;
+            if (fallback == null) fallback = card;
+        }
+        return fallback != null ? fallback : ringCards[start];
+    }
+
+    /**
+     * Outro card que pode enviar o pagamento agora (card atual fora do ar ou sem saldo)
+     */
+    FundingCard alternativeFor(FundingCard current, long units, long now) {
+        if (cards.size() < 2) return null;
+        return leastLoaded(current, units, now, true);
+    }
+
+    private FundingCard leastLoaded(FundingCard exclude, long units, long now, boolean requireBudget) {
+        FundingCard best = null;
+        long bestDrain = Long.MAX_VALUE;
+        for (FundingCard card : cards) {
+            if (card == exclude || card.retired || !card.isUp(now)) continue;
+            if (requireBudget && !hasBudget(card, units)) continue;
+            long drain = card.estimatedDrainMs();
+            if (drain < bestDrain) {
+                best = card;
+                bestDrain = drain;
+            }
+        }
+        return best;
+    }
+
+    private static boolean hasBudget(FundingCard card, long units) {
+        return !card.guard.isEnabled() || card.guard.headroom() >= units;
+    }
+
+    /**
+     * Saldo livre somado de todos os cards no ar (para o rateio do ciclo)
+     */
+    long headroom(long now) {
+        long total = 0L;
+        for (FundingCard card : cards) {
+            if (!card.isUp(now)) continue;
+            long headroom = card.guard.isEnabled() ? card.guard.headroom() : Long.MAX_VALUE;
+            if (headroom == Long.MAX_VALUE) return Long.MAX_VALUE;
+            total += Math.max(0L, headroom);
+        }
+        return total;
+    }
+
+    private int ringIndex(long hash) {
+        int index = Arrays.binarySearch(ringHashes, hash);
+        if (index < 0) index = -index - 1;
+        return index >= ringHashes.length ? 0 : index;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
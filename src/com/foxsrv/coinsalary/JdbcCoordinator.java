@@ -0,0 +1,335 @@
+package com.foxsrv.coinsalary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Coordenacao por banco SQL. Feito para SQLite (o driver org.sqlite.JDBC ja vem
+ * no Spigot) num arquivo compartilhado, ou H2 em modo servidor/AUTO_SERVER se o
+ * jar do H2 estiver no classpath. So usa SQL portavel entre os dois.
+ *
+ * coinsalary_lease    - uma linha ("timer") com dono e expiracao
+ * coinsalary_payments - ultimo pagamento de cada jogador
+ * coinsalary_nodes    - heartbeat de cada servidor
+ */
+final class JdbcCoordinator implements Coordinator {
+
+    private static final String LEASE_NAME = "timer";
+    private static final int BATCH_SIZE = 500;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String nodeId;
+    private final long leaseMs;
+
+    private volatile boolean leader;
+    private volatile List<String> liveNodes;
+
+    // Uma conexao, usada sempre com o monitor do objeto
+    private Connection connection;
+
+    JdbcCoordinator(String url, String user, String password, String nodeId, long leaseMs) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.nodeId = nodeId;
+        this.leaseMs = leaseMs;
+        this.liveNodes = Collections.singletonList(nodeId);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String describe() {
+        return "sql (" + url.replaceAll("(?i)password=[^;&]*", "password=***") + ")";
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        loadDriver();
+        if (url.startsWith("jdbc:sqlite:") && !url.contains(":memory:")) {
+            // SQLite nao cria a pasta do arquivo
+            String file = url.substring("jdbc:sqlite:".length());
+            int query = file.indexOf('?');
+            Path parent = Paths.get(query >= 0 ? file.substring(0, query) : file).toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        }
+        try {
+            Connection conn = connection();
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS coinsalary_lease ("
+                        + "name VARCHAR(32) PRIMARY KEY, owner VARCHAR(64) NOT NULL, expires_at BIGINT NOT NULL)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS coinsalary_payments ("
+                        + "uuid CHAR(36) PRIMARY KEY, last_paid BIGINT NOT NULL)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS coinsalary_nodes ("
+                        + "node VARCHAR(64) PRIMARY KEY, last_seen BIGINT NOT NULL)");
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IOException("Failed to prepare coordination tables: " + e.getMessage(), e);
+        }
+    }
+
+    private void loadDriver() throws IOException {
+        String driver;
+        if (url.startsWith("jdbc:sqlite:")) {
+            driver = "org.sqlite.JDBC";
+        } else if (url.startsWith("jdbc:h2:")) {
+            driver = "org.h2.Driver";
+        } else {
+            return; // outro driver: depende do DriverManager achar sozinho
+        }
+        try {
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("JDBC driver " + driver + " not found on the server", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection == null) return;
+        try {
+            try (PreparedStatement release = connection.prepareStatement(
+                    "UPDATE coinsalary_lease SET expires_at = 0 WHERE name = ? AND owner = ?");
+                 PreparedStatement forget = connection.prepareStatement(
+                         "DELETE FROM coinsalary_nodes WHERE node = ?")) {
+                release.setString(1, LEASE_NAME);
+                release.setString(2, nodeId);
+                release.executeUpdate();
+                forget.setString(1, nodeId);
+                forget.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException ignored) {
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+            connection = null;
+            leader = false;
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection != null) {
+            if (connection.isValid(2)) return connection;
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+            connection = null;
+        }
+        Connection conn = user.isEmpty()
+                ? DriverManager.getConnection(url)
+                : DriverManager.getConnection(url, user, password);
+        conn.setAutoCommit(false);
+        connection = conn;
+        return conn;
+    }
+
+    // ====================================================
+    // LEASE / HEARTBEAT
+    // ====================================================
+
+    @Override
+    public synchronized void heartbeat(long now) throws IOException {
+        try {
+            Connection conn = connection();
+            try {
+                upsertNode(conn, now);
+                boolean acquired = tryLease(conn, now);
+                liveNodes = readLiveNodes(conn, now);
+                conn.commit();
+                leader = acquired;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            leader = false;
+            throw new IOException("Heartbeat failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isLeader() {
+        return leader;
+    }
+
+    @Override
+    public List<String> liveNodes() {
+        return liveNodes;
+    }
+
+    private void upsertNode(Connection conn, long now) throws SQLException {
+        try (PreparedStatement update = conn.prepareStatement(
+                "UPDATE coinsalary_nodes SET last_seen = ? WHERE node = ?")) {
+            update.setLong(1, now);
+            update.setString(2, nodeId);
+            if (update.executeUpdate() > 0) return;
+        }
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO coinsalary_nodes (node, last_seen) VALUES (?, ?)")) {
+            insert.setString(1, nodeId);
+            insert.setLong(2, now);
+            insert.executeUpdate();
+        }
+    }
+
+    private boolean tryLease(Connection conn, long now) throws SQLException {
+        // Renova se for nosso ou toma se expirou; a condicao no WHERE faz a troca ser atomica
+        try (PreparedStatement update = conn.prepareStatement(
+                "UPDATE coinsalary_lease SET owner = ?, expires_at = ? "
+                        + "WHERE name = ? AND (owner = ? OR expires_at < ?)")) {
+            update.setString(1, nodeId);
+            update.setLong(2, now + leaseMs);
+            update.setString(3, LEASE_NAME);
+            update.setString(4, nodeId);
+            update.setLong(5, now);
+            if (update.executeUpdate() > 0) return true;
+        }
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO coinsalary_lease (name, owner, expires_at) "
+                        + "SELECT ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM coinsalary_lease WHERE name = ?)")) {
+            insert.setString(1, LEASE_NAME);
+            insert.setString(2, nodeId);
+            insert.setLong(3, now + leaseMs);
+            insert.setString(4, LEASE_NAME);
+            return insert.executeUpdate() > 0;
+        }
+    }
+
+    private List<String> readLiveNodes(Connection conn, long now) throws SQLException {
+        List<String> nodes = new ArrayList<>();
+        try (PreparedStatement select = conn.prepareStatement(
+                "SELECT node FROM coinsalary_nodes WHERE last_seen >= ? ORDER BY node")) {
+            select.setLong(1, now - leaseMs);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    nodes.add(rows.getString(1));
+                }
+            }
+        }
+        if (!nodes.contains(nodeId)) {
+            nodes.add(nodeId);
+            Collections.sort(nodes);
+        }
+        return Collections.unmodifiableList(nodes);
+    }
+
+    // ====================================================
+    // SHARED LAST PAYMENTS
+    // ====================================================
+
+    @Override
+    public synchronized Set<UUID> claimDue(Collection<UUID> players, long now, long intervalMs) throws IOException {
+        Set<UUID> claimed = new HashSet<>();
+        if (players.isEmpty()) return claimed;
+
+        List<UUID> all = new ArrayList<>(players);
+        try {
+            Connection conn = connection();
+            try {
+                for (int start = 0; start < all.size(); start += BATCH_SIZE) {
+                    List<UUID> batch = all.subList(start, Math.min(all.size(), start + BATCH_SIZE));
+                    claimBatch(conn, batch, now, now - intervalMs, claimed);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to claim payments: " + e.getMessage(), e);
+        }
+        return claimed;
+    }
+
+    private void claimBatch(Connection conn, List<UUID> batch, long now, long dueBefore, Set<UUID> claimed)
+            throws SQLException {
+        // 1) Jogadores ja conhecidos: so muda a linha se o ultimo pagamento ja venceu
+        int[] updated;
+        try (PreparedStatement update = conn.prepareStatement(
+                "UPDATE coinsalary_payments SET last_paid = ? WHERE uuid = ? AND last_paid <= ?")) {
+            for (UUID uuid : batch) {
+                update.setLong(1, now);
+                update.setString(2, uuid.toString());
+                update.setLong(3, dueBefore);
+                update.addBatch();
+            }
+            updated = update.executeBatch();
+        }
+
+        // 2) Quem nao mudou: ou ainda esta no intervalo, ou nunca foi pago (insere se nao existe)
+        List<UUID> rest = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (updated[i] > 0) {
+                claimed.add(batch.get(i));
+            } else {
+                rest.add(batch.get(i));
+            }
+        }
+        if (rest.isEmpty()) return;
+
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO coinsalary_payments (uuid, last_paid) "
+                        + "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM coinsalary_payments WHERE uuid = ?)")) {
+            for (UUID uuid : rest) {
+                String key = uuid.toString();
+                insert.setString(1, key);
+                insert.setLong(2, now);
+                insert.setString(3, key);
+                insert.addBatch();
+            }
+            int[] inserted = insert.executeBatch();
+            for (int i = 0; i < rest.size(); i++) {
+                if (inserted[i] > 0) claimed.add(rest.get(i));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void recordPayments(Collection<UUID> players, long now) throws IOException {
+        if (players.isEmpty()) return;
+
+        try {
+            Connection conn = connection();
+            try (PreparedStatement update = conn.prepareStatement(
+                    "UPDATE coinsalary_payments SET last_paid = ? WHERE uuid = ?");
+                 PreparedStatement insert = conn.prepareStatement(
+                         "INSERT INTO coinsalary_payments (uuid, last_paid) "
+                                 + "SELECT ?, ? WHERE NOT EXISTS (SELECT 1 FROM coinsalary_payments WHERE uuid = ?)")) {
+                for (UUID uuid : players) {
+                    String key = uuid.toString();
+                    update.setLong(1, now);
+                    update.setString(2, key);
+                    update.addBatch();
+                    insert.setString(1, key);
+                    insert.setLong(2, now);
+                    insert.setString(3, key);
+                    insert.addBatch();
+                }
+                update.executeBatch();
+                insert.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to record payments: " + e.getMessage(), e);
+        }
+    }
+}
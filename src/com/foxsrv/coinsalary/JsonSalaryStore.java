@@ -0,0 +1,120 @@
+package com.foxsrv.coinsalary;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Formato original: last_salary.dat em JSON, reescrito inteiro a cada gravacao.
+ * Continua sendo o padrao para quem ja tem o arquivo e para edicao manual.
+ */
+final class JsonSalaryStore implements SalaryStore {
+
+    private final File file;
+
+    JsonSalaryStore(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public String describe() {
+        return "json (" + file.getName() + ")";
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !file.exists();
+    }
+
+    /**
+     * Le o arquivo em streaming (JsonReader), sem montar a arvore inteira em memoria
+     */
+    @Override
+    public Snapshot load() throws IOException {
+        Map<UUID, Long> payments = new HashMap<>();
+        long lastTaskRun = 0L;
+        int invalid = 0;
+        if (!file.exists()) {
+            return new Snapshot(payments, lastTaskRun, invalid);
+        }
+
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (name.equals("lastPayments")) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        try {
+                            UUID uuid = UUID.fromString(key);
+                            long timestamp = reader.nextLong();
+                            payments.merge(uuid, timestamp, Math::max);
+                        } catch (IllegalArgumentException | IllegalStateException e) {
+                            // UUID ou valor invalido - pular o valor e seguir
+                            reader.skipValue();
+                            invalid++;
+                        }
+                    }
+                    reader.endObject();
+                } else if (name.equals("lastTaskRun")) {
+                    lastTaskRun = reader.nextLong();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed " + file.getName() + ": " + e.getMessage(), e);
+        }
+        return new Snapshot(payments, lastTaskRun, invalid);
+    }
+
+    /**
+     * Grava em arquivo temporario, faz fsync e troca pelo arquivo real com rename atomico.
+     * Um crash no meio da gravacao nunca deixa o last_salary.dat corrompido.
+     */
+    @Override
+    public void save(Map<UUID, Long> all, Map<UUID, Long> changed, long lastTaskRun) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))) {
+            writer.beginObject();
+            writer.name("lastPayments").beginObject();
+            for (Map.Entry<UUID, Long> entry : all.entrySet()) {
+                writer.name(entry.getKey().toString()).value(entry.getValue());
+            }
+            writer.endObject();
+            writer.name("lastTaskRun").value(lastTaskRun);
+            writer.endObject();
+            writer.flush();
+            out.getChannel().force(true);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
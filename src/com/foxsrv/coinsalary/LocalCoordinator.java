@@ -0,0 +1,74 @@
+package com.foxsrv.coinsalary;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Um servidor so: sempre lider, ultimo pagamento no mapa em memoria
+ * (persistido em last_salary.dat pelo plugin).
+ */
+final class LocalCoordinator implements Coordinator {
+
+    private final String nodeId;
+    private final ConcurrentHashMap<UUID, Long> lastPayments;
+
+    LocalCoordinator(String nodeId, ConcurrentHashMap<UUID, Long> lastPayments) {
+        this.nodeId = nodeId;
+        this.lastPayments = lastPayments;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String describe() {
+        return "local";
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void heartbeat(long now) {
+    }
+
+    @Override
+    public boolean isLeader() {
+        return true;
+    }
+
+    @Override
+    public List<String> liveNodes() {
+        return Collections.singletonList(nodeId);
+    }
+
+    @Override
+    public Set<UUID> claimDue(Collection<UUID> players, long now, long intervalMs) {
+        Set<UUID> claimed = new HashSet<>();
+        for (UUID uuid : players) {
+            // compute e atomico por chave: ciclo e lote de entrada nunca marcam o mesmo jogador duas vezes
+            lastPayments.compute(uuid, (key, lastPaid) -> {
+                if (lastPaid != null && now - lastPaid < intervalMs) {
+                    return lastPaid;
+                }
+                claimed.add(key);
+                return now;
+            });
+        }
+        return claimed;
+    }
+
+    @Override
+    public void recordPayments(Collection<UUID> players, long now) {
+        for (UUID uuid : players) {
+            lastPayments.put(uuid, now);
+        }
+    }
+}
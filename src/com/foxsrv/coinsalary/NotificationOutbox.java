@@ -0,0 +1,225 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Avisos aos jogadores (salario recebido, falha, sem card).
+ *
+ * Qualquer thread so faz offer na fila sem lock; uma unica task na main thread
+ * (flush, todo tick) junta os avisos por jogador - varios pagamentos viram uma
+ * mensagem so - e envia no maximo perTick jogadores por tick. O resto fica para
+ * o proximo tick, na ordem de chegada.
+ */
+final class NotificationOutbox {
+
+    enum Mode {
+        CHAT, ACTIONBAR, SILENT;
+
+        static Mode parse(String text) {
+            if (text == null) return CHAT;
+            switch (text.trim().toLowerCase(Locale.ROOT).replace("-", "").replace("_", "")) {
+                case "actionbar":
+                    return ACTIONBAR;
+                case "silent":
+                case "off":
+                case "none":
+                    return SILENT;
+                default:
+                    return CHAT;
+            }
+        }
+    }
+
+    private enum Kind { PAID, FAILED, NO_CARD }
+
+    private static final class Notice {
+        final UUID uuid;
+        final Kind kind;
+        final long units;
+        final String detail;
+
+        Notice(UUID uuid, Kind kind, long units, String detail) {
+            this.uuid = uuid;
+            this.kind = kind;
+            this.units = units;
+            this.detail = detail;
+        }
+    }
+
+    // Avisos de um jogador juntados ate o envio
+    private static final class Pending {
+        int paid;
+        long paidUnits;
+        String txId;
+        int failed;
+        String lastError;
+        boolean noCard;
+    }
+
+    // Avisos lidos da fila por tick no maximo (limita o custo do flush numa rajada)
+    private static final int MAX_DRAIN_PER_TICK = 10_000;
+
+    private final Logger logger;
+    private final ConcurrentLinkedQueue<Notice> queue = new ConcurrentLinkedQueue<>();
+    // So a main thread usa
+    private final LinkedHashMap<UUID, Pending> pending = new LinkedHashMap<>();
+
+    volatile Mode mode = Mode.CHAT;
+    volatile int perTick = 50;
+
+    NotificationOutbox(Logger logger) {
+        this.logger = logger;
+    }
+
+    // ====================================================
+    // OFFER (qualquer thread)
+    // ====================================================
+
+    void paid(UUID uuid, long units, String txId) {
+        offer(new Notice(uuid, Kind.PAID, units, txId));
+    }
+
+    void failed(UUID uuid, String error) {
+        offer(new Notice(uuid, Kind.FAILED, 0L, error));
+    }
+
+    void noCard(UUID uuid) {
+        offer(new Notice(uuid, Kind.NO_CARD, 0L, null));
+    }
+
+    private void offer(Notice notice) {
+        if (mode == Mode.SILENT) return;
+        queue.offer(notice);
+    }
+
+    // ====================================================
+    // FLUSH (main thread, todo tick)
+    // ====================================================
+
+    /**
+     * Envia ate limit jogadores (perTick, reduzido pelo throttle do tick).
+     * Retorna quantas mensagens foram enviadas.
+     */
+    int flush(int limit) {
+        if (queue.isEmpty() && pending.isEmpty()) return 0;
+
+        Notice notice;
+        int drained = 0;
+        while (drained < MAX_DRAIN_PER_TICK && (notice = queue.poll()) != null) {
+            merge(notice);
+            drained++;
+        }
+
+        Mode current = mode;
+        if (current == Mode.SILENT) {
+            pending.clear();
+            queue.clear();
+            return 0;
+        }
+
+        int sent = 0;
+        int budget = Math.max(1, limit);
+        for (Iterator<Map.Entry<UUID, Pending>> it = pending.entrySet().iterator(); it.hasNext() && sent < budget; ) {
+            Map.Entry<UUID, Pending> entry = it.next();
+            it.remove();
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player == null) continue; // Saiu antes do aviso: nada a mostrar
+
+            send(player, entry.getValue(), current);
+            sent++;
+        }
+        return sent;
+    }
+
+    int backlog() {
+        return queue.size() + pending.size();
+    }
+
+    private void merge(Notice notice) {
+        Pending entry = pending.computeIfAbsent(notice.uuid, uuid -> new Pending());
+        switch (notice.kind) {
+            case PAID:
+                entry.paid++;
+                entry.paidUnits += notice.units;
+                entry.txId = notice.detail;
+                break;
+            case FAILED:
+                entry.failed++;
+                entry.lastError = notice.detail;
+                break;
+            case NO_CARD:
+                entry.noCard = true;
+                break;
+        }
+    }
+
+    private void send(Player player, Pending entry, Mode mode) {
+        List<String> lines = new ArrayList<>(3);
+        if (entry.paid == 1) {
+            lines.add(ChatColor.GREEN + "You received salary: " + ChatColor.YELLOW + CoinAmount.ofUnits(entry.paidUnits) +
+                    ChatColor.GREEN + " coins! Transaction: " + ChatColor.AQUA + (entry.txId != null ? entry.txId : "-"));
+        } else if (entry.paid > 1) {
+            lines.add(ChatColor.GREEN + "You received salary: " + ChatColor.YELLOW + CoinAmount.ofUnits(entry.paidUnits) +
+                    ChatColor.GREEN + " coins in " + entry.paid + " payments!");
+        }
+        if (entry.failed > 0) {
+            lines.add(ChatColor.RED + "Failed to receive salary: " + entry.lastError +
+                    (entry.failed > 1 ? " (" + entry.failed + " payments)" : ""));
+        }
+        if (entry.noCard) {
+            lines.add(ChatColor.RED + "You don't have a card set! Use /coin card <card> to receive salary.");
+        }
+
+        if (mode == Mode.ACTIONBAR && sendActionBar(player, String.join(ChatColor.GRAY + " | ", lines))) {
+            return;
+        }
+        for (String line : lines) {
+            player.sendMessage(line);
+        }
+    }
+
+    // ====================================================
+    // ACTION BAR
+    // ====================================================
+    // A API de chat do BungeeCord vem com o Spigot em runtime, mas nao no jar da API usado
+    // para compilar - resolvida por reflexao uma vez (como o hook do LuckPerms)
+
+    private Object actionBarType;
+    private Method fromLegacyText;
+    private Method spigotSendMessage;
+    private boolean actionBarResolved;
+
+    private boolean sendActionBar(Player player, String text) {
+        if (!actionBarResolved) {
+            actionBarResolved = true;
+            try {
+                Class<?> typeClass = Class.forName("net.md_5.bungee.api.ChatMessageType");
+                Class<?> componentClass = Class.forName("net.md_5.bungee.api.chat.BaseComponent");
+                actionBarType = typeClass.getField("ACTION_BAR").get(null);
+                fromLegacyText = Class.forName("net.md_5.bungee.api.chat.TextComponent")
+                        .getMethod("fromLegacyText", String.class);
+                spigotSendMessage = Player.Spigot.class.getMethod("sendMessage", typeClass,
+                        Array.newInstance(componentClass, 0).getClass());
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warning("Action bar unavailable, notifications fall back to chat: " + e);
+                spigotSendMessage = null;
+            }
+        }
+        if (spigotSendMessage == null) return false;
+
+        try {
+            spigotSendMessage.invoke(player.spigot(), actionBarType, fromLegacyText.invoke(null, text));
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
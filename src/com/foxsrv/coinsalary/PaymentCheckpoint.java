@@ -0,0 +1,282 @@
+package com.foxsrv.coinsalary;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Pagamentos que sobraram no desligamento (pending_payments.json).
+ *
+ * QUEUED nunca saiu para o CoinCard: e seguro pagar de novo no proximo enable.
+ * UNKNOWN foi enviado e nao teve resposta (drain estourou o prazo ou timeout sem
+ * callback tardio): o CoinCard pode ou nao ter transferido, entao so volta para a
+ * fila depois de conferido no ledger ou se a config mandar repetir.
+ */
+final class PaymentCheckpoint {
+
+    enum State { QUEUED, UNKNOWN }
+
+    static final class Entry {
+        final State state;
+        final UUID uuid;
+        final String playerName;
+        final String playerCardId;
+        final long amountUnits;
+        final long cycleId;
+        final String sourceCard;
+        final long sentAt; // 0 para QUEUED
+        final List<String> groups;
+
+        Entry(State state, UUID uuid, String playerName, String playerCardId, long amountUnits,
+              long cycleId, String sourceCard, long sentAt, List<String> groups) {
+            this.state = state;
+            this.uuid = uuid;
+            this.playerName = playerName;
+            this.playerCardId = playerCardId;
+            this.amountUnits = amountUnits;
+            this.cycleId = cycleId;
+            this.sourceCard = sourceCard;
+            this.sentAt = sentAt;
+            this.groups = groups;
+        }
+
+        static Entry of(PaymentTask task, State state) {
+            FundingCard source = task.source;
+            return new Entry(state, task.uuid, task.playerName, task.playerCardId, task.amount.units(),
+                    task.cycleId, source != null ? source.cardId : null, task.sentAt, task.groups);
+        }
+    }
+
+    /**
+     * Entradas geradas durante a gravacao (a fila pode estar em parte no disco)
+     */
+    interface Source {
+        void forEach(Sink sink) throws IOException;
+    }
+
+    interface Sink {
+        void accept(Entry entry) throws IOException;
+    }
+
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    PaymentCheckpoint(File file) {
+        this.file = file;
+    }
+
+    File file() {
+        return file;
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Grava em temporario com fsync e troca com rename atomico (como o last_salary.dat).
+     * As entradas sao escritas conforme a fonte entrega, sem lista intermediaria.
+     * Retorna quantas foram gravadas.
+     */
+    int write(Source entries, long savedAt) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        int[] written = {0};
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)))) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("version").value(VERSION);
+            writer.name("savedAt").value(savedAt);
+            writer.name("payments").beginArray();
+            entries.forEach(entry -> {
+                writer.beginObject();
+                writer.name("state").value(entry.state.name().toLowerCase(Locale.ROOT));
+                writer.name("uuid").value(entry.uuid.toString());
+                writer.name("name").value(entry.playerName);
+                writer.name("card").value(entry.playerCardId);
+                writer.name("units").value(entry.amountUnits);
+                writer.name("amount").value(CoinAmount.ofUnits(entry.amountUnits).toString()); // so para leitura
+                writer.name("cycle").value(entry.cycleId);
+                if (entry.sourceCard != null) writer.name("source").value(entry.sourceCard);
+                if (entry.sentAt != 0L) writer.name("sentAt").value(entry.sentAt);
+                if (entry.groups != null) {
+                    writer.name("groups").beginArray();
+                    for (String group : entry.groups) {
+                        writer.value(group);
+                    }
+                    writer.endArray();
+                }
+                writer.endObject();
+                written[0]++;
+            });
+            writer.endArray();
+            writer.endObject();
+            writer.flush();
+            out.getChannel().force(true);
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return written[0];
+    }
+
+    /**
+     * Le o checkpoint. Entradas invalidas sao puladas (e contadas no log de quem chama
+     * pela diferenca); arquivo ilegivel lanca IOException e fica no disco.
+     */
+    List<Entry> read() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("payments")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Entry entry = readEntry(reader);
+                        if (entry != null) {
+                            entries.add(entry);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed " + file.getName() + ": " + e.getMessage(), e);
+        }
+        return entries;
+    }
+
+    private static Entry readEntry(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        State state = State.QUEUED;
+        UUID uuid = null;
+        String name = null;
+        String card = null;
+        long units = 0L;
+        long cycleId = PaymentTask.MANUAL_CYCLE_ID;
+        String source = null;
+        long sentAt = 0L;
+        List<String> groups = null;
+        boolean invalid = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            // Cada campo e consumido inteiro antes de validar: um valor ruim descarta so esta entrada
+            try {
+                switch (field) {
+                    case "state":
+                        state = State.valueOf(scalar(reader).toUpperCase(Locale.ROOT));
+                        break;
+                    case "uuid":
+                        uuid = UUID.fromString(scalar(reader));
+                        break;
+                    case "name":
+                        name = scalar(reader);
+                        break;
+                    case "card":
+                        card = scalar(reader);
+                        break;
+                    case "units":
+                        units = Long.parseLong(scalar(reader));
+                        break;
+                    case "cycle":
+                        cycleId = Long.parseLong(scalar(reader));
+                        break;
+                    case "source":
+                        source = scalar(reader);
+                        break;
+                    case "sentAt":
+                        sentAt = Long.parseLong(scalar(reader));
+                        break;
+                    case "groups":
+                        groups = readGroups(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                // UUID, estado ou numero invalido (NumberFormatException inclusive): a entrada inteira e descartada
+                invalid = true;
+            }
+        }
+        reader.endObject();
+
+        if (invalid || uuid == null || card == null || units <= 0L) return null;
+        return new Entry(state, uuid, name != null ? name : uuid.toString(), card, units, cycleId, source, sentAt,
+                groups != null ? Collections.unmodifiableList(groups) : Collections.emptyList());
+    }
+
+    /**
+     * Texto de um valor simples (string ou numero). Outro tipo e pulado e lanca
+     * IllegalArgumentException - o valor sempre sai do reader.
+     */
+    private static String scalar(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        throw new IllegalArgumentException("Expected a string or number but was " + token);
+    }
+
+    /**
+     * Lista de grupos, lida ate o fim mesmo com elementos invalidos (lanca depois)
+     */
+    private static List<String> readGroups(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            throw new IllegalArgumentException("Expected an array of groups");
+        }
+        List<String> groups = new ArrayList<>();
+        boolean invalid = false;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            JsonToken token = reader.peek();
+            if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                groups.add(reader.nextString());
+            } else {
+                reader.skipValue();
+                invalid = true;
+            }
+        }
+        reader.endArray();
+        if (invalid) throw new IllegalArgumentException("Invalid group name");
+        return groups;
+    }
+
+    void delete() {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Junta os pagamentos para o SalaryPaymentBatchEvent.
+ *
+ * record() e chamado no caminho de pagamento (threads da fila e callbacks do CoinCard):
+ * sem ouvinte registrado e so a leitura do array de ouvintes do HandlerList (ja montado);
+ * com ouvinte, um objeto numa fila sem lock. Um ouvinte registrado depois do enable passa
+ * a receber ja no pagamento seguinte. flush() roda numa task assincrona a cada segundo
+ * (e uma ultima vez no desligamento) e chama o evento em lotes de MAX_BATCH. Ouvintes lentos nunca seguram pagamento: passando
+ * de MAX_PENDING os registros novos sao descartados e contados no proximo evento.
+ */
+final class PaymentEvents {
+
+    private static final int MAX_PENDING = 50_000;
+
+    private final ConcurrentLinkedQueue<SalaryPaymentBatchEvent.Payment> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // ====================================================
+    // RECORD (qualquer thread)
+    // ====================================================
+
+    void record(SalaryPaymentBatchEvent.Status status, PaymentTask task, String fundingCard, String detail) {
+        if (!listening()) return;
+        if (size.incrementAndGet() > MAX_PENDING) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        pending.add(new SalaryPaymentBatchEvent.Payment(status, task.uuid, task.playerName, task.amount.units(),
+                task.cycleId, fundingCard, detail, System.currentTimeMillis()));
+    }
+
+    // ====================================================
+    // FLUSH (task assincrona)
+    // ====================================================
+
+    /**
+     * Chama os eventos pendentes - SOMENTE fora da main thread (evento assincrono)
+     */
+    void flush() {
+        if (!listening()) {
+            // Ultimo ouvinte saiu: o que sobrou nao tem para quem ir
+            while (pending.poll() != null) {
+                size.decrementAndGet();
+            }
+            dropped.set(0L);
+            return;
+        }
+
+        while (true) {
+            List<SalaryPaymentBatchEvent.Payment> batch = new ArrayList<>(Math.min(size.get(), SalaryPaymentBatchEvent.MAX_BATCH));
+            SalaryPaymentBatchEvent.Payment payment;
+            while (batch.size() < SalaryPaymentBatchEvent.MAX_BATCH && (payment = pending.poll()) != null) {
+                batch.add(payment);
+                size.decrementAndGet();
+            }
+            long lost = dropped.getAndSet(0L);
+            if (batch.isEmpty() && lost == 0L) return;
+
+            Bukkit.getPluginManager().callEvent(new SalaryPaymentBatchEvent(Collections.unmodifiableList(batch), lost));
+            if (batch.size() < SalaryPaymentBatchEvent.MAX_BATCH) return;
+        }
+    }
+
+    private static boolean listening() {
+        return SalaryPaymentBatchEvent.getHandlerList().getRegisteredListeners().length > 0;
+    }
+}
@@ -0,0 +1,657 @@
+package com.foxsrv.coinsalary;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Livro-razao de pagamentos: log binario append-only dividido em segmentos.
+ *
+ * Cada transferencia (sucesso, falha ou timeout) vira um registro com uuid, ciclo,
+ * valor, txId/erro, status e latencia. Cada segmento mantem indices esparsos em
+ * memoria (um ponto a cada TIME_INDEX_STRIDE registros para busca por tempo e um
+ * bloom filter de UUIDs), gravados em um .idx quando o segmento e fechado. Assim
+ * /salary history e o resumo de um ciclo leem apenas os segmentos que interessam.
+ *
+ * Todos os metodos sao synchronized: as gravacoes sao poucas (uma por pagamento)
+ * e as consultas sao rapidas por causa dos indices.
+ *
+ * Callback que chega depois do TIMEOUT: o resultado real e gravado com a marca
+ * supersedesTimeout e vale no lugar do TIMEOUT anterior do mesmo jogador, ciclo e
+ * valor. history e summarize mostram/contam so o resultado real.
+ */
+final class PaymentLedger {
+
+    enum Status {
+        SUCCESS, FAILED, TIMEOUT;
+
+        static Status of(int ordinal) {
+            Status[] values = values();
+            return ordinal >= 0 && ordinal < values.length ? values[ordinal] : FAILED;
+        }
+    }
+
+    /**
+     * Um registro do ledger
+     */
+    static final class Entry {
+        final long timestamp;
+        final UUID uuid;
+        final long cycleId;
+        final long amountUnits;
+        final int latencyMs;
+        final Status status;
+        final String reference; // txId no sucesso, mensagem de erro na falha
+        final boolean supersedesTimeout; // resultado tardio: substitui o TIMEOUT deste pagamento
+
+        Entry(long timestamp, UUID uuid, long cycleId, long amountUnits, int latencyMs, Status status, String reference) {
+            this(timestamp, uuid, cycleId, amountUnits, latencyMs, status, reference, false);
+        }
+
+        Entry(long timestamp, UUID uuid, long cycleId, long amountUnits, int latencyMs, Status status, String reference,
+              boolean supersedesTimeout) {
+            this.supersedesTimeout = supersedesTimeout;
+            this.timestamp = timestamp;
+            this.uuid = uuid;
+            this.cycleId = cycleId;
+            this.amountUnits = amountUnits;
+            this.latencyMs = latencyMs;
+            this.status = status;
+            this.reference = reference != null ? reference : "";
+        }
+    }
+
+    /**
+     * O registro e o TIMEOUT que um resultado tardio substitui
+     */
+    private static boolean isSupersededBy(Entry timeout, Entry late) {
+        return timeout.status == Status.TIMEOUT && timeout.cycleId == late.cycleId
+                && timeout.amountUnits == late.amountUnits;
+    }
+
+    /**
+     * Resumo de um ciclo calculado a partir do ledger
+     */
+    static final class CycleSummary {
+        final long cycleId;
+        int records;
+        int paid;
+        int failed;
+        int timedOut;
+        long paidUnits;
+        long totalLatencyMs;
+        int maxLatencyMs;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        CycleSummary(long cycleId) {
+            this.cycleId = cycleId;
+        }
+    }
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_MAGIC = 0x43534C49; // "CSLI"
+    private static final int INDEX_VERSION = 1;
+
+    // int len + long ts + long msb + long lsb + long cycle + long amount + int latency + byte status + short refLen
+    private static final int HEADER_BYTES = 4 + 8 * 5 + 4 + 1 + 2;
+    private static final int MAX_REFERENCE_BYTES = 255;
+    // No byte de status: resultado tardio que substitui um TIMEOUT (versoes antigas leem como FAILED)
+    private static final int SUPERSEDES_TIMEOUT_FLAG = 0x40;
+    private static final int STATUS_MASK = 0x3F;
+
+    private static final int TIME_INDEX_STRIDE = 256;
+    private static final int BLOOM_BITS = 1 << 16;
+    private static final int BLOOM_HASHES = 3;
+
+    private final File directory;
+    private final Logger logger;
+    private final long segmentMaxBytes;
+    private final long retentionMs;
+
+    // Do mais antigo para o mais novo; o ultimo e o segmento ativo
+    private final List<Segment> segments = new ArrayList<>();
+    private DataOutputStream out;
+
+    PaymentLedger(File directory, Logger logger, long segmentMaxBytes, long retentionMs) {
+        this.directory = directory;
+        this.logger = logger;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.retentionMs = retentionMs;
+    }
+
+    // ====================================================
+    // OPEN / CLOSE
+    // ====================================================
+
+    synchronized void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create ledger directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<Long> ids = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    ids.add(Long.parseLong(file.getName().substring(SEGMENT_PREFIX.length(),
+                            file.getName().length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i++) {
+            boolean active = i == ids.size() - 1;
+            Segment segment = new Segment(ids.get(i), segmentFile(ids.get(i)));
+            // Segmento fechado com indice valido: nao precisa ler o log
+            if (active || !segment.readIndex()) {
+                segment.rebuild(active);
+            }
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(new Segment(1L, segmentFile(1L)));
+        }
+        openActiveStream();
+        compact();
+    }
+
+    synchronized void close() {
+        if (out == null) return;
+        try {
+            out.flush();
+            active().writeIndex();
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close payment ledger", e);
+        }
+        out = null;
+    }
+
+    private void openActiveStream() throws IOException {
+        Segment active = active();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(active.file, true), 16 * 1024));
+    }
+
+    private Segment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format(Locale.ROOT, "%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    // ====================================================
+    // APPEND
+    // ====================================================
+
+    /**
+     * Acrescenta um registro e entrega ao sistema operacional (sem fsync por registro)
+     */
+    synchronized void append(Entry entry) throws IOException {
+        if (out == null) throw new IOException("Ledger is closed");
+
+        Segment active = active();
+        long offset = active.size;
+        int length = writeRecord(out, entry);
+        out.flush();
+        active.size += length;
+        active.add(offset, entry.timestamp, entry.uuid, entry.cycleId);
+
+        if (active.size >= segmentMaxBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * Fecha o segmento ativo (grava o indice) e abre o proximo
+     */
+    private void rotate() throws IOException {
+        Segment sealed = active();
+        out.close();
+        try (FileChannel channel = FileChannel.open(sealed.file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        sealed.writeIndex();
+
+        segments.add(new Segment(sealed.id + 1, segmentFile(sealed.id + 1)));
+        openActiveStream();
+    }
+
+    // ====================================================
+    // QUERIES
+    // ====================================================
+
+    /**
+     * Ultimos registros de um jogador, do mais novo para o mais antigo. Um TIMEOUT
+     * substituido por resultado tardio nao aparece: so o resultado real.
+     */
+    synchronized List<Entry> history(UUID uuid, int limit) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        // Resultados tardios cujo TIMEOUT ficou num segmento mais antigo
+        List<Entry> lateResults = new ArrayList<>();
+        for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+            Segment segment = segments.get(i);
+            if (!segment.mightContain(uuid)) continue;
+
+            List<Entry> matches = new ArrayList<>();
+            try (DataInputStream in = openAt(segment, 0L)) {
+                long offset = 0L;
+                while (offset < segment.size) {
+                    int length = in.readInt();
+                    long timestamp = in.readLong();
+                    long msb = in.readLong();
+                    long lsb = in.readLong();
+                    if (msb == uuid.getMostSignificantBits() && lsb == uuid.getLeastSignificantBits()) {
+                        Entry entry = readBody(in, timestamp, uuid);
+                        if (entry.supersedesTimeout && !removeSuperseded(matches, entry)) {
+                            lateResults.add(entry);
+                        }
+                        matches.add(entry);
+                    } else {
+                        in.skipNBytes(length - 28L);
+                    }
+                    offset += length;
+                }
+            }
+            for (int m = matches.size() - 1; m >= 0 && result.size() < limit; m--) {
+                Entry entry = matches.get(m);
+                if (entry.status == Status.TIMEOUT && lateResults.removeIf(late -> isSupersededBy(entry, late))) continue;
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tira de matches (ordem de gravacao) o TIMEOUT mais recente que o resultado tardio substitui
+     */
+    private static boolean removeSuperseded(List<Entry> matches, Entry late) {
+        for (int m = matches.size() - 1; m >= 0; m--) {
+            if (isSupersededBy(matches.get(m), late)) {
+                matches.remove(m);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Soma os registros de um ciclo. O id do ciclo e o horario de inicio, entao a
+     * leitura comeca no ponto do indice de tempo anterior ao inicio do ciclo.
+     */
+    synchronized CycleSummary summarize(long cycleId) throws IOException {
+        CycleSummary summary = new CycleSummary(cycleId);
+        for (Segment segment : segments) {
+            if (segment.records == 0 || cycleId < segment.minCycle || cycleId > segment.maxCycle) continue;
+
+            long offset = segment.seek(cycleId);
+            try (DataInputStream in = openAt(segment, offset)) {
+                while (offset < segment.size) {
+                    int length = in.readInt();
+                    long timestamp = in.readLong();
+                    UUID uuid = new UUID(in.readLong(), in.readLong());
+                    long recordCycle = in.readLong();
+                    if (recordCycle == cycleId) {
+                        long amount = in.readLong();
+                        int latency = in.readInt();
+                        int statusByte = in.readByte();
+                        in.skipNBytes(length - HEADER_BYTES + 2L);
+                        if ((statusByte & SUPERSEDES_TIMEOUT_FLAG) != 0 && summary.timedOut > 0) {
+                            // O TIMEOUT deste pagamento ja foi contado: o resultado real fica no lugar
+                            summary.timedOut--;
+                            summary.records--;
+                        }
+                        accumulate(summary, timestamp, amount, latency, Status.of(statusByte & STATUS_MASK));
+                    } else {
+                        in.skipNBytes(length - 36L);
+                    }
+                    offset += length;
+                }
+            }
+        }
+        return summary;
+    }
+
+    private static void accumulate(CycleSummary summary, long timestamp, long amount, int latency, Status status) {
+        summary.records++;
+        switch (status) {
+            case SUCCESS:
+                summary.paid++;
+                summary.paidUnits += amount;
+                break;
+            case FAILED:
+                summary.failed++;
+                break;
+            default:
+                summary.timedOut++;
+                break;
+        }
+        summary.totalLatencyMs += latency;
+        summary.maxLatencyMs = Math.max(summary.maxLatencyMs, latency);
+        summary.firstTimestamp = Math.min(summary.firstTimestamp, timestamp);
+        summary.lastTimestamp = Math.max(summary.lastTimestamp, timestamp);
+    }
+
+    synchronized long totalRecords() {
+        long total = 0;
+        for (Segment segment : segments) total += segment.records;
+        return total;
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private DataInputStream openAt(Segment segment, long offset) throws IOException {
+        FileInputStream stream = new FileInputStream(segment.file);
+        if (offset > 0) stream.getChannel().position(offset);
+        return new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+    }
+
+    // ====================================================
+    // COMPACTION
+    // ====================================================
+
+    /**
+     * Remove segmentos fora da retencao e junta segmentos fechados pequenos vizinhos.
+     * Os registros sao auto-delimitados, entao juntar e so concatenar os arquivos.
+     */
+    synchronized void compact() throws IOException {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        int removed = 0;
+        int merged = 0;
+
+        // Retencao: segmento fechado inteiro mais antigo que o limite
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == active()) break;
+            if (retentionMs > 0 && segment.records > 0 && segment.maxTime < cutoff) {
+                deleteSegment(segment);
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        // Juntar fechados pequenos (ex: sobras de rotacoes antigas com tamanho menor)
+        for (int i = 0; i + 2 < segments.size(); ) {
+            Segment first = segments.get(i);
+            Segment second = segments.get(i + 1);
+            if (first.size + second.size <= segmentMaxBytes / 2) {
+                mergeInto(first, second);
+                segments.remove(i + 1);
+                merged++;
+            } else {
+                i++;
+            }
+        }
+
+        if (removed > 0 || merged > 0) {
+            logger.info("Payment ledger compaction: removed " + removed + " expired segment(s), merged " + merged + " small segment(s)");
+        }
+    }
+
+    private void mergeInto(Segment target, Segment source) throws IOException {
+        try (FileOutputStream append = new FileOutputStream(target.file, true);
+             FileInputStream in = new FileInputStream(source.file)) {
+            in.getChannel().transferTo(0, source.size, append.getChannel());
+            append.getChannel().force(true);
+        }
+        deleteSegment(source);
+        target.rebuild(false);
+        target.writeIndex();
+    }
+
+    private void deleteSegment(Segment segment) {
+        if (!segment.file.delete() || (segment.indexFile().exists() && !segment.indexFile().delete())) {
+            logger.warning("Could not delete ledger segment " + segment.file.getName());
+        }
+    }
+
+    // ====================================================
+    // RECORD FORMAT
+    // ====================================================
+
+    private static int writeRecord(DataOutputStream out, Entry entry) throws IOException {
+        byte[] reference = entry.reference.getBytes(StandardCharsets.UTF_8);
+        if (reference.length > MAX_REFERENCE_BYTES) {
+            reference = Arrays.copyOf(reference, MAX_REFERENCE_BYTES);
+        }
+        int length = HEADER_BYTES + reference.length;
+
+        out.writeInt(length);
+        out.writeLong(entry.timestamp);
+        out.writeLong(entry.uuid.getMostSignificantBits());
+        out.writeLong(entry.uuid.getLeastSignificantBits());
+        out.writeLong(entry.cycleId);
+        out.writeLong(entry.amountUnits);
+        out.writeInt(entry.latencyMs);
+        out.writeByte(entry.status.ordinal() | (entry.supersedesTimeout ? SUPERSEDES_TIMEOUT_FLAG : 0));
+        out.writeShort(reference.length);
+        out.write(reference);
+        return length;
+    }
+
+    /**
+     * Le o resto de um registro depois de len/timestamp/uuid
+     */
+    private static Entry readBody(DataInputStream in, long timestamp, UUID uuid) throws IOException {
+        long cycleId = in.readLong();
+        long amount = in.readLong();
+        int latency = in.readInt();
+        int statusByte = in.readByte();
+        byte[] reference = new byte[in.readUnsignedShort()];
+        in.readFully(reference);
+        return new Entry(timestamp, uuid, cycleId, amount, latency, Status.of(statusByte & STATUS_MASK),
+                new String(reference, StandardCharsets.UTF_8), (statusByte & SUPERSEDES_TIMEOUT_FLAG) != 0);
+    }
+
+    // ====================================================
+    // SEGMENT + SPARSE INDEX
+    // ====================================================
+
+    private final class Segment {
+        final long id;
+        final File file;
+
+        long size;
+        int records;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        long minCycle = Long.MAX_VALUE;
+        long maxCycle = Long.MIN_VALUE;
+
+        long[] indexTimes = new long[16];
+        long[] indexOffsets = new long[16];
+        int indexSize;
+
+        final long[] bloom = new long[BLOOM_BITS / 64];
+
+        Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        File indexFile() {
+            String name = file.getName();
+            return new File(file.getParentFile(), name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+        }
+
+        void add(long offset, long timestamp, UUID uuid, long cycleId) {
+            if (records % TIME_INDEX_STRIDE == 0) {
+                if (indexSize == indexTimes.length) {
+                    indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+                    indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                }
+                indexTimes[indexSize] = timestamp;
+                indexOffsets[indexSize] = offset;
+                indexSize++;
+            }
+            records++;
+            minTime = Math.min(minTime, timestamp);
+            maxTime = Math.max(maxTime, timestamp);
+            minCycle = Math.min(minCycle, cycleId);
+            maxCycle = Math.max(maxCycle, cycleId);
+
+            long hash = mix(uuid);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (int) ((hash >>> (i * 16)) & (BLOOM_BITS - 1));
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(UUID uuid) {
+            if (records == 0) return false;
+            long hash = mix(uuid);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (int) ((hash >>> (i * 16)) & (BLOOM_BITS - 1));
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Offset do ultimo ponto indexado antes do horario (registros sao gravados em ordem de tempo)
+         */
+        long seek(long timestamp) {
+            int low = 0;
+            int high = indexSize - 1;
+            long offset = 0L;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexTimes[mid] < timestamp) {
+                    offset = indexOffsets[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * Reconstroi o indice lendo o log. No segmento ativo, corta um registro final incompleto (crash).
+         */
+        void rebuild(boolean truncateTail) throws IOException {
+            size = 0L;
+            records = 0;
+            indexSize = 0;
+            minTime = minCycle = Long.MAX_VALUE;
+            maxTime = maxCycle = Long.MIN_VALUE;
+            Arrays.fill(bloom, 0L);
+
+            if (!file.exists()) return;
+            long fileLength = file.length();
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+                while (size + HEADER_BYTES <= fileLength) {
+                    int length = in.readInt();
+                    if (length < HEADER_BYTES || length > HEADER_BYTES + MAX_REFERENCE_BYTES || size + length > fileLength) {
+                        break;
+                    }
+                    long timestamp = in.readLong();
+                    UUID uuid = new UUID(in.readLong(), in.readLong());
+                    long cycleId = in.readLong();
+                    in.skipNBytes(length - 36L);
+                    add(size, timestamp, uuid, cycleId);
+                    size += length;
+                }
+            } catch (EOFException ignored) {
+            }
+
+            if (size < fileLength) {
+                logger.warning("Ledger segment " + file.getName() + " has " + (fileLength - size) + " trailing bytes of a partial record" +
+                        (truncateTail ? ", truncating" : ""));
+                if (truncateTail) {
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        channel.truncate(size);
+                    }
+                }
+            }
+        }
+
+        void writeIndex() throws IOException {
+            File target = indexFile();
+            File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+            try (FileOutputStream stream = new FileOutputStream(temp);
+                 DataOutputStream index = new DataOutputStream(new BufferedOutputStream(stream))) {
+                index.writeInt(INDEX_MAGIC);
+                index.writeInt(INDEX_VERSION);
+                index.writeLong(size);
+                index.writeInt(records);
+                index.writeLong(minTime);
+                index.writeLong(maxTime);
+                index.writeLong(minCycle);
+                index.writeLong(maxCycle);
+                index.writeInt(indexSize);
+                for (int i = 0; i < indexSize; i++) {
+                    index.writeLong(indexTimes[i]);
+                    index.writeLong(indexOffsets[i]);
+                }
+                for (long word : bloom) {
+                    index.writeLong(word);
+                }
+                index.flush();
+                stream.getChannel().force(true);
+            }
+            if (!temp.renameTo(target)) {
+                target.delete();
+                if (!temp.renameTo(target)) {
+                    throw new IOException("Could not write ledger index " + target.getName());
+                }
+            }
+        }
+
+        /**
+         * Carrega o .idx; false se ausente, invalido ou de outro tamanho de log
+         */
+        boolean readIndex() {
+            File source = indexFile();
+            if (!source.exists()) return false;
+
+            try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+                if (index.readInt() != INDEX_MAGIC || index.readInt() != INDEX_VERSION) return false;
+                long indexedSize = index.readLong();
+                if (indexedSize != file.length()) return false;
+
+                size = indexedSize;
+                records = index.readInt();
+                minTime = index.readLong();
+                maxTime = index.readLong();
+                minCycle = index.readLong();
+                maxCycle = index.readLong();
+                indexSize = index.readInt();
+                indexTimes = new long[Math.max(16, indexSize)];
+                indexOffsets = new long[Math.max(16, indexSize)];
+                for (int i = 0; i < indexSize; i++) {
+                    indexTimes[i] = index.readLong();
+                    indexOffsets[i] = index.readLong();
+                }
+                for (int i = 0; i < bloom.length; i++) {
+                    bloom[i] = index.readLong();
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static long mix(UUID uuid) {
+        long h = uuid.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ uuid.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
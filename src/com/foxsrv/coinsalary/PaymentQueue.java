@@ -0,0 +1,482 @@
+package com.foxsrv.coinsalary;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Fila de pagamentos de um card com memoria limitada.
+ *
+ * Ate Settings.memoryEntries os pagamentos ficam em memoria (PaymentTask ja e so dado
+ * copiado: UUID, nome, card e valor em ponto fixo). Passando disso, os novos vao para
+ * segmentos sequenciais no disco (queue/<card>-.../NNNNNN.seg, registro binario
+ * compacto) e voltam em lotes, na mesma ordem, quando a parte em memoria cai pela
+ * metade. Enquanto houver algo no disco, tudo que chega vai para o disco tambem, entao
+ * a ordem de chegada e mantida. offerFirst (pagamento devolvido pelo processador)
+ * sempre fica na frente, em memoria.
+ *
+ * O relatorio do ciclo nao vai para o disco: fica numa tabela por cycleId com a
+ * contagem de registros que ainda apontam para ele.
+ */
+final class PaymentQueue {
+
+    /**
+     * Configuracao compartilhada pelas filas (Queue.* na config)
+     */
+    static final class Settings {
+        final File directory;
+        volatile int memoryEntries;
+
+        Settings(File directory, int memoryEntries) {
+            this.directory = directory;
+            this.memoryEntries = memoryEntries;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        int records;
+        // Ja lidos do inicio do arquivo (so o segmento em leitura)
+        int consumed;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Recebe os pagamentos de forEach; pode falhar com IOException (ex: gravando o checkpoint)
+     */
+    interface Visitor {
+        void visit(PaymentTask task) throws IOException;
+    }
+
+    private static final class ReportRef {
+        final CycleReport report;
+        int pending;
+
+        ReportRef(CycleReport report) {
+            this.report = report;
+        }
+    }
+
+    private static final int SEGMENT_RECORDS = 16_384;
+    private static final int FLAG_ONLINE = 1;
+    private static final int FLAG_REPORT = 2;
+    private static final int FLAG_GROUPS = 4;
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final FundingCard owner;
+    private final Settings settings;
+    private final String directoryName;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<PaymentTask> memory = new ArrayDeque<>();
+
+    // Disco (guardado pelo lock)
+    private File directory;
+    private final ArrayDeque<Segment> closed = new ArrayDeque<>();
+    private Segment writing;
+    private DataOutputStream out;
+    private Segment reading;
+    private DataInputStream in;
+    private int segmentSequence;
+    private long spilled;
+    private long spilledTotal;
+    private final Map<Long, ReportRef> reports = new HashMap<>();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private String spillError;
+
+    PaymentQueue(FundingCard owner, Settings settings) {
+        this.owner = owner;
+        this.settings = settings;
+        this.directoryName = owner.cardId.replaceAll("[^A-Za-z0-9._-]", "_") + "-" +
+                Long.toString(System.currentTimeMillis(), 36) + "-" + SEQUENCE.incrementAndGet();
+    }
+
+    // ====================================================
+    // FILA
+    // ====================================================
+
+    /**
+     * No fim da fila: em memoria se couber e nada estiver no disco, senao no disco.
+     * Falha de disco nunca perde o pagamento - ele fica em memoria e o erro e guardado.
+     */
+    void offer(PaymentTask task) {
+        lock.lock();
+        try {
+            if (spilled == 0 && memory.size() < settings.memoryEntries) {
+                memory.addLast(task);
+            } else {
+                try {
+                    spill(task);
+                } catch (IOException e) {
+                    spillError = e.getMessage();
+                    memory.addLast(task);
+                }
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Devolve para a frente da fila (sempre em memoria)
+     */
+    void offerFirst(PaymentTask task) {
+        lock.lock();
+        try {
+            memory.addFirst(task);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PaymentTask poll() {
+        lock.lock();
+        try {
+            refill();
+            return memory.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PaymentTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                refill();
+                PaymentTask task = memory.pollFirst();
+                if (task != null || nanos <= 0L) return task;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return memory.isEmpty() && spilled == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, memory.size() + spilled);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pagamentos que estao no disco agora
+     */
+    long spilled() {
+        lock.lock();
+        try {
+            return spilled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Total que ja passou pelo disco desde o enable
+     */
+    long spilledTotal() {
+        lock.lock();
+        try {
+            return spilledTotal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Percorre so a parte em memoria, na ordem (o que esta no disco vem depois dela)
+     */
+    void forEachInMemory(Consumer<PaymentTask> action) {
+        lock.lock();
+        try {
+            memory.forEach(action);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Percorre a fila inteira na ordem (memoria, segmento em leitura, fechados, em gravacao)
+     * sem consumir nada: os segmentos sao lidos por streams proprias e continuam no disco.
+     * Segmento ilegivel vira IOException, entao quem grava uma copia sabe que ela ficou incompleta.
+     */
+    void forEach(Visitor action) throws IOException {
+        lock.lock();
+        try {
+            for (PaymentTask task : memory) {
+                action.visit(task);
+            }
+            if (spilled == 0) return;
+
+            if (out != null) {
+                out.flush();
+            }
+            if (reading != null) {
+                visitSegment(reading, reading.consumed, action);
+            }
+            for (Segment segment : closed) {
+                visitSegment(segment, 0, action);
+            }
+            if (writing != null) {
+                visitSegment(writing, 0, action);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void visitSegment(Segment segment, int skip, Visitor action) throws IOException {
+        try (DataInputStream source = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(segment.file), 1 << 16))) {
+            for (int i = 0; i < skip; i++) {
+                readRecord(source, false);
+            }
+            for (int i = 0; i < segment.records; i++) {
+                action.visit(readRecord(source, false));
+            }
+        }
+    }
+
+    /**
+     * Ultimo erro de disco desde a ultima chamada (null se nenhum)
+     */
+    String takeSpillError() {
+        lock.lock();
+        try {
+            String error = spillError;
+            spillError = null;
+            return error;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fecha e apaga os segmentos (fila ja drenada, ou descartada no desligamento)
+     */
+    void close() {
+        lock.lock();
+        try {
+            closeQuietly(out);
+            closeQuietly(in);
+            out = null;
+            in = null;
+            if (writing != null) delete(writing.file);
+            if (reading != null) delete(reading.file);
+            for (Segment segment : closed) {
+                delete(segment.file);
+            }
+            writing = null;
+            reading = null;
+            closed.clear();
+            reports.clear();
+            spilled = 0;
+            removeDirectory();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ====================================================
+    // DISCO (com o lock)
+    // ====================================================
+
+    private void spill(PaymentTask task) throws IOException {
+        // Registro montado inteiro antes: um erro no meio nunca deixa meio registro no segmento
+        record.reset();
+        int flags = (task.isOnline ? FLAG_ONLINE : 0) | (task.report != null ? FLAG_REPORT : 0)
+                | (task.groups != null ? FLAG_GROUPS : 0);
+        recordOut.writeLong(task.uuid.getMostSignificantBits());
+        recordOut.writeLong(task.uuid.getLeastSignificantBits());
+        recordOut.writeLong(task.amount.units());
+        recordOut.writeLong(task.cycleId);
+        recordOut.writeByte(flags);
+        recordOut.writeUTF(task.playerCardId);
+        recordOut.writeUTF(task.playerName);
+        if (task.groups != null) {
+            recordOut.writeShort(task.groups.size());
+            for (String group : task.groups) {
+                recordOut.writeUTF(group);
+            }
+        }
+
+        if (writing == null) {
+            openWriter();
+        }
+        try {
+            record.writeTo(out);
+        } catch (IOException e) {
+            // Segmento fechado com os registros que ja tinha; o proximo abre outro
+            try {
+                rollWriter();
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+        if (task.report != null) {
+            reports.computeIfAbsent(task.cycleId, id -> new ReportRef(task.report)).pending++;
+        }
+
+        spilled++;
+        spilledTotal++;
+        if (++writing.records >= SEGMENT_RECORDS) {
+            rollWriter();
+        }
+    }
+
+    private void openWriter() throws IOException {
+        if (directory == null) {
+            directory = new File(settings.directory, directoryName);
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        Segment segment = new Segment(new File(directory, String.format(Locale.ROOT, "%06d.seg", ++segmentSequence)));
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.file), 1 << 16));
+        writing = segment;
+    }
+
+    private void rollWriter() throws IOException {
+        try {
+            out.close();
+        } finally {
+            out = null;
+            closed.addLast(writing);
+            writing = null;
+        }
+    }
+
+    /**
+     * Memoria caiu pela metade: traz o proximo lote do disco para o fim da parte em memoria
+     */
+    private void refill() {
+        int limit = Math.max(1, settings.memoryEntries);
+        if (spilled == 0 || memory.size() > limit / 2) return;
+
+        int wanted = limit - memory.size();
+        while (wanted > 0 && spilled > 0) {
+            try {
+                if (reading == null && !openReader()) break;
+                memory.addLast(readRecord(in, true));
+                spilled--;
+                wanted--;
+                reading.consumed++;
+                if (--reading.records == 0) {
+                    finishReader();
+                }
+            } catch (IOException e) {
+                // Segmento ilegivel: os registros restantes dele se perdem, o erro vai para o log
+                spillError = "unreadable queue segment " + (reading != null ? reading.file.getName() : "?") +
+                        ", " + (reading != null ? reading.records : 0) + " payment(s) lost: " + e.getMessage();
+                if (reading != null) {
+                    spilled -= reading.records;
+                    finishReader();
+                }
+            }
+        }
+        if (spilled == 0) {
+            // Tudo lido: apagar o que sobrou (segmento vazio em gravacao) e a pasta
+            close();
+        }
+    }
+
+    private boolean openReader() throws IOException {
+        if (closed.isEmpty()) {
+            if (writing == null) return false;
+            rollWriter();
+        }
+        Segment segment = closed.pollFirst();
+        reading = segment;
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 1 << 16));
+        return true;
+    }
+
+    private void finishReader() {
+        closeQuietly(in);
+        in = null;
+        delete(reading.file);
+        reading = null;
+    }
+
+    /**
+     * @param consume Saindo da fila (refill): solta a referencia ao relatorio do ciclo
+     */
+    private PaymentTask readRecord(DataInputStream source, boolean consume) throws IOException {
+        UUID uuid = new UUID(source.readLong(), source.readLong());
+        long units = source.readLong();
+        long cycleId = source.readLong();
+        int flags = source.readUnsignedByte();
+        String cardId = source.readUTF();
+        String name = source.readUTF();
+        List<String> groups = null;
+        if ((flags & FLAG_GROUPS) != 0) {
+            int count = source.readUnsignedShort();
+            groups = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                groups.add(source.readUTF());
+            }
+        }
+
+        CycleReport report = null;
+        if ((flags & FLAG_REPORT) != 0) {
+            ReportRef ref = reports.get(cycleId);
+            if (ref != null) {
+                report = ref.report;
+                if (consume && --ref.pending == 0) reports.remove(cycleId);
+            }
+        }
+        boolean online = (flags & FLAG_ONLINE) != 0;
+        PaymentTask task = report != null
+                ? new PaymentTask(uuid, name, online, CoinAmount.ofUnits(units), cardId, report, groups)
+                : new PaymentTask(uuid, name, online, CoinAmount.ofUnits(units), cardId, cycleId, groups);
+        task.source = owner;
+        return task;
+    }
+
+    private void removeDirectory() {
+        if (directory != null && directory.exists()) {
+            File[] leftover = directory.listFiles();
+            if (leftover == null || leftover.length == 0) {
+                delete(directory);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.foxsrv.coinsalary;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Um pagamento na fila de um card pagador. So dados copiados (UUID, nome, online no
+ * momento da captura): nada aqui chama a API do Bukkit fora da main thread.
+ */
+final class PaymentTask {
+
+    /** cycleId dos pagamentos manuais (/salary pay) */
+    static final long MANUAL_CYCLE_ID = 0L;
+
+    final CoinAmount amount;
+    final String playerCardId;
+    final String playerName;
+    final boolean isOnline;
+    final UUID uuid;
+    final long cycleId; // inicio do ciclo (ms) ou MANUAL_CYCLE_ID
+    final CycleReport report; // null para /salary pay
+    final List<String> groups;
+
+    // Card que vai pagar; muda se o pagamento for redistribuido (card fora do ar / sem saldo)
+    volatile FundingCard source;
+    // Momento em que a transferencia saiu para o CoinCard (0 = ainda na fila)
+    volatile long sentAt;
+
+    PaymentTask(UUID uuid, String playerName, boolean isOnline, CoinAmount amount, String playerCardId,
+                CycleReport report, List<String> groups) {
+        this(uuid, playerName, isOnline, amount, playerCardId, report != null ? report.cycleId : MANUAL_CYCLE_ID,
+                report, groups);
+    }
+
+    /**
+     * Pagamento retomado do checkpoint de desligamento: ciclo original, sem relatorio
+     */
+    PaymentTask(UUID uuid, String playerName, boolean isOnline, CoinAmount amount, String playerCardId,
+                long cycleId, List<String> groups) {
+        this(uuid, playerName, isOnline, amount, playerCardId, cycleId, null, groups);
+    }
+
+    private PaymentTask(UUID uuid, String playerName, boolean isOnline, CoinAmount amount, String playerCardId,
+                        long cycleId, CycleReport report, List<String> groups) {
+        this.amount = amount;
+        this.playerCardId = playerCardId;
+        this.playerName = playerName != null ? playerName : "Unknown";
+        this.isOnline = isOnline;
+        this.uuid = uuid;
+        this.cycleId = cycleId;
+        this.report = report;
+        this.groups = groups;
+    }
+}
@@ -0,0 +1,406 @@
+package com.foxsrv.coinsalary;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log do caminho de pagamento, fora das threads que pagam.
+ *
+ * As threads de pagamento so colocam um registro num ring buffer (sem lock; cheio =
+ * registro descartado, mas ainda somado no resumo). Uma thread propria drena o buffer e decide por
+ * evento: OFF ignora, SUMMARY so conta, SAMPLE conta e imprime uma fracao, ALL
+ * imprime tudo. As contagens viram uma linha de resumo ("paid 4,812 players in
+ * 3m 12s") quando a rajada acaba ou a janela fecha. Opcionalmente cada registro
+ * tambem vai para um arquivo JSON-lines.
+ */
+final class PayrollLog {
+
+    enum Event {
+        QUEUED, SENT, PAID, FAILED, TIMEOUT, NO_CARD;
+
+        String key() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    enum Verbosity {
+        OFF, SUMMARY, SAMPLE, ALL;
+
+        static Verbosity parse(String text, Verbosity fallback) {
+            if (text == null) return fallback;
+            try {
+                return valueOf(text.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return fallback;
+            }
+        }
+    }
+
+    private static final class Record {
+        final long time;
+        final Event event;
+        final String player;
+        final long units;
+        final String card;
+        final long cycleId;
+        final String detail;
+
+        Record(Event event, String player, long units, String card, long cycleId, String detail) {
+            this.time = System.currentTimeMillis();
+            this.event = event;
+            this.player = player;
+            this.units = units;
+            this.card = card;
+            this.cycleId = cycleId;
+            this.detail = detail;
+        }
+    }
+
+    // Rajada terminada: sem eventos por esse tempo, o resumo sai antes da janela fechar
+    private static final long IDLE_SUMMARY_MS = 5_000;
+    private static final long DRAIN_INTERVAL_MS = 200;
+
+    private final Logger logger;
+
+    // Ring buffer: varios produtores, um consumidor (a thread do log)
+    private final AtomicReferenceArray<Record> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+    // Descartados por evento: entram no resumo mesmo sem passar pelo buffer
+    private final AtomicLongArray droppedCounts = new AtomicLongArray(Event.values().length);
+    private final AtomicLongArray droppedUnits = new AtomicLongArray(Event.values().length);
+
+    // Config (trocada no reload)
+    private volatile Map<Event, Verbosity> verbosity = defaults();
+    private volatile double sampleRate = 0.01;
+    private volatile long summaryMs = 60_000;
+    private volatile File jsonFile;
+
+    // Agregado da janela atual (so a thread do log)
+    private final long[] counts = new long[Event.values().length];
+    private final long[] units = new long[Event.values().length];
+    private long windowStart;
+    private long firstEvent;
+    private long lastEvent;
+    private long reportedDropped;
+    private Writer jsonOut;
+    private File jsonOpen;
+
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    PayrollLog(Logger logger, int capacity) {
+        int size = Integer.highestOneBit(Math.max(64, capacity - 1)) << 1;
+        this.logger = logger;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    private static Map<Event, Verbosity> defaults() {
+        Map<Event, Verbosity> map = new EnumMap<>(Event.class);
+        map.put(Event.QUEUED, Verbosity.SUMMARY);
+        map.put(Event.SENT, Verbosity.OFF);
+        map.put(Event.PAID, Verbosity.SUMMARY);
+        map.put(Event.FAILED, Verbosity.ALL);
+        map.put(Event.TIMEOUT, Verbosity.ALL);
+        map.put(Event.NO_CARD, Verbosity.SUMMARY);
+        return map;
+    }
+
+    /**
+     * Aplica a config (pode ser chamado com o log rodando)
+     * @param levels nivel por evento (chave = Event.key()); ausentes ficam no padrao
+     * @param jsonFile arquivo JSON-lines ou null
+     */
+    void configure(Map<String, String> levels, double sampleRate, long summaryMs, File jsonFile) {
+        Map<Event, Verbosity> map = defaults();
+        for (Event event : Event.values()) {
+            map.put(event, Verbosity.parse(levels.get(event.key()), map.get(event)));
+        }
+        this.verbosity = map;
+        this.sampleRate = Math.max(0.0, Math.min(1.0, sampleRate));
+        this.summaryMs = Math.max(1_000, summaryMs);
+        this.jsonFile = jsonFile;
+    }
+
+    // ====================================================
+    // PRODUCERS (qualquer thread)
+    // ====================================================
+
+    void log(Event event, String player, long units, String card, long cycleId, String detail) {
+        if (verbosity.get(event) == Verbosity.OFF && jsonFile == null) return;
+
+        Record record = new Record(event, player, units, card, cycleId, detail);
+        long t;
+        do {
+            t = tail.get();
+            if (t - head >= slots.length()) {
+                dropped.increment();
+                if (verbosity.get(event) != Verbosity.OFF) {
+                    droppedCounts.incrementAndGet(event.ordinal());
+                    droppedUnits.addAndGet(event.ordinal(), units);
+                }
+                return;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        slots.lazySet((int) (t & mask), record);
+
+        // Buffer pela metade: acorda o consumidor antes do proximo intervalo
+        if (t - head == slots.length() >> 1) {
+            Thread thread = worker;
+            if (thread != null) LockSupport.unpark(thread);
+        }
+    }
+
+    // ====================================================
+    // CONSUMER
+    // ====================================================
+
+    void start() {
+        running = true;
+        Thread thread = new Thread(this::run, "CoinSalary-Log");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    /**
+     * Drena o que falta, imprime o ultimo resumo e fecha o arquivo
+     */
+    void stop() {
+        running = false;
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    private void run() {
+        windowStart = System.currentTimeMillis();
+        while (running) {
+            drain();
+            LockSupport.parkNanos(DRAIN_INTERVAL_MS * 1_000_000L);
+        }
+        drain();
+        summarize(System.currentTimeMillis());
+        closeJson();
+    }
+
+    private void drain() {
+        long now = System.currentTimeMillis();
+        Map<Event, Verbosity> levels = verbosity;
+        double rate = sampleRate;
+        boolean wroteJson = false;
+
+        Record record;
+        while ((record = poll()) != null) {
+            int index = record.event.ordinal();
+            Verbosity level = levels.get(record.event);
+            if (level != Verbosity.OFF) {
+                counts[index]++;
+                units[index] += record.units;
+                if (firstEvent == 0L) firstEvent = record.time;
+                lastEvent = record.time;
+            }
+            if (level == Verbosity.ALL || (level == Verbosity.SAMPLE && ThreadLocalRandom.current().nextDouble() < rate)) {
+                print(record, level == Verbosity.SAMPLE);
+            }
+            wroteJson |= writeJson(record);
+        }
+
+        if (wroteJson && jsonOut != null) {
+            try {
+                jsonOut.flush();
+            } catch (IOException e) {
+                jsonFailed(e);
+            }
+        }
+
+        // Resumo no fim da rajada ou quando a janela fecha
+        if (firstEvent != 0L && (now - lastEvent >= IDLE_SUMMARY_MS || now - windowStart >= summaryMs)) {
+            summarize(now);
+        }
+    }
+
+    private Record poll() {
+        int index = (int) (head & mask);
+        Record record = slots.get(index);
+        if (record == null) return null; // vazio, ou produtor ainda publicando este slot
+        slots.lazySet(index, null);
+        head = head + 1;
+        return record;
+    }
+
+    private void print(Record record, boolean sampled) {
+        StringBuilder line = new StringBuilder(96);
+        if (sampled) line.append("[sample] ");
+        switch (record.event) {
+            case QUEUED:
+                line.append("Queued ").append(CoinAmount.ofUnits(record.units)).append(" for ").append(record.player)
+                        .append(" on card ").append(record.card);
+                break;
+            case SENT:
+                line.append("Sending ").append(CoinAmount.ofUnits(record.units)).append(" to ").append(record.player)
+                        .append(" from card ").append(record.card);
+                break;
+            case PAID:
+                line.append("Paid ").append(CoinAmount.ofUnits(record.units)).append(" to ").append(record.player)
+                        .append(" tx=").append(record.detail);
+                break;
+            case FAILED:
+                line.append("Payment failed for ").append(record.player).append(": ").append(record.detail);
+                break;
+            case TIMEOUT:
+                line.append("Payment timeout for ").append(record.player).append(" (").append(record.detail).append(')');
+                break;
+            case NO_CARD:
+                line.append("Player ").append(record.player).append(" has no card set, skipping salary");
+                break;
+        }
+        Level level = record.event == Event.FAILED || record.event == Event.TIMEOUT ? Level.WARNING : Level.INFO;
+        logger.log(level, line.toString());
+    }
+
+    private void summarize(long now) {
+        long droppedNow = dropped.sum() - reportedDropped;
+        if (firstEvent == 0L && droppedNow == 0L) {
+            windowStart = now;
+            return;
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            long lost = droppedCounts.getAndSet(i, 0L);
+            if (lost == 0L) continue;
+            counts[i] += lost;
+            units[i] += droppedUnits.getAndSet(i, 0L);
+        }
+
+        StringBuilder line = new StringBuilder("Payments");
+        long span = Math.max(0L, lastEvent - firstEvent);
+        boolean first = true;
+        for (Event event : Event.values()) {
+            long count = counts[event.ordinal()];
+            if (count == 0L) continue;
+            line.append(first ? ": " : ", ");
+            first = false;
+            switch (event) {
+                case QUEUED:
+                    line.append("queued ").append(String.format(Locale.ROOT, "%,d", count));
+                    break;
+                case SENT:
+                    line.append("sent ").append(String.format(Locale.ROOT, "%,d", count));
+                    break;
+                case PAID:
+                    line.append("paid ").append(String.format(Locale.ROOT, "%,d", count)).append(" players (")
+                            .append(CoinAmount.ofUnits(units[event.ordinal()])).append(')');
+                    break;
+                case FAILED:
+                    line.append(String.format(Locale.ROOT, "%,d", count)).append(" failed");
+                    break;
+                case TIMEOUT:
+                    line.append(String.format(Locale.ROOT, "%,d", count)).append(" timed out");
+                    break;
+                case NO_CARD:
+                    line.append(String.format(Locale.ROOT, "%,d", count)).append(" without card");
+                    break;
+            }
+        }
+        if (!first) {
+            line.append(" in ").append(formatSpan(span));
+        }
+        if (droppedNow > 0L) {
+            line.append(first ? ": " : "; ").append(droppedNow).append(" log record(s) dropped (buffer full)");
+            reportedDropped += droppedNow;
+        }
+        logger.info(line.toString());
+
+        java.util.Arrays.fill(counts, 0L);
+        java.util.Arrays.fill(units, 0L);
+        firstEvent = 0L;
+        lastEvent = 0L;
+        windowStart = now;
+    }
+
+    private static String formatSpan(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) return seconds + "." + (millis % 1000) / 100 + "s";
+        if (seconds < 3600) return seconds / 60 + "m " + seconds % 60 + "s";
+        return seconds / 3600 + "h " + (seconds % 3600) / 60 + "m";
+    }
+
+    // ====================================================
+    // JSON LINES
+    // ====================================================
+
+    private boolean writeJson(Record record) {
+        File target = jsonFile;
+        if (target == null) {
+            closeJson();
+            return false;
+        }
+        try {
+            if (jsonOut == null || !target.equals(jsonOpen)) {
+                closeJson();
+                File parent = target.getParentFile();
+                if (parent != null && !parent.exists()) {
+                    parent.mkdirs();
+                }
+                jsonOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target, true), StandardCharsets.UTF_8));
+                jsonOpen = target;
+            }
+            JsonWriter writer = new JsonWriter(jsonOut);
+            writer.beginObject();
+            writer.name("ts").value(record.time);
+            writer.name("event").value(record.event.key());
+            writer.name("player").value(record.player);
+            if (record.units != 0L) writer.name("amount").value(CoinAmount.ofUnits(record.units).toString());
+            if (record.card != null) writer.name("card").value(record.card);
+            if (record.cycleId != 0L) writer.name("cycle").value(record.cycleId);
+            if (record.detail != null) writer.name("detail").value(record.detail);
+            writer.endObject();
+            // JsonWriter escreve direto no BufferedWriter: sem flush por registro, so no fim do drain
+            jsonOut.write('\n');
+            return true;
+        } catch (IOException e) {
+            jsonFailed(e);
+            return false;
+        }
+    }
+
+    private void jsonFailed(IOException e) {
+        logger.warning("Payment log file disabled after write error: " + e.getMessage());
+        jsonFile = null;
+        closeJson();
+    }
+
+    private void closeJson() {
+        if (jsonOut == null) return;
+        try {
+            jsonOut.close();
+        } catch (IOException ignored) {
+        }
+        jsonOut = null;
+        jsonOpen = null;
+    }
+}
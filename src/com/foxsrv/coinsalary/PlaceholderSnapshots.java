@@ -0,0 +1,103 @@
+package com.foxsrv.coinsalary;
+
+import java.util.*;
+
+/**
+ * Valores das placeholders ja calculados. As refreshes montam mapas novos fora do
+ * request e trocam a referencia (volatile); um request so faz um get no mapa e
+ * devolve uma String pronta - nunca consulta Vault, CoinCard ou a fila.
+ */
+final class PlaceholderSnapshots {
+
+    static final class Entry {
+        final String amount;
+        final String groups;
+
+        Entry(String amount, String groups) {
+            this.amount = amount;
+            this.groups = groups;
+        }
+    }
+
+    static final String NOT_QUEUED = "0";
+    private static final Entry UNKNOWN = new Entry("0", "none");
+
+    // Mapa vivo do plugin (so leitura aqui)
+    private final Map<UUID, Long> lastPayments;
+
+    private volatile Map<UUID, Entry> entries = Collections.emptyMap();
+    private volatile Map<UUID, String> queuePositions = Collections.emptyMap();
+    private volatile long nextRunAt;
+    private volatile long intervalMs;
+
+    PlaceholderSnapshots(Map<UUID, Long> lastPayments) {
+        this.lastPayments = lastPayments;
+    }
+
+    // ====================================================
+    // PUBLISH (threads de refresh)
+    // ====================================================
+
+    /**
+     * Refresh completo: substitui tudo (quem saiu do servidor some)
+     */
+    synchronized void publishAll(Map<UUID, Entry> fresh) {
+        entries = Collections.unmodifiableMap(new HashMap<>(fresh));
+    }
+
+    /**
+     * Refresh parcial (entradas, troca de grupo): copia e troca
+     */
+    synchronized void publish(Map<UUID, Entry> changed) {
+        if (changed.isEmpty()) return;
+        Map<UUID, Entry> copy = new HashMap<>(entries);
+        copy.putAll(changed);
+        entries = Collections.unmodifiableMap(copy);
+    }
+
+    void publishQueue(Map<UUID, String> positions) {
+        queuePositions = Collections.unmodifiableMap(positions);
+    }
+
+    void publishTiming(long nextRunAt, long intervalMs) {
+        this.nextRunAt = nextRunAt;
+        this.intervalMs = intervalMs;
+    }
+
+    // ====================================================
+    // READ (thread de quem pede a placeholder)
+    // ====================================================
+
+    String amount(UUID uuid) {
+        return entries.getOrDefault(uuid, UNKNOWN).amount;
+    }
+
+    String groups(UUID uuid) {
+        return entries.getOrDefault(uuid, UNKNOWN).groups;
+    }
+
+    String queuePosition(UUID uuid) {
+        return queuePositions.getOrDefault(uuid, NOT_QUEUED);
+    }
+
+    /**
+     * Segundos ate o primeiro ciclo em que o jogador ja esta devido
+     */
+    long secondsUntilNext(UUID uuid, long now) {
+        return Math.max(0L, (nextDueAt(nextRunAt, intervalMs, lastPayments.get(uuid)) - now) / 1000);
+    }
+
+    /**
+     * Horario do primeiro ciclo (a partir de runAt, de interval em interval) em que quem
+     * recebeu em lastPaid ja esta devido. Usado tambem pelo SalaryService.
+     */
+    static long nextDueAt(long runAt, long interval, Long lastPaid) {
+        if (lastPaid != null && interval > 0) {
+            long dueAt = lastPaid + interval;
+            if (dueAt > runAt) {
+                runAt += ((dueAt - runAt + interval - 1) / interval) * interval;
+            }
+        }
+        return runAt;
+    }
+}
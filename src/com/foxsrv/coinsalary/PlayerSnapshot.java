@@ -0,0 +1,157 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Jogadores de um ciclo, copiados uma vez na main thread: UUID, nome e se estava
+ * online no momento da captura, em arrays paralelos e imutaveis. Os offline (que
+ * custam leitura de disco) entram depois, ja fora da main thread (withOffline).
+ *
+ * Depois da captura o ciclo inteiro (cooldown, cards, fila) roda fora da main thread
+ * so sobre esses dados, sem tocar em Bukkit.getOnlinePlayers()/isOnline()/getPlayer().
+ * O flag online pode ficar velho durante o ciclo; quem precisa do Player de verdade
+ * (Vault, avisos) confere de novo na main thread.
+ */
+final class PlayerSnapshot {
+
+    static final PlayerSnapshot EMPTY = new PlayerSnapshot(new UUID[0], new String[0], new boolean[0], 0L);
+
+    private final UUID[] uuids;
+    private final String[] names;
+    private final boolean[] online;
+    private final long capturedAt;
+
+    private PlayerSnapshot(UUID[] uuids, String[] names, boolean[] online, long capturedAt) {
+        this.uuids = uuids;
+        this.names = names;
+        this.online = online;
+        this.capturedAt = capturedAt;
+    }
+
+    // ====================================================
+    // CAPTURA (main thread)
+    // ====================================================
+
+    /**
+     * Jogadores online agora - SOMENTE na main thread
+     */
+    static PlayerSnapshot online() {
+        return of(Bukkit.getOnlinePlayers());
+    }
+
+    /**
+     * Copia os jogadores informados - SOMENTE na main thread
+     */
+    static PlayerSnapshot of(Collection<? extends OfflinePlayer> players) {
+        int size = players.size();
+        UUID[] uuids = new UUID[size];
+        String[] names = new String[size];
+        boolean[] online = new boolean[size];
+        int i = 0;
+        for (OfflinePlayer player : players) {
+            uuids[i] = player.getUniqueId();
+            names[i] = player.getName();
+            online[i] = player.isOnline();
+            i++;
+        }
+        return new PlayerSnapshot(uuids, names, online, System.currentTimeMillis());
+    }
+
+    /**
+     * So UUIDs, sem nome e como offline (refresh de cache fora da main thread). O lookup
+     * em lote confere quem esta online quando chega na main thread.
+     */
+    static PlayerSnapshot ofOffline(Collection<UUID> players) {
+        UUID[] uuids = players.toArray(new UUID[0]);
+        return new PlayerSnapshot(uuids, new String[uuids.length], new boolean[uuids.length], System.currentTimeMillis());
+    }
+
+    /**
+     * Os online da captura mais todos que ja jogaram no servidor - FORA da main thread.
+     * No CraftBukkit getOfflinePlayers()/hasPlayedBefore() leem o playerdata do disco
+     * para cada jogador; o flag online vem da captura, sem isOnline().
+     */
+    static PlayerSnapshot withOffline(PlayerSnapshot online) {
+        OfflinePlayer[] all = Bukkit.getOfflinePlayers();
+        Set<UUID> captured = new HashSet<>(Arrays.asList(online.uuids));
+        int capacity = online.size() + all.length;
+        UUID[] uuids = Arrays.copyOf(online.uuids, capacity);
+        String[] names = Arrays.copyOf(online.names, capacity);
+        boolean[] flags = Arrays.copyOf(online.online, capacity);
+        int size = online.size();
+        for (OfflinePlayer player : all) {
+            UUID uuid = player.getUniqueId();
+            if (captured.contains(uuid) || !player.hasPlayedBefore()) continue;
+            uuids[size] = uuid;
+            names[size] = player.getName();
+            size++;
+        }
+        return new PlayerSnapshot(Arrays.copyOf(uuids, size), Arrays.copyOf(names, size),
+                Arrays.copyOf(flags, size), online.capturedAt);
+    }
+
+    // ====================================================
+    // LEITURA (qualquer thread)
+    // ====================================================
+
+    int size() {
+        return uuids.length;
+    }
+
+    boolean isEmpty() {
+        return uuids.length == 0;
+    }
+
+    UUID uuid(int index) {
+        return uuids[index];
+    }
+
+    /**
+     * Nome no momento da captura ("Unknown" se o servidor nao conhece)
+     */
+    String name(int index) {
+        String name = names[index];
+        return name != null ? name : "Unknown";
+    }
+
+    boolean isOnline(int index) {
+        return online[index];
+    }
+
+    long capturedAt() {
+        return capturedAt;
+    }
+
+    /**
+     * Visao somente leitura dos UUIDs, na ordem da captura
+     */
+    List<UUID> uuids() {
+        return Collections.unmodifiableList(Arrays.asList(uuids));
+    }
+
+    /**
+     * Subconjunto (mesma ordem e mesmo horario de captura) com os indices aceitos
+     */
+    PlayerSnapshot filter(IntPredicate keep) {
+        int[] kept = new int[uuids.length];
+        int size = 0;
+        for (int i = 0; i < uuids.length; i++) {
+            if (keep.test(i)) kept[size++] = i;
+        }
+        if (size == uuids.length) return this;
+
+        UUID[] keptUuids = new UUID[size];
+        String[] keptNames = new String[size];
+        boolean[] keptOnline = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            keptUuids[i] = uuids[kept[i]];
+            keptNames[i] = names[kept[i]];
+            keptOnline[i] = online[kept[i]];
+        }
+        return new PlayerSnapshot(keptUuids, keptNames, keptOnline, capturedAt);
+    }
+}
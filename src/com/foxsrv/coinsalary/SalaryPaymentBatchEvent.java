@@ -0,0 +1,134 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Pagamentos do CoinSalary desde o ultimo evento, em lote: os registros sao juntados e
+ * entregues a cada segundo, ate MAX_BATCH por evento (ciclos grandes viram varios
+ * eventos seguidos).
+ * Assincrono - chamado fora da main thread; nada e registrado enquanto nenhum plugin
+ * escuta este evento.
+ *
+ * Um pagamento pode aparecer mais de uma vez com status diferentes: QUEUED e depois
+ * PAID ou FAILED. TIMEOUT e resultado desconhecido e ainda pode ser seguido de PAID ou
+ * FAILED se o CoinCard responder atrasado.
+ */
+public final class SalaryPaymentBatchEvent extends Event {
+
+    public enum Status {
+        QUEUED, PAID, FAILED, TIMEOUT
+    }
+
+    public static final int MAX_BATCH = 1000;
+
+    /**
+     * Um evento de pagamento. O valor fica em unidades ate alguem pedir o BigDecimal.
+     */
+    public static final class Payment {
+        private final Status status;
+        private final UUID playerId;
+        private final String playerName;
+        private final long amountUnits;
+        private final long cycleId;
+        private final String fundingCard;
+        private final String detail;
+        private final long time;
+
+        Payment(Status status, UUID playerId, String playerName, long amountUnits, long cycleId,
+                String fundingCard, String detail, long time) {
+            this.status = status;
+            this.playerId = playerId;
+            this.playerName = playerName;
+            this.amountUnits = amountUnits;
+            this.cycleId = cycleId;
+            this.fundingCard = fundingCard;
+            this.detail = detail;
+            this.time = time;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public UUID getPlayerId() {
+            return playerId;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        public BigDecimal getAmount() {
+            return CoinAmount.ofUnits(amountUnits).toBigDecimal();
+        }
+
+        /**
+         * Inicio do ciclo (epoch ms), ou 0 para pagamentos manuais (/salary pay)
+         */
+        public long getCycleId() {
+            return cycleId;
+        }
+
+        /**
+         * Card que paga (ou pagou); pode mudar entre QUEUED e PAID se a fila for redistribuida
+         */
+        public String getFundingCard() {
+            return fundingCard;
+        }
+
+        /**
+         * Id da transacao (PAID), erro (FAILED/TIMEOUT), "resumed" (QUEUED vindo do
+         * checkpoint de desligamento) ou null
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        /**
+         * Quando aconteceu (epoch ms), nao quando o evento foi chamado
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final List<Payment> payments;
+    private final long dropped;
+
+    SalaryPaymentBatchEvent(List<Payment> payments, long dropped) {
+        super(true);
+        this.payments = payments;
+        this.dropped = dropped;
+    }
+
+    /**
+     * Pagamentos na ordem em que aconteceram; so leitura
+     */
+    public List<Payment> getPayments() {
+        return payments;
+    }
+
+    /**
+     * Registros descartados antes deste lote porque os ouvintes nao acompanharam
+     * (fila de eventos cheia). 0 no caso normal.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,61 @@
+package com.foxsrv.coinsalary;
+
+import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import org.bukkit.OfflinePlayer;
+
+/**
+ * %coinsalary_amount%, %coinsalary_next%, %coinsalary_groups%, %coinsalary_queue_position%
+ *
+ * Tudo vem de PlaceholderSnapshots - scoreboards atualizando todo tick nunca
+ * disparam consulta de grupo nem calculo de salario.
+ * So e carregada se o PlaceholderAPI estiver instalado.
+ */
+final class SalaryPlaceholderExpansion extends PlaceholderExpansion {
+
+    private final CoinSalary plugin;
+    private final PlaceholderSnapshots snapshots;
+
+    SalaryPlaceholderExpansion(CoinSalary plugin, PlaceholderSnapshots snapshots) {
+        this.plugin = plugin;
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    public String getIdentifier() {
+        return "coinsalary";
+    }
+
+    @Override
+    public String getAuthor() {
+        return String.join(", ", plugin.getDescription().getAuthors());
+    }
+
+    @Override
+    public String getVersion() {
+        return plugin.getDescription().getVersion();
+    }
+
+    // Registrada e removida pelo proprio CoinSalary, sobrevive a /papi reload
+    @Override
+    public boolean persist() {
+        return true;
+    }
+
+    @Override
+    public String onRequest(OfflinePlayer player, String params) {
+        if (player == null) return "";
+
+        switch (params) {
+            case "amount":
+                return snapshots.amount(player.getUniqueId());
+            case "next":
+                return plugin.formatTime(snapshots.secondsUntilNext(player.getUniqueId(), System.currentTimeMillis()));
+            case "groups":
+                return snapshots.groups(player.getUniqueId());
+            case "queue_position":
+                return snapshots.queuePosition(player.getUniqueId());
+            default:
+                return null;
+        }
+    }
+}
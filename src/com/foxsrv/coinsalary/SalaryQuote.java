@@ -0,0 +1,54 @@
+package com.foxsrv.coinsalary;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Salario de um jogador num momento: total e valor de cada grupo com salario configurado
+ * (na ordem dos grupos do jogador). Imutavel; valores com 8 casas decimais, como no CoinCard.
+ */
+public final class SalaryQuote {
+
+    private final UUID playerId;
+    private final BigDecimal amount;
+    private final Map<String, BigDecimal> groups;
+    private final long resolvedAt;
+
+    SalaryQuote(UUID playerId, BigDecimal amount, Map<String, BigDecimal> groups, long resolvedAt) {
+        this.playerId = playerId;
+        this.amount = amount;
+        this.groups = groups;
+        this.resolvedAt = resolvedAt;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Total por ciclo (antes de qualquer corte do orcamento do card pagador)
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * Grupo (nome da config, minusculo) -> salario; so mapa de leitura
+     */
+    public Map<String, BigDecimal> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Quando os grupos foram lidos do Vault (epoch ms)
+     */
+    public long getResolvedAt() {
+        return resolvedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "SalaryQuote{" + playerId + ", " + amount.toPlainString() + ", " + groups + "}";
+    }
+}
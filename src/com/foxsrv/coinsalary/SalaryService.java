@@ -0,0 +1,63 @@
+package com.foxsrv.coinsalary;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * API do CoinSalary para outros plugins (scoreboards, lojas, pontes com Discord),
+ * registrada no ServicesManager do Bukkit:
+ *
+ * <pre>
+ * SalaryService salaries = Bukkit.getServicesManager().load(SalaryService.class);
+ * </pre>
+ *
+ * Nada aqui bloqueia: os metodos sem future so leem caches e as filas; as consultas ao
+ * Vault saem em lote (um lote por tick, pedidos repetidos do mesmo jogador juntos) e
+ * usam o mesmo cache do ciclo e das placeholders. Os futures podem completar em qualquer
+ * thread - quem precisa da API do Bukkit volta para a main thread pelo scheduler.
+ * Nunca chamar join()/get() na main thread.
+ *
+ * Pagamentos (na fila, pagos, com falha) chegam em lote pelo SalaryPaymentBatchEvent.
+ */
+public interface SalaryService {
+
+    /**
+     * Salario atual do jogador (soma dos grupos) com a divisao por grupo. Completa na
+     * hora se estiver em cache; senao entra no proximo lote de consultas ao Vault.
+     * Completa com excecao se o CoinSalary for desligado antes da resposta.
+     */
+    CompletableFuture<SalaryQuote> getSalary(UUID player);
+
+    /**
+     * Varios jogadores numa consulta so (mesmo lote). Jogadores sem grupo com salario
+     * vem com valor zero, nunca ficam de fora do mapa.
+     */
+    CompletableFuture<Map<UUID, SalaryQuote>> getSalaries(Collection<UUID> players);
+
+    /**
+     * Ultimo salario resolvido ainda valido (cache de ate um minuto, descartado quando
+     * os grupos do jogador ou a tabela de salarios mudam), ou null - sem consulta
+     */
+    SalaryQuote getCachedSalary(UUID player);
+
+    /**
+     * Horario (epoch ms) do primeiro ciclo em que o jogador ja esta devido. Nao considera
+     * se ele vai estar online: com Pay-Offline desligado, offline no ciclo nao recebe.
+     */
+    long getNextPayoutAt(UUID player);
+
+    /**
+     * Posicao do jogador na fila do seu card pagador (1 = proximo), ou 0 se nao esta na
+     * parte da fila em memoria (sem pagamento pendente, ja enviado ao CoinCard, ou numa
+     * fila grande o bastante para ter ido para o disco). Atualizada no maximo a cada segundo.
+     */
+    int getQueuePosition(UUID player);
+
+    /**
+     * true se o jogador tem pagamento na fila em memoria ou enviado ao CoinCard sem
+     * resposta ainda. Mesma atualizacao (e mesma ressalva do disco) de getQueuePosition.
+     */
+    boolean isPaymentPending(UUID player);
+}
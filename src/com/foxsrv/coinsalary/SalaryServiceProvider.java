@@ -0,0 +1,288 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Implementacao do SalaryService registrada no ServicesManager.
+ *
+ * Cache unico de salarios por jogador (grupos + tabela usada), alimentado pelo ciclo,
+ * pelas placeholders e pelas proprias consultas da API; o SalaryQuote so e montado
+ * quando alguem pede. Consultas que faltam entram numa fila e saem todas juntas no
+ * proximo tick pelo lookup em lote do plugin - dez plugins pedindo o mesmo jogador
+ * viram uma consulta ao Vault. Posicoes na fila sao lidas das filas dos cards no maximo
+ * uma vez por segundo, para a API e para as placeholders.
+ */
+final class SalaryServiceProvider implements SalaryService {
+
+    private static final long QUOTE_TTL_MS = 60_000;
+    private static final long QUEUE_VIEW_TTL_MS = 1_000;
+    private static final long PRUNE_INTERVAL_MS = 60_000;
+
+    /**
+     * Grupos resolvidos de um jogador; o quote e montado na primeira leitura
+     */
+    private static final class Entry {
+        final List<String> groups;
+        final SalaryTable table;
+        final long resolvedAt;
+        private volatile SalaryQuote quote;
+
+        Entry(List<String> groups, SalaryTable table, long resolvedAt) {
+            this.groups = groups;
+            this.table = table;
+            this.resolvedAt = resolvedAt;
+        }
+
+        SalaryQuote quote(UUID uuid) {
+            SalaryQuote built = quote;
+            if (built == null) {
+                // Corrida inofensiva: dois quotes iguais, um vence
+                built = build(uuid);
+                quote = built;
+            }
+            return built;
+        }
+
+        private SalaryQuote build(UUID uuid) {
+            Map<String, BigDecimal> breakdown = new LinkedHashMap<>();
+            for (String group : groups) {
+                int id = table.idOf(group);
+                if (id >= 0) {
+                    breakdown.putIfAbsent(table.nameAt(id), CoinAmount.ofUnits(table.unitsAt(id)).toBigDecimal());
+                }
+            }
+            return new SalaryQuote(uuid, CoinAmount.ofUnits(table.salaryUnits(groups)).toBigDecimal(),
+                    Collections.unmodifiableMap(breakdown), resolvedAt);
+        }
+
+        boolean isValid(SalaryTable current, long now) {
+            return table == current && now - resolvedAt <= QUOTE_TTL_MS;
+        }
+    }
+
+    /**
+     * Quem esta na fila (posicao por card) e quem foi enviado sem resposta
+     */
+    static final class QueueView {
+        static final QueueView EMPTY = new QueueView(Collections.emptyMap(), Collections.emptySet(), 0L);
+
+        final Map<UUID, Integer> positions;
+        final Set<UUID> sending;
+        final long takenAt;
+
+        QueueView(Map<UUID, Integer> positions, Set<UUID> sending, long takenAt) {
+            this.positions = positions;
+            this.sending = sending;
+            this.takenAt = takenAt;
+        }
+    }
+
+    private final CoinSalary plugin;
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    // Consultas em andamento (um future por jogador) e a fila do proximo lote
+    private final ConcurrentHashMap<UUID, CompletableFuture<SalaryQuote>> inflight = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<UUID> batch = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean closed;
+
+    private volatile QueueView queueView = QueueView.EMPTY;
+    private long lastPrune;
+
+    SalaryServiceProvider(CoinSalary plugin) {
+        this.plugin = plugin;
+    }
+
+    // ====================================================
+    // SALARY
+    // ====================================================
+
+    @Override
+    public CompletableFuture<SalaryQuote> getSalary(UUID player) {
+        Objects.requireNonNull(player, "player");
+        SalaryQuote cached = getCachedSalary(player);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("CoinSalary is disabled"));
+
+        CompletableFuture<SalaryQuote> created = new CompletableFuture<>();
+        CompletableFuture<SalaryQuote> existing = inflight.putIfAbsent(player, created);
+        if (existing != null) {
+            // Copia: quem chamou nao consegue completar o future dos outros
+            return existing.copy();
+        }
+        if (closed) {
+            // close() rodou entre o teste acima e o putIfAbsent e pode nao ter visto esta entrada
+            inflight.remove(player, created);
+            created.completeExceptionally(new IllegalStateException("CoinSalary is disabled"));
+            return created.copy();
+        }
+        batch.add(player);
+        scheduleFlush();
+        return created.copy();
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, SalaryQuote>> getSalaries(Collection<UUID> players) {
+        Map<UUID, CompletableFuture<SalaryQuote>> futures = new LinkedHashMap<>(players.size() * 2);
+        for (UUID player : players) {
+            futures.putIfAbsent(player, getSalary(player));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<UUID, SalaryQuote> result = new LinkedHashMap<>(futures.size() * 2);
+            futures.forEach((uuid, future) -> result.put(uuid, future.join()));
+            return Collections.unmodifiableMap(result);
+        });
+    }
+
+    @Override
+    public SalaryQuote getCachedSalary(UUID player) {
+        Entry entry = entries.get(player);
+        if (entry == null) return null;
+        if (!entry.isValid(plugin.currentSalaryTable(), System.currentTimeMillis())) {
+            entries.remove(player, entry);
+            return null;
+        }
+        return entry.quote(player);
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        try {
+            Bukkit.getScheduler().runTask(plugin, this::flush);
+        } catch (IllegalPluginAccessException e) {
+            // Plugin desligando
+            flushScheduled.set(false);
+            close();
+        }
+    }
+
+    /**
+     * Main thread, um tick depois do primeiro pedido: tudo que juntou vira um lote
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<UUID> players = new ArrayList<>();
+        UUID next;
+        while ((next = batch.poll()) != null) {
+            players.add(next);
+        }
+        if (players.isEmpty()) return;
+
+        plugin.lookupGroupsAsync(players).whenComplete((groupsByPlayer, error) -> {
+            SalaryTable table = plugin.currentSalaryTable();
+            long now = System.currentTimeMillis();
+            for (UUID uuid : players) {
+                CompletableFuture<SalaryQuote> future = inflight.remove(uuid);
+                if (future == null) continue;
+                if (error != null) {
+                    future.completeExceptionally(error);
+                    continue;
+                }
+                List<String> groups = groupsByPlayer.get(uuid);
+                Entry entry = new Entry(groups != null ? groups : Collections.emptyList(), table, now);
+                entries.put(uuid, entry);
+                future.complete(entry.quote(uuid));
+            }
+        });
+    }
+
+    /**
+     * Grupos resolvidos em outro lugar (ciclo, placeholders) entram no mesmo cache
+     */
+    void remember(Map<UUID, List<String>> groupsByPlayer, SalaryTable table) {
+        if (closed) return;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, List<String>> entry : groupsByPlayer.entrySet()) {
+            entries.put(entry.getKey(), new Entry(entry.getValue(), table, now));
+        }
+    }
+
+    /**
+     * Grupos do jogador mudaram (evento do LuckPerms)
+     */
+    void invalidate(UUID uuid) {
+        entries.remove(uuid);
+    }
+
+    /**
+     * Task assincrona: tira do cache quem expirou (no maximo uma vez por minuto)
+     */
+    void prune(long now) {
+        if (now - lastPrune < PRUNE_INTERVAL_MS) return;
+        lastPrune = now;
+        SalaryTable table = plugin.currentSalaryTable();
+        entries.values().removeIf(entry -> !entry.isValid(table, now));
+    }
+
+    /**
+     * Desligamento: consultas pendentes completam com erro
+     */
+    void close() {
+        closed = true;
+        IllegalStateException disabled = new IllegalStateException("CoinSalary is disabled");
+        for (Iterator<CompletableFuture<SalaryQuote>> it = inflight.values().iterator(); it.hasNext(); ) {
+            CompletableFuture<SalaryQuote> future = it.next();
+            it.remove();
+            future.completeExceptionally(disabled);
+        }
+        batch.clear();
+        entries.clear();
+    }
+
+    // ====================================================
+    // NEXT PAYOUT / QUEUE
+    // ====================================================
+
+    @Override
+    public long getNextPayoutAt(UUID player) {
+        return PlaceholderSnapshots.nextDueAt(plugin.nextSalaryRunAt(), plugin.salaryIntervalMs(),
+                plugin.lastPaidAt(player));
+    }
+
+    @Override
+    public int getQueuePosition(UUID player) {
+        return queueView().positions.getOrDefault(player, 0);
+    }
+
+    @Override
+    public boolean isPaymentPending(UUID player) {
+        QueueView view = queueView();
+        return view.positions.containsKey(player) || view.sending.contains(player);
+    }
+
+    /**
+     * Filas lidas no maximo uma vez por segundo, quem pedir primeiro monta
+     */
+    QueueView queueView() {
+        QueueView view = queueView;
+        long now = System.currentTimeMillis();
+        if (now - view.takenAt < QUEUE_VIEW_TTL_MS) return view;
+
+        synchronized (this) {
+            view = queueView;
+            if (now - view.takenAt < QUEUE_VIEW_TTL_MS) return view;
+
+            Map<UUID, Integer> positions = new HashMap<>();
+            for (FundingCard card : plugin.currentFundingPool().cards()) {
+                // So a parte em memoria: quem esta no disco fica sem posicao ate voltar para ela
+                int[] position = {0};
+                card.queue.forEachInMemory(task -> positions.putIfAbsent(task.uuid, ++position[0]));
+            }
+            Set<UUID> sending = new HashSet<>();
+            for (PaymentTask task : plugin.unsettledPayments()) {
+                sending.add(task.uuid);
+            }
+            view = new QueueView(Collections.unmodifiableMap(positions), Collections.unmodifiableSet(sending), now);
+            queueView = view;
+            return view;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.foxsrv.coinsalary;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Onde o ultimo pagamento de cada jogador fica salvo entre restarts.
+ *
+ * O plugin guarda tudo em lastSalaryTime e marca as linhas alteradas; a thread de
+ * persistencia chama save com o mapa inteiro e so as linhas alteradas desde a
+ * ultima gravacao. Backends incrementais (binario, SQL) gravam so as alteradas,
+ * o JSON reescreve o arquivo inteiro como sempre fez.
+ *
+ * Todos os metodos rodam na thread de persistencia.
+ */
+interface SalaryStore {
+
+    /**
+     * Conteudo lido no load
+     */
+    final class Snapshot {
+        final Map<UUID, Long> payments;
+        final long lastTaskRun;
+        final int invalid;
+
+        Snapshot(Map<UUID, Long> payments, long lastTaskRun, int invalid) {
+            this.payments = payments;
+            this.lastTaskRun = lastTaskRun;
+            this.invalid = invalid;
+        }
+    }
+
+    String describe();
+
+    /**
+     * true se ainda nao ha nada salvo (usado para importar o last_salary.dat antigo)
+     */
+    boolean isEmpty();
+
+    Snapshot load() throws IOException;
+
+    /**
+     * Grava as linhas alteradas (changed) e o lastTaskRun. all e o estado completo, para
+     * backends que reescrevem tudo ou compactam.
+     */
+    void save(Map<UUID, Long> all, Map<UUID, Long> changed, long lastTaskRun) throws IOException;
+
+    void close();
+}
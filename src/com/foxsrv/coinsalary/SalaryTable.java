@@ -0,0 +1,214 @@
+package com.foxsrv.coinsalary;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabela imutavel grupo -> salario compilada a partir da config.
+ *
+ * Cada grupo recebe um id ordinal e o salario e guardado como long em unidades
+ * de 1e-8 coin (as mesmas de CoinAmount). A tabela nunca
+ * e alterada depois de criada: reload e /salary group criam uma nova e trocam a
+ * referencia de uma vez, entao um ciclo em andamento sempre ve uma tabela consistente.
+ */
+final class SalaryTable {
+
+    static final SalaryTable EMPTY = new SalaryTable(new LinkedHashMap<>());
+
+    private static final int MEMO_SIZE = 256; // potencia de 2
+    private static final int MAX_ALIASES = 1024;
+
+    private final String[] names;
+    private final long[] units;
+    private final Map<String, Integer> ids;
+    private final Map<String, CoinAmount> view;
+
+    // Nomes exatos vindos do Vault (ex: "VIP") -> id, para nao fazer toLowerCase a cada jogador
+    private final ConcurrentHashMap<String, Integer> aliasIds = new ConcurrentHashMap<>();
+
+    // Salario memorizado por conjunto de grupos (assinatura = bitmask dos ids)
+    private final Memo[] memo = new Memo[MEMO_SIZE];
+
+    private static final class Memo {
+        final long signature;
+        final long units;
+
+        Memo(long signature, long units) {
+            this.signature = signature;
+            this.units = units;
+        }
+    }
+
+    private SalaryTable(LinkedHashMap<String, Long> salaries) {
+        int size = salaries.size();
+        this.names = new String[size];
+        this.units = new long[size];
+        Map<String, Integer> idMap = new HashMap<>(size * 2);
+        Map<String, CoinAmount> viewMap = new LinkedHashMap<>(size * 2);
+
+        int id = 0;
+        for (Map.Entry<String, Long> entry : salaries.entrySet()) {
+            names[id] = entry.getKey();
+            units[id] = entry.getValue();
+            idMap.put(entry.getKey(), id);
+            viewMap.put(entry.getKey(), CoinAmount.ofUnits(entry.getValue()));
+            id++;
+        }
+
+        this.ids = idMap;
+        this.view = Collections.unmodifiableMap(viewMap);
+    }
+
+    /**
+     * Compila a tabela a partir de grupo -> valor em coins
+     */
+    static SalaryTable compile(Map<String, CoinAmount> salaries) {
+        LinkedHashMap<String, Long> compiled = new LinkedHashMap<>();
+        for (Map.Entry<String, CoinAmount> entry : salaries.entrySet()) {
+            compiled.put(normalize(entry.getKey()), entry.getValue().units());
+        }
+        return new SalaryTable(compiled);
+    }
+
+    private static String normalize(String group) {
+        return group.toLowerCase(Locale.ROOT);
+    }
+
+    // ====================================================
+    // LOOKUP
+    // ====================================================
+
+    /**
+     * Id ordinal do grupo, ou -1 se o grupo nao tem salario configurado
+     */
+    int idOf(String group) {
+        Integer id = aliasIds.get(group);
+        if (id == null) {
+            Integer exact = ids.get(normalize(group));
+            id = exact != null ? exact : -1;
+            if (aliasIds.size() < MAX_ALIASES) {
+                aliasIds.put(group, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Salario total (em unidades) de um jogador com os grupos informados.
+     * Nao aloca nada depois que os nomes dos grupos e o conjunto ja foram vistos.
+     */
+    long salaryUnits(List<String> groups) {
+        long signature = 0L;
+        long overflow = 0L;
+
+        for (int i = 0, n = groups.size(); i < n; i++) {
+            int id = idOf(groups.get(i));
+            if (id < 0) continue;
+
+            if (id < Long.SIZE) {
+                signature |= 1L << id;
+            } else {
+                // Mais de 64 grupos configurados - somar direto, fora da assinatura
+                overflow += units[id];
+            }
+        }
+
+        return sumOf(signature) + overflow;
+    }
+
+    private long sumOf(long signature) {
+        if (signature == 0L) return 0L;
+
+        int slot = (int) ((signature * 0x9E3779B97F4A7C15L) >>> 56) & (MEMO_SIZE - 1);
+        Memo cached = memo[slot];
+        if (cached != null && cached.signature == signature) {
+            return cached.units;
+        }
+
+        long total = 0L;
+        long bits = signature;
+        while (bits != 0L) {
+            total += units[Long.numberOfTrailingZeros(bits)];
+            bits &= bits - 1;
+        }
+
+        // Memo e imutavel (campos final), entao a escrita sem lock e segura
+        memo[slot] = new Memo(signature, total);
+        return total;
+    }
+
+    // ====================================================
+    // VIEW / COPY-ON-WRITE
+    // ====================================================
+
+    boolean contains(String group) {
+        return idOf(group) >= 0;
+    }
+
+    /**
+     * Salario do grupo em coins, ou null se nao configurado
+     */
+    CoinAmount salaryOf(String group) {
+        int id = idOf(group);
+        return id < 0 ? null : CoinAmount.ofUnits(units[id]);
+    }
+
+    /**
+     * Grupo -> salario em coins, na ordem da config
+     */
+    Map<String, CoinAmount> asMap() {
+        return view;
+    }
+
+    Set<String> groupNames() {
+        return view.keySet();
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * Nome do grupo pelo id ordinal (0 ate size()-1)
+     */
+    String nameAt(int id) {
+        return names[id];
+    }
+
+    /**
+     * Salario do grupo pelo id ordinal, em unidades
+     */
+    long unitsAt(int id) {
+        return units[id];
+    }
+
+    boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /**
+     * Nova tabela com o grupo adicionado/alterado
+     */
+    SalaryTable with(String group, CoinAmount amount) {
+        LinkedHashMap<String, Long> copy = toUnitMap();
+        copy.put(normalize(group), amount.units());
+        return new SalaryTable(copy);
+    }
+
+    /**
+     * Nova tabela sem o grupo
+     */
+    SalaryTable without(String group) {
+        LinkedHashMap<String, Long> copy = toUnitMap();
+        copy.remove(normalize(group));
+        return new SalaryTable(copy);
+    }
+
+    private LinkedHashMap<String, Long> toUnitMap() {
+        LinkedHashMap<String, Long> copy = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            copy.put(names[i], units[i]);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,201 @@
+package com.foxsrv.coinsalary;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Banco embutido (SQLite por padrao, H2 se o jar estiver no servidor). So as linhas
+ * alteradas sao gravadas, em lotes de PreparedStatement dentro de uma transacao.
+ * No SQLite o journal fica em WAL: a gravacao nao reescreve o banco e um crash
+ * no meio do lote desfaz a transacao inteira.
+ */
+final class SqlSalaryStore implements SalaryStore {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String TASK_RUN_KEY = "lastTaskRun";
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    // So a thread de persistencia usa a conexao
+    private Connection connection;
+    private long writtenTaskRun = Long.MIN_VALUE;
+
+    SqlSalaryStore(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    @Override
+    public String describe() {
+        return "sql (" + url.replaceAll("(?i)password=[^;&]*", "password=***") + ")";
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (Statement statement = connection().createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM coinsalary_last_payment")) {
+            return !rows.next() || rows.getLong(1) == 0L;
+        } catch (SQLException | IOException e) {
+            return false;
+        }
+    }
+
+    private Connection connection() throws IOException {
+        try {
+            if (connection != null && connection.isValid(2)) {
+                return connection;
+            }
+            close();
+
+            if (url.startsWith("jdbc:sqlite:")) {
+                Class.forName("org.sqlite.JDBC");
+            } else if (url.startsWith("jdbc:h2:")) {
+                Class.forName("org.h2.Driver");
+            }
+            Connection conn = user.isEmpty()
+                    ? DriverManager.getConnection(url)
+                    : DriverManager.getConnection(url, user, password);
+
+            try (Statement statement = conn.createStatement()) {
+                if (url.startsWith("jdbc:sqlite:")) {
+                    statement.execute("PRAGMA journal_mode=WAL");
+                    statement.execute("PRAGMA synchronous=NORMAL");
+                }
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS coinsalary_last_payment ("
+                        + "uuid CHAR(36) PRIMARY KEY, last_paid BIGINT NOT NULL)");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS coinsalary_meta ("
+                        + "name VARCHAR(32) PRIMARY KEY, value BIGINT NOT NULL)");
+            }
+            conn.setAutoCommit(false);
+            connection = conn;
+            return conn;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("JDBC driver for " + url + " not found on the server", e);
+        } catch (SQLException e) {
+            throw new IOException("Failed to open " + describe() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Snapshot load() throws IOException {
+        Map<UUID, Long> payments = new HashMap<>();
+        long lastTaskRun = 0L;
+        int invalid = 0;
+
+        Connection conn = connection();
+        try (Statement statement = conn.createStatement()) {
+            statement.setFetchSize(1000);
+            try (ResultSet rows = statement.executeQuery("SELECT uuid, last_paid FROM coinsalary_last_payment")) {
+                while (rows.next()) {
+                    try {
+                        payments.put(UUID.fromString(rows.getString(1).trim()), rows.getLong(2));
+                    } catch (IllegalArgumentException e) {
+                        invalid++;
+                    }
+                }
+            }
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT value FROM coinsalary_meta WHERE name = '" + TASK_RUN_KEY + "'")) {
+                if (rows.next()) {
+                    lastTaskRun = rows.getLong(1);
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IOException("Failed to load last payments: " + e.getMessage(), e);
+        }
+        writtenTaskRun = lastTaskRun;
+        return new Snapshot(payments, lastTaskRun, invalid);
+    }
+
+    @Override
+    public void save(Map<UUID, Long> all, Map<UUID, Long> changed, long lastTaskRun) throws IOException {
+        boolean taskRunChanged = lastTaskRun != writtenTaskRun;
+        if (changed.isEmpty() && !taskRunChanged) return;
+
+        Connection conn = connection();
+        try {
+            try (PreparedStatement update = conn.prepareStatement(
+                    "UPDATE coinsalary_last_payment SET last_paid = ? WHERE uuid = ?");
+                 PreparedStatement insert = conn.prepareStatement(
+                         "INSERT INTO coinsalary_last_payment (uuid, last_paid) VALUES (?, ?)")) {
+                List<Map.Entry<UUID, Long>> batch = new ArrayList<>(Math.min(BATCH_SIZE, changed.size()));
+                for (Map.Entry<UUID, Long> entry : changed.entrySet()) {
+                    batch.add(entry);
+                    if (batch.size() == BATCH_SIZE) {
+                        upsert(update, insert, batch);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    upsert(update, insert, batch);
+                }
+            }
+
+            if (taskRunChanged) {
+                try (PreparedStatement update = conn.prepareStatement(
+                        "UPDATE coinsalary_meta SET value = ? WHERE name = ?")) {
+                    update.setLong(1, lastTaskRun);
+                    update.setString(2, TASK_RUN_KEY);
+                    if (update.executeUpdate() == 0) {
+                        try (PreparedStatement insert = conn.prepareStatement(
+                                "INSERT INTO coinsalary_meta (name, value) VALUES (?, ?)")) {
+                            insert.setString(1, TASK_RUN_KEY);
+                            insert.setLong(2, lastTaskRun);
+                            insert.executeUpdate();
+                        }
+                    }
+                }
+            }
+            conn.commit();
+            writtenTaskRun = lastTaskRun;
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {
+            }
+            throw new IOException("Failed to save " + changed.size() + " last payment(s): " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * UPDATE em lote; quem nao existia ainda vai num INSERT em lote (mesma transacao,
+     * uma unica thread grava - sem corrida entre os dois passos)
+     */
+    private static void upsert(PreparedStatement update, PreparedStatement insert,
+                               List<Map.Entry<UUID, Long>> batch) throws SQLException {
+        for (Map.Entry<UUID, Long> entry : batch) {
+            update.setLong(1, entry.getValue());
+            update.setString(2, entry.getKey().toString());
+            update.addBatch();
+        }
+        int[] updated = update.executeBatch();
+
+        boolean inserts = false;
+        for (int i = 0; i < batch.size(); i++) {
+            if (updated[i] == 0) {
+                insert.setString(1, batch.get(i).getKey().toString());
+                insert.setLong(2, batch.get(i).getValue());
+                insert.addBatch();
+                inserts = true;
+            }
+        }
+        if (inserts) {
+            insert.executeBatch();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+        connection = null;
+    }
+}
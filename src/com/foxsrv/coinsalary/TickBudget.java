@@ -0,0 +1,224 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.Bukkit;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+
+/**
+ * Quanto da main thread o CoinSalary usa, e quanto pode usar.
+ *
+ * Toda task sincrona do plugin passa por measure(); tick() (uma task por tick) fecha a
+ * conta do tick numa janela de WINDOW_TICKS. O MSPT do servidor vem do Paper
+ * (getAverageTickTime, por reflexao) ou, no Spigot, do intervalo medido entre ticks.
+ * Acima do limite o fator de throttle cai pela metade a cada segundo e volta devagar
+ * (AIMD); lotes de grupos, avisos e o envio de pagamentos escalam por esse fator.
+ */
+final class TickBudget {
+
+    enum Source {
+        GROUPS, NOTIFICATIONS, PLACEHOLDERS, JOIN_BATCH, TIMER, COMMANDS;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        }
+    }
+
+    static final int WINDOW_TICKS = 100;
+    private static final int ADJUST_EVERY_TICKS = 20;
+    private static final double MIN_FACTOR = 0.1;
+    private static final double RECOVER_STEP = 0.1;
+    private static final double TICK_EWMA_ALPHA = 0.05;
+    // Sem o MSPT do Paper so da para ver atraso: intervalo acima disso = servidor abaixo de ~18 TPS
+    private static final double SPIGOT_LAG_MS = 55.0;
+
+    // Janela por fonte (so a main thread escreve)
+    private final long[][] window = new long[Source.values().length][WINDOW_TICKS];
+    private final long[] windowTotals = new long[Source.values().length];
+    private final long[] current = new long[Source.values().length];
+    private long currentTotal;
+    private int slot;
+    private int filled;
+    private long peakNanos;
+
+    private long lastTickNanos;
+    private double tickIntervalMs = 50.0;
+    private int sinceAdjust;
+
+    private Method averageTickTime;
+    private boolean paperResolved;
+
+    private volatile double factor = 1.0;
+    private volatile double mspt = 50.0;
+    private volatile boolean paperMspt;
+
+    // Config (trocada no reload)
+    volatile double msptThreshold = 45.0;
+    volatile long maxNanosPerTick = 2_000_000L;
+
+    // ====================================================
+    // MEDICAO (main thread)
+    // ====================================================
+
+    /**
+     * Roda a task contando o tempo para a fonte
+     */
+    void measure(Source source, Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            add(source, System.nanoTime() - start);
+        }
+    }
+
+    Runnable timed(Source source, Runnable task) {
+        return () -> measure(source, task);
+    }
+
+    void add(Source source, long nanos) {
+        current[source.ordinal()] += nanos;
+        currentTotal += nanos;
+    }
+
+    /**
+     * Quanto ainda cabe neste tick (ja escalado pelo throttle). Loops em lote param
+     * quando chega a zero e continuam no proximo tick.
+     */
+    long remainingNanos() {
+        return (long) (maxNanosPerTick * factor) - currentTotal;
+    }
+
+    /**
+     * Fecha o tick: uma task por tick, agendada pelo plugin
+     */
+    void tick() {
+        long now = System.nanoTime();
+        if (lastTickNanos != 0L) {
+            double interval = (now - lastTickNanos) / 1_000_000.0;
+            tickIntervalMs += (interval - tickIntervalMs) * TICK_EWMA_ALPHA;
+        }
+        lastTickNanos = now;
+
+        for (int i = 0; i < current.length; i++) {
+            windowTotals[i] += current[i] - window[i][slot];
+            window[i][slot] = current[i];
+            current[i] = 0L;
+        }
+        peakNanos = Math.max(peakNanos, currentTotal);
+        currentTotal = 0L;
+        slot = (slot + 1) % WINDOW_TICKS;
+        if (filled < WINDOW_TICKS) filled++;
+        if (slot == 0) peakNanos = 0L; // pico por janela
+
+        if (++sinceAdjust >= ADJUST_EVERY_TICKS) {
+            sinceAdjust = 0;
+            adjust();
+        }
+    }
+
+    private void adjust() {
+        double measured = readServerMspt();
+        mspt = measured;
+        double threshold = paperMspt ? msptThreshold : Math.max(msptThreshold, SPIGOT_LAG_MS);
+        if (msptThreshold <= 0) {
+            factor = 1.0;
+        } else if (measured > threshold) {
+            factor = Math.max(MIN_FACTOR, factor * 0.5);
+        } else if (factor < 1.0) {
+            factor = Math.min(1.0, factor + RECOVER_STEP);
+        }
+    }
+
+    /**
+     * Paper: media dos ultimos 100 ticks. Spigot: intervalo entre ticks (>= 50ms com
+     * o servidor em dia; acima disso e o atraso real).
+     */
+    private double readServerMspt() {
+        if (!paperResolved) {
+            paperResolved = true;
+            try {
+                averageTickTime = Bukkit.getServer().getClass().getMethod("getAverageTickTime");
+            } catch (NoSuchMethodException | SecurityException e) {
+                averageTickTime = null;
+            }
+        }
+        if (averageTickTime != null) {
+            try {
+                paperMspt = true;
+                return ((Number) averageTickTime.invoke(Bukkit.getServer())).doubleValue();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                averageTickTime = null;
+            }
+        }
+        paperMspt = false;
+        return tickIntervalMs;
+    }
+
+    // ====================================================
+    // THROTTLE
+    // ====================================================
+
+    /**
+     * 1.0 com o servidor folgado; ate MIN_FACTOR com MSPT acima do limite
+     */
+    double factor() {
+        return factor;
+    }
+
+    boolean isThrottled() {
+        return factor < 1.0;
+    }
+
+    /**
+     * Quantidade por tick escalada pelo throttle (nunca abaixo de 1)
+     */
+    int scaled(int perTick) {
+        return Math.max(1, (int) (perTick * factor));
+    }
+
+    /**
+     * Pausa entre pagamentos de um card: cooldown esticado pelo throttle
+     */
+    long dispatchDelayMs(long cooldownMs) {
+        double current = factor;
+        return current >= 1.0 ? cooldownMs : (long) (Math.max(cooldownMs, 50L) / current);
+    }
+
+    // ====================================================
+    // STATS (main thread)
+    // ====================================================
+
+    double mspt() {
+        return mspt;
+    }
+
+    boolean isPaperMspt() {
+        return paperMspt;
+    }
+
+    /**
+     * Media por tick na janela (ms)
+     */
+    double averageMs() {
+        long total = 0L;
+        for (long value : windowTotals) total += value;
+        return filled == 0 ? 0.0 : total / (double) filled / 1_000_000.0;
+    }
+
+    double averageMs(Source source) {
+        return filled == 0 ? 0.0 : windowTotals[source.ordinal()] / (double) filled / 1_000_000.0;
+    }
+
+    double peakMs() {
+        return peakNanos / 1_000_000.0;
+    }
+
+    /**
+     * Parte do tick do servidor usada pelo plugin (0-1)
+     */
+    double share() {
+        double tick = Math.max(mspt, 1.0);
+        return Math.min(1.0, averageMs() / tick);
+    }
+}
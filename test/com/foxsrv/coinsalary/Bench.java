@@ -0,0 +1,80 @@
+package com.foxsrv.coinsalary;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Medicao simples para os benchmarks de test/ (sem JMH): rodadas de aquecimento,
+ * rodadas medidas, mediana de ns/op e bytes alocados por op na thread atual.
+ * O resultado de cada op vai para sink, para o JIT nao eliminar o trabalho.
+ *
+ * Numeros servem para comparar caminhos na mesma maquina e na mesma execucao, nao
+ * como valor absoluto.
+ */
+final class Bench {
+
+    interface Op {
+        Object run(int i);
+    }
+
+    static volatile Object sink;
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Bench() {
+    }
+
+    static void header(String title) {
+        System.out.println();
+        System.out.println("== " + title + " ==");
+        System.out.println(String.format(Locale.ROOT, "%-44s %12s %12s", "", "ns/op", "bytes/op"));
+    }
+
+    /**
+     * Roda op(0..ops-1) por rodada e imprime a mediana das rodadas medidas
+     */
+    static double run(String name, int ops, Op op) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            round(ops, op);
+        }
+        double[] nanos = new double[ROUNDS];
+        double[] bytes = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            round(ops, op);
+            nanos[round] = (System.nanoTime() - start) / (double) ops;
+            bytes[round] = (THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore) / (double) ops;
+        }
+        double nsPerOp = median(nanos);
+        System.out.println(String.format(Locale.ROOT, "%-44s %12.1f %12.1f", name, nsPerOp, median(bytes)));
+        return nsPerOp;
+    }
+
+    private static void round(int ops, Op op) {
+        Object last = null;
+        for (int i = 0; i < ops; i++) {
+            last = op.run(i);
+        }
+        sink = last;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Escala opcional das iteracoes (primeiro argumento do main), para rodadas rapidas
+     */
+    static int scaled(String[] args, int ops) {
+        if (args.length == 0) return ops;
+        return Math.max(1, (int) (ops * Double.parseDouble(args[0])));
+    }
+}
@@ -0,0 +1,108 @@
+package com.foxsrv.coinsalary;
+
+import com.foxsrv.coincard.CoinCardPlugin.BalanceCallback;
+import com.foxsrv.coincard.CoinCardPlugin.BalanceListener;
+import com.foxsrv.coincard.CoinCardPlugin.CoinCardAPI;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * BudgetGuard com transferencias em andamento durante a leitura de saldo: o debito que o
+ * saldo lido ja contem nao pode ser descontado de novo quando a transferencia confirma,
+ * e o que saiu depois da leitura continua descontado ate a proxima. Uma leitura que volta
+ * depois de um aviso mais novo do listener e ignorada.
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.BudgetGuardDebitTest
+ */
+public final class BudgetGuardDebitTest {
+
+    private static final Deque<BalanceCallback> pendingReads = new ArrayDeque<>();
+    private static BalanceListener listener;
+
+    public static void main(String[] args) throws Exception {
+        CoinCardAPI api = FakeServer.proxy(CoinCardAPI.class, (method, a) -> {
+            switch (method.getName()) {
+                case "getBalance":
+                    pendingReads.add((BalanceCallback) a[1]);
+                    return null;
+                case "addBalanceListener":
+                    listener = (BalanceListener) a[1];
+                    return null;
+                default:
+                    return null;
+            }
+        });
+        BudgetGuard guard = new BudgetGuard("server-card", BudgetGuard.Mode.PAUSE, CoinAmount.ZERO);
+        guard.subscribe(api);
+
+        guard.refresh(api);
+        answerRead(100);
+        expect(guard, 100, "first read");
+
+        // Em andamento quando o listener avisa o debito: confirmar depois nao desconta de novo
+        long sent = dispatch(guard, 10);
+        expect(guard, 90, "while in flight");
+        balanceChanged(100, 90);
+        expect(guard, 80, "in flight and already in the balance (until settled)");
+        guard.settle(units(10), true, sent);
+        expect(guard, 90, "settled after the listener");
+
+        // Confirmado antes da leitura: descontado ate o saldo lido depois do envio chegar
+        sent = dispatch(guard, 5);
+        guard.settle(units(5), true, sent);
+        expect(guard, 85, "settled before a read");
+        guard.refresh(api);
+        answerRead(85);
+        expect(guard, 85, "read after the transfer");
+        check(guard.debited().units() == 0L, "debited after the read: " + guard.debited());
+
+        // Leitura em andamento quando uma transferencia sai: o debito continua descontado
+        guard.refresh(api);
+        sent = dispatch(guard, 3);
+        guard.settle(units(3), true, sent);
+        answerRead(85);
+        expect(guard, 82, "transfer sent after the read was issued");
+        balanceChanged(85, 82);
+        expect(guard, 82, "listener after the transfer");
+
+        // Leitura antiga voltando depois do listener: ignorada
+        guard.refresh(api);
+        balanceChanged(82, 70);
+        answerRead(82);
+        expect(guard, 70, "stale read after the listener");
+
+        System.out.println("OK");
+    }
+
+    private static long dispatch(BudgetGuard guard, long coins) throws InterruptedException {
+        guard.onQueued(units(coins));
+        check(guard.tryDispatch(units(coins)), "dispatch of " + coins + " refused");
+        long sent = System.nanoTime();
+        Thread.sleep(1); // proxima leitura com nanoTime maior
+        return sent;
+    }
+
+    private static void answerRead(double balance) throws InterruptedException {
+        pendingReads.poll().onResult(balance, null);
+        Thread.sleep(1);
+    }
+
+    private static void balanceChanged(double oldBalance, double newBalance) throws InterruptedException {
+        listener.onBalanceChange("server-card", oldBalance, newBalance);
+        Thread.sleep(1);
+    }
+
+    private static long units(long coins) {
+        return coins * CoinAmount.UNITS_PER_COIN;
+    }
+
+    private static void expect(BudgetGuard guard, long coins, String when) {
+        check(guard.available() == units(coins), when + ": available " + CoinAmount.ofUnits(guard.available()) +
+                ", expected " + coins + " (debited " + guard.debited() + ", in flight " + guard.inFlight() + ")");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,125 @@
+package com.foxsrv.coinsalary;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.*;
+
+/**
+ * Caminho do valor de um pagamento: antes (double da config -> BigDecimal.add ->
+ * doubleValue para o CoinCard -> BigDecimal.valueOf de novo -> DecimalFormat) contra
+ * CoinAmount (units em long da SalaryTable -> toDouble na fronteira -> CoinFormat).
+ *
+ * Cada op e um pagamento: somar os grupos do jogador, converter para o transfer e
+ * montar o texto da mensagem. Antes de medir confere que os dois caminhos geram o
+ * mesmo texto para todos os jogadores gerados (valores da config com ate 8 casas).
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.CoinAmountBenchmark [escala]
+ */
+public final class CoinAmountBenchmark {
+
+    private static final int PLAYERS = 4096;
+    private static final int OPS = 2_000_000;
+
+    // Valor que iria para o CoinCard: somado para o JIT nao descartar a conversao
+    private static double transferred;
+
+    public static void main(String[] args) {
+        int ops = Bench.scaled(args, OPS);
+        Random random = new Random(28);
+
+        // Grupos como na config: alguns valores inteiros, outros com 8 casas
+        String[] configValues = {"0.00000055", "1.5", "12.25", "0.1", "3", "0.33333333", "250", "0.00012"};
+        double[] salariesDouble = new double[configValues.length];
+        long[] salariesUnits = new long[configValues.length];
+        for (int i = 0; i < configValues.length; i++) {
+            salariesDouble[i] = Double.parseDouble(configValues[i]); // config.getDouble
+            salariesUnits[i] = CoinAmount.parse(configValues[i]).units();
+        }
+        configRoundTrip(configValues);
+
+        // Cada jogador com 1 a 3 grupos
+        int[][] groups = new int[PLAYERS][];
+        for (int p = 0; p < PLAYERS; p++) {
+            groups[p] = new int[1 + random.nextInt(3)];
+            for (int g = 0; g < groups[p].length; g++) {
+                groups[p][g] = random.nextInt(configValues.length);
+            }
+        }
+
+        DecimalFormat legacyFormat = LegacyCoinFormat.create();
+        int mismatches = 0;
+        for (int p = 0; p < PLAYERS; p++) {
+            String legacy = legacyPayment(groups[p], salariesDouble, legacyFormat);
+            String current = currentPayment(groups[p], salariesUnits);
+            if (!legacy.equals(current)) {
+                if (mismatches++ < 5) {
+                    System.out.println("mismatch for groups " + Arrays.toString(groups[p]) + ": " + legacy + " vs " + current);
+                }
+            }
+        }
+        System.out.println("Payments compared: " + PLAYERS + ", text mismatches: " + mismatches);
+
+        Bench.header("payment amount path (" + ops + " payments)");
+        double legacy = Bench.run("BigDecimal/double + DecimalFormat (before)", ops,
+                i -> legacyPayment(groups[i & (PLAYERS - 1)], salariesDouble, legacyFormat));
+        double current = Bench.run("CoinAmount + CoinFormat", ops,
+                i -> currentPayment(groups[i & (PLAYERS - 1)], salariesUnits));
+        System.out.println(String.format(Locale.ROOT, "speedup: %.1fx", legacy / current));
+
+        if (mismatches != 0) {
+            throw new AssertionError(mismatches + " payment(s) formatted differently");
+        }
+    }
+
+    /**
+     * Como era: BigDecimal.valueOf(double da config), soma, doubleValue para o transfer,
+     * BigDecimal.valueOf(double do callback) para a mensagem
+     */
+    private static String legacyPayment(int[] groups, double[] salaries, DecimalFormat format) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int group : groups) {
+            total = total.add(BigDecimal.valueOf(salaries[group]));
+        }
+        double transfer = total.doubleValue();
+        transferred += transfer;
+        return LegacyCoinFormat.format(format, BigDecimal.valueOf(transfer));
+    }
+
+    /**
+     * O que o saveGroupConfig grava (toString) tem que voltar exato pelo loadConfig, ate
+     * onde um double ja nao chega; com mais de 8 casas o load corta para baixo
+     */
+    private static void configRoundTrip(String[] configValues) {
+        List<String> values = new ArrayList<>(Arrays.asList(configValues));
+        values.add("92233720368.54775807"); // Long.MAX_VALUE units: 19 digitos
+        values.add("1234567890.12345678");
+        for (String value : values) {
+            CoinAmount amount = CoinAmount.parse(value);
+            CoinAmount saved = CoinAmount.parse(String.valueOf((Object) amount.toString()));
+            if (saved.units() != amount.units()) {
+                throw new AssertionError("config round trip changed " + value + " to " + saved);
+            }
+        }
+        String[][] rounded = {
+                {"0.123456789", "0.12345678"}, {"1.999999999", "1.99999999"}, {"5.5E-9", "0.0"},
+                {"-0.000000019", "-0.00000001"}, {"0.5", "0.5"}};
+        for (String[] pair : rounded) {
+            String actual = CoinAmount.parseRoundingDown(pair[0]).toString();
+            if (!actual.equals(pair[1])) {
+                throw new AssertionError("parseRoundingDown(" + pair[0] + ") = " + actual + ", expected " + pair[1]);
+            }
+        }
+        System.out.println("Config values round-tripped: " + values.size() + ", rounded down: " + rounded.length);
+    }
+
+    private static String currentPayment(int[] groups, long[] salaries) {
+        long units = 0L;
+        for (int group : groups) {
+            units += salaries[group];
+        }
+        CoinAmount amount = CoinAmount.ofUnits(units);
+        transferred += amount.toDouble();
+        return amount.toString();
+    }
+
+}
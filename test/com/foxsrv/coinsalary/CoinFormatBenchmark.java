@@ -0,0 +1,60 @@
+package com.foxsrv.coinsalary;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * So a formatacao: DecimalFormat (como era, compartilhado sem lock, com synchronized,
+ * e um novo por chamada) contra CoinFormat.format e CoinFormat.appendTo num
+ * StringBuilder reaproveitado. A corretude esta em CoinFormatPropertyTest.
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.CoinFormatBenchmark [escala]
+ */
+public final class CoinFormatBenchmark {
+
+    private static final int VALUES = 4096;
+    private static final int OPS = 2_000_000;
+
+    public static void main(String[] args) {
+        int ops = Bench.scaled(args, OPS);
+        Random random = new Random(29);
+
+        // Saldos e salarios: ate 1e6 coins, com 0 a 8 casas
+        long[] units = new long[VALUES];
+        BigDecimal[] decimals = new BigDecimal[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            long value = random.nextInt(1_000_001) * CoinAmount.UNITS_PER_COIN;
+            int fracDigits = random.nextInt(CoinAmount.SCALE + 1);
+            long scale = 1L;
+            for (int d = fracDigits; d < CoinAmount.SCALE; d++) {
+                scale *= 10L;
+            }
+            value += (random.nextInt((int) CoinAmount.UNITS_PER_COIN) / scale) * scale;
+            units[i] = value;
+            decimals[i] = BigDecimal.valueOf(value, CoinAmount.SCALE);
+        }
+
+        DecimalFormat shared = LegacyCoinFormat.create();
+        Object lock = new Object();
+        StringBuilder sb = new StringBuilder(64);
+
+        Bench.header("coin formatting (" + ops + " values)");
+        double legacy = Bench.run("DecimalFormat shared (before, not thread-safe)", ops,
+                i -> LegacyCoinFormat.format(shared, decimals[i & (VALUES - 1)]));
+        Bench.run("DecimalFormat synchronized", ops, i -> {
+            synchronized (lock) {
+                return LegacyCoinFormat.format(shared, decimals[i & (VALUES - 1)]);
+            }
+        });
+        Bench.run("DecimalFormat per call", ops / 10,
+                i -> LegacyCoinFormat.format(LegacyCoinFormat.create(), decimals[i & (VALUES - 1)]));
+        double current = Bench.run("CoinFormat.format", ops, i -> CoinFormat.format(units[i & (VALUES - 1)]));
+        Bench.run("CoinFormat.appendTo (reused StringBuilder)", ops, i -> {
+            sb.setLength(0);
+            return CoinFormat.appendTo(sb, units[i & (VALUES - 1)]);
+        });
+        System.out.println(String.format(Locale.ROOT, "speedup (format vs shared DecimalFormat): %.1fx", legacy / current));
+    }
+}
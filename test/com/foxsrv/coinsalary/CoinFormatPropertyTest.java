@@ -0,0 +1,153 @@
+package com.foxsrv.coinsalary;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CoinFormat contra o DecimalFormat que ele substituiu (LegacyCoinFormat): para
+ * qualquer long de units o texto tem que ser o mesmo, inclusive nos extremos
+ * (Long.MIN_VALUE nao tem negativo em long, o CoinFormat separa inteiro e casas).
+ *
+ * Gera valores na faixa toda, em faixas pequenas (valores reais de salario) e com
+ * zeros a direita (casas que o DecimalFormat corta); confere tambem appendTo, a
+ * volta pelo CoinAmount.parse e o uso de varias threads (buffer ThreadLocal).
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.CoinFormatPropertyTest [escala]
+ */
+public final class CoinFormatPropertyTest {
+
+    private static final int SAMPLES = 1_000_000;
+    private static final int THREADS = 8;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private static final AtomicLong failures = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        int samples = Bench.scaled(args, SAMPLES);
+        Random random = new Random(29);
+
+        long checked = edgeValues();
+        for (int i = 0; i < samples; i++) {
+            check(random.nextLong());
+            check(smallAmount(random));
+            check(trailingZeros(random));
+            checked += 3;
+        }
+        System.out.println("Values checked: " + checked);
+
+        checked = concurrent(samples);
+        System.out.println("Values checked across " + THREADS + " threads: " + checked);
+
+        if (failures.get() != 0) {
+            throw new AssertionError(failures.get() + " value(s) formatted differently from DecimalFormat");
+        }
+        System.out.println("OK");
+    }
+
+    private static long edgeValues() {
+        List<Long> values = new ArrayList<>(Arrays.asList(
+                0L, 1L, 9L, 10L, 99L, 99_999_999L, 100_000_000L, 100_000_001L, 199_999_999L,
+                Long.MAX_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE, Long.MIN_VALUE + 1));
+        for (long power : POWERS_OF_TEN) {
+            values.add(power);
+            values.add(power - 1);
+            values.add(power + 1);
+        }
+        long checked = 0;
+        for (long value : values) {
+            check(value);
+            check(-value); // -Long.MIN_VALUE == Long.MIN_VALUE, coberto de novo
+            checked += 2;
+        }
+        return checked;
+    }
+
+    /**
+     * Ate 1e6 coins com 0 a 8 casas, como valores de config e saldos
+     */
+    private static long smallAmount(Random random) {
+        long whole = random.nextInt(1_000_001);
+        long frac = random.nextInt((int) CoinAmount.UNITS_PER_COIN);
+        long units = whole * CoinAmount.UNITS_PER_COIN + frac;
+        return random.nextBoolean() ? units : -units;
+    }
+
+    /**
+     * Multiplo de 10^k: as casas terminam em zeros (ou nao ha casas)
+     */
+    private static long trailingZeros(Random random) {
+        long power = POWERS_OF_TEN[random.nextInt(POWERS_OF_TEN.length)];
+        return (random.nextLong() / power) * power;
+    }
+
+    private static void check(long units) {
+        String expected = LegacyCoinFormat.format(units);
+        String formatted = CoinFormat.format(units);
+        if (!expected.equals(formatted)) {
+            fail(units, "format", expected, formatted);
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("x=");
+        CoinFormat.appendTo(sb, units);
+        String appended = sb.toString();
+        if (!appended.equals("x=" + expected)) {
+            fail(units, "appendTo", "x=" + expected, appended);
+            return;
+        }
+
+        // Long.MIN_VALUE nao volta: o parse nega o modulo, que nao cabe em long
+        if (units != Long.MIN_VALUE) {
+            long parsed = CoinAmount.parse(formatted).units();
+            if (parsed != units) {
+                fail(units, "parse", Long.toString(units), Long.toString(parsed));
+            }
+        }
+    }
+
+    private static void fail(long units, String what, String expected, String actual) {
+        if (failures.incrementAndGet() <= 10) {
+            System.out.println(what + " mismatch for " + units + " units: expected " + expected + ", got " + actual);
+        }
+    }
+
+    /**
+     * Cada thread com seu Random e sua copia do DecimalFormat; o buffer do CoinFormat e
+     * ThreadLocal, entao nenhuma thread pode ver o texto de outra
+     */
+    private static long concurrent(int samples) throws Exception {
+        int perThread = Math.max(1, samples / THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long seed = 29L * 31L + t;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        check(random.nextBoolean() ? random.nextLong() : smallAmount(random));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return (long) perThread * THREADS;
+    }
+}
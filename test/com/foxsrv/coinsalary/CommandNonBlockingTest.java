@@ -0,0 +1,253 @@
+package com.foxsrv.coinsalary;
+
+import com.foxsrv.coincard.CoinCardPlugin.CoinCardAPI;
+import net.milkbowl.vault.permission.Permission;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /salary check e /salary test nunca esperam um future na main thread.
+ *
+ * A thread do teste e a main thread do FakeServer. A consulta do card fica presa num
+ * executor que so roda quando o teste manda: se o comando esperasse o resultado (o
+ * antigo calculateSalarySync fazia get(3s)) ele nao voltaria antes do limite, e a
+ * resposta nunca sai direto no comando - sempre por uma task agendada na main thread.
+ * Os helpers *Sync tem que recusar a main thread.
+ *
+ * Rodar a partir da raiz do projeto (classpath dos testes em FakeServer):
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.CommandNonBlockingTest
+ */
+public final class CommandNonBlockingTest {
+
+    // Bem abaixo dos 3s que o caminho antigo travava; folga para JIT e GC
+    private static final long MAX_COMMAND_MS = 500;
+
+    private static final UUID STEVE = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+    /**
+     * Executor que so guarda as tasks: o future do card fica pendente ate runAll()
+     */
+    private static final class HeldExecutor extends AbstractExecutorService {
+        final List<Runnable> held = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            held.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> copy = new ArrayList<>(held);
+            held.clear();
+            copy.forEach(Runnable::run);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        FakeServer server = FakeServer.install();
+        server.offlinePlayers.add(FakeServer.offlinePlayer("Steve", STEVE));
+
+        CoinSalary plugin = server.plugin();
+        HeldExecutor cardLookups = new HeldExecutor();
+        FakeServer.setField(plugin, "salaryDataReady", CompletableFuture.<Void>completedFuture(null));
+        FakeServer.setField(plugin, "cardLookupExecutor", cardLookups);
+        FakeServer.setField(plugin, "permission", new GroupsPermission("vip"));
+        FakeServer.setField(plugin, "coinCardAPI", FakeServer.proxy(CoinCardAPI.class, (method, a) -> {
+            switch (method.getName()) {
+                case "hasCard":
+                    return true;
+                case "getPlayerCard":
+                    return "card-steve";
+                default:
+                    return null;
+            }
+        }));
+        FakeServer.setField(plugin, "salaryTable",
+                SalaryTable.compile(Collections.singletonMap("vip", CoinAmount.parse("2.5"))));
+
+        checkCommand(plugin, server, cardLookups);
+        testCommand(plugin, server);
+        syncHelpersRefuseMainThread(plugin);
+        System.out.println("CommandNonBlockingTest: OK");
+    }
+
+    private static void checkCommand(CoinSalary plugin, FakeServer server, HeldExecutor cardLookups) {
+        List<String> messages = new ArrayList<>();
+        long tookMs = run(plugin, messages, "check", "Steve");
+
+        check(tookMs < MAX_COMMAND_MS, "/salary check took " + tookMs + "ms on the main thread");
+        check(messages.isEmpty(), "/salary check replied before the card lookup finished: " + messages);
+        check(!cardLookups.held.isEmpty(), "/salary check did not start the card lookup off the main thread");
+        check(server.mainTasks.isEmpty(), "/salary check scheduled a reply with the card lookup still pending");
+
+        // Card resolvido na thread de consulta: a resposta vai para a main thread, nao inline
+        cardLookups.runAll();
+        check(messages.isEmpty(), "/salary check replied from the card lookup thread: " + messages);
+        check(server.runMainTasks() == 1, "/salary check should reply through exactly one main-thread task");
+        check(contains(messages, "Salary amount: ") && contains(messages, "2.5"),
+                "/salary check reply is missing the salary: " + messages);
+        check(contains(messages, "Has CoinCard: "), "/salary check reply is missing the card line: " + messages);
+    }
+
+    private static void testCommand(CoinSalary plugin, FakeServer server) {
+        List<String> messages = new ArrayList<>();
+        long tookMs = run(plugin, messages, "test", "Steve");
+
+        check(tookMs < MAX_COMMAND_MS, "/salary test took " + tookMs + "ms on the main thread");
+        check(messages.size() == 1, "/salary test should only print its header inline: " + messages);
+        check(server.runMainTasks() == 1, "/salary test should reply through exactly one main-thread task");
+        check(contains(messages, "Vault groups: ") && contains(messages, "vip"),
+                "/salary test reply is missing the groups: " + messages);
+    }
+
+    private static void syncHelpersRefuseMainThread(CoinSalary plugin) throws Exception {
+        for (String name : new String[]{"calculateSalarySync", "getPlayerGroupsSync"}) {
+            Method helper = CoinSalary.class.getDeclaredMethod(name, org.bukkit.OfflinePlayer.class);
+            helper.setAccessible(true);
+            try {
+                helper.invoke(plugin, FakeServer.offlinePlayer("Steve", STEVE));
+                throw new AssertionError(name + " ran on the main thread");
+            } catch (InvocationTargetException e) {
+                check(e.getCause() instanceof IllegalStateException,
+                        name + " failed with " + e.getCause() + " instead of IllegalStateException");
+            }
+        }
+    }
+
+    private static long run(CoinSalary plugin, List<String> messages, String... args) {
+        long start = System.nanoTime();
+        plugin.new SalaryCommand().onCommand(FakeServer.sender(messages), null, "salary", args);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static boolean contains(List<String> messages, String text) {
+        for (String message : messages) {
+            if (message.contains(text)) return true;
+        }
+        return false;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    /**
+     * Vault com os mesmos grupos para qualquer jogador (a API por nome e a abstrata)
+     */
+    @SuppressWarnings("deprecation")
+    private static final class GroupsPermission extends Permission {
+        private final String[] groups;
+
+        GroupsPermission(String... groups) {
+            this.groups = groups;
+        }
+
+        @Override
+        public String[] getPlayerGroups(String world, String player) {
+            return groups.clone();
+        }
+
+        @Override
+        public String getName() {
+            return "Test";
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSuperPermsCompat() {
+            return true;
+        }
+
+        @Override
+        public boolean playerHas(String world, String player, String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean playerAdd(String world, String player, String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean playerRemove(String world, String player, String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean groupHas(String world, String group, String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean groupAdd(String world, String group, String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean groupRemove(String world, String group, String permission) {
+            return false;
+        }
+
+        @Override
+        public boolean playerInGroup(String world, String player, String group) {
+            return false;
+        }
+
+        @Override
+        public boolean playerAddGroup(String world, String player, String group) {
+            return false;
+        }
+
+        @Override
+        public boolean playerRemoveGroup(String world, String player, String group) {
+            return false;
+        }
+
+        @Override
+        public String getPrimaryGroup(String world, String player) {
+            return groups.length > 0 ? groups[0] : null;
+        }
+
+        @Override
+        public String[] getGroups() {
+            return groups.clone();
+        }
+
+        @Override
+        public boolean hasGroupSupport() {
+            return true;
+        }
+    }
+}
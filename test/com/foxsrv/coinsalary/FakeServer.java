@@ -0,0 +1,197 @@
+package com.foxsrv.coinsalary;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Servidor falso para os testes (test/): so o que o CoinSalary usa fora do onEnable.
+ *
+ * A main thread e a thread marcada em primary; runTask so guarda a task, e o teste
+ * decide quando roda (runMainTasks). Assim da para ver se um comando respondeu na hora
+ * ou agendou a resposta, sem nenhum timing real de tick.
+ *
+ * Os testes e benchmarks de test/ sao classes com main (sem JUnit), compiladas contra
+ * as classes do plugin. Fora do servidor a spigot-api precisa tambem do guava e do
+ * snakeyaml (que o servidor traz), em GUAVA e SNAKEYAML:
+ *   LIBS=spigot-api-1.20.1-R0.1-SNAPSHOT.jar:Vault.jar:CoinCard.jar:PlaceholderAPI.jar:libs/gson-2.10.1.jar:$GUAVA:$SNAKEYAML
+ *   javac --release 17 -cp $LIBS -d build/classes src/com/foxsrv/coinsalary/*.java
+ *   javac --release 17 -cp build/classes:$LIBS -d build/test-classes test/com/foxsrv/coinsalary/*.java
+ *   TEST_CP=build/test-classes:build/classes:$LIBS
+ * Um teste que falha sai com AssertionError (codigo de saida diferente de zero).
+ */
+final class FakeServer {
+
+    private static FakeServer installed;
+
+    final Server server;
+    final Queue<Runnable> mainTasks = new ConcurrentLinkedQueue<>();
+    final List<OfflinePlayer> offlinePlayers = new ArrayList<>();
+    volatile Thread primary;
+
+    private final Logger logger = Logger.getLogger("FakeServer");
+
+    private FakeServer() {
+        BukkitScheduler scheduler = proxy(BukkitScheduler.class, (method, args) -> {
+            if (method.getName().equals("runTask") && args[1] instanceof Runnable) {
+                mainTasks.add((Runnable) args[1]);
+            }
+            return null;
+        });
+        this.server = proxy(Server.class, (method, args) -> {
+            switch (method.getName()) {
+                case "isPrimaryThread":
+                    return Thread.currentThread() == primary;
+                case "getScheduler":
+                    return scheduler;
+                case "getLogger":
+                    return logger;
+                case "getOfflinePlayers":
+                    return offlinePlayers.toArray(new OfflinePlayer[0]);
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "test";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Bukkit.setServer so aceita uma vez por JVM
+     */
+    static synchronized FakeServer install() {
+        if (installed == null) {
+            installed = new FakeServer();
+            Bukkit.setServer(installed.server);
+        }
+        installed.primary = Thread.currentThread();
+        return installed;
+    }
+
+    /**
+     * CoinSalary sem onEnable, com a pasta de dados num diretorio temporario
+     */
+    CoinSalary plugin() throws Exception {
+        File dataFolder = Files.createTempDirectory("coinsalary-test").toFile();
+        @SuppressWarnings("deprecation")
+        JavaPluginLoader loader = new JavaPluginLoader(server);
+        return new CoinSalary(loader, new PluginDescriptionFile("CoinSalary", "test", CoinSalary.class.getName()),
+                dataFolder, new File(dataFolder, "CoinSalary.jar"));
+    }
+
+    /**
+     * Roda (na thread atual) o que foi agendado para a main thread ate agora
+     */
+    int runMainTasks() {
+        int ran = 0;
+        Runnable task;
+        while ((task = mainTasks.poll()) != null) {
+            task.run();
+            ran++;
+        }
+        return ran;
+    }
+
+    // ====================================================
+    // DUBLES
+    // ====================================================
+
+    static OfflinePlayer offlinePlayer(String name, UUID uuid) {
+        return proxy(OfflinePlayer.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return uuid;
+                case "hasPlayedBefore":
+                    return true;
+                case "isOnline":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Console com todas as permissoes que guarda as mensagens recebidas
+     */
+    static CommandSender sender(List<String> messages) {
+        return proxy(CommandSender.class, (method, args) -> {
+            switch (method.getName()) {
+                case "sendMessage":
+                    if (args[0] instanceof String) messages.add((String) args[0]);
+                    return null;
+                case "hasPermission":
+                    return true;
+                case "getName":
+                    return "CONSOLE";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    interface Handler {
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    /**
+     * Proxy que responde o que o Handler devolver; primitivos sem resposta viram zero/false
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocation = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + "@test";
+                default:
+                    break;
+            }
+            Object result = handler.handle(method, args);
+            if (result == null && method.getReturnType().isPrimitive()) {
+                return defaultValue(method.getReturnType());
+            }
+            return result;
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocation);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == void.class) return null;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0.0f;
+        if (type == int.class) return 0;
+        if (type == short.class) return (short) 0;
+        return (byte) 0;
+    }
+}
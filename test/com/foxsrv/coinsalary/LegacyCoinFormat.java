@@ -0,0 +1,48 @@
+package com.foxsrv.coinsalary;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * O formatador que o CoinFormat substituiu, como estava no CoinSalary: DecimalFormat
+ * "0.########" com RoundingMode.DOWN e ".0" quando nao ha casas. Referencia para os
+ * testes e benchmarks; um por thread, porque o DecimalFormat nao e thread-safe.
+ */
+final class LegacyCoinFormat {
+
+    private static final ThreadLocal<DecimalFormat> FORMAT = ThreadLocal.withInitial(LegacyCoinFormat::create);
+
+    private LegacyCoinFormat() {
+    }
+
+    /**
+     * Configurado como o COIN_FORMAT estatico no onEnable
+     */
+    static DecimalFormat create() {
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.US);
+        symbols.setDecimalSeparator('.');
+        DecimalFormat format = new DecimalFormat("0.########", symbols);
+        format.setRoundingMode(RoundingMode.DOWN);
+        format.setMinimumFractionDigits(0);
+        format.setMaximumFractionDigits(8);
+        return format;
+    }
+
+    static String format(DecimalFormat format, BigDecimal amount) {
+        String formatted = format.format(amount);
+        if (!formatted.contains(".")) {
+            formatted += ".0";
+        }
+        return formatted;
+    }
+
+    /**
+     * Texto antigo de um valor em unidades de 1e-8 coin
+     */
+    static String format(long units) {
+        return format(FORMAT.get(), BigDecimal.valueOf(units, CoinAmount.SCALE));
+    }
+}
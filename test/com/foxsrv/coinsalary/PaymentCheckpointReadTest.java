@@ -0,0 +1,90 @@
+package com.foxsrv.coinsalary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * PaymentCheckpoint.read com entradas corrompidas no meio do arquivo: cada entrada ruim
+ * (numero que nao e numero, tipo errado, UUID ou estado invalido, elemento que nem e
+ * objeto) e descartada sozinha e as outras voltam para a fila. So um JSON quebrado
+ * rejeita o arquivo.
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.PaymentCheckpointReadTest
+ */
+public final class PaymentCheckpointReadTest {
+
+    private static final String UUID_A = "00000000-0000-0000-0000-00000000000a";
+    private static final String UUID_B = "00000000-0000-0000-0000-00000000000b";
+    private static final String UUID_C = "00000000-0000-0000-0000-00000000000c";
+
+    public static void main(String[] args) throws Exception {
+        File directory = Files.createTempDirectory("coinsalary-checkpoint-test").toFile();
+        File file = new File(directory, "pending_payments.json");
+
+        write(file, "{\"version\": 1, \"savedAt\": 1, \"payments\": [",
+                entry(UUID_A, "\"units\": 100, \"groups\": [\"vip\", \"default\"], \"extra\": {\"x\": [1, 2]}"),
+                entry(UUID_B, "\"units\": \"abc\""),
+                entry(UUID_B, "\"units\": 1.5"),
+                entry(UUID_B, "\"units\": {\"nested\": 1}"),
+                entry(UUID_B, "\"units\": 100, \"cycle\": \"x\""),
+                entry(UUID_B, "\"units\": 100, \"sentAt\": [1]"),
+                entry(UUID_B, "\"units\": 100, \"state\": \"LOST\""),
+                entry(UUID_B, "\"units\": 100, \"groups\": [{\"name\": \"vip\"}, \"default\"]"),
+                entry(UUID_B, "\"units\": 100, \"groups\": \"vip\""),
+                entry("not-a-uuid", "\"units\": 100"),
+                entry(UUID_B, "\"units\": 100, \"card\": true"),
+                "42",
+                entry(UUID_B, "\"units\": \"250\", \"state\": \"unknown\", \"sentAt\": 7, \"cycle\": 3"),
+                entry(UUID_C, "\"units\": 300, \"sentAt\": null"),
+                "]}");
+
+        List<PaymentCheckpoint.Entry> entries = new PaymentCheckpoint(file).read();
+        check(entries.size() == 3, "read " + entries.size() + " entries, expected 3");
+
+        PaymentCheckpoint.Entry a = entries.get(0);
+        check(a.uuid.toString().equals(UUID_A) && a.amountUnits == 100L, "first entry " + a.uuid);
+        check(a.groups.equals(Arrays.asList("vip", "default")), "groups " + a.groups);
+
+        PaymentCheckpoint.Entry b = entries.get(1);
+        check(b.uuid.toString().equals(UUID_B) && b.amountUnits == 250L, "second entry " + b.uuid);
+        check(b.state == PaymentCheckpoint.State.UNKNOWN && b.sentAt == 7L && b.cycleId == 3L, "second entry fields");
+
+        PaymentCheckpoint.Entry c = entries.get(2);
+        check(c.uuid.toString().equals(UUID_C) && c.amountUnits == 300L && c.sentAt == 0L, "third entry " + c.uuid);
+
+        // JSON quebrado continua rejeitando o arquivo
+        write(file, "{\"payments\": [", entry(UUID_A, "\"units\": 100"), "");
+        try {
+            new PaymentCheckpoint(file).read();
+            throw new AssertionError("truncated file was accepted");
+        } catch (IOException expected) {
+            // esperado
+        }
+
+        file.delete();
+        directory.delete();
+        System.out.println("OK");
+    }
+
+    private static String entry(String uuid, String fields) {
+        return "{\"state\": \"QUEUED\", \"uuid\": \"" + uuid + "\", \"name\": \"player\", \"card\": \"card\", " +
+                "\"source\": \"server\", " + fields + "}";
+    }
+
+    private static void write(File file, String head, String... parts) throws IOException {
+        StringBuilder json = new StringBuilder(head);
+        for (int i = 0; i < parts.length - 1; i++) {
+            if (i > 0) json.append(',');
+            json.append('\n').append(parts[i]);
+        }
+        json.append('\n').append(parts[parts.length - 1]);
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,78 @@
+package com.foxsrv.coinsalary;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Callback tardio depois do TIMEOUT: o ledger guarda os dois registros, mas history e
+ * summarize tratam o resultado real como substituto do TIMEOUT - o pagamento aparece
+ * e conta uma vez so, inclusive com o TIMEOUT num segmento anterior ao resultado.
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.PaymentLedgerTimeoutTest
+ */
+public final class PaymentLedgerTimeoutTest {
+
+    public static void main(String[] args) throws Exception {
+        sameSegment();
+        acrossSegments();
+        System.out.println("OK");
+    }
+
+    private static void sameSegment() throws Exception {
+        PaymentLedger ledger = open(8L * 1024 * 1024);
+        UUID player = UUID.randomUUID();
+        long cycle = 1_000L;
+        ledger.append(entry(10, player, cycle - 500, PaymentLedger.Status.SUCCESS, false));
+        ledger.append(entry(20, player, cycle, PaymentLedger.Status.TIMEOUT, false));
+        ledger.append(entry(30, player, cycle, PaymentLedger.Status.SUCCESS, true));
+
+        List<PaymentLedger.Entry> history = ledger.history(player, 10);
+        check(history.size() == 2, "history has " + history.size() + " entries, expected 2");
+        check(history.get(0).status == PaymentLedger.Status.SUCCESS && history.get(0).supersedesTimeout,
+                "late result not first");
+        check(history.get(1).cycleId == cycle - 500, "older payment missing");
+
+        PaymentLedger.CycleSummary summary = ledger.summarize(cycle);
+        check(summary.records == 1 && summary.paid == 1 && summary.timedOut == 0,
+                "summary " + summary.records + " record(s), " + summary.paid + " paid, " + summary.timedOut + " timed out");
+        ledger.close();
+    }
+
+    private static void acrossSegments() throws Exception {
+        // Segmentos minusculos: cada registro fecha um segmento
+        PaymentLedger ledger = open(1L);
+        UUID player = UUID.randomUUID();
+        long cycle = 2_000L;
+        ledger.append(entry(10, player, cycle, PaymentLedger.Status.TIMEOUT, false));
+        ledger.append(entry(20, UUID.randomUUID(), cycle, PaymentLedger.Status.SUCCESS, false));
+        ledger.append(entry(30, player, cycle, PaymentLedger.Status.FAILED, true));
+
+        List<PaymentLedger.Entry> history = ledger.history(player, 10);
+        check(history.size() == 1 && history.get(0).status == PaymentLedger.Status.FAILED,
+                "history across segments: " + history.size() + " entries");
+
+        PaymentLedger.CycleSummary summary = ledger.summarize(cycle);
+        check(summary.records == 2 && summary.failed == 1 && summary.timedOut == 0,
+                "summary across segments: " + summary.records + " record(s), " + summary.timedOut + " timed out");
+        ledger.close();
+    }
+
+    private static PaymentLedger open(long segmentBytes) throws Exception {
+        File directory = Files.createTempDirectory("coinsalary-ledger-test").toFile();
+        PaymentLedger ledger = new PaymentLedger(directory, Logger.getLogger("test"), segmentBytes, 0L);
+        ledger.open();
+        return ledger;
+    }
+
+    private static PaymentLedger.Entry entry(long timestamp, UUID player, long cycle, PaymentLedger.Status status,
+                                             boolean afterTimeout) {
+        return new PaymentLedger.Entry(timestamp, player, cycle, 150_000_000L, 5, status, "ref", afterTimeout);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
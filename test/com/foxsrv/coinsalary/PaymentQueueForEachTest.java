@@ -0,0 +1,106 @@
+package com.foxsrv.coinsalary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * PaymentQueue.forEach (usado no checkpoint do desligamento) tem que entregar a fila
+ * inteira na ordem do poll - memoria, segmento em leitura ja comecado, segmentos
+ * fechados e o que ainda esta em gravacao - sem consumir nada: uma gravacao que falha
+ * no meio deixa a fila e os segmentos como estavam.
+ *
+ *   java -cp "$TEST_CP" com.foxsrv.coinsalary.PaymentQueueForEachTest
+ */
+public final class PaymentQueueForEachTest {
+
+    private static final int MEMORY_ENTRIES = 1000;
+    // Passa de dois segmentos (16384 registros cada): fechados + em gravacao
+    private static final int PAYMENTS = 40_000;
+
+    public static void main(String[] args) throws Exception {
+        File directory = Files.createTempDirectory("coinsalary-queue-test").toFile();
+        PaymentQueue.Settings settings = new PaymentQueue.Settings(directory, MEMORY_ENTRIES);
+        FundingCard card = new FundingCard(new FundingCard.Spec("test-card", 0L, CoinAmount.ZERO),
+                BudgetGuard.Mode.OFF, settings);
+        PaymentQueue queue = card.queue;
+
+        for (int i = 0; i < PAYMENTS; i++) {
+            queue.offer(task(i));
+        }
+        check(queue.spilled() == PAYMENTS - MEMORY_ENTRIES, "spilled " + queue.spilled());
+        expect(queue, 0, PAYMENTS, "after spilling");
+        expect(queue, 0, PAYMENTS, "second pass (nothing consumed)");
+
+        // Poll ate o refill abrir o primeiro segmento e ler parte dele
+        int polled = 0;
+        while (polled < MEMORY_ENTRIES) {
+            PaymentTask task = queue.poll();
+            check(task != null && task.amount.units() == polled, "poll " + polled);
+            polled++;
+        }
+        check(queue.spilled() < PAYMENTS - MEMORY_ENTRIES, "refill did not read from disk");
+        expect(queue, polled, PAYMENTS, "after a partial refill");
+
+        // Devolvido pelo processador: vai na frente
+        queue.offerFirst(task(-1));
+        List<Long> units = collect(queue);
+        check(units.get(0) == -1L && units.size() == PAYMENTS - polled + 1, "offerFirst not first");
+        check(queue.poll().amount.units() == -1L, "offerFirst not polled first");
+
+        // Falha no meio da gravacao: nada sai da fila
+        int size = queue.size();
+        try {
+            int[] seen = {0};
+            queue.forEach(task -> {
+                if (++seen[0] == PAYMENTS / 2) throw new IOException("disk full");
+            });
+            throw new AssertionError("visitor failure was swallowed");
+        } catch (IOException expected) {
+            // esperado
+        }
+        check(queue.size() == size, "size changed after a failed visit: " + queue.size());
+        expect(queue, polled, PAYMENTS, "after a failed visit");
+
+        // O poll continua entregando exatamente o que o forEach mostrou
+        for (int i = polled; i < PAYMENTS; i++) {
+            PaymentTask task = queue.poll();
+            check(task != null && task.amount.units() == i, "poll " + i + " after forEach");
+        }
+        check(queue.poll() == null && queue.isEmpty(), "queue not empty");
+        expect(queue, 0, 0, "empty queue");
+
+        queue.close();
+        File[] leftover = directory.listFiles();
+        check(leftover == null || leftover.length == 0, "segments left after close");
+        System.out.println("OK");
+    }
+
+    private static PaymentTask task(long units) {
+        return new PaymentTask(new UUID(0L, units), "player" + units, false, CoinAmount.ofUnits(units),
+                "card" + units, 1L, units % 3 == 0 ? Arrays.asList("vip", "default") : null);
+    }
+
+    private static List<Long> collect(PaymentQueue queue) throws IOException {
+        List<Long> units = new ArrayList<>();
+        queue.forEach(task -> {
+            check(task.playerName.equals("player" + task.amount.units()), "record mismatch " + task.playerName);
+            units.add(task.amount.units());
+        });
+        return units;
+    }
+
+    private static void expect(PaymentQueue queue, int from, int to, String when) throws IOException {
+        List<Long> units = collect(queue);
+        check(units.size() == to - from, when + ": visited " + units.size() + ", expected " + (to - from));
+        for (int i = 0; i < units.size(); i++) {
+            check(units.get(i) == from + i, when + ": position " + i + " is " + units.get(i));
+        }
+        check(queue.size() == to - from, when + ": size " + queue.size());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
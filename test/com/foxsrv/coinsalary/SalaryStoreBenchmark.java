@@ -0,0 +1,132 @@
+package com.foxsrv.coinsalary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Backends do Storage.backend (json, binary, sql) com o mesmo conjunto de jogadores:
+ * gravacao inicial (todas as linhas), gravacao de um ciclo (CHANGED_PERCENT dos
+ * jogadores alterados, como a thread de persistencia faz) e load de um store novo,
+ * como no enable. Confere antes que o load devolve o que foi gravado.
+ *
+ * O sql usa o SQLite num arquivo temporario (ou SALARY_BENCH_SQL_URL); sem o driver
+ * no classpath o backend e pulado com aviso, como o plugin faria no enable.
+ *
+ *   java -cp "$TEST_CP[:sqlite-jdbc.jar]" com.foxsrv.coinsalary.SalaryStoreBenchmark [escala]
+ */
+public final class SalaryStoreBenchmark {
+
+    private static final int PLAYERS = 50_000;
+    private static final int CHANGED_PERCENT = 1;
+    private static final int OPS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int players = Bench.scaled(args, PLAYERS);
+        File directory = Files.createTempDirectory("coinsalary-store-bench").toFile();
+        Random random = new Random(40);
+
+        Map<UUID, Long> all = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < players; i++) {
+            all.put(new UUID(random.nextLong(), random.nextLong()), now - random.nextInt(86_400_000));
+        }
+        List<UUID> uuids = new ArrayList<>(all.keySet());
+        int changedPerCycle = Math.max(1, players * CHANGED_PERCENT / 100);
+
+        String configuredUrl = System.getenv("SALARY_BENCH_SQL_URL");
+        String sqlUrl = configuredUrl != null && !configuredUrl.isEmpty()
+                ? configuredUrl
+                : "jdbc:sqlite:" + new File(directory, "salary.db").getAbsolutePath();
+
+        Map<String, SalaryStore> stores = new LinkedHashMap<>();
+        stores.put("json", new JsonSalaryStore(new File(directory, "last_salary.dat")));
+        stores.put("binary", new BinarySalaryStore(new File(directory, "last_salary.bin")));
+        stores.put("sql", new SqlSalaryStore(sqlUrl, "", ""));
+
+        for (Map.Entry<String, SalaryStore> entry : stores.entrySet()) {
+            String backend = entry.getKey();
+            SalaryStore store = entry.getValue();
+            try {
+                store.save(all, all, now);
+            } catch (IOException e) {
+                System.out.println();
+                System.out.println("== " + backend + ": skipped (" + e.getMessage() + ") ==");
+                continue;
+            }
+            verify(backend, reopen(backend, directory, sqlUrl), all, now);
+
+            Bench.header(store.describe() + ", " + players + " players, " + changedPerCycle + " changed per cycle");
+            Bench.run(backend + " save all", OPS, i -> {
+                save(store, all, all, now);
+                return store;
+            });
+            Bench.run(backend + " save cycle (" + CHANGED_PERCENT + "% changed)", OPS, i -> {
+                Map<UUID, Long> changed = new HashMap<>();
+                long paidAt = now + i + 1;
+                int offset = random.nextInt(uuids.size());
+                for (int c = 0; c < changedPerCycle; c++) {
+                    UUID uuid = uuids.get((offset + c) % uuids.size());
+                    all.put(uuid, paidAt);
+                    changed.put(uuid, paidAt);
+                }
+                save(store, all, changed, paidAt);
+                return changed;
+            });
+            store.close();
+
+            Bench.run(backend + " load (new store)", OPS, i -> {
+                SalaryStore fresh = reopen(backend, directory, sqlUrl);
+                try {
+                    return fresh.load();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    fresh.close();
+                }
+            });
+            verify(backend, reopen(backend, directory, sqlUrl), all, -1L);
+        }
+    }
+
+    private static SalaryStore reopen(String backend, File directory, String sqlUrl) {
+        switch (backend) {
+            case "json":
+                return new JsonSalaryStore(new File(directory, "last_salary.dat"));
+            case "binary":
+                return new BinarySalaryStore(new File(directory, "last_salary.bin"));
+            default:
+                return new SqlSalaryStore(sqlUrl, "", "");
+        }
+    }
+
+    private static void save(SalaryStore store, Map<UUID, Long> all, Map<UUID, Long> changed, long lastTaskRun) {
+        try {
+            store.save(all, changed, lastTaskRun);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * O load de um store novo tem que devolver exatamente o estado gravado
+     * @param lastTaskRun Esperado, ou -1 para nao conferir
+     */
+    private static void verify(String backend, SalaryStore store, Map<UUID, Long> expected, long lastTaskRun)
+            throws IOException {
+        try {
+            SalaryStore.Snapshot snapshot = store.load();
+            if (!snapshot.payments.equals(expected)) {
+                throw new AssertionError(backend + ": loaded " + snapshot.payments.size() + " payment(s), expected " +
+                        expected.size() + " with the saved timestamps");
+            }
+            if (lastTaskRun >= 0 && snapshot.lastTaskRun != lastTaskRun) {
+                throw new AssertionError(backend + ": lastTaskRun " + snapshot.lastTaskRun + ", expected " + lastTaskRun);
+            }
+        } finally {
+            store.close();
+        }
+    }
+}